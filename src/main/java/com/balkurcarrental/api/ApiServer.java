@@ -0,0 +1,710 @@
+package com.balkurcarrental.api;
+
+import com.balkurcarrental.backend.Car;
+import com.balkurcarrental.backend.CarManager;
+import com.balkurcarrental.backend.Customer;
+import com.balkurcarrental.backend.CustomerManager;
+import com.balkurcarrental.backend.Rent;
+import com.balkurcarrental.backend.RentManager;
+import com.balkurcarrental.backend.ReturnOutcome;
+import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.InvalidEntityException;
+import com.balkurcarrental.common.JsonParser;
+import com.balkurcarrental.common.JsonWriter;
+import com.balkurcarrental.common.LookupResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded HTTP API over car, customer and rent managers, built on the
+ * HTTP server of the JDK. Entities are represented as described in
+ * {@link EntityJson}.
+ * <ul>
+ * <li>{@code GET /cars}, optionally with {@code brand} or
+ * {@code registrationNumber}, {@code POST /cars},
+ * {@code GET, PUT, DELETE /cars/{id}} and {@code POST /cars/lookup} with
+ * array of ids</li>
+ * <li>{@code GET /customers}, optionally with {@code name}, {@code surname}
+ * or {@code phoneNumber}, {@code POST /customers},
+ * {@code GET, PUT, DELETE /customers/{id}} and {@code POST /customers/lookup}
+ * with array of ids</li>
+ * <li>{@code GET /rents}, optionally with {@code carId} or
+ * {@code customerId} and {@code withHistory}, {@code overdueAsOf} or
+ * {@code activeOn}, {@code POST /rents}, {@code GET, PUT, DELETE /rents/{id}}
+ * and {@code POST /rents/returns} with object of return dates keyed by rent
+ * id</li>
+ * </ul>
+ * Lists are streamed with chunked encoding as they are written, overdue and
+ * active rents directly from the database cursor. Missing entities are
+ * reported as 404, invalid requests as 400 and failures of the database as
+ * 500, all with JSON object containing the error message.
+ *
+ * Managers block on JDBC, so requests are handled by a pool of
+ * {@link #DEFAULT_THREADS} threads unless other executor is set.
+ *
+ * Headers and body are written separately, so with Nagle's algorithm every
+ * response waits for delayed ack of the client. The JDK server turns on
+ * TCP_NODELAY only when {@code sun.net.httpserver.nodelay} system property is
+ * true before the first server in the JVM is created, so launchers should set
+ * it, for example by {@code -Dsun.net.httpserver.nodelay=true}.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class ApiServer {
+
+    private static final Logger logger = Logger.getLogger(
+            ApiServer.class.getName());
+
+    public static final int DEFAULT_THREADS = 32;
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private CarManager carManager;
+    private CustomerManager customerManager;
+    private RentManager rentManager;
+    private ExecutorService executor;
+    private HttpServer server;
+    private ExecutorService ownExecutor;
+
+    public void setCarManager(CarManager carManager) {
+        this.carManager = carManager;
+    }
+
+    public void setCustomerManager(CustomerManager customerManager) {
+        this.customerManager = customerManager;
+    }
+
+    public void setRentManager(RentManager rentManager) {
+        this.rentManager = rentManager;
+    }
+
+    /**
+     * Sets executor handling requests. Executor is not shut down when server
+     * stops.
+     *
+     * @param executor executor, null for default pool
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    private void checkManagers() {
+        if (carManager == null) {
+            throw new IllegalStateException("CarManager is not set");
+        }
+        if (customerManager == null) {
+            throw new IllegalStateException("CustomerManager is not set");
+        }
+        if (rentManager == null) {
+            throw new IllegalStateException("RentManager is not set");
+        }
+    }
+
+    /**
+     * Starts server listening on given address.
+     *
+     * @param address address to listen on, port 0 for any free port
+     * @throws IllegalStateException when server is already started or any
+     * manager is not set
+     * @throws IOException when server can't be bound to the address
+     */
+    public synchronized void start(InetSocketAddress address)
+            throws IOException {
+        checkManagers();
+        if (server != null) {
+            throw new IllegalStateException("Server is already started");
+        }
+        HttpServer created = HttpServer.create(address, 0);
+        created.createContext("/cars", exchange -> handle(exchange,
+                this::cars));
+        created.createContext("/customers", exchange -> handle(exchange,
+                this::customers));
+        created.createContext("/rents", exchange -> handle(exchange,
+                this::rents));
+        if (executor == null) {
+            ownExecutor = Executors.newFixedThreadPool(DEFAULT_THREADS, r -> {
+                Thread thread = new Thread(r, "api-" + threadCounter.
+                        incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        created.setExecutor(executor == null ? ownExecutor : executor);
+        created.start();
+        server = created;
+        logger.log(Level.INFO, "API server listening on {0}", created.
+                getAddress());
+    }
+
+    /**
+     * Returns port the server listens on.
+     *
+     * @return port
+     * @throws IllegalStateException when server is not started
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Server is not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops server, requests being handled are given the time to finish.
+     *
+     * @param delaySeconds maximal time to wait for requests in seconds
+     */
+    public synchronized void stop(int delaySeconds) {
+        if (server == null) {
+            return;
+        }
+        server.stop(delaySeconds);
+        server = null;
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+            ownExecutor = null;
+        }
+    }
+
+    private void cars(Call call) throws IOException {
+        if (call.path.isEmpty()) {
+            if (call.isGet()) {
+                String registrationNumber = call.params.get(
+                        "registrationNumber");
+                if (registrationNumber != null) {
+                    call.send(200, found(carManager.
+                            getCarByRegistrationNumber(registrationNumber)),
+                            EntityJson::writeCar);
+                } else if (call.params.containsKey("brand")) {
+                    call.sendList(carManager.findCarsByBrand(call.params.get(
+                            "brand")), EntityJson::writeCar);
+                } else {
+                    call.sendList(carManager.findAllCars(),
+                            EntityJson::writeCar);
+                }
+            } else if (call.isPost()) {
+                Car car = EntityJson.readCar(call.body());
+                carManager.createCar(car);
+                call.send(201, car, EntityJson::writeCar);
+            } else {
+                throw HttpError.methodNotAllowed(call);
+            }
+            return;
+        }
+        if (call.path.equals("lookup") && call.isPost()) {
+            call.sendLookup(carManager.getCarsByIds(call.ids()),
+                    EntityJson::writeCar);
+            return;
+        }
+        Long id = call.id();
+        if (call.isGet()) {
+            call.send(200, found(carManager.getCarById(id)),
+                    EntityJson::writeCar);
+        } else if (call.isPut()) {
+            Car car = EntityJson.readCar(call.body());
+            car.setId(id);
+            carManager.updateCar(car);
+            call.send(200, car, EntityJson::writeCar);
+        } else if (call.isDelete()) {
+            Car car = new Car();
+            car.setId(id);
+            carManager.deleteCar(car);
+            call.sendEmpty();
+        } else {
+            throw HttpError.methodNotAllowed(call);
+        }
+    }
+
+    private void customers(Call call) throws IOException {
+        if (call.path.isEmpty()) {
+            if (call.isGet()) {
+                if (call.params.containsKey("phoneNumber")) {
+                    call.send(200, found(customerManager.
+                            getCustomerByPhoneNumber(call.params.get(
+                                    "phoneNumber"))),
+                            EntityJson::writeCustomer);
+                } else if (call.params.containsKey("name")) {
+                    call.sendList(customerManager.findCustomersByName(call.
+                            params.get("name")), EntityJson::writeCustomer);
+                } else if (call.params.containsKey("surname")) {
+                    call.sendList(customerManager.findCustomersBySurname(call.
+                            params.get("surname")), EntityJson::writeCustomer);
+                } else {
+                    call.sendList(customerManager.findAllCustomers(),
+                            EntityJson::writeCustomer);
+                }
+            } else if (call.isPost()) {
+                Customer customer = EntityJson.readCustomer(call.body());
+                customerManager.createCustomer(customer);
+                call.send(201, customer, EntityJson::writeCustomer);
+            } else {
+                throw HttpError.methodNotAllowed(call);
+            }
+            return;
+        }
+        if (call.path.equals("lookup") && call.isPost()) {
+            call.sendLookup(customerManager.getCustomersByIds(call.ids()),
+                    EntityJson::writeCustomer);
+            return;
+        }
+        Long id = call.id();
+        if (call.isGet()) {
+            call.send(200, found(customerManager.getCustomerById(id)),
+                    EntityJson::writeCustomer);
+        } else if (call.isPut()) {
+            Customer customer = EntityJson.readCustomer(call.body());
+            customer.setId(id);
+            customerManager.updateCustomer(customer);
+            call.send(200, customer, EntityJson::writeCustomer);
+        } else if (call.isDelete()) {
+            Customer customer = new Customer();
+            customer.setId(id);
+            customerManager.deleteCustomer(customer);
+            call.sendEmpty();
+        } else {
+            throw HttpError.methodNotAllowed(call);
+        }
+    }
+
+    private void rents(Call call) throws IOException {
+        if (call.path.isEmpty()) {
+            if (call.isGet()) {
+                findRents(call);
+            } else if (call.isPost()) {
+                Rent rent = EntityJson.readRent(call.body());
+                rentManager.createRent(rent);
+                call.send(201, rentManager.getRentById(rent.getId()),
+                        EntityJson::writeRent);
+            } else {
+                throw HttpError.methodNotAllowed(call);
+            }
+            return;
+        }
+        if (call.path.equals("returns") && call.isPost()) {
+            returnCars(call);
+            return;
+        }
+        Long id = call.id();
+        if (call.isGet()) {
+            call.send(200, found(rentManager.getRentById(id)),
+                    EntityJson::writeRent);
+        } else if (call.isPut()) {
+            Rent rent = EntityJson.readRent(call.body());
+            rent.setId(id);
+            rentManager.updateRent(rent);
+            call.send(200, rentManager.getRentById(id), EntityJson::writeRent);
+        } else if (call.isDelete()) {
+            Rent rent = new Rent();
+            rent.setId(id);
+            rentManager.deleteRent(rent);
+            call.sendEmpty();
+        } else {
+            throw HttpError.methodNotAllowed(call);
+        }
+    }
+
+    private void findRents(Call call) throws IOException {
+        Map<String, String> params = call.params;
+        boolean withHistory = Boolean.parseBoolean(params.get("withHistory"));
+        if (params.containsKey("carId")) {
+            Car car = new Car();
+            car.setId(Call.parseId(params.get("carId")));
+            call.sendList(rentManager.findRentsForCar(car, withHistory),
+                    EntityJson::writeRent);
+        } else if (params.containsKey("customerId")) {
+            Customer customer = new Customer();
+            customer.setId(Call.parseId(params.get("customerId")));
+            call.sendList(rentManager.findRentsForCustomer(customer,
+                    withHistory), EntityJson::writeRent);
+        } else if (params.containsKey("overdueAsOf")) {
+            LocalDate asOf = EntityJson.date(params.get("overdueAsOf"));
+            call.stream(json -> rentManager.forEachOverdueRent(asOf,
+                    rent -> write(json, rent)));
+        } else if (params.containsKey("activeOn")) {
+            LocalDate on = EntityJson.date(params.get("activeOn"));
+            call.stream(json -> rentManager.forEachActiveRent(on,
+                    rent -> write(json, rent)));
+        } else {
+            call.sendList(rentManager.findAllRents(), EntityJson::writeRent);
+        }
+    }
+
+    private void returnCars(Call call) throws IOException {
+        Map<?, ?> body = EntityJson.object(call.body(), "body");
+        Map<Long, LocalDate> returnDates = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : body.entrySet()) {
+            Object date = entry.getValue();
+            if (!(date instanceof String)) {
+                throw new IllegalArgumentException("return date is not string");
+            }
+            returnDates.put(Call.parseId((String) entry.getKey()), EntityJson.
+                    date((String) date));
+        }
+        Map<Long, ReturnOutcome> outcomes = rentManager.returnCars(
+                returnDates);
+        call.send(200, outcomes, (json, result) -> {
+            json.beginObject();
+            for (Map.Entry<Long, ReturnOutcome> entry : result.entrySet()) {
+                json.name(entry.getKey().toString()).value(entry.getValue().
+                        name());
+            }
+            json.endObject();
+        });
+    }
+
+    private static void write(JsonWriter json, Rent rent) {
+        try {
+            EntityJson.writeRent(json, rent);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static <T> T found(T entity) {
+        if (entity == null) {
+            throw new EntityNotFoundException("Entity was not found");
+        }
+        return entity;
+    }
+
+    private void handle(HttpExchange exchange, Resource resource) {
+        Call call = new Call(exchange);
+        try {
+            resource.handle(call);
+        } catch (HttpError ex) {
+            call.sendError(ex.status, ex);
+        } catch (EntityNotFoundException ex) {
+            call.sendError(404, ex);
+        } catch (InvalidEntityException | IllegalArgumentException ex) {
+            call.sendError(400, ex);
+        } catch (IOException | UncheckedIOException ex) {
+            logger.log(Level.FINE, "Error when writing response of " + call,
+                    ex);
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Error when handling " + call, ex);
+            call.sendError(500, ex);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handler of requests of one resource.
+     */
+    @FunctionalInterface
+    private interface Resource {
+
+        void handle(Call call) throws IOException;
+    }
+
+    /**
+     * Writer of one JSON value.
+     */
+    @FunctionalInterface
+    private interface JsonBody<T> {
+
+        void write(JsonWriter json, T value) throws IOException;
+    }
+
+    /**
+     * Response body which can be aborted. Closing of aborted body fails
+     * without closing the underlying stream, so the exchange closes the
+     * connection instead of finishing the response.
+     */
+    private static class AbortableOutputStream extends FilterOutputStream {
+
+        private boolean aborted;
+        private boolean closed;
+
+        AbortableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        /**
+         * Closes the body. Exchange closes it again, which must not fail for
+         * finished response, otherwise the connection is not kept alive.
+         */
+        @Override
+        public void close() throws IOException {
+            if (aborted) {
+                throw new IOException("Response was aborted");
+            }
+            if (!closed) {
+                closed = true;
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Request with path relative to resource and decoded query parameters.
+     */
+    private static class Call {
+
+        private final HttpExchange exchange;
+        private final String method;
+        private final String path;
+        private final Map<String, String> params;
+
+        Call(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.method = exchange.getRequestMethod();
+            String full = exchange.getRequestURI().getPath();
+            String context = exchange.getHttpContext().getPath();
+            String relative = full.substring(Math.min(context.length(), full.
+                    length()));
+            this.path = relative.startsWith("/") ? relative.substring(1)
+                    : relative;
+            this.params = parseQuery(exchange.getRequestURI().getRawQuery());
+        }
+
+        boolean isGet() {
+            return "GET".equals(method);
+        }
+
+        boolean isPost() {
+            return "POST".equals(method);
+        }
+
+        boolean isPut() {
+            return "PUT".equals(method);
+        }
+
+        boolean isDelete() {
+            return "DELETE".equals(method);
+        }
+
+        Long id() {
+            if (path.contains("/")) {
+                throw new HttpError(404, "Unknown resource " + exchange.
+                        getRequestURI().getPath());
+            }
+            try {
+                return Long.valueOf(path);
+            } catch (NumberFormatException ex) {
+                throw new HttpError(404, "Unknown resource " + exchange.
+                        getRequestURI().getPath());
+            }
+        }
+
+        static Long parseId(String id) {
+            try {
+                return Long.valueOf(id);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid id " + id, ex);
+            }
+        }
+
+        Object body() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+            }
+            return JsonParser.parse(new String(bytes.toByteArray(),
+                    StandardCharsets.UTF_8));
+        }
+
+        Collection<Long> ids() throws IOException {
+            Object body = body();
+            if (!(body instanceof List)) {
+                throw new IllegalArgumentException("body is not array of ids");
+            }
+            List<Long> ids = new ArrayList<>();
+            for (Object id : (List<?>) body) {
+                if (!(id instanceof Long)) {
+                    throw new IllegalArgumentException("id is not integer");
+                }
+                ids.add((Long) id);
+            }
+            return ids;
+        }
+
+        /**
+         * Sends single value with known length, which is cheaper than chunked
+         * encoding for small responses.
+         */
+        <T> void send(int status, T value, JsonBody<T> body)
+                throws IOException {
+            StringWriter writer = new StringWriter();
+            body.write(new JsonWriter(writer), value);
+            writer.write('\n');
+            byte[] bytes = writer.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", JSON);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        /**
+         * Sends value of unknown length with chunked encoding, it is written
+         * as it comes. When writing fails, the terminating chunk is not sent
+         * and the connection is closed, so the client sees the failure
+         * instead of truncated response.
+         */
+        <T> void sendStream(T value, JsonBody<T> body) throws IOException {
+            AbortableOutputStream out = new AbortableOutputStream(exchange.
+                    getResponseBody());
+            exchange.setStreams(null, out);
+            exchange.getResponseHeaders().set("Content-Type", JSON);
+            exchange.sendResponseHeaders(200, 0);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                    StandardCharsets.UTF_8), 8192);
+            try {
+                body.write(new JsonWriter(writer), value);
+                writer.write('\n');
+            } catch (IOException | RuntimeException ex) {
+                out.abort();
+                throw ex;
+            }
+            writer.close();
+        }
+
+        <T> void sendList(List<T> list, JsonBody<T> element)
+                throws IOException {
+            stream(json -> {
+                for (T value : list) {
+                    try {
+                        element.write(json, value);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Sends JSON array whose elements are written by given action as they
+         * come.
+         */
+        void stream(Consumer<JsonWriter> elements)
+                throws IOException {
+            sendStream(elements, (json, action) -> {
+                json.beginArray();
+                action.accept(json);
+                json.endArray();
+            });
+        }
+
+        <T> void sendLookup(LookupResult<T> result, JsonBody<T> element)
+                throws IOException {
+            send(200, result, (json, lookup) -> {
+                json.beginObject().name("found").beginArray();
+                for (T value : lookup.getFound().values()) {
+                    element.write(json, value);
+                }
+                json.endArray().name("missingIds").beginArray();
+                for (Long id : lookup.getMissingIds()) {
+                    json.value(id);
+                }
+                json.endArray().endObject();
+            });
+        }
+
+        void sendEmpty() throws IOException {
+            exchange.sendResponseHeaders(204, -1);
+        }
+
+        void sendError(int status, Exception error) {
+            if (exchange.getResponseCode() != -1) {
+                // response is already being streamed and was aborted, the
+                // connection is closed when the exchange is closed
+                logger.log(Level.WARNING, "Response of " + this
+                        + " was aborted", error);
+                return;
+            }
+            try {
+                send(status, error.getMessage(), (json, message) -> json.
+                        beginObject().name("error").value(message).endObject());
+            } catch (IOException ex) {
+                logger.log(Level.FINE, "Error when sending error of " + this,
+                        ex);
+            }
+        }
+
+        private static Map<String, String> parseQuery(String query) {
+            Map<String, String> result = new HashMap<>();
+            if (query == null || query.isEmpty()) {
+                return result;
+            }
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                try {
+                    result.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.
+                            decode(value, "UTF-8"));
+                } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+                    // malformed parameter is ignored
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return method + " " + exchange.getRequestURI();
+        }
+    }
+
+    /**
+     * Error with given HTTP status.
+     */
+    private static class HttpError extends RuntimeException {
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        static HttpError methodNotAllowed(Call call) {
+            return new HttpError(405, "Method " + call.method
+                    + " is not allowed for " + call.exchange.getRequestURI().
+                            getPath());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.balkurcarrental.api;
+
+import com.balkurcarrental.backend.Car;
+import com.balkurcarrental.backend.Customer;
+import com.balkurcarrental.backend.Rent;
+import com.balkurcarrental.common.JsonWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * JSON representation of cars, customers and rents. Dates are written in ISO
+ * format, rent contains its car and customer as nested objects. When rent is
+ * read, only ids of its car and customer are used.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+final class EntityJson {
+
+    private EntityJson() {
+    }
+
+    static void writeCar(JsonWriter json, Car car) throws IOException {
+        json.beginObject()
+                .name("id").value(car.getId())
+                .name("brand").value(car.getBrand())
+                .name("registrationNumber").value(car.getRegistrationNumber())
+                .endObject();
+    }
+
+    static void writeCustomer(JsonWriter json, Customer customer)
+            throws IOException {
+        json.beginObject()
+                .name("id").value(customer.getId())
+                .name("name").value(customer.getName())
+                .name("surname").value(customer.getSurname())
+                .name("phoneNumber").value(customer.getPhoneNumber())
+                .endObject();
+    }
+
+    static void writeRent(JsonWriter json, Rent rent) throws IOException {
+        json.beginObject().name("id").value(rent.getId()).name("car");
+        writeCar(json, rent.getCar());
+        json.name("customer");
+        writeCustomer(json, rent.getCustomer());
+        json.name("pricePerDay").value(rent.getPricePerDay())
+                .name("beginningDate").value(toString(rent.getBeginningDate()))
+                .name("expectedReturnDate").value(toString(rent.
+                        getExpectedReturnDate()))
+                .name("realReturnDate").value(toString(rent.
+                        getRealReturnDate()))
+                .endObject();
+    }
+
+    static Car readCar(Object json) {
+        Map<?, ?> object = object(json, "car");
+        Car car = new Car();
+        car.setBrand(string(object, "brand"));
+        car.setRegistrationNumber(string(object, "registrationNumber"));
+        return car;
+    }
+
+    static Customer readCustomer(Object json) {
+        Map<?, ?> object = object(json, "customer");
+        Customer customer = new Customer();
+        customer.setName(string(object, "name"));
+        customer.setSurname(string(object, "surname"));
+        customer.setPhoneNumber(string(object, "phoneNumber"));
+        return customer;
+    }
+
+    static Rent readRent(Object json) {
+        Map<?, ?> object = object(json, "rent");
+        Rent rent = new Rent();
+        Long carId = number(object(object.get("car"), "car"), "id");
+        if (carId != null) {
+            rent.setCar(new Car());
+            rent.getCar().setId(carId);
+        }
+        Long customerId = number(object(object.get("customer"), "customer"),
+                "id");
+        if (customerId != null) {
+            rent.setCustomer(new Customer());
+            rent.getCustomer().setId(customerId);
+        }
+        Long price = number(object, "pricePerDay");
+        if (price == null || price < Integer.MIN_VALUE
+                || price > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("pricePerDay is not integer");
+        }
+        rent.setPricePerDay(price.intValue());
+        rent.setBeginningDate(date(string(object, "beginningDate")));
+        rent.setExpectedReturnDate(date(string(object, "expectedReturnDate")));
+        rent.setRealReturnDate(date(string(object, "realReturnDate")));
+        return rent;
+    }
+
+    static Map<?, ?> object(Object json, String name) {
+        if (!(json instanceof Map)) {
+            throw new IllegalArgumentException(name + " is not object");
+        }
+        return (Map<?, ?>) json;
+    }
+
+    static String string(Map<?, ?> object, String name) {
+        Object value = object.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException(name + " is not string");
+        }
+        return (String) value;
+    }
+
+    static Long number(Map<?, ?> object, String name) {
+        Object value = object.get(name);
+        if (value != null && !(value instanceof Long)) {
+            throw new IllegalArgumentException(name + " is not integer");
+        }
+        return (Long) value;
+    }
+
+    static LocalDate date(String value) {
+        try {
+            return value == null ? null : LocalDate.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid date " + value, ex);
+        }
+    }
+
+    private static String toString(LocalDate date) {
+        return date == null ? null : date.toString();
+    }
+}
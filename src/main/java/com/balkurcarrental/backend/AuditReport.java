@@ -0,0 +1,175 @@
+package com.balkurcarrental.backend;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link RentAudit}. Lists pairs of rents which book the same car
+ * on the same day and rents referring to car or customer which doesn't exist.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class AuditReport {
+
+    private final long checkedRents;
+    private final List<Overlap> overlaps;
+    private final List<Orphan> orphans;
+
+    public AuditReport(long checkedRents, List<Overlap> overlaps,
+            List<Orphan> orphans) {
+        this.checkedRents = checkedRents;
+        this.overlaps = Collections.unmodifiableList(overlaps);
+        this.orphans = Collections.unmodifiableList(orphans);
+    }
+
+    public long getCheckedRents() {
+        return checkedRents;
+    }
+
+    public List<Overlap> getOverlaps() {
+        return overlaps;
+    }
+
+    public List<Orphan> getOrphans() {
+        return orphans;
+    }
+
+    /**
+     * Checks if audit found no problem.
+     *
+     * @return true when there is no overlap and no orphan
+     */
+    public boolean isClean() {
+        return overlaps.isEmpty() && orphans.isEmpty();
+    }
+
+    /**
+     * Writes report as JSON object with checkedRents, overlaps and orphans
+     * attributes.
+     *
+     * @param writer writer to write to, it is not closed
+     * @throws IOException when writing fails
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\"checkedRents\":" + checkedRents + ",\"overlaps\":[");
+        for (int i = 0; i < overlaps.size(); i++) {
+            Overlap overlap = overlaps.get(i);
+            writer.write((i == 0 ? "\n" : ",\n") + "{\"carId\":" + overlap.
+                    getCarId() + ",\"firstRentId\":" + overlap.getFirstRentId()
+                    + ",\"secondRentId\":" + overlap.getSecondRentId() + "}");
+        }
+        writer.write("],\"orphans\":[");
+        for (int i = 0; i < orphans.size(); i++) {
+            Orphan orphan = orphans.get(i);
+            writer.write((i == 0 ? "\n" : ",\n") + "{\"rentId\":" + orphan.
+                    getRentId() + ",\"carId\":" + orphan.getCarId()
+                    + ",\"customerId\":" + orphan.getCustomerId()
+                    + ",\"missingCar\":" + orphan.isMissingCar()
+                    + ",\"missingCustomer\":" + orphan.isMissingCustomer()
+                    + "}");
+        }
+        writer.write("]}\n");
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "AuditReport{"
+                + "checkedRents=" + checkedRents
+                + ", overlaps=" + overlaps.size()
+                + ", orphans=" + orphans.size()
+                + "}";
+    }
+
+    /**
+     * Two rents booking the same car on at least one day. The first rent
+     * begins earlier, or has lower id when both begin on the same day.
+     */
+    public static class Overlap {
+
+        private final long carId;
+        private final long firstRentId;
+        private final long secondRentId;
+
+        public Overlap(long carId, long firstRentId, long secondRentId) {
+            this.carId = carId;
+            this.firstRentId = firstRentId;
+            this.secondRentId = secondRentId;
+        }
+
+        public long getCarId() {
+            return carId;
+        }
+
+        public long getFirstRentId() {
+            return firstRentId;
+        }
+
+        public long getSecondRentId() {
+            return secondRentId;
+        }
+
+        @Override
+        public String toString() {
+            return "Overlap{"
+                    + "carId=" + carId
+                    + ", firstRentId=" + firstRentId
+                    + ", secondRentId=" + secondRentId
+                    + "}";
+        }
+    }
+
+    /**
+     * Rent whose car or customer doesn't exist.
+     */
+    public static class Orphan {
+
+        private final long rentId;
+        private final long carId;
+        private final long customerId;
+        private final boolean missingCar;
+        private final boolean missingCustomer;
+
+        public Orphan(long rentId, long carId, long customerId,
+                boolean missingCar, boolean missingCustomer) {
+            this.rentId = rentId;
+            this.carId = carId;
+            this.customerId = customerId;
+            this.missingCar = missingCar;
+            this.missingCustomer = missingCustomer;
+        }
+
+        public long getRentId() {
+            return rentId;
+        }
+
+        public long getCarId() {
+            return carId;
+        }
+
+        public long getCustomerId() {
+            return customerId;
+        }
+
+        public boolean isMissingCar() {
+            return missingCar;
+        }
+
+        public boolean isMissingCustomer() {
+            return missingCustomer;
+        }
+
+        @Override
+        public String toString() {
+            return "Orphan{"
+                    + "rentId=" + rentId
+                    + ", carId=" + carId
+                    + ", customerId=" + customerId
+                    + ", missingCar=" + missingCar
+                    + ", missingCustomer=" + missingCustomer
+                    + "}";
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.DayBitmap;
+import com.balkurcarrental.common.EntityEvent;
+import com.balkurcarrental.common.EntityListener;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Availability calendar of cars. Booked days of every car are kept in memory
+ * as {@link DayBitmap}, so availability queries do not touch the database.
+ *
+ * Rent books its car from beginning date to real return date, both inclusive.
+ * Rent without real return date books the car from its beginning date
+ * indefinitely. This is the same rule which is used by {@link RentManager}
+ * when checking whether car is already rented.
+ *
+ * Calendar is loaded by {@link #load()} or from {@link Snapshot} and kept in
+ * sync when it is set to
+ * {@link RentManagerImpl#setAvailabilityCalendar(CarAvailabilityCalendar)} or
+ * registered as listener of rent events.
+ * Calendar is thread safe, bitmap of a car is always replaced as a whole.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class CarAvailabilityCalendar implements EntityListener<Rent> {
+
+    private static final Logger logger = Logger.getLogger(
+            CarAvailabilityCalendar.class.getName());
+
+    private DataSource dataSource;
+    private final Map<Long, Bookings> bookings = new ConcurrentHashMap<>();
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Loads booked days of all cars from the database. Only dates are read,
+     * rents are not hydrated.
+     *
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public void load() {
+        checkDataSource();
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT car_id, beginning_date, real_return_date FROM rent"
+            );
+            Map<Long, Bookings> loaded = new HashMap<>();
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Long carId = rs.getLong("car_id");
+                    Bookings car = loaded.get(carId);
+                    if (car == null) {
+                        car = new Bookings();
+                        loaded.put(carId, car);
+                    }
+                    car.add(rs.getDate("beginning_date"), rs.getDate(
+                            "real_return_date"));
+                }
+            }
+            bookings.keySet().retainAll(loaded.keySet());
+            bookings.putAll(loaded);
+        } catch (SQLException ex) {
+            String msg = "Error when loading availability calendar";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    /**
+     * Replaces booked days of all cars with days booked by given rents, for
+     * example rents restored from {@link Snapshot}.
+     *
+     * @param rents all rents
+     * @throws IllegalArgumentException when rents is null
+     */
+    public void load(Collection<Rent> rents) {
+        if (rents == null) {
+            throw new IllegalArgumentException("rents is null");
+        }
+        Map<Long, Bookings> loaded = new HashMap<>();
+        for (Rent rent : rents) {
+            loaded.computeIfAbsent(rent.getCar().getId(), id -> new Bookings())
+                    .add(rent.getBeginningDate(), rent.getRealReturnDate());
+        }
+        bookings.keySet().retainAll(loaded.keySet());
+        bookings.putAll(loaded);
+    }
+
+    /**
+     * Reloads booked days of given car from the database.
+     *
+     * @param carId id of car
+     * @throws IllegalArgumentException when carId is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public void refreshCar(Long carId) {
+        checkDataSource();
+        if (carId == null) {
+            throw new IllegalArgumentException("car id is null");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT beginning_date, real_return_date FROM rent WHERE car_id = ?"
+            );
+            st.setLong(1, carId);
+            Bookings car = new Bookings();
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    car.add(rs.getDate("beginning_date"), rs.getDate(
+                            "real_return_date"));
+                }
+            }
+            if (car.isEmpty()) {
+                bookings.remove(carId);
+            } else {
+                bookings.put(carId, car);
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when loading availability of car " + carId;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    /**
+     * Applies changed booked ranges of rents. Events which do not change car,
+     * beginning date or real return date of rent are ignored. Old range of
+     * rent is removed from booked days of its car and new range is added, so
+     * the database is not queried. Car is reloaded from the database only
+     * when its old range is not known to the calendar.
+     *
+     * @param events committed changes of rents
+     */
+    @Override
+    public void onEvents(List<EntityEvent<Rent>> events) {
+        Map<Long, Changes> changes = new LinkedHashMap<>();
+        for (EntityEvent<Rent> event : events) {
+            Rent before = event.getBefore();
+            Rent after = event.getAfter();
+            if (before != null && after != null && sameBooking(before, after)) {
+                continue;
+            }
+            if (before != null) {
+                changes.computeIfAbsent(before.getCar().getId(),
+                        id -> new Changes()).removed.add(before);
+            }
+            if (after != null) {
+                changes.computeIfAbsent(after.getCar().getId(),
+                        id -> new Changes()).added.add(after);
+            }
+        }
+        for (Map.Entry<Long, Changes> entry : changes.entrySet()) {
+            Changes car = entry.getValue();
+            bookings.compute(entry.getKey(), (id, old) -> {
+                Bookings updated = (old == null ? new Bookings() : old).change(
+                        car.removed, car.added);
+                if (updated == null) {
+                    car.unknown = true;
+                    return old;
+                }
+                return updated.isEmpty() ? null : updated;
+            });
+            if (car.unknown) {
+                refreshCar(entry.getKey());
+            }
+        }
+    }
+
+    private static boolean sameBooking(Rent before, Rent after) {
+        return Objects.equals(before.getCar().getId(), after.getCar().getId())
+                && Objects.equals(before.getBeginningDate(), after.
+                        getBeginningDate())
+                && Objects.equals(before.getRealReturnDate(), after.
+                        getRealReturnDate());
+    }
+
+    /**
+     * Changed rents of one car.
+     */
+    private static class Changes {
+
+        private final List<Rent> removed = new ArrayList<>();
+        private final List<Rent> added = new ArrayList<>();
+        private boolean unknown;
+    }
+
+    /**
+     * Checks if car is free on given day.
+     *
+     * @param carId id of car
+     * @param day day to check
+     * @return true when car is not rented on given day
+     * @throws IllegalArgumentException when carId or day is null
+     */
+    public boolean isFree(Long carId, LocalDate day) {
+        checkCarId(carId);
+        if (day == null) {
+            throw new IllegalArgumentException("day is null");
+        }
+        Bookings car = bookings.get(carId);
+        return car == null || !car.isBooked(day.toEpochDay());
+    }
+
+    /**
+     * Finds first window of given number of consecutive free days starting
+     * on given day or later.
+     *
+     * @param carId id of car
+     * @param from first possible day of window
+     * @param days length of window
+     * @return first day of the window or null when car is never free for so
+     * long because of unfinished rent
+     * @throws IllegalArgumentException when carId or from is null or days is
+     * not positive
+     */
+    public LocalDate firstFreeWindow(Long carId, LocalDate from, int days) {
+        checkCarId(carId);
+        if (from == null) {
+            throw new IllegalArgumentException("from is null");
+        }
+        if (days <= 0) {
+            throw new IllegalArgumentException("days is not positive");
+        }
+        Bookings car = bookings.get(carId);
+        if (car == null) {
+            return from;
+        }
+        long start = car.firstFreeWindow(from.toEpochDay(), days);
+        return start == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(start);
+    }
+
+    /**
+     * Returns booked days of car in given period. Bit i of result is set when
+     * car is rented on day {@code from.plusDays(i)}.
+     *
+     * @param carId id of car
+     * @param from first day of period
+     * @param days length of period
+     * @return booked days
+     * @throws IllegalArgumentException when carId or from is null or days is
+     * negative
+     */
+    public BitSet bookedDays(Long carId, LocalDate from, int days) {
+        checkCarId(carId);
+        if (from == null) {
+            throw new IllegalArgumentException("from is null");
+        }
+        if (days < 0) {
+            throw new IllegalArgumentException("days is negative");
+        }
+        Bookings car = bookings.get(carId);
+        return car == null ? new BitSet() : car.bookedDays(from.toEpochDay(),
+                days);
+    }
+
+    /**
+     * Returns booked days of more cars in given period.
+     *
+     * @param carIds ids of cars
+     * @param from first day of period
+     * @param days length of period
+     * @return booked days keyed by car id, see
+     * {@link #bookedDays(Long, LocalDate, int)}
+     * @throws IllegalArgumentException when carIds is null or contains null,
+     * from is null or days is negative
+     */
+    public Map<Long, BitSet> bookedDays(Collection<Long> carIds, LocalDate from,
+            int days) {
+        Map<Long, BitSet> result = new LinkedHashMap<>();
+        for (Long carId : DBUtils.distinctIds(carIds)) {
+            result.put(carId, bookedDays(carId, from, days));
+        }
+        return result;
+    }
+
+    private static void checkCarId(Long carId) {
+        if (carId == null) {
+            throw new IllegalArgumentException("car id is null");
+        }
+    }
+
+    /**
+     * Booked days of one car. Booked ranges of rents are kept as well, so
+     * range of changed rent can be removed.
+     */
+    private static class Bookings {
+
+        private static final long OPEN = Long.MAX_VALUE;
+
+        private final DayBitmap days = new DayBitmap();
+        private long openFrom = Long.MAX_VALUE;
+        private long[] ranges = new long[8];
+        private int size;
+
+        void add(Date beginning, Date realReturn) {
+            add(beginning.toLocalDate(), realReturn == null ? null
+                    : realReturn.toLocalDate());
+        }
+
+        void add(LocalDate beginning, LocalDate realReturn) {
+            add(beginning.toEpochDay(), toDay(realReturn));
+        }
+
+        private void add(long from, long to) {
+            if (size == ranges.length) {
+                ranges = Arrays.copyOf(ranges, size * 2);
+            }
+            ranges[size++] = from;
+            ranges[size++] = to;
+            if (to == OPEN) {
+                openFrom = Math.min(openFrom, from);
+            } else {
+                days.addRange(from, to);
+            }
+        }
+
+        /**
+         * Creates bookings with ranges of removed rents replaced by ranges of
+         * added rents. Ranges are added first, so the same rent may be
+         * changed more times in one batch. Days are rebuilt from all ranges,
+         * because ranges of different rents may overlap.
+         *
+         * @return new bookings or null when range of some removed rent is not
+         * known
+         */
+        Bookings change(List<Rent> removed, List<Rent> added) {
+            long[] remaining = Arrays.copyOf(ranges, size + 2 * added.size());
+            int count = size;
+            for (Rent rent : added) {
+                remaining[count++] = rent.getBeginningDate().toEpochDay();
+                remaining[count++] = toDay(rent.getRealReturnDate());
+            }
+            for (Rent rent : removed) {
+                long from = rent.getBeginningDate().toEpochDay();
+                long to = toDay(rent.getRealReturnDate());
+                int i = 0;
+                while (i < count && (remaining[i] != from
+                        || remaining[i + 1] != to)) {
+                    i += 2;
+                }
+                if (i == count) {
+                    return null;
+                }
+                System.arraycopy(remaining, i + 2, remaining, i, count - i
+                        - 2);
+                count -= 2;
+            }
+            Bookings result = new Bookings();
+            for (int i = 0; i < count; i += 2) {
+                result.add(remaining[i], remaining[i + 1]);
+            }
+            return result;
+        }
+
+        private static long toDay(LocalDate realReturn) {
+            return realReturn == null ? OPEN : realReturn.toEpochDay();
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean isBooked(long day) {
+            return day >= openFrom || days.contains(day);
+        }
+
+        long bits(long fromDay) {
+            long bits = days.bits(fromDay);
+            if (fromDay + 64 > openFrom) {
+                long open = Math.max(0, openFrom - fromDay);
+                bits |= -1L << open;
+            }
+            return bits;
+        }
+
+        BitSet bookedDays(long fromDay, int length) {
+            long[] words = new long[(length + 63) / 64];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = bits(fromDay + 64L * i);
+            }
+            if (length % 64 != 0) {
+                words[words.length - 1] &= -1L >>> (64 - length % 64);
+            }
+            return BitSet.valueOf(words);
+        }
+
+        long firstFreeWindow(long fromDay, int length) {
+            long runStart = fromDay;
+            long day = fromDay;
+            while (day < openFrom) {
+                if (day > days.getLastDay()) {
+                    break;
+                }
+                long bits = bits(day);
+                int free = Long.numberOfTrailingZeros(bits);
+                if (day + free - runStart >= length) {
+                    return runStart;
+                }
+                day += free;
+                if (free < 64) {
+                    day += Long.numberOfTrailingZeros(~bits(day));
+                    runStart = day;
+                }
+            }
+            return runStart + length <= openFrom ? runStart : Long.MIN_VALUE;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.InvalidEntityException;
 import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.LookupResult;
 import com.balkurcarrental.common.ServiceFailureException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,6 +40,32 @@ public interface CarManager {
      */
     Car getCarById(Long id) throws EntityNotFoundException;
 
+    /**
+     * Returns cars with given ids. Ids are queried in chunks, so only few
+     * queries are needed for the whole collection.
+     *
+     * @param ids primary keys for requested cars
+     * @return found cars keyed by id and ids of cars which were not found
+     * @throws IllegalArgumentException when ids is null or contains null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    LookupResult<Car> getCarsByIds(Collection<Long> ids);
+
+    /**
+     * Returns car with given registration number. Registration number is
+     * compared case insensitive and whitespace is ignored, so "ab 123" finds
+     * car registered as "AB123".
+     *
+     * @param registrationNumber registration number of requested car
+     * @return car with given registration number
+     * @throws com.balkurcarrental.common.EntityNotFoundException
+     * when entity is not found in the database
+     * @throws IllegalArgumentException when registrationNumber is null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Car getCarByRegistrationNumber(String registrationNumber) throws
+            EntityNotFoundException;
+
     /**
      * Updates car in database.
      *
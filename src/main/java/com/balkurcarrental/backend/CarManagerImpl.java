@@ -1,12 +1,21 @@
 package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
 import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.EventPublisher;
 import com.balkurcarrental.common.InvalidEntityException;
+import com.balkurcarrental.common.LookupResult;
 import com.balkurcarrental.common.ServiceFailureException;
+import com.balkurcarrental.common.Tracer;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -23,11 +32,32 @@ public class CarManagerImpl implements CarManager {
             CarManagerImpl.class.getName());
 
     private DataSource dataSource;
+    private final EventPublisher<Car> events = new EventPublisher<>("car");
+    private Tracer tracer = Tracer.DISABLED;
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets tracer recording phases of reading by id. It should be shared
+     * with managers calling this one, so their spans nest.
+     *
+     * @param tracer tracer, null to disable tracing
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer == null ? Tracer.DISABLED : tracer;
+    }
+
+    /**
+     * Returns publisher of committed changes of cars.
+     *
+     * @return event publisher
+     */
+    public EventPublisher<Car> getEvents() {
+        return events;
+    }
+
     private void checkDataSource() {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource is not set");
@@ -48,7 +78,7 @@ public class CarManagerImpl implements CarManager {
             connection = dataSource.getConnection();
             connection.setAutoCommit(false);
             st = connection.prepareStatement(
-                    "INSERT INTO car (brand, registration_number) VALUES (?,?)",
+                    "INSERT INTO car (brand, registration_number, registration_key) VALUES (?,?,?)",
                     Statement.RETURN_GENERATED_KEYS
             );
 
@@ -59,13 +89,20 @@ public class CarManagerImpl implements CarManager {
 
             st.setString(1, car.getBrand());
             st.setString(2, car.getRegistrationNumber());
+            st.setString(3, registrationKey(car.getRegistrationNumber()));
 
             int addedRows = st.executeUpdate();
             DBUtils.checkUpdatesCount(addedRows, car, Operation.INSERT);
 
-            Long id = DBUtils.getId(st.getGeneratedKeys());
+            Long id;
+            try (ResultSet keys = st.getGeneratedKeys()) {
+                id = DBUtils.getId(keys);
+            }
             car.setId(id);
             connection.commit();
+            if (events.hasListeners()) {
+                events.publish(EntityEvent.created(id, copy(car)));
+            }
         } catch (SQLException ex) {
             String msg = "Error when inserting car " + car + " into db";
             logger.log(Level.SEVERE, msg, ex);
@@ -87,19 +124,22 @@ public class CarManagerImpl implements CarManager {
                     "Trying to retrive car with null id");
         }
 
+        int span = tracer.begin("CarManager.getCarById");
         Connection connection = null;
         PreparedStatement st = null;
 
         try {
+            int phase = tracer.begin("getConnection");
             connection = dataSource.getConnection();
+            phase = tracer.next(phase, "prepare");
             st = connection.prepareStatement(
                     "SELECT id, brand, registration_number FROM car WHERE id = ?"
             );
 
             st.setLong(1, id);
-            ResultSet rs = st.executeQuery();
-
+            phase = tracer.next(phase, "execute");
             Car car = executeQueryForSingleCar(st);
+            tracer.end(phase);
             if (car != null) {
                 return car;
             } else {
@@ -110,6 +150,76 @@ public class CarManagerImpl implements CarManager {
             String msg = "Error when retrieving car with id " + id;
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+            tracer.end(span);
+        }
+    }
+
+    @Override
+    public LookupResult<Car> getCarsByIds(Collection<Long> ids) {
+        checkDataSource();
+        Set<Long> distinctIds = DBUtils.distinctIds(ids);
+
+        Map<Long, Car> found = new HashMap<>();
+        if (distinctIds.isEmpty()) {
+            return new LookupResult<>(distinctIds, found);
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT id, brand, registration_number FROM car WHERE "
+                    + DBUtils.inCondition("id")
+            );
+
+            for (List<Long> chunk : DBUtils.chunks(distinctIds)) {
+                DBUtils.setInParameters(st, 1, chunk);
+                for (Car car : executeQueryForMultipleCars(st)) {
+                    found.put(car.getId(), car);
+                }
+            }
+            return new LookupResult<>(distinctIds, found);
+        } catch (SQLException ex) {
+            String msg = "Error when retrieving cars with ids " + distinctIds;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public Car getCarByRegistrationNumber(String registrationNumber) throws
+            EntityNotFoundException {
+        checkDataSource();
+        if (registrationNumber == null) {
+            throw new IllegalArgumentException("registration number is null");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT id, brand, registration_number FROM car WHERE registration_key = ?"
+            );
+            st.setString(1, registrationKey(registrationNumber));
+
+            Car car = executeQueryForSingleCar(st);
+            if (car != null) {
+                return car;
+            } else {
+                throw new EntityNotFoundException("Car with registration number "
+                        + registrationNumber + " was not found in database.");
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when retrieving car with registration number "
+                    + registrationNumber;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
         } finally {
             DBUtils.closeQuietly(connection, st);
         }
@@ -130,21 +240,28 @@ public class CarManagerImpl implements CarManager {
             connection = dataSource.getConnection();
             connection.setAutoCommit(false);
             st = connection.prepareStatement(
-                    "UPDATE car SET brand = ?, registration_number = ? WHERE id = ?"
+                    "UPDATE car SET brand = ?, registration_number = ?, registration_key = ? WHERE id = ?"
             );
 
             if (!isRegistrationNumberUnique(connection, car)) {
                 throw new InvalidEntityException(
                         "Car with same registration number found when updating car " + car);
             }
+            Car before = events.hasListeners() ? carById(connection,
+                    car.getId()) : null;
 
             st.setString(1, car.getBrand());
             st.setString(2, car.getRegistrationNumber());
-            st.setLong(3, car.getId());
+            st.setString(3, registrationKey(car.getRegistrationNumber()));
+            st.setLong(4, car.getId());
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, car, Operation.UPDATE);
             connection.commit();
+            if (before != null) {
+                events.publish(EntityEvent.updated(car.getId(), before, copy(
+                        car)));
+            }
         } catch (SQLException ex) {
             String msg = "Error when updating car " + car + " in db";
             logger.log(Level.SEVERE, msg, ex);
@@ -168,19 +285,27 @@ public class CarManagerImpl implements CarManager {
         PreparedStatement st = null;
         try {
             connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
             st = connection.prepareStatement(
                     "DELETE FROM car WHERE id = ?"
             );
 
             st.setLong(1, car.getId());
+            Car before = events.hasListeners() ? carById(connection,
+                    car.getId()) : null;
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, car, Operation.DELETE);
+            connection.commit();
+            if (before != null) {
+                events.publish(EntityEvent.deleted(car.getId(), before));
+            }
         } catch (SQLException ex) {
             String msg = "Error when deleting car " + car + " from db";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
+            DBUtils.doRollbackQuietly(connection);
             DBUtils.closeQuietly(connection, st);
         }
     }
@@ -235,29 +360,31 @@ public class CarManagerImpl implements CarManager {
 
     static Car executeQueryForSingleCar(PreparedStatement st) throws
             SQLException, EntityNotFoundException {
-        ResultSet rs = st.executeQuery();
-        if (rs.next()) {
-            Car car = resultSetToCar(rs);
-
+        try (ResultSet rs = st.executeQuery()) {
             if (rs.next()) {
-                throw new ServiceFailureException(
-                        "Internal error: More car with the same id found");
-            }
+                Car car = resultSetToCar(rs);
 
-            return car;
-        } else {
-            return null;
+                if (rs.next()) {
+                    throw new ServiceFailureException(
+                            "Internal error: More car with the same id found");
+                }
+
+                return car;
+            } else {
+                return null;
+            }
         }
     }
 
     static List<Car> executeQueryForMultipleCars(PreparedStatement st) throws
             SQLException {
-        ResultSet rs = st.executeQuery();
-        List<Car> result = new ArrayList<>();
-        while (rs.next()) {
-            result.add(resultSetToCar(rs));
+        try (ResultSet rs = st.executeQuery()) {
+            List<Car> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(resultSetToCar(rs));
+            }
+            return result;
         }
-        return result;
     }
 
     private static void validate(Car car) throws IllegalArgumentException,
@@ -293,23 +420,63 @@ public class CarManagerImpl implements CarManager {
         return car;
     }
 
+    /**
+     * Reads car in the transaction of given connection, used for state of car
+     * before change.
+     */
+    private static Car carById(Connection connection, Long id) throws
+            SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT id, brand, registration_number FROM car WHERE id = ?"
+        )) {
+            st.setLong(1, id);
+            return executeQueryForSingleCar(st);
+        }
+    }
+
+    private static Car copy(Car car) {
+        Car result = new Car();
+        result.setId(car.getId());
+        result.setBrand(car.getBrand());
+        result.setRegistrationNumber(car.getRegistrationNumber());
+        return result;
+    }
+
     private static boolean isRegistrationNumberUnique(Connection connection,
             Car car) {
         try (PreparedStatement st = connection.prepareStatement(
-                "SELECT id FROM car WHERE registration_number = ?"
+                "SELECT id FROM car WHERE registration_key = ?"
         )) {
-            st.setString(1, car.getRegistrationNumber());
-            ResultSet rs = st.executeQuery();
-
-            if (rs.next()) {
-                return car.getId() != null && car.getId().equals(rs.
-                        getLong("id"));
+            st.setString(1, registrationKey(car.getRegistrationNumber()));
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    return car.getId() != null && car.getId().equals(rs.
+                            getLong("id"));
+                }
+                return true;
             }
-            return true;
         } catch (SQLException ex) {
             throw new ServiceFailureException(
                     "Error when checking uniqueness or registration number for car " + car,
                     ex);
         }
     }
+
+    /**
+     * Normalizes registration number into key used for lookups. Key is upper
+     * case without any whitespace.
+     *
+     * @param registrationNumber registration number
+     * @return normalized key
+     */
+    public static String registrationKey(String registrationNumber) {
+        StringBuilder sb = new StringBuilder(registrationNumber.length());
+        for (int i = 0; i < registrationNumber.length(); i++) {
+            char c = registrationNumber.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().toUpperCase(Locale.ROOT);
+    }
 }
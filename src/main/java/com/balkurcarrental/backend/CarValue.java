@@ -0,0 +1,139 @@
+package com.balkurcarrental.backend;
+
+import java.util.Objects;
+
+/**
+ * Immutable value counterpart of {@link Car}. Unlike the entity it is equal
+ * to other value only when all attributes are equal, hash code is computed
+ * once when it is built. It can be shared between threads and used as key of
+ * maps and caches without defensive copies.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public final class CarValue {
+
+    private final Long id;
+    private final String brand;
+    private final String registrationNumber;
+    private final int hash;
+
+    private CarValue(Builder builder) {
+        this.id = builder.id;
+        this.brand = builder.brand;
+        this.registrationNumber = builder.registrationNumber;
+        this.hash = Objects.hash(id, brand, registrationNumber);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates value with attributes of given car.
+     *
+     * @param car car to copy, may be null
+     * @return value or null when car is null
+     */
+    public static CarValue of(Car car) {
+        if (car == null) {
+            return null;
+        }
+        return builder().id(car.getId()).brand(car.getBrand())
+                .registrationNumber(car.getRegistrationNumber()).build();
+    }
+
+    /**
+     * Creates new mutable car with attributes of this value.
+     *
+     * @return new car
+     */
+    public Car toCar() {
+        Car car = new Car();
+        car.setId(id);
+        car.setBrand(brand);
+        car.setRegistrationNumber(registrationNumber);
+        return car;
+    }
+
+    /**
+     * Creates builder with attributes of this value, for building changed
+     * copy.
+     *
+     * @return new builder
+     */
+    public Builder toBuilder() {
+        return builder().id(id).brand(brand).registrationNumber(
+                registrationNumber);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getRegistrationNumber() {
+        return registrationNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "CarValue{"
+                + "id=" + id
+                + ", brand=\'" + brand
+                + "\', registrationNumber=\'" + registrationNumber
+                + "\'}";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CarValue)) {
+            return false;
+        }
+        final CarValue other = (CarValue) obj;
+        return hash == other.hash
+                && Objects.equals(this.id, other.id)
+                && Objects.equals(this.brand, other.brand)
+                && Objects.equals(this.registrationNumber,
+                        other.registrationNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    public static final class Builder {
+
+        private Long id;
+        private String brand;
+        private String registrationNumber;
+
+        private Builder() {
+        }
+
+        public Builder id(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder brand(String brand) {
+            this.brand = brand;
+            return this;
+        }
+
+        public Builder registrationNumber(String registrationNumber) {
+            this.registrationNumber = registrationNumber;
+            return this;
+        }
+
+        public CarValue build() {
+            return new CarValue(this);
+        }
+    }
+}
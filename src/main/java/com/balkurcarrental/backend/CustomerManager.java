@@ -2,7 +2,9 @@ package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.InvalidEntityException;
 import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.LookupResult;
 import com.balkurcarrental.common.ServiceFailureException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -38,6 +40,34 @@ public interface CustomerManager {
      */
     Customer getCustomerById(Long id) throws EntityNotFoundException;
 
+    /**
+     * Returns customers with given ids. Ids are queried in chunks, so only few
+     * queries are needed for the whole collection.
+     *
+     * @param ids primary keys for requested customers
+     * @return found customers keyed by id and ids of customers which were not
+     * found
+     * @throws IllegalArgumentException when ids is null or contains null.
+     * @throws ServiceFailureException when db operation fails.
+     */
+    LookupResult<Customer> getCustomersByIds(Collection<Long> ids);
+
+    /**
+     * Returns customer with given phone number. Only digits of phone number are
+     * compared, so "0905 123 456" finds customer with "0905/123456". When more
+     * customers share the phone number, the one created first is returned.
+     * Phone number without digits never matches any customer.
+     *
+     * @param phoneNumber phone number of requested customer
+     * @return customer with given phone number
+     * @throws IllegalArgumentException when given phone number is null.
+     * @throws com.balkurcarrental.common.EntityNotFoundException
+     * when entity is not found in the database
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Customer getCustomerByPhoneNumber(String phoneNumber) throws
+            EntityNotFoundException;
+
     /**
      * Updates customer in database.
      *
@@ -1,12 +1,20 @@
 package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
 import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.EventPublisher;
 import com.balkurcarrental.common.InvalidEntityException;
+import com.balkurcarrental.common.LookupResult;
 import com.balkurcarrental.common.ServiceFailureException;
+import com.balkurcarrental.common.Tracer;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -22,11 +30,50 @@ public class CustomerManagerImpl implements CustomerManager {
             CarManagerImpl.class.getName());
 
     private DataSource dataSource;
+    private final EventPublisher<Customer> events = new EventPublisher<>(
+            "customer");
+    private CustomerSearchIndex searchIndex;
+    private Tracer tracer = Tracer.DISABLED;
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets tracer recording phases of reading by id. It should be shared
+     * with managers calling this one, so their spans nest.
+     *
+     * @param tracer tracer, null to disable tracing
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer == null ? Tracer.DISABLED : tracer;
+    }
+
+    /**
+     * Returns publisher of committed changes of customers.
+     *
+     * @return event publisher
+     */
+    public EventPublisher<Customer> getEvents() {
+        return events;
+    }
+
+    /**
+     * Sets search index which is updated after every successful write. Index
+     * is registered as synchronous listener of customer events.
+     *
+     * @param searchIndex index to keep in sync, null to disable
+     */
+    public synchronized void setSearchIndex(CustomerSearchIndex searchIndex) {
+        if (this.searchIndex != null) {
+            events.removeListener(this.searchIndex);
+        }
+        this.searchIndex = searchIndex;
+        if (searchIndex != null) {
+            events.addListener(searchIndex);
+        }
+    }
+
     private void checkDataSource() {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource is not set");
@@ -49,20 +96,27 @@ public class CustomerManagerImpl implements CustomerManager {
             connection = dataSource.getConnection();
             connection.setAutoCommit(false);
             st = connection.prepareStatement(
-                    "INSERT INTO customer (name, surname, phone_number) VALUES (?,?,?)",
+                    "INSERT INTO customer (name, surname, phone_number, phone_key) VALUES (?,?,?,?)",
                     Statement.RETURN_GENERATED_KEYS
             );            
 
             st.setString(1, customer.getName());
             st.setString(2, customer.getSurname());
             st.setString(3, customer.getPhoneNumber());
+            st.setString(4, phoneKey(customer.getPhoneNumber()));
 
             int addedRows = st.executeUpdate();
             DBUtils.checkUpdatesCount(addedRows, customer, DBUtils.Operation.INSERT);
 
-            Long id = DBUtils.getId(st.getGeneratedKeys());
+            Long id;
+            try (ResultSet keys = st.getGeneratedKeys()) {
+                id = DBUtils.getId(keys);
+            }
             customer.setId(id);
             connection.commit();
+            if (events.hasListeners()) {
+                events.publish(EntityEvent.created(id, copy(customer)));
+            }
         } catch (SQLException ex) {
             String msg = "Error when inserting customer " + customer + " into db";
             logger.log(Level.SEVERE, msg, ex);
@@ -86,19 +140,22 @@ public class CustomerManagerImpl implements CustomerManager {
                     "Trying to retrive customer with null id");
         }
         
+        int span = tracer.begin("CustomerManager.getCustomerById");
         Connection connection = null;
         PreparedStatement st = null;
         
         try {
+            int phase = tracer.begin("getConnection");
             connection = dataSource.getConnection();
+            phase = tracer.next(phase, "prepare");
             st = connection.prepareStatement(
                     "SELECT id, name, surname, phone_number FROM customer WHERE id = ?"
             );
 
             st.setLong(1, id);
-            ResultSet rs = st.executeQuery();
-
+            phase = tracer.next(phase, "execute");
             Customer customer = executeQueryForSingleCustomer(st);
+            tracer.end(phase);
             if (customer != null) {
                 return customer;
             } else {
@@ -109,6 +166,87 @@ public class CustomerManagerImpl implements CustomerManager {
             String msg = "Error when retrieving customer with id " + id;
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+            tracer.end(span);
+        }
+    }
+
+    @Override
+    public LookupResult<Customer> getCustomersByIds(Collection<Long> ids) {
+        checkDataSource();
+        Set<Long> distinctIds = DBUtils.distinctIds(ids);
+
+        Map<Long, Customer> found = new HashMap<>();
+        if (distinctIds.isEmpty()) {
+            return new LookupResult<>(distinctIds, found);
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT id, name, surname, phone_number FROM customer WHERE "
+                    + DBUtils.inCondition("id")
+            );
+
+            for (List<Long> chunk : DBUtils.chunks(distinctIds)) {
+                DBUtils.setInParameters(st, 1, chunk);
+                for (Customer customer : executeQueryForMultipleCustomers(st)) {
+                    found.put(customer.getId(), customer);
+                }
+            }
+            return new LookupResult<>(distinctIds, found);
+        } catch (SQLException ex) {
+            String msg = "Error when retrieving customers with ids " + distinctIds;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public Customer getCustomerByPhoneNumber(String phoneNumber) throws
+            EntityNotFoundException {
+        checkDataSource();
+
+        if (phoneNumber == null) {
+            throw new IllegalArgumentException(
+                    "Trying to retrive customer with null phone number");
+        }
+
+        String key = phoneKey(phoneNumber);
+        if (key.isEmpty()) {
+            // stored phone numbers always contain digits
+            throw new EntityNotFoundException("Customer with phone number "
+                    + phoneNumber + " was not found in database.");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT id, name, surname, phone_number FROM customer WHERE phone_key = ? ORDER BY id FETCH FIRST 1 ROWS ONLY"
+            );
+            st.setString(1, key);
+
+            Customer customer = executeQueryForSingleCustomer(st);
+            if (customer != null) {
+                return customer;
+            } else {
+                throw new EntityNotFoundException("Customer with phone number "
+                        + phoneNumber + " was not found in database.");
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when retrieving customer with phone number "
+                    + phoneNumber;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
         } finally {
             DBUtils.closeQuietly(connection, st);
         }
@@ -131,17 +269,24 @@ public class CustomerManagerImpl implements CustomerManager {
             connection = dataSource.getConnection();
             connection.setAutoCommit(false);
             st = connection.prepareStatement(
-                    "UPDATE customer SET name = ?, surname = ?, phone_number = ? WHERE id = ?"
+                    "UPDATE customer SET name = ?, surname = ?, phone_number = ?, phone_key = ? WHERE id = ?"
             );            
 
             st.setString(1, customer.getName());
             st.setString(2, customer.getSurname());
             st.setString(3, customer.getPhoneNumber());
-            st.setLong(4, customer.getId());
+            st.setString(4, phoneKey(customer.getPhoneNumber()));
+            st.setLong(5, customer.getId());
+            Customer before = events.hasListeners() ? customerById(connection,
+                    customer.getId()) : null;
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, customer, DBUtils.Operation.UPDATE);
             connection.commit();
+            if (before != null) {
+                events.publish(EntityEvent.updated(customer.getId(), before,
+                        copy(customer)));
+            }
         } catch (SQLException ex) {
             String msg = "Error when updating customer " + customer + " in db";
             logger.log(Level.SEVERE, msg, ex);
@@ -168,19 +313,27 @@ public class CustomerManagerImpl implements CustomerManager {
         
         try {
             connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
             st = connection.prepareStatement(
                     "DELETE FROM customer WHERE id = ?"
             );
 
             st.setLong(1, customer.getId());
+            Customer before = events.hasListeners() ? customerById(connection,
+                    customer.getId()) : null;
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, customer, DBUtils.Operation.DELETE);
+            connection.commit();
+            if (before != null) {
+                events.publish(EntityEvent.deleted(customer.getId(), before));
+            }
         } catch (SQLException ex) {
             String msg = "Error when deleting customer " + customer + " from db";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
+            DBUtils.doRollbackQuietly(connection);
             DBUtils.closeQuietly(connection, st);
         }
     }
@@ -263,6 +416,29 @@ public class CustomerManagerImpl implements CustomerManager {
         }
     }    
     
+    /**
+     * Reads customer in the transaction of given connection, used for state of
+     * customer before change.
+     */
+    private static Customer customerById(Connection connection, Long id)
+            throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT id, name, surname, phone_number FROM customer WHERE id = ?"
+        )) {
+            st.setLong(1, id);
+            return executeQueryForSingleCustomer(st);
+        }
+    }
+
+    private static Customer copy(Customer customer) {
+        Customer result = new Customer();
+        result.setId(customer.getId());
+        result.setName(customer.getName());
+        result.setSurname(customer.getSurname());
+        result.setPhoneNumber(customer.getPhoneNumber());
+        return result;
+    }
+
     private static Customer resultSetToCustomer(ResultSet rs) throws SQLException {
         Customer customer = new Customer();
 
@@ -303,34 +479,60 @@ public class CustomerManagerImpl implements CustomerManager {
         if (customer.getPhoneNumber().trim().equals("")) {
             throw new InvalidEntityException("Phone number of customer is empty");
         }        
+
+        if (phoneKey(customer.getPhoneNumber()).isEmpty()) {
+            throw new InvalidEntityException(
+                    "Phone number of customer contains no digits");
+        }
         
     }
     
     static Customer executeQueryForSingleCustomer(PreparedStatement st) throws
             SQLException, EntityNotFoundException {
-        ResultSet rs = st.executeQuery();
-        if (rs.next()) {
-            Customer customer = resultSetToCustomer(rs);
-
+        try (ResultSet rs = st.executeQuery()) {
             if (rs.next()) {
-                throw new ServiceFailureException(
-                        "Internal error: More customers with the same id found");
-            }
+                Customer customer = resultSetToCustomer(rs);
+
+                if (rs.next()) {
+                    throw new ServiceFailureException(
+                            "Internal error: More customers with the same id found");
+                }
 
-            return customer;
-        } else {
-            return null;
+                return customer;
+            } else {
+                return null;
+            }
         }
     }
     
      static List<Customer> executeQueryForMultipleCustomers(PreparedStatement st) throws
             SQLException {
-        ResultSet rs = st.executeQuery();
-        List<Customer> result = new ArrayList<>();
-        while (rs.next()) {
-            result.add(resultSetToCustomer(rs));
+        try (ResultSet rs = st.executeQuery()) {
+            List<Customer> result = new ArrayList<>();
+            while (rs.next()) {
+                result.add(resultSetToCustomer(rs));
+            }
+            return result;
         }
-        return result;
+    }
+
+    /**
+     * Normalizes phone number into key used for lookups. Key contains only
+     * digits of the phone number, it is empty for phone number without
+     * digits, which is not valid phone number of customer.
+     *
+     * @param phoneNumber phone number
+     * @return normalized key
+     */
+    public static String phoneKey(String phoneNumber) {
+        StringBuilder sb = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
     }
 
 }
@@ -0,0 +1,530 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.EntityEvent;
+import com.balkurcarrental.common.EntityListener;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index over name, surname and phone number of customers.
+ * Supports prefix, substring and fuzzy matching. Names are normalized, so
+ * search is case and accent insensitive ("kurcik" finds "Kurčík").
+ *
+ * Every word is indexed as trigrams of "^word$", so query "kurc" is matched
+ * using trigrams of "^kurc" and customers whose word starts with the query are
+ * ranked higher than customers where it is only contained. Three letter query
+ * is matched as a single trigram anywhere in the word, shorter queries match
+ * only prefixes. For longer queries customers matching at least
+ * {@link #MIN_MATCH_RATIO} of query trigrams are considered as fuzzy matches.
+ *
+ * Index is thread safe. It is kept in sync with database when it is set to
+ * {@link CustomerManagerImpl#setSearchIndex(CustomerSearchIndex)} or
+ * registered as listener of customer events.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class CustomerSearchIndex implements EntityListener<Customer> {
+
+    /**
+     * Minimal ratio of query trigrams which must be found in customer.
+     */
+    public static final double MIN_MATCH_RATIO = 0.5;
+
+    /**
+     * Queries with at most this number of trigrams have to match exactly.
+     */
+    private static final int MIN_FUZZY_GRAMS = 3;
+
+    /**
+     * Frequent postings up to this multiple of candidate count are scanned
+     * sequentially instead of using binary search for every candidate.
+     */
+    private static final int SCAN_FACTOR = 8;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile(
+            "[^\\p{L}\\p{N}]+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, IntList> postings = new HashMap<>();
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private final IntList freeSlots = new IntList();
+    private Customer[] customers = new Customer[64];
+    private String[][] words = new String[64][];
+    private String[][] grams = new String[64][];
+    private int slotCount;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Replaces content of the index with given customers.
+     *
+     * @param all customers to be indexed
+     * @throws IllegalArgumentException when all is null
+     */
+    public void rebuild(Collection<Customer> all) {
+        if (all == null) {
+            throw new IllegalArgumentException("customers is null");
+        }
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            slotById.clear();
+            freeSlots.clear();
+            int capacity = Math.max(64, all.size());
+            customers = new Customer[capacity];
+            words = new String[capacity][];
+            grams = new String[capacity][];
+            slotCount = 0;
+            for (Customer customer : all) {
+                putLocked(customer);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads all customers from given manager into the index.
+     *
+     * @param customerManager manager to load customers from
+     */
+    public void rebuild(CustomerManager customerManager) {
+        rebuild(customerManager.findAllCustomers());
+    }
+
+    /**
+     * Adds customer into the index or replaces indexed customer with same id.
+     *
+     * @param customer customer to index
+     * @throws IllegalArgumentException when customer or its id is null
+     */
+    public void put(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            putLocked(customer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes customer with given id from the index.
+     *
+     * @param id id of customer
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onEvents(List<EntityEvent<Customer>> events) {
+        lock.writeLock().lock();
+        try {
+            for (EntityEvent<Customer> event : events) {
+                if (event.getType() == EntityEvent.Type.DELETED) {
+                    removeLocked(event.getId());
+                } else {
+                    putLocked(event.getAfter());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns number of indexed customers.
+     *
+     * @return number of customers
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches customers matching given query. Query may consist of more
+     * words, each of them is matched against name, surname and phone number.
+     *
+     * @param query text to search for
+     * @param limit maximal number of returned customers
+     * @return best matching customers ordered by relevance
+     * @throws IllegalArgumentException when query is null or limit is not
+     * positive
+     */
+    public List<Customer> search(String query, int limit) {
+        if (query == null) {
+            throw new IllegalArgumentException("query is null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit is not positive");
+        }
+        String[] terms = words(query);
+        if (terms.length == 0) {
+            return Collections.emptyList();
+        }
+        Set<String> queryGrams = new LinkedHashSet<>();
+        for (String term : terms) {
+            if (term.length() == 3) {
+                // grams of "^abc" would make the query prefix only, because
+                // queries with few grams have to match all of them
+                queryGrams.add(term);
+            } else {
+                addGrams(queryGrams, "^" + term);
+            }
+        }
+        int minMatch = minMatch(queryGrams.size());
+
+        lock.readLock().lock();
+        try {
+            Scratch s = scratch.get();
+            s.ensureCapacity(slotCount);
+            try {
+                List<IntList> lists = new ArrayList<>(queryGrams.size());
+                for (String gram : queryGrams) {
+                    IntList posting = postings.get(gram);
+                    lists.add(posting == null ? new IntList() : posting);
+                }
+                lists.sort(Comparator.comparingInt(list -> list.size));
+
+                // candidate has to be in at least one of the rarest postings,
+                // remaining frequent postings are only used for verification
+                int generating = lists.size() - minMatch + 1;
+                for (int i = 0; i < generating; i++) {
+                    IntList posting = lists.get(i);
+                    for (int j = 0; j < posting.size; j++) {
+                        int slot = posting.values[j];
+                        if (s.counts[slot]++ == 0) {
+                            s.touched.add(slot);
+                        }
+                    }
+                }
+                for (int i = generating; i < lists.size(); i++) {
+                    IntList posting = lists.get(i);
+                    if (posting.size <= s.touched.size * SCAN_FACTOR) {
+                        for (int j = 0; j < posting.size; j++) {
+                            int slot = posting.values[j];
+                            if (s.counts[slot] > 0) {
+                                s.counts[slot]++;
+                            }
+                        }
+                    } else {
+                        for (int j = 0; j < s.touched.size; j++) {
+                            int slot = s.touched.values[j];
+                            if (posting.contains(slot)) {
+                                s.counts[slot]++;
+                            }
+                        }
+                    }
+                }
+
+                PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1,
+                        Hit.WORST_FIRST);
+                for (int i = 0; i < s.touched.size; i++) {
+                    int slot = s.touched.values[i];
+                    int count = s.counts[slot];
+                    if (count < minMatch) {
+                        continue;
+                    }
+                    if (best.size() == limit && maxScore(count, queryGrams.
+                            size(), terms) < best.peek().score) {
+                        continue;
+                    }
+                    double score = score(count, queryGrams.size(), terms,
+                            words[slot]);
+                    if (best.size() == limit) {
+                        // reject candidate without allocation when it cannot
+                        // get into the top results
+                        Hit worst = best.peek();
+                        if (score < worst.score || (score == worst.score
+                                && customers[slot].getId() > worst.customer.
+                                getId())) {
+                            continue;
+                        }
+                        best.poll();
+                    }
+                    best.add(new Hit(customers[slot], score));
+                }
+                return toResult(best);
+            } finally {
+                s.reset();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putLocked(Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("customer is null");
+        }
+        if (customer.getId() == null) {
+            throw new IllegalArgumentException("customer id is null");
+        }
+        removeLocked(customer.getId());
+
+        int slot = freeSlots.size > 0 ? freeSlots.removeLast() : slotCount++;
+        ensureCapacity(slotCount);
+        String[] customerWords = customerWords(customer);
+        Set<String> customerGrams = new LinkedHashSet<>();
+        for (String word : customerWords) {
+            // single letter prefix gram makes one letter queries usable
+            customerGrams.add("^" + word.charAt(0));
+            addGrams(customerGrams, "^" + word + "$");
+        }
+        for (String gram : customerGrams) {
+            IntList posting = postings.get(gram);
+            if (posting == null) {
+                posting = new IntList();
+                postings.put(gram, posting);
+            }
+            posting.addSorted(slot);
+        }
+        customers[slot] = copy(customer);
+        words[slot] = customerWords;
+        grams[slot] = customerGrams.toArray(new String[customerGrams.size()]);
+        slotById.put(customer.getId(), slot);
+    }
+
+    private void removeLocked(Long id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        for (String gram : grams[slot]) {
+            IntList posting = postings.get(gram);
+            posting.removeSorted(slot);
+            if (posting.size == 0) {
+                postings.remove(gram);
+            }
+        }
+        customers[slot] = null;
+        words[slot] = null;
+        grams[slot] = null;
+        freeSlots.add(slot);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > customers.length) {
+            int newCapacity = Math.max(capacity, customers.length * 2);
+            customers = Arrays.copyOf(customers, newCapacity);
+            words = Arrays.copyOf(words, newCapacity);
+            grams = Arrays.copyOf(grams, newCapacity);
+        }
+    }
+
+    private static int minMatch(int queryGrams) {
+        if (queryGrams < MIN_FUZZY_GRAMS) {
+            return queryGrams;
+        }
+        return Math.max(1, (int) Math.ceil(queryGrams * MIN_MATCH_RATIO));
+    }
+
+    private static double maxScore(int matchedGrams, int queryGrams,
+            String[] terms) {
+        return (double) matchedGrams / queryGrams + terms.length;
+    }
+
+    private static double score(int matchedGrams, int queryGrams,
+            String[] terms, String[] customerWords) {
+        double score = (double) matchedGrams / queryGrams;
+        for (String term : terms) {
+            double bonus = 0;
+            for (String word : customerWords) {
+                if (word.equals(term)) {
+                    bonus = 1;
+                    break;
+                }
+                if (word.startsWith(term)) {
+                    bonus = 0.5;
+                }
+            }
+            score += bonus;
+        }
+        return score;
+    }
+
+    private static List<Customer> toResult(PriorityQueue<Hit> best) {
+        List<Customer> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(copy(best.poll().customer));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static String[] customerWords(Customer customer) {
+        List<String> result = new ArrayList<>();
+        result.addAll(Arrays.asList(words(customer.getName())));
+        result.addAll(Arrays.asList(words(customer.getSurname())));
+        String phone = customer.getPhoneNumber() == null ? ""
+                : CustomerManagerImpl.phoneKey(customer.getPhoneNumber());
+        if (!phone.isEmpty()) {
+            result.add(phone);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static void addGrams(Set<String> target, String padded) {
+        if (padded.length() < 3) {
+            target.add(padded);
+            return;
+        }
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            target.add(padded.substring(i, i + 3));
+        }
+    }
+
+    private static String[] words(String text) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return new String[0];
+        }
+        return normalized.split(" ");
+    }
+
+    /**
+     * Normalizes text for searching. Result is lower case without diacritics,
+     * words are separated by single space.
+     *
+     * @param text text to normalize
+     * @return normalized text, empty string for null
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = DIACRITICS.matcher(decomposed).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT))
+                .replaceAll(" ").trim();
+    }
+
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer();
+        copy.setId(customer.getId());
+        copy.setName(customer.getName());
+        copy.setSurname(customer.getSurname());
+        copy.setPhoneNumber(customer.getPhoneNumber());
+        return copy;
+    }
+
+    private static class Hit {
+
+        static final Comparator<Hit> WORST_FIRST = (a, b) -> {
+            int cmp = Double.compare(a.score, b.score);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Long.compare(b.customer.getId(), a.customer.getId());
+        };
+
+        final Customer customer;
+        final double score;
+
+        Hit(Customer customer, double score) {
+            this.customer = customer;
+            this.score = score;
+        }
+    }
+
+    private static class Scratch {
+
+        int[] counts = new int[64];
+        final IntList touched = new IntList();
+
+        void ensureCapacity(int capacity) {
+            if (counts.length < capacity) {
+                counts = new int[Math.max(capacity, counts.length * 2)];
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < touched.size; i++) {
+                counts[touched.values[i]] = 0;
+            }
+            touched.clear();
+        }
+    }
+
+    /**
+     * Growable list of ints. Postings are kept sorted, so membership can be
+     * checked using binary search.
+     */
+    private static class IntList {
+
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addSorted(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+        }
+
+        void removeSorted(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index
+                        - 1);
+                size--;
+            }
+        }
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
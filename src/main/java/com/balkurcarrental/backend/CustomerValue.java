@@ -0,0 +1,153 @@
+package com.balkurcarrental.backend;
+
+import java.util.Objects;
+
+/**
+ * Immutable value counterpart of {@link Customer}. It is equal to other
+ * value only when all attributes are equal, hash code is computed once when
+ * it is built.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public final class CustomerValue {
+
+    private final Long id;
+    private final String name;
+    private final String surname;
+    private final String phoneNumber;
+    private final int hash;
+
+    private CustomerValue(Builder builder) {
+        this.id = builder.id;
+        this.name = builder.name;
+        this.surname = builder.surname;
+        this.phoneNumber = builder.phoneNumber;
+        this.hash = Objects.hash(id, name, surname, phoneNumber);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates value with attributes of given customer.
+     *
+     * @param customer customer to copy, may be null
+     * @return value or null when customer is null
+     */
+    public static CustomerValue of(Customer customer) {
+        if (customer == null) {
+            return null;
+        }
+        return builder().id(customer.getId()).name(customer.getName())
+                .surname(customer.getSurname()).phoneNumber(customer.
+                getPhoneNumber()).build();
+    }
+
+    /**
+     * Creates new mutable customer with attributes of this value.
+     *
+     * @return new customer
+     */
+    public Customer toCustomer() {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setName(name);
+        customer.setSurname(surname);
+        customer.setPhoneNumber(phoneNumber);
+        return customer;
+    }
+
+    /**
+     * Creates builder with attributes of this value, for building changed
+     * copy.
+     *
+     * @return new builder
+     */
+    public Builder toBuilder() {
+        return builder().id(id).name(name).surname(surname).phoneNumber(
+                phoneNumber);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSurname() {
+        return surname;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerValue{"
+                + "id=" + id
+                + ", name=\'" + name
+                + "\', surname=\'" + surname
+                + "\', phoneNumber=\'" + phoneNumber
+                + "\'}";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CustomerValue)) {
+            return false;
+        }
+        final CustomerValue other = (CustomerValue) obj;
+        return hash == other.hash
+                && Objects.equals(this.id, other.id)
+                && Objects.equals(this.name, other.name)
+                && Objects.equals(this.surname, other.surname)
+                && Objects.equals(this.phoneNumber, other.phoneNumber);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    public static final class Builder {
+
+        private Long id;
+        private String name;
+        private String surname;
+        private String phoneNumber;
+
+        private Builder() {
+        }
+
+        public Builder id(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder surname(String surname) {
+            this.surname = surname;
+            return this;
+        }
+
+        public Builder phoneNumber(String phoneNumber) {
+            this.phoneNumber = phoneNumber;
+            return this;
+        }
+
+        public CustomerValue build() {
+            return new CustomerValue(this);
+        }
+    }
+}
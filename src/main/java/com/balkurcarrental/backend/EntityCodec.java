@@ -0,0 +1,290 @@
+package com.balkurcarrental.backend;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Compact binary format of cars, customers and rents for caches, snapshot
+ * files and queues. Every record starts with header of two bytes, format
+ * version and type of entity, followed by attributes:
+ * <ul>
+ * <li>ids and numbers as zigzag encoded LEB128 varints, so small values
+ * take one or two bytes</li>
+ * <li>dates as epoch days</li>
+ * <li>strings as varint length followed by UTF-8 bytes</li>
+ * </ul>
+ * Nullable attributes are written as value plus one, zero stands for null.
+ * Rent contains its car and customer without headers.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public final class EntityCodec {
+
+    public static final byte VERSION = 1;
+
+    public static final byte CAR = 1;
+    public static final byte CUSTOMER = 2;
+    public static final byte RENT = 3;
+
+    private EntityCodec() {
+    }
+
+    /**
+     * Writes car at the position of buffer.
+     *
+     * @param buffer buffer to write to
+     * @param car car to write
+     * @throws IllegalArgumentException when car is null
+     * @throws BufferOverflowException when buffer is too small
+     */
+    public static void writeCar(ByteBuffer buffer, Car car) {
+        if (car == null) {
+            throw new IllegalArgumentException("car is null");
+        }
+        buffer.put(VERSION).put(CAR);
+        writeCarBody(buffer, car);
+    }
+
+    /**
+     * Writes customer at the position of buffer.
+     *
+     * @param buffer buffer to write to
+     * @param customer customer to write
+     * @throws IllegalArgumentException when customer is null
+     * @throws BufferOverflowException when buffer is too small
+     */
+    public static void writeCustomer(ByteBuffer buffer, Customer customer) {
+        if (customer == null) {
+            throw new IllegalArgumentException("customer is null");
+        }
+        buffer.put(VERSION).put(CUSTOMER);
+        writeCustomerBody(buffer, customer);
+    }
+
+    /**
+     * Writes rent with its car and customer at the position of buffer.
+     *
+     * @param buffer buffer to write to
+     * @param rent rent to write
+     * @throws IllegalArgumentException when rent is null
+     * @throws BufferOverflowException when buffer is too small
+     */
+    public static void writeRent(ByteBuffer buffer, Rent rent) {
+        if (rent == null) {
+            throw new IllegalArgumentException("rent is null");
+        }
+        buffer.put(VERSION).put(RENT);
+        writeNullableLong(buffer, rent.getId());
+        buffer.put((byte) ((rent.getCar() != null ? 1 : 0)
+                | (rent.getCustomer() != null ? 2 : 0)));
+        if (rent.getCar() != null) {
+            writeCarBody(buffer, rent.getCar());
+        }
+        if (rent.getCustomer() != null) {
+            writeCustomerBody(buffer, rent.getCustomer());
+        }
+        writeVarLong(buffer, zigZag(rent.getPricePerDay()));
+        writeDate(buffer, rent.getBeginningDate());
+        writeDate(buffer, rent.getExpectedReturnDate());
+        writeDate(buffer, rent.getRealReturnDate());
+    }
+
+    /**
+     * Reads car from the position of buffer.
+     *
+     * @param buffer buffer to read from
+     * @return read car
+     * @throws IllegalArgumentException when record is not car or has
+     * unsupported version
+     * @throws BufferUnderflowException when record is truncated
+     */
+    public static Car readCar(ByteBuffer buffer) {
+        readHeader(buffer, CAR);
+        return readCarBody(buffer);
+    }
+
+    /**
+     * Reads customer from the position of buffer.
+     *
+     * @param buffer buffer to read from
+     * @return read customer
+     * @throws IllegalArgumentException when record is not customer or has
+     * unsupported version
+     * @throws BufferUnderflowException when record is truncated
+     */
+    public static Customer readCustomer(ByteBuffer buffer) {
+        readHeader(buffer, CUSTOMER);
+        return readCustomerBody(buffer);
+    }
+
+    /**
+     * Reads rent with its car and customer from the position of buffer.
+     *
+     * @param buffer buffer to read from
+     * @return read rent
+     * @throws IllegalArgumentException when record is not rent or has
+     * unsupported version
+     * @throws BufferUnderflowException when record is truncated
+     */
+    public static Rent readRent(ByteBuffer buffer) {
+        readHeader(buffer, RENT);
+        Rent rent = new Rent();
+        rent.setId(readNullableLong(buffer));
+        byte present = buffer.get();
+        if ((present & 1) != 0) {
+            rent.setCar(readCarBody(buffer));
+        }
+        if ((present & 2) != 0) {
+            rent.setCustomer(readCustomerBody(buffer));
+        }
+        rent.setPricePerDay((int) unZigZag(readVarLong(buffer)));
+        rent.setBeginningDate(readDate(buffer));
+        rent.setExpectedReturnDate(readDate(buffer));
+        rent.setRealReturnDate(readDate(buffer));
+        return rent;
+    }
+
+    /**
+     * Reads record of any type from the position of buffer.
+     *
+     * @param buffer buffer to read from
+     * @return read car, customer or rent
+     * @throws IllegalArgumentException when record has unknown type or
+     * unsupported version
+     * @throws BufferUnderflowException when record is truncated
+     */
+    public static Object read(ByteBuffer buffer) {
+        byte type = buffer.get(buffer.position() + 1);
+        switch (type) {
+            case CAR:
+                return readCar(buffer);
+            case CUSTOMER:
+                return readCustomer(buffer);
+            case RENT:
+                return readRent(buffer);
+            default:
+                throw new IllegalArgumentException("Unknown record type "
+                        + type);
+        }
+    }
+
+    private static void readHeader(ByteBuffer buffer, byte type) {
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version "
+                    + version);
+        }
+        byte actual = buffer.get();
+        if (actual != type) {
+            throw new IllegalArgumentException("Expected record type " + type
+                    + " but found " + actual);
+        }
+    }
+
+    private static void writeCarBody(ByteBuffer buffer, Car car) {
+        writeNullableLong(buffer, car.getId());
+        writeString(buffer, car.getBrand());
+        writeString(buffer, car.getRegistrationNumber());
+    }
+
+    private static Car readCarBody(ByteBuffer buffer) {
+        Car car = new Car();
+        car.setId(readNullableLong(buffer));
+        car.setBrand(readString(buffer));
+        car.setRegistrationNumber(readString(buffer));
+        return car;
+    }
+
+    private static void writeCustomerBody(ByteBuffer buffer,
+            Customer customer) {
+        writeNullableLong(buffer, customer.getId());
+        writeString(buffer, customer.getName());
+        writeString(buffer, customer.getSurname());
+        writeString(buffer, customer.getPhoneNumber());
+    }
+
+    private static Customer readCustomerBody(ByteBuffer buffer) {
+        Customer customer = new Customer();
+        customer.setId(readNullableLong(buffer));
+        customer.setName(readString(buffer));
+        customer.setSurname(readString(buffer));
+        customer.setPhoneNumber(readString(buffer));
+        return customer;
+    }
+
+    private static void writeNullableLong(ByteBuffer buffer, Long value) {
+        if (value != null && value == Long.MIN_VALUE) {
+            // its zigzag code plus one would overflow to null
+            throw new IllegalArgumentException("Long.MIN_VALUE is not supported");
+        }
+        writeVarLong(buffer, value == null ? 0 : zigZag(value) + 1);
+    }
+
+    private static Long readNullableLong(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        return value == 0 ? null : unZigZag(value - 1);
+    }
+
+    private static void writeDate(ByteBuffer buffer, LocalDate date) {
+        writeNullableLong(buffer, date == null ? null : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(ByteBuffer buffer) {
+        Long epochDay = readNullableLong(buffer);
+        return epochDay == null ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            writeVarLong(buffer, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(buffer, bytes.length + 1L);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        long length = readVarLong(buffer);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,89 @@
+package com.balkurcarrental.backend;
+
+import java.util.Objects;
+
+/**
+ * Highest ids and row counts of car, customer and rent tables. Comparing
+ * high-water marks tells whether rows were inserted or deleted since the mark
+ * was taken. Updates of existing rows do not change it.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class HighWaterMark {
+
+    private final long maxCarId;
+    private final long maxCustomerId;
+    private final long maxRentId;
+    private final long cars;
+    private final long customers;
+    private final long rents;
+
+    public HighWaterMark(long maxCarId, long maxCustomerId, long maxRentId,
+            long cars, long customers, long rents) {
+        this.maxCarId = maxCarId;
+        this.maxCustomerId = maxCustomerId;
+        this.maxRentId = maxRentId;
+        this.cars = cars;
+        this.customers = customers;
+        this.rents = rents;
+    }
+
+    public long getMaxCarId() {
+        return maxCarId;
+    }
+
+    public long getMaxCustomerId() {
+        return maxCustomerId;
+    }
+
+    public long getMaxRentId() {
+        return maxRentId;
+    }
+
+    public long getCars() {
+        return cars;
+    }
+
+    public long getCustomers() {
+        return customers;
+    }
+
+    public long getRents() {
+        return rents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxCarId, maxCustomerId, maxRentId, cars,
+                customers, rents);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final HighWaterMark other = (HighWaterMark) obj;
+        return maxCarId == other.maxCarId
+                && maxCustomerId == other.maxCustomerId
+                && maxRentId == other.maxRentId
+                && cars == other.cars
+                && customers == other.customers
+                && rents == other.rents;
+    }
+
+    @Override
+    public String toString() {
+        return "HighWaterMark{"
+                + "maxCarId=" + maxCarId
+                + ", maxCustomerId=" + maxCustomerId
+                + ", maxRentId=" + maxRentId
+                + ", cars=" + cars
+                + ", customers=" + customers
+                + ", rents=" + rents
+                + "}";
+    }
+}
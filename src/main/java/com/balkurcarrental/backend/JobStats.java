@@ -0,0 +1,113 @@
+package com.balkurcarrental.backend;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of statistics of one job run by {@link RentJobScheduler}.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class JobStats {
+
+    private final String name;
+    private final long runs;
+    private final long skippedRuns;
+    private final long failures;
+    private final long lastRows;
+    private final long totalRows;
+    private final Duration lastDuration;
+    private final Duration totalDuration;
+
+    public JobStats(String name, long runs, long skippedRuns, long failures,
+            long lastRows, long totalRows, Duration lastDuration,
+            Duration totalDuration) {
+        this.name = name;
+        this.runs = runs;
+        this.skippedRuns = skippedRuns;
+        this.failures = failures;
+        this.lastRows = lastRows;
+        this.totalRows = totalRows;
+        this.lastDuration = lastDuration;
+        this.totalDuration = totalDuration;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns number of finished runs including failed ones.
+     *
+     * @return number of runs
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * Returns number of runs which were skipped because previous run of the
+     * job was still in progress.
+     *
+     * @return number of skipped runs
+     */
+    public long getSkippedRuns() {
+        return skippedRuns;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getLastRows() {
+        return lastRows;
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public Duration getLastDuration() {
+        return lastDuration;
+    }
+
+    public Duration getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Returns throughput of the last run.
+     *
+     * @return processed rows per second
+     */
+    public double getLastRowsPerSecond() {
+        return rowsPerSecond(lastRows, lastDuration);
+    }
+
+    /**
+     * Returns throughput of all runs.
+     *
+     * @return processed rows per second
+     */
+    public double getRowsPerSecond() {
+        return rowsPerSecond(totalRows, totalDuration);
+    }
+
+    private static double rowsPerSecond(long rows, Duration duration) {
+        long nanos = duration.toNanos();
+        return nanos == 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "JobStats{"
+                + "name=\'" + name
+                + "\', runs=" + runs
+                + ", skippedRuns=" + skippedRuns
+                + ", failures=" + failures
+                + ", lastRows=" + lastRows
+                + ", totalRows=" + totalRows
+                + ", lastDuration=" + lastDuration
+                + ", totalDuration=" + totalDuration
+                + "}";
+    }
+}
@@ -0,0 +1,112 @@
+package com.balkurcarrental.backend;
+
+import java.time.YearMonth;
+
+/**
+ * Utilization, revenue and durations of rents of one month, computed by
+ * {@link ReportEngine}.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class MonthlyReport {
+
+    private final YearMonth month;
+    private final long carDays;
+    private final long rentedDays;
+    private final long revenue;
+    private final long begunRents;
+    private final long returnedRents;
+    private final long returnedRentDays;
+
+    public MonthlyReport(YearMonth month, long carDays, long rentedDays,
+            long revenue, long begunRents, long returnedRents,
+            long returnedRentDays) {
+        this.month = month;
+        this.carDays = carDays;
+        this.rentedDays = rentedDays;
+        this.revenue = revenue;
+        this.begunRents = begunRents;
+        this.returnedRents = returnedRents;
+        this.returnedRentDays = returnedRentDays;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    /**
+     * Returns number of cars multiplied by number of reported days of month.
+     *
+     * @return days cars could be rented
+     */
+    public long getCarDays() {
+        return carDays;
+    }
+
+    /**
+     * Returns number of days cars were rented in the month.
+     *
+     * @return rented days
+     */
+    public long getRentedDays() {
+        return rentedDays;
+    }
+
+    /**
+     * Returns price per day multiplied by days rented in the month.
+     *
+     * @return revenue
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    public long getBegunRents() {
+        return begunRents;
+    }
+
+    public long getReturnedRents() {
+        return returnedRents;
+    }
+
+    /**
+     * Returns sum of whole durations of rents returned in the month.
+     *
+     * @return days of returned rents
+     */
+    public long getReturnedRentDays() {
+        return returnedRentDays;
+    }
+
+    /**
+     * Returns ratio of rented days to days cars could be rented.
+     *
+     * @return utilization, 0 when there are no cars
+     */
+    public double getUtilization() {
+        return carDays == 0 ? 0 : (double) rentedDays / carDays;
+    }
+
+    /**
+     * Returns average duration in days of rents returned in the month.
+     *
+     * @return average duration, 0 when no rent was returned
+     */
+    public double getAverageDuration() {
+        return returnedRents == 0 ? 0 : (double) returnedRentDays
+                / returnedRents;
+    }
+
+    @Override
+    public String toString() {
+        return "MonthlyReport{"
+                + "month=" + month
+                + ", carDays=" + carDays
+                + ", rentedDays=" + rentedDays
+                + ", revenue=" + revenue
+                + ", begunRents=" + begunRents
+                + ", returnedRents=" + returnedRents
+                + ", returnedRentDays=" + returnedRentDays
+                + "}";
+    }
+}
@@ -0,0 +1,77 @@
+package com.balkurcarrental.backend;
+
+import java.time.LocalDate;
+
+/**
+ * Price quote for renting a car in given period.
+ *
+ * @author Šimon Baláž [433272], Lukáš Kurčík [445742]
+ */
+public class PriceQuote {
+
+    private final Long carId;
+    private final String brand;
+    private final LocalDate beginningDate;
+    private final LocalDate returnDate;
+    private final long totalPrice;
+
+    public PriceQuote(Long carId, String brand, LocalDate beginningDate,
+            LocalDate returnDate, long totalPrice) {
+        this.carId = carId;
+        this.brand = brand;
+        this.beginningDate = beginningDate;
+        this.returnDate = returnDate;
+        this.totalPrice = totalPrice;
+    }
+
+    public Long getCarId() {
+        return carId;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public LocalDate getBeginningDate() {
+        return beginningDate;
+    }
+
+    public LocalDate getReturnDate() {
+        return returnDate;
+    }
+
+    public long getTotalPrice() {
+        return totalPrice;
+    }
+
+    /**
+     * Returns number of rented days, both beginning and return date are
+     * counted.
+     *
+     * @return number of days
+     */
+    public long getDays() {
+        return returnDate.toEpochDay() - beginningDate.toEpochDay() + 1;
+    }
+
+    /**
+     * Returns average price per day rounded up, usable as
+     * {@link Rent#setPricePerDay(int)}.
+     *
+     * @return average price per day
+     */
+    public int getAveragePricePerDay() {
+        return (int) ((totalPrice + getDays() - 1) / getDays());
+    }
+
+    @Override
+    public String toString() {
+        return "PriceQuote{"
+                + "carId=" + carId
+                + ", brand=\'" + brand
+                + "\', beginningDate=" + beginningDate
+                + ", returnDate=" + returnDate
+                + ", totalPrice=" + totalPrice
+                + "}";
+    }
+}
@@ -0,0 +1,334 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.LookupResult;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes prices of rents from rate table. Rate is price per day for given
+ * brand, season and day of week. When there is no rate for exact combination,
+ * less specific rate is used in this order: brand and season, brand and day of
+ * week, brand only. When day is in more seasons, the first one from
+ * {@link #setSeasons(List)} is used.
+ *
+ * Prices of every day of a year are precomputed into prefix sums per brand,
+ * so price of any period is computed by subtracting two sums for every year
+ * spanned by the period. Precomputed prices of a brand are dropped when its
+ * rates change. Days without any rate are counted in the same way, so missing
+ * rate is reported only when it is really needed.
+ *
+ * Service is thread safe.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class PriceQuoteService {
+
+    private CarManager carManager;
+    private volatile List<Season> seasons = Collections.emptyList();
+    private final Map<String, Map<RateKey, Integer>> rates
+            = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, BrandPrices> prices
+            = new ConcurrentHashMap<>();
+
+    public void setCarManager(CarManager carManager) {
+        this.carManager = carManager;
+    }
+
+    private void checkCarManager() {
+        if (carManager == null) {
+            throw new IllegalStateException("CarManager is not set");
+        }
+    }
+
+    /**
+     * Sets seasons used for all brands. All precomputed prices are dropped.
+     *
+     * @param seasons seasons ordered by priority
+     * @throws IllegalArgumentException when seasons is null or contains null
+     */
+    public synchronized void setSeasons(List<Season> seasons) {
+        if (seasons == null || seasons.contains(null)) {
+            throw new IllegalArgumentException("seasons is null or contains null");
+        }
+        this.seasons = Collections.unmodifiableList(new ArrayList<>(seasons));
+        prices.clear();
+    }
+
+    /**
+     * Sets price per day of brand. Precomputed prices of the brand are
+     * dropped.
+     *
+     * @param brand brand of car
+     * @param season season or null for rate outside of seasons
+     * @param dayOfWeek day of week or null for all days
+     * @param pricePerDay price per day
+     * @throws IllegalArgumentException when brand is null or pricePerDay is
+     * not positive
+     */
+    public synchronized void setRate(String brand, Season season,
+            DayOfWeek dayOfWeek, int pricePerDay) {
+        if (brand == null) {
+            throw new IllegalArgumentException("brand is null");
+        }
+        if (pricePerDay <= 0) {
+            throw new IllegalArgumentException("price per day is <= 0");
+        }
+        Map<RateKey, Integer> brandRates = new HashMap<>(rates.getOrDefault(
+                brand, Collections.emptyMap()));
+        brandRates.put(new RateKey(season == null ? null : season.getName(),
+                dayOfWeek), pricePerDay);
+        rates.put(brand, Collections.unmodifiableMap(brandRates));
+        prices.remove(brand);
+    }
+
+    /**
+     * Removes all rates of brand.
+     *
+     * @param brand brand of car
+     * @throws IllegalArgumentException when brand is null
+     */
+    public synchronized void removeRates(String brand) {
+        if (brand == null) {
+            throw new IllegalArgumentException("brand is null");
+        }
+        rates.remove(brand);
+        prices.remove(brand);
+    }
+
+    /**
+     * Computes price of renting car of given brand in given period.
+     *
+     * @param brand brand of car
+     * @param beginningDate first day of rent
+     * @param returnDate last day of rent, inclusive
+     * @return total price
+     * @throws IllegalArgumentException when any argument is null or return
+     * date is before beginning date
+     * @throws EntityNotFoundException when there is no rate for some day
+     */
+    public long totalPrice(String brand, LocalDate beginningDate,
+            LocalDate returnDate) {
+        if (brand == null) {
+            throw new IllegalArgumentException("brand is null");
+        }
+        checkPeriod(beginningDate, returnDate);
+        BrandPrices brandPrices = prices.computeIfAbsent(brand,
+                b -> new BrandPrices(rates.get(b), seasons));
+
+        long total = 0;
+        for (int year = beginningDate.getYear(); year <= returnDate.getYear();
+                year++) {
+            YearPrices yearPrices = brandPrices.year(year);
+            int from = year == beginningDate.getYear()
+                    ? beginningDate.getDayOfYear() - 1 : 0;
+            int to = year == returnDate.getYear()
+                    ? returnDate.getDayOfYear() : yearPrices.prefix.length - 1;
+            if (yearPrices.missing[to] != yearPrices.missing[from]) {
+                int day = from;
+                while (yearPrices.missing[day + 1] == yearPrices.missing[from]) {
+                    day++;
+                }
+                throw new EntityNotFoundException("No rate for brand " + brand
+                        + " on " + LocalDate.ofYearDay(year, day + 1));
+            }
+            total += yearPrices.prefix[to] - yearPrices.prefix[from];
+        }
+        return total;
+    }
+
+    /**
+     * Creates quote for renting given car.
+     *
+     * @param car car to rent
+     * @param beginningDate first day of rent
+     * @param returnDate last day of rent, inclusive
+     * @return price quote
+     * @throws IllegalArgumentException when any argument is null or return
+     * date is before beginning date
+     * @throws EntityNotFoundException when there is no rate for some day
+     */
+    public PriceQuote quote(Car car, LocalDate beginningDate,
+            LocalDate returnDate) {
+        if (car == null) {
+            throw new IllegalArgumentException("car is null");
+        }
+        return new PriceQuote(car.getId(), car.getBrand(), beginningDate,
+                returnDate, totalPrice(car.getBrand(), beginningDate,
+                        returnDate));
+    }
+
+    /**
+     * Creates quote for renting car with given id.
+     *
+     * @param carId id of car to rent
+     * @param beginningDate first day of rent
+     * @param returnDate last day of rent, inclusive
+     * @return price quote
+     * @throws IllegalArgumentException when any argument is null or return
+     * date is before beginning date
+     * @throws EntityNotFoundException when car does not exist or there is no
+     * rate for some day
+     */
+    public PriceQuote quote(Long carId, LocalDate beginningDate,
+            LocalDate returnDate) {
+        checkCarManager();
+        checkPeriod(beginningDate, returnDate);
+        return quote(carManager.getCarById(carId), beginningDate, returnDate);
+    }
+
+    /**
+     * Creates quotes for renting cars with given ids. Cars are loaded using
+     * {@link CarManager#getCarsByIds(Collection)}, not existing cars are
+     * skipped.
+     *
+     * @param carIds ids of cars to rent
+     * @param beginningDate first day of rent
+     * @param returnDate last day of rent, inclusive
+     * @return price quotes keyed by car id
+     * @throws IllegalArgumentException when any argument is null or return
+     * date is before beginning date
+     * @throws EntityNotFoundException when there is no rate for some day
+     */
+    public Map<Long, PriceQuote> quotes(Collection<Long> carIds,
+            LocalDate beginningDate, LocalDate returnDate) {
+        checkCarManager();
+        checkPeriod(beginningDate, returnDate);
+        LookupResult<Car> cars = carManager.getCarsByIds(carIds);
+        Map<Long, PriceQuote> result = new LinkedHashMap<>();
+        for (Car car : cars.getFound().values()) {
+            result.put(car.getId(), quote(car, beginningDate, returnDate));
+        }
+        return result;
+    }
+
+    private static void checkPeriod(LocalDate beginningDate,
+            LocalDate returnDate) {
+        if (beginningDate == null) {
+            throw new IllegalArgumentException("beginning date is null");
+        }
+        if (returnDate == null) {
+            throw new IllegalArgumentException("return date is null");
+        }
+        if (returnDate.isBefore(beginningDate)) {
+            throw new IllegalArgumentException(
+                    "return date is before beginning date");
+        }
+    }
+
+    /**
+     * Precomputed prefix sums of prices of one brand.
+     */
+    private static class BrandPrices {
+
+        private final Map<RateKey, Integer> rates;
+        private final List<Season> seasons;
+        private final Map<Integer, YearPrices> years
+                = new ConcurrentHashMap<>();
+
+        BrandPrices(Map<RateKey, Integer> rates, List<Season> seasons) {
+            this.rates = rates == null ? Collections.emptyMap() : rates;
+            this.seasons = seasons;
+        }
+
+        YearPrices year(int year) {
+            YearPrices prices = years.get(year);
+            if (prices == null) {
+                prices = computeYear(year);
+                years.put(year, prices);
+            }
+            return prices;
+        }
+
+        private YearPrices computeYear(int year) {
+            int length = Year.of(year).length();
+            YearPrices prices = new YearPrices(length);
+            LocalDate date = LocalDate.ofYearDay(year, 1);
+            for (int i = 0; i < length; i++) {
+                Integer rate = rate(date);
+                prices.prefix[i + 1] = prices.prefix[i] + (rate == null ? 0
+                        : rate);
+                prices.missing[i + 1] = prices.missing[i] + (rate == null ? 1
+                        : 0);
+                date = date.plusDays(1);
+            }
+            return prices;
+        }
+
+        private Integer rate(LocalDate date) {
+            String season = null;
+            for (Season s : seasons) {
+                if (s.contains(date)) {
+                    season = s.getName();
+                    break;
+                }
+            }
+            DayOfWeek day = date.getDayOfWeek();
+            Integer rate = null;
+            if (season != null) {
+                rate = rates.get(new RateKey(season, day));
+                if (rate == null) {
+                    rate = rates.get(new RateKey(season, null));
+                }
+            }
+            if (rate == null) {
+                rate = rates.get(new RateKey(null, day));
+            }
+            if (rate == null) {
+                rate = rates.get(new RateKey(null, null));
+            }
+            return rate;
+        }
+    }
+
+    /**
+     * Prefix sums of prices and of days without rate in one year. Element i
+     * is the sum over first i days of the year.
+     */
+    private static class YearPrices {
+
+        private final long[] prefix;
+        private final int[] missing;
+
+        YearPrices(int days) {
+            prefix = new long[days + 1];
+            missing = new int[days + 1];
+        }
+    }
+
+    private static class RateKey {
+
+        private final String season;
+        private final DayOfWeek dayOfWeek;
+
+        RateKey(String season, DayOfWeek dayOfWeek) {
+            this.season = season;
+            this.dayOfWeek = dayOfWeek;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RateKey)) {
+                return false;
+            }
+            RateKey other = (RateKey) obj;
+            return Objects.equals(season, other.season) && dayOfWeek
+                    == other.dayOfWeek;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(season) + Objects.hashCode(dayOfWeek);
+        }
+    }
+}
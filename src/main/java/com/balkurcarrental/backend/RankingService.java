@@ -0,0 +1,199 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.RankedRow;
+import com.balkurcarrental.common.ServiceFailureException;
+import com.balkurcarrental.common.TopK;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Rankings over the whole rental history, including archived rents. Results
+ * are only ids or brands with their score, callers load entities they
+ * actually show.
+ *
+ * Grouping, ordering and limiting is done by the database when it can be
+ * expressed by one query. Rankings per group, which would need window
+ * functions, are aggregated by the database and the top rows of every group
+ * are kept by {@link TopK} while the aggregated rows are streamed.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class RankingService {
+
+    private static final Logger logger = Logger.getLogger(
+            RankingService.class.getName());
+
+    /**
+     * Rents begun until given day with number of their rented days. Both
+     * beginning and return day are rented, unfinished rent is rented until
+     * given day.
+     */
+    private static final String RENTED_DAYS
+            = "SELECT customer_id, price_per_day, {fn TIMESTAMPDIFF(SQL_TSI_DAY, beginning_date, COALESCE(real_return_date, CAST(? AS DATE)))} + 1 AS days FROM rent WHERE beginning_date <= ?"
+            + " UNION ALL SELECT customer_id, price_per_day, {fn TIMESTAMPDIFF(SQL_TSI_DAY, beginning_date, real_return_date)} + 1 AS days FROM rent_archive WHERE beginning_date <= ?";
+
+    private DataSource dataSource;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Returns customers with the most rented days.
+     *
+     * @param k maximal number of returned customers
+     * @param asOf last day counted for unfinished rents, later rents are
+     * ignored
+     * @return customer ids with number of rented days, from the best one
+     * @throws IllegalArgumentException when k is not positive or asOf is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public List<RankedRow<Long>> topCustomersByRentedDays(int k,
+            LocalDate asOf) {
+        return topCustomers("SUM(days)", k, asOf);
+    }
+
+    /**
+     * Returns customers with the highest revenue, which is price per day
+     * multiplied by rented days.
+     *
+     * @param k maximal number of returned customers
+     * @param asOf last day counted for unfinished rents, later rents are
+     * ignored
+     * @return customer ids with revenue, from the best one
+     * @throws IllegalArgumentException when k is not positive or asOf is null
+     * @throws ServiceFailureException when db operation fails.
+     * @see #topCustomersByRentedDays(int, LocalDate)
+     */
+    public List<RankedRow<Long>> topCustomersByRevenue(int k, LocalDate asOf) {
+        return topCustomers("SUM(CAST(days AS BIGINT) * price_per_day)", k,
+                asOf);
+    }
+
+    private List<RankedRow<Long>> topCustomers(String score, int k,
+            LocalDate asOf) {
+        checkDataSource();
+        if (k <= 0) {
+            throw new IllegalArgumentException("k is not positive");
+        }
+        if (asOf == null) {
+            throw new IllegalArgumentException("asOf is null");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT customer_id, " + score + " AS score FROM ("
+                    + RENTED_DAYS + ") AS r GROUP BY customer_id ORDER BY score DESC, customer_id FETCH FIRST ? ROWS ONLY"
+            );
+            Date day = Date.valueOf(asOf);
+            st.setDate(1, day);
+            st.setDate(2, day);
+            st.setDate(3, day);
+            st.setInt(4, k);
+            List<RankedRow<Long>> result = new ArrayList<>(Math.min(k, 1024));
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new RankedRow<>(rs.getLong("customer_id"), rs.
+                            getLong("score")));
+                }
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when ranking customers as of " + asOf;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    /**
+     * Returns brands with the most rents for every month of given period.
+     * Rent is counted in the month of its beginning.
+     *
+     * @param from first month
+     * @param to last month
+     * @param k maximal number of brands per month
+     * @return brands with number of rents keyed by month, months without
+     * rents are missing
+     * @throws IllegalArgumentException when k is not positive, from or to is
+     * null, or to is before from
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public Map<YearMonth, List<RankedRow<String>>> topBrandsPerMonth(
+            YearMonth from, YearMonth to, int k) {
+        checkDataSource();
+        if (k <= 0) {
+            throw new IllegalArgumentException("k is not positive");
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from or to is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to is before from");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT YEAR(r.beginning_date) AS y, MONTH(r.beginning_date) AS m, c.brand, COUNT(*) AS score FROM ("
+                    + "SELECT car_id, beginning_date FROM rent WHERE beginning_date BETWEEN ? AND ?"
+                    + " UNION ALL SELECT car_id, beginning_date FROM rent_archive WHERE beginning_date BETWEEN ? AND ?"
+                    + ") AS r JOIN car c ON c.id = r.car_id GROUP BY YEAR(r.beginning_date), MONTH(r.beginning_date), c.brand"
+            );
+            Date first = Date.valueOf(from.atDay(1));
+            Date last = Date.valueOf(to.atEndOfMonth());
+            st.setDate(1, first);
+            st.setDate(2, last);
+            st.setDate(3, first);
+            st.setDate(4, last);
+            Map<YearMonth, TopK<String>> rankings = new TreeMap<>();
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    YearMonth month = YearMonth.of(rs.getInt("y"), rs.getInt(
+                            "m"));
+                    rankings.computeIfAbsent(month, m -> new TopK<>(k)).offer(
+                            rs.getString("brand"), rs.getLong("score"));
+                }
+            }
+            Map<YearMonth, List<RankedRow<String>>> result
+                    = new LinkedHashMap<>();
+            for (Map.Entry<YearMonth, TopK<String>> entry : rankings.
+                    entrySet()) {
+                result.put(entry.getKey(), entry.getValue().toList());
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when ranking brands from " + from + " to " + to;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
+import com.balkurcarrental.common.EntityListener;
+import com.balkurcarrental.common.HyperLogLog;
+import com.balkurcarrental.common.QuantileSketch;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Approximate statistics of rents for dashboards. For every brand and month
+ * of beginning of rents it keeps {@link HyperLogLog} of customer ids and
+ * {@link QuantileSketch} of durations of returned rents in days, both days of
+ * beginning and return are counted. Queries over more months or all brands
+ * merge the sketches of buckets, so their cost doesn't depend on number of
+ * rents.
+ *
+ * Sketches are built by {@link #load()} in one pass over rents including the
+ * archive and then updated incrementally when analytics is registered as
+ * listener of rent events, preferably asynchronous one. Events delivered
+ * while loading are buffered and applied to the loaded sketches, so the
+ * listener may be registered before or after the load. Change committed just
+ * before the load may then be counted twice, which changes only durations,
+ * distinct customers are not affected. Sketches can only grow, deleted rents
+ * and changes of returned rents are reflected after the next load.
+ *
+ * Analytics is thread safe.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class RentAnalytics implements EntityListener<Rent> {
+
+    private static final Logger logger = Logger.getLogger(
+            RentAnalytics.class.getName());
+
+    private DataSource dataSource;
+    private Map<String, NavigableMap<YearMonth, Bucket>> buckets
+            = new HashMap<>();
+    private final Object loadLock = new Object();
+    private List<EntityEvent<Rent>> pending;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Builds sketches from all rents in the database, replacing the current
+     * ones. Rents are read as plain columns and are not hydrated.
+     *
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public void load() {
+        checkDataSource();
+
+        synchronized (loadLock) {
+            synchronized (this) {
+                pending = new ArrayList<>();
+            }
+            try {
+                replaceBuckets(readBuckets());
+            } finally {
+                synchronized (this) {
+                    pending = null;
+                }
+            }
+        }
+    }
+
+    private synchronized void replaceBuckets(
+            Map<String, NavigableMap<YearMonth, Bucket>> loaded) {
+        apply(loaded, pending);
+        buckets = loaded;
+    }
+
+    private Map<String, NavigableMap<YearMonth, Bucket>> readBuckets() {
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT c.brand, r.customer_id, r.beginning_date, r.real_return_date FROM ("
+                    + "SELECT car_id, customer_id, beginning_date, real_return_date FROM rent"
+                    + " UNION ALL SELECT car_id, customer_id, beginning_date, real_return_date FROM rent_archive"
+                    + ") AS r JOIN car c ON c.id = r.car_id"
+            );
+            st.setFetchSize(1000);
+            Map<String, NavigableMap<YearMonth, Bucket>> loaded
+                    = new HashMap<>();
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Date realReturn = rs.getDate("real_return_date");
+                    add(loaded, rs.getString("brand"), rs.getLong(
+                            "customer_id"), rs.getDate("beginning_date").
+                            toLocalDate(), realReturn == null ? null
+                                    : realReturn.toLocalDate());
+                }
+            }
+            return loaded;
+        } catch (SQLException ex) {
+            String msg = "Error when loading rent analytics";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public synchronized void onEvents(List<EntityEvent<Rent>> events) {
+        apply(buckets, events);
+        if (pending != null) {
+            pending.addAll(events);
+        }
+    }
+
+    private static void apply(Map<String, NavigableMap<YearMonth, Bucket>> buckets,
+            List<EntityEvent<Rent>> events) {
+        for (EntityEvent<Rent> event : events) {
+            Rent after = event.getAfter();
+            if (after == null) {
+                continue;
+            }
+            Rent before = event.getBefore();
+            // adding the same customer again doesn't change distinct count,
+            // duration is added only when rent is returned
+            boolean returned = after.getRealReturnDate() != null && (before
+                    == null || before.getRealReturnDate() == null);
+            add(buckets, after.getCar().getBrand(), after.getCustomer().
+                    getId(), after.getBeginningDate(), returned ? after.
+                            getRealReturnDate() : null);
+        }
+    }
+
+    /**
+     * Returns merged sketch of customers of rents beginning in given months.
+     *
+     * @param brand brand of rented cars, null for all brands
+     * @param from first month
+     * @param to last month
+     * @return new sketch, changes of it do not affect analytics
+     * @throws IllegalArgumentException when from or to is null or to is
+     * before from
+     */
+    public synchronized HyperLogLog customersSketch(String brand,
+            YearMonth from, YearMonth to) {
+        checkMonths(from, to);
+        HyperLogLog result = new HyperLogLog();
+        for (Bucket bucket : select(brand, from, to)) {
+            result.merge(bucket.customers);
+        }
+        return result;
+    }
+
+    /**
+     * Returns merged sketch of durations of rents beginning in given months.
+     *
+     * @param brand brand of rented cars, null for all brands
+     * @param from first month
+     * @param to last month
+     * @return new sketch, changes of it do not affect analytics
+     * @throws IllegalArgumentException when from or to is null or to is
+     * before from
+     */
+    public synchronized QuantileSketch durationsSketch(String brand,
+            YearMonth from, YearMonth to) {
+        checkMonths(from, to);
+        QuantileSketch result = new QuantileSketch();
+        for (Bucket bucket : select(brand, from, to)) {
+            result.merge(bucket.durations);
+        }
+        return result;
+    }
+
+    /**
+     * Returns approximate number of distinct customers of rents beginning in
+     * given months.
+     *
+     * @param brand brand of rented cars, null for all brands
+     * @param from first month
+     * @param to last month
+     * @return estimated number of customers
+     * @throws IllegalArgumentException when from or to is null or to is
+     * before from
+     */
+    public long distinctCustomers(String brand, YearMonth from, YearMonth to) {
+        return customersSketch(brand, from, to).estimate();
+    }
+
+    /**
+     * Returns approximate quantiles of durations in days of returned rents
+     * beginning in given months, for example 0.5, 0.9 and 0.99.
+     *
+     * @param brand brand of rented cars, null for all brands
+     * @param from first month
+     * @param to last month
+     * @param qs quantiles between 0 and 1
+     * @return durations for given quantiles or null when there is no returned
+     * rent
+     * @throws IllegalArgumentException when from or to is null, to is before
+     * from or any quantile is out of range
+     */
+    public long[] durationQuantiles(String brand, YearMonth from, YearMonth to,
+            double... qs) {
+        QuantileSketch sketch = durationsSketch(brand, from, to);
+        return sketch.getCount() == 0 ? null : sketch.quantiles(qs);
+    }
+
+    private List<Bucket> select(String brand, YearMonth from,
+            YearMonth to) {
+        List<Bucket> result = new ArrayList<>();
+        for (Map.Entry<String, NavigableMap<YearMonth, Bucket>> entry : buckets.
+                entrySet()) {
+            if (brand == null || brand.equals(entry.getKey())) {
+                result.addAll(entry.getValue().subMap(from, true, to, true).
+                        values());
+            }
+        }
+        return result;
+    }
+
+    private static void add(Map<String, NavigableMap<YearMonth, Bucket>> buckets,
+            String brand, long customerId, LocalDate beginning,
+            LocalDate realReturn) {
+        Bucket bucket = buckets.computeIfAbsent(brand, b -> new TreeMap<>()).
+                computeIfAbsent(YearMonth.from(beginning), m -> new Bucket());
+        bucket.customers.add(customerId);
+        if (realReturn != null) {
+            bucket.durations.add(ChronoUnit.DAYS.between(beginning, realReturn)
+                    + 1);
+        }
+    }
+
+    private static void checkMonths(YearMonth from, YearMonth to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from or to is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to is before from");
+        }
+    }
+
+    /**
+     * Sketches of one brand and month.
+     */
+    private static class Bucket {
+
+        private final HyperLogLog customers = new HyperLogLog();
+        private final QuantileSketch durations = new QuantileSketch();
+    }
+}
@@ -0,0 +1,205 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
+import com.balkurcarrental.common.EventPublisher;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Moves closed rents from rent table to rent_archive table, so the hot table
+ * used by overlap checks and finders stays small. Archived rents keep their
+ * ids and are read only by finders called with history, for example
+ * {@link RentManager#findRentsForCar(Car, boolean)}.
+ *
+ * Rents are moved in batches, every batch is one transaction which copies
+ * rents by INSERT ... SELECT and deletes them from rent table, so the move
+ * never holds locks on more than one batch.
+ *
+ * Archived rents are not checked when creating new rent, so rents should be
+ * archived only long after they were closed. When rent manager is set,
+ * archived rents are published as deleted rents after every batch, so
+ * listeners like availability calendar drop them as well.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class RentArchiver {
+
+    private static final Logger logger = Logger.getLogger(
+            RentArchiver.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final String COLUMNS = "id, customer_id, car_id, "
+            + "price_per_day, beginning_date, expected_return_date, "
+            + "real_return_date";
+
+    private DataSource dataSource;
+    private RentManagerImpl rentManager;
+    private Clock clock = Clock.systemDefaultZone();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets rent manager whose listeners are notified about archived rents.
+     *
+     * @param rentManager rent manager, null to disable events
+     */
+    public void setRentManager(RentManagerImpl rentManager) {
+        this.rentManager = rentManager;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Sets clock which determines current day.
+     *
+     * @param clock clock
+     */
+    public void setClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock is null");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * Sets maximal number of rents moved in one transaction.
+     *
+     * @param batchSize size of batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size is not positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archives rents which were returned more than given time ago.
+     *
+     * @param age minimal age of closed rents
+     * @return number of archived rents
+     * @throws IllegalArgumentException when age is null or negative
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public int archiveClosedFor(Period age) {
+        if (age == null || age.isNegative()) {
+            throw new IllegalArgumentException("age is null or negative");
+        }
+        return archiveReturnedBefore(LocalDate.now(clock).minus(age));
+    }
+
+    /**
+     * Archives rents returned before given day.
+     *
+     * @param day first day whose rents are kept in rent table
+     * @return number of archived rents
+     * @throws IllegalArgumentException when day is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public int archiveReturnedBefore(LocalDate day) {
+        checkDataSource();
+        if (day == null) {
+            throw new IllegalArgumentException("day is null");
+        }
+
+        int total = 0;
+        while (true) {
+            int moved = moveBatch(day);
+            total += moved;
+            if (moved < batchSize) {
+                return total;
+            }
+        }
+    }
+
+    private int moveBatch(LocalDate day) {
+        Connection connection = null;
+        PreparedStatement select = null;
+        PreparedStatement insert = null;
+        PreparedStatement delete = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            select = connection.prepareStatement(
+                    "SELECT id FROM rent WHERE real_return_date < ? ORDER BY id FETCH FIRST "
+                    + batchSize + " ROWS ONLY"
+            );
+            select.setDate(1, Date.valueOf(day));
+            List<Long> ids = new ArrayList<>(batchSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("id"));
+                }
+            }
+            if (ids.isEmpty()) {
+                return 0;
+            }
+
+            EventPublisher<Rent> events = rentManager == null ? null
+                    : rentManager.getEvents();
+            Map<Long, Rent> before = events != null && events.hasListeners()
+                    ? rentManager.rentsByIds(connection, ids) : null;
+            // rents may be reopened since they were selected
+            insert = connection.prepareStatement(
+                    "INSERT INTO rent_archive (" + COLUMNS + ") SELECT "
+                    + COLUMNS + " FROM rent WHERE real_return_date < ? AND "
+                    + DBUtils.inCondition("id")
+            );
+            delete = connection.prepareStatement(
+                    "DELETE FROM rent WHERE real_return_date < ? AND "
+                    + DBUtils.inCondition("id")
+            );
+            insert.setDate(1, Date.valueOf(day));
+            delete.setDate(1, Date.valueOf(day));
+            for (List<Long> chunk : DBUtils.chunks(ids)) {
+                DBUtils.setInParameters(insert, 2, chunk);
+                int copied = insert.executeUpdate();
+                DBUtils.setInParameters(delete, 2, chunk);
+                int deleted = delete.executeUpdate();
+                if (copied != chunk.size() || deleted != chunk.size()) {
+                    throw new ServiceFailureException("Internal error: "
+                            + copied + " rents copied and " + deleted
+                            + " deleted instead of " + chunk.size());
+                }
+            }
+            connection.commit();
+            if (before != null) {
+                List<EntityEvent<Rent>> changes = new ArrayList<>(ids.size());
+                for (Long id : ids) {
+                    changes.add(EntityEvent.deleted(id, before.get(id)));
+                }
+                events.publishAll(changes);
+            }
+            return ids.size();
+        } catch (SQLException ex) {
+            String msg = "Error when archiving rents returned before " + day;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection, select, insert, delete);
+        }
+    }
+}
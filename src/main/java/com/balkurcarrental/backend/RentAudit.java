@@ -0,0 +1,146 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Integrity audit of rent table. Finds double bookings, which could be
+ * stored before {@link RentManager} checked availability of car or by two
+ * concurrent writers, and rents referring to deleted car or customer.
+ *
+ * Rents are streamed once ordered by car and beginning date and swept per
+ * car. Rents which still book the car are kept in a heap ordered by their
+ * last day, so every rent is compared only with rents it really overlaps
+ * and the audit costs O(n log n) plus the number of found overlaps.
+ * Bookings follow the rule of {@link CarAvailabilityCalendar}.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class RentAudit {
+
+    private static final Logger logger = Logger.getLogger(
+            RentAudit.class.getName());
+
+    private DataSource dataSource;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Audits all rents in rent table.
+     *
+     * @return report of found problems
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public AuditReport run() {
+        checkDataSource();
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT r.id, r.car_id, r.customer_id, r.beginning_date, r.real_return_date, c.id AS found_car, cu.id AS found_customer FROM rent r"
+                    + " LEFT OUTER JOIN car c ON c.id = r.car_id"
+                    + " LEFT OUTER JOIN customer cu ON cu.id = r.customer_id"
+                    + " ORDER BY r.car_id, r.beginning_date, r.id"
+            );
+            st.setFetchSize(1000);
+
+            long checked = 0;
+            List<AuditReport.Overlap> overlaps = new ArrayList<>();
+            List<AuditReport.Orphan> orphans = new ArrayList<>();
+            PriorityQueue<Booking> booked = new PriorityQueue<>(
+                    Comparator.comparingLong(b -> b.lastDay));
+            long carId = 0;
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    checked++;
+                    long id = rs.getLong("id");
+                    long rentCarId = rs.getLong("car_id");
+                    long customerId = rs.getLong("customer_id");
+                    rs.getLong("found_car");
+                    boolean missingCar = rs.wasNull();
+                    rs.getLong("found_customer");
+                    boolean missingCustomer = rs.wasNull();
+                    if (missingCar || missingCustomer) {
+                        orphans.add(new AuditReport.Orphan(id, rentCarId,
+                                customerId, missingCar, missingCustomer));
+                    }
+
+                    if (rentCarId != carId || checked == 1) {
+                        booked.clear();
+                        carId = rentCarId;
+                    }
+                    long firstDay = rs.getDate("beginning_date").toLocalDate().
+                            toEpochDay();
+                    Date realReturn = rs.getDate("real_return_date");
+                    long lastDay = realReturn == null ? Long.MAX_VALUE
+                            : realReturn.toLocalDate().toEpochDay();
+                    while (!booked.isEmpty() && booked.peek().lastDay
+                            < firstDay) {
+                        booked.poll();
+                    }
+                    for (Booking booking : booked) {
+                        overlaps.add(new AuditReport.Overlap(carId,
+                                booking.rentId, id));
+                    }
+                    booked.add(new Booking(id, lastDay));
+                }
+            }
+            overlaps.sort(Comparator.comparingLong(
+                    AuditReport.Overlap::getCarId).thenComparingLong(
+                            AuditReport.Overlap::getFirstRentId)
+                    .thenComparingLong(AuditReport.Overlap::getSecondRentId));
+            AuditReport report = new AuditReport(checked, overlaps, orphans);
+            if (!report.isClean()) {
+                logger.log(Level.WARNING, "Rent audit of {0} rents found {1} "
+                        + "overlaps and {2} orphans", new Object[]{checked,
+                            overlaps.size(), orphans.size()});
+                // lists are formatted only when FINE is enabled
+                logger.log(Level.FINE, "Rent audit found overlaps {0} and "
+                        + "orphans {1}", new Object[]{overlaps, orphans});
+            }
+            return report;
+        } catch (SQLException ex) {
+            String msg = "Error when auditing rents";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    /**
+     * Rent which books the car until its last day.
+     */
+    private static class Booking {
+
+        private final long rentId;
+        private final long lastDay;
+
+        Booking(long rentId, long lastDay) {
+            this.rentId = rentId;
+            this.lastDay = lastDay;
+        }
+    }
+}
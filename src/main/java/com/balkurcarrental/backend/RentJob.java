@@ -0,0 +1,41 @@
+package com.balkurcarrental.backend;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Periodic job processing rents, for example overdue detection or return
+ * reminders. Jobs are run by {@link RentJobScheduler}.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public interface RentJob {
+
+    /**
+     * Returns unique name of the job. Name is used as key of stored
+     * checkpoint, so it should not change between releases.
+     *
+     * @return name of the job
+     */
+    String getName();
+
+    /**
+     * Returns SQL condition on columns of rent table selecting rents
+     * processed by this job, for example
+     * {@code real_return_date IS NULL AND expected_return_date < ?}. Every
+     * {@code ?} is bound to the day of the run.
+     *
+     * @return SQL condition
+     */
+    String getCondition();
+
+    /**
+     * Processes one batch of rents. Rents are ordered by id. When this method
+     * throws an exception, the run is stopped and the next run starts again
+     * with this batch.
+     *
+     * @param rents rents selected by condition
+     * @param day day of the run
+     */
+    void process(List<Rent> rents, LocalDate day);
+}
@@ -0,0 +1,445 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Runs {@link RentJob}s periodically on a {@link ScheduledExecutorService}.
+ *
+ * Every run reads rents selected by the job in batches ordered by id on its
+ * own connection. After every processed batch, id of its last rent is stored
+ * as checkpoint of the job in job_checkpoint table. When run fails or the
+ * scheduler is stopped, the next run on the same day continues after the
+ * checkpoint. Finished run removes the checkpoint, so the next run starts
+ * from the beginning.
+ *
+ * Next run of a job is scheduled after the previous one finishes, delayed by
+ * period of the job and random jitter, so runs of jobs started together are
+ * spread out. A job is never run twice at the same time, a run requested by
+ * {@link #runNow(String)} while the job is running is skipped. Stopping the
+ * scheduler discards runs which are waiting for their delay.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class RentJobScheduler {
+
+    private static final Logger logger = Logger.getLogger(
+            RentJobScheduler.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private DataSource dataSource;
+    private CarManager carManager;
+    private CustomerManager customerManager;
+    private Clock clock = Clock.systemDefaultZone();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Duration maxJitter = Duration.ZERO;
+    private int threads = 1;
+
+    private final Map<String, ScheduledJob> jobs = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor executor;
+    private volatile boolean stopping;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    public void setCarManager(CarManager carManager) {
+        this.carManager = carManager;
+    }
+
+    private void checkCarManager() {
+        if (carManager == null) {
+            throw new IllegalStateException("CarManager is not set");
+        }
+    }
+
+    public void setCustomerManager(CustomerManager customerManager) {
+        this.customerManager = customerManager;
+    }
+
+    private void checkCustomerManager() {
+        if (customerManager == null) {
+            throw new IllegalStateException("CustomerManager is not set");
+        }
+    }
+
+    /**
+     * Sets clock which determines day of runs.
+     *
+     * @param clock clock
+     */
+    public void setClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock is null");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * Sets number of rents read and processed at once.
+     *
+     * @param batchSize size of batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size is not positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets maximal random delay added to period of jobs.
+     *
+     * @param maxJitter maximal delay
+     */
+    public void setMaxJitter(Duration maxJitter) {
+        if (maxJitter == null || maxJitter.isNegative()) {
+            throw new IllegalArgumentException("jitter is null or negative");
+        }
+        this.maxJitter = maxJitter;
+    }
+
+    /**
+     * Sets number of threads running jobs. Must be called before
+     * {@link #start()}.
+     *
+     * @param threads number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads is not positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Adds job which is run with given period. When the scheduler is running,
+     * first run of the job is scheduled immediately with jitter.
+     *
+     * @param job job to run
+     * @param period delay between end of a run and start of the next one
+     * @throws IllegalArgumentException when job is null, period is null or
+     * not positive, or job with the same name already exists
+     */
+    public synchronized void schedule(RentJob job, Duration period) {
+        if (job == null) {
+            throw new IllegalArgumentException("job is null");
+        }
+        if (period == null || period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("period is not positive");
+        }
+        ScheduledJob scheduled = new ScheduledJob(job, period);
+        if (jobs.putIfAbsent(job.getName(), scheduled) != null) {
+            throw new IllegalArgumentException("job " + job.getName()
+                    + " already exists");
+        }
+        if (executor != null) {
+            arm(executor, scheduled, Duration.ZERO);
+        }
+    }
+
+    /**
+     * Starts running of scheduled jobs.
+     *
+     * @throws IllegalStateException when scheduler is already started or any
+     * dependency is not set
+     */
+    public synchronized void start() {
+        checkDataSource();
+        checkCarManager();
+        checkCustomerManager();
+        if (executor != null) {
+            throw new IllegalStateException("scheduler is already started");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "rent-job-" + counter.
+                    incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        stopping = false;
+        for (ScheduledJob job : jobs.values()) {
+            arm(executor, job, Duration.ZERO);
+        }
+    }
+
+    /**
+     * Stops the scheduler. Running jobs finish their current batch and keep
+     * their checkpoint.
+     *
+     * @param timeout how long to wait for running jobs
+     * @return true when all running jobs finished in time
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public synchronized boolean stop(Duration timeout) throws
+            InterruptedException {
+        if (executor == null) {
+            return true;
+        }
+        stopping = true;
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } finally {
+            executor = null;
+        }
+    }
+
+    /**
+     * Runs job in the calling thread.
+     *
+     * @param name name of job
+     * @return false when the run was skipped because the job is already
+     * running
+     * @throws IllegalArgumentException when there is no job with given name
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public boolean runNow(String name) {
+        ScheduledJob job = jobs.get(name);
+        if (job == null) {
+            throw new IllegalArgumentException("job " + name
+                    + " does not exist");
+        }
+        return run(job, true);
+    }
+
+    /**
+     * Returns statistics of job.
+     *
+     * @param name name of job
+     * @return statistics
+     * @throws IllegalArgumentException when there is no job with given name
+     */
+    public JobStats getStats(String name) {
+        ScheduledJob job = jobs.get(name);
+        if (job == null) {
+            throw new IllegalArgumentException("job " + name
+                    + " does not exist");
+        }
+        return job.stats();
+    }
+
+    private void arm(ScheduledExecutorService executor, ScheduledJob job,
+            Duration delay) {
+        long jitter = maxJitter.isZero() ? 0 : ThreadLocalRandom.current().
+                nextLong(maxJitter.toMillis() + 1);
+        try {
+            executor.schedule(() -> {
+                run(job, false);
+                // the next run stays on this executor, so a run finishing
+                // after restart does not start a second chain on the new one
+                if (!executor.isShutdown()) {
+                    arm(executor, job, job.period);
+                }
+            }, delay.toMillis() + jitter, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // scheduler is being stopped
+        }
+    }
+
+    private boolean run(ScheduledJob job, boolean rethrow) {
+        checkDataSource();
+        checkCarManager();
+        checkCustomerManager();
+        if (!job.running.compareAndSet(false, true)) {
+            job.skipped();
+            return false;
+        }
+        long start = System.nanoTime();
+        long[] rows = new long[1];
+        boolean failed = true;
+        try {
+            runBatches(job.job, rows);
+            failed = false;
+            return true;
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Job " + job.job.getName() + " failed",
+                    ex);
+            if (rethrow) {
+                throw ex;
+            }
+            return true;
+        } finally {
+            job.finished(rows[0], System.nanoTime() - start, failed);
+            job.running.set(false);
+        }
+    }
+
+    private void runBatches(RentJob job, long[] rows) {
+        LocalDate day = LocalDate.now(clock);
+        RentLoader loader = new RentLoader(carManager, customerManager);
+        int parameters = countParameters(job.getCondition());
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            long lastId = readCheckpoint(connection, job.getName(), day);
+            st = connection.prepareStatement(
+                    "SELECT * FROM rent WHERE id > ? AND (" + job.getCondition()
+                    + ") ORDER BY id FETCH FIRST " + batchSize + " ROWS ONLY"
+            );
+            for (int i = 0; i < parameters; i++) {
+                st.setDate(i + 2, Date.valueOf(day));
+            }
+            while (!stopping) {
+                st.setLong(1, lastId);
+                List<Rent> batch = new ArrayList<>(batchSize);
+                try (ResultSet rs = st.executeQuery()) {
+                    loader.stream(rs, batch::add);
+                }
+                if (!batch.isEmpty()) {
+                    job.process(batch, day);
+                    lastId = batch.get(batch.size() - 1).getId();
+                    rows[0] += batch.size();
+                }
+                if (batch.size() < batchSize) {
+                    deleteCheckpoint(connection, job.getName());
+                    connection.commit();
+                    return;
+                }
+                saveCheckpoint(connection, job.getName(), lastId, day);
+                connection.commit();
+            }
+        } catch (SQLException ex) {
+            String msg = "Error when running job " + job.getName();
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    private static int countParameters(String condition) {
+        int count = 0;
+        for (int i = 0; i < condition.length(); i++) {
+            if (condition.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long readCheckpoint(Connection connection, String name,
+            LocalDate day) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT last_rent_id FROM job_checkpoint WHERE name = ? AND run_day = ?"
+        )) {
+            st.setString(1, name);
+            st.setDate(2, Date.valueOf(day));
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getLong("last_rent_id") : 0;
+            }
+        }
+    }
+
+    private static void saveCheckpoint(Connection connection, String name,
+            long lastId, LocalDate day) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "UPDATE job_checkpoint SET last_rent_id = ?, run_day = ? WHERE name = ?"
+        )) {
+            st.setLong(1, lastId);
+            st.setDate(2, Date.valueOf(day));
+            st.setString(3, name);
+            if (st.executeUpdate() == 1) {
+                return;
+            }
+        }
+        try (PreparedStatement st = connection.prepareStatement(
+                "INSERT INTO job_checkpoint (name, last_rent_id, run_day) VALUES (?,?,?)"
+        )) {
+            st.setString(1, name);
+            st.setLong(2, lastId);
+            st.setDate(3, Date.valueOf(day));
+            st.executeUpdate();
+        }
+    }
+
+    private static void deleteCheckpoint(Connection connection, String name)
+            throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "DELETE FROM job_checkpoint WHERE name = ?"
+        )) {
+            st.setString(1, name);
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * Job with its period, overlap guard and statistics.
+     */
+    private static class ScheduledJob {
+
+        private final RentJob job;
+        private final Duration period;
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private long runs;
+        private long skippedRuns;
+        private long failures;
+        private long lastRows;
+        private long totalRows;
+        private long lastNanos;
+        private long totalNanos;
+
+        ScheduledJob(RentJob job, Duration period) {
+            this.job = job;
+            this.period = period;
+        }
+
+        synchronized void skipped() {
+            skippedRuns++;
+        }
+
+        synchronized void finished(long rows, long nanos, boolean failed) {
+            runs++;
+            if (failed) {
+                failures++;
+            }
+            lastRows = rows;
+            totalRows += rows;
+            lastNanos = nanos;
+            totalNanos += nanos;
+        }
+
+        synchronized JobStats stats() {
+            return new JobStats(job.getName(), runs, skippedRuns, failures,
+                    lastRows, totalRows, Duration.ofNanos(lastNanos),
+                    Duration.ofNanos(totalNanos));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.IdentityMap;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads rents from result set in chunks of {@link DBUtils#IN_CHUNK_SIZE}
+ * rows. Cars and customers of every chunk are loaded by one multi-get, then
+ * rents of the chunk are passed to the action, so only one chunk is held in
+ * memory.
+ *
+ * Loaded cars and customers are kept in identity maps for the lifetime of the
+ * loader, so rents sharing car or customer share its instance and every car
+ * and customer is loaded at most once, even across chunks or result sets read
+ * by the same loader.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+class RentLoader {
+
+    private final IdentityMap<Car> cars;
+    private final IdentityMap<Customer> customers;
+
+    RentLoader(CarManager carManager, CustomerManager customerManager) {
+        this.cars = new IdentityMap<>(carManager::getCarsByIds);
+        this.customers = new IdentityMap<>(customerManager::getCustomersByIds);
+    }
+
+    /**
+     * Reads all rows of result set.
+     *
+     * @param rs result set with all columns of rent table
+     * @param action action called for every rent
+     * @return number of rents
+     * @throws SQLException when reading of result set fails
+     * @throws EntityNotFoundException when car or customer of some rent does
+     * not exist
+     */
+    int stream(ResultSet rs, Consumer<? super Rent> action) throws
+            SQLException {
+        int count = 0;
+        List<RentRow> chunk = new ArrayList<>(DBUtils.IN_CHUNK_SIZE);
+        while (rs.next()) {
+            chunk.add(new RentRow(rs));
+            count++;
+            if (chunk.size() == DBUtils.IN_CHUNK_SIZE) {
+                emit(chunk, action);
+                chunk.clear();
+            }
+        }
+        emit(chunk, action);
+        return count;
+    }
+
+    /**
+     * Reads at most given number of rows of result set, for readers which
+     * read the result set gradually.
+     *
+     * @param rs result set with all columns of rent table
+     * @param max maximal number of rows, at most {@link DBUtils#IN_CHUNK_SIZE}
+     * rows are read by one multi-get of cars and customers
+     * @param action action called for every rent
+     * @return false when the result set has no more rows
+     * @throws SQLException when reading of result set fails
+     * @throws EntityNotFoundException when car or customer of some rent does
+     * not exist
+     */
+    boolean read(ResultSet rs, int max, Consumer<? super Rent> action)
+            throws SQLException {
+        List<RentRow> chunk = new ArrayList<>(Math.min(max,
+                DBUtils.IN_CHUNK_SIZE));
+        boolean more = true;
+        for (int i = 0; i < max; i++) {
+            if (!rs.next()) {
+                more = false;
+                break;
+            }
+            chunk.add(new RentRow(rs));
+            if (chunk.size() == DBUtils.IN_CHUNK_SIZE) {
+                emit(chunk, action);
+                chunk.clear();
+            }
+        }
+        emit(chunk, action);
+        return more;
+    }
+
+    private void emit(List<RentRow> chunk, Consumer<? super Rent> action) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Long> carIds = new HashSet<>();
+        Set<Long> customerIds = new HashSet<>();
+        for (RentRow row : chunk) {
+            carIds.add(row.carId);
+            customerIds.add(row.customerId);
+        }
+        cars.load(carIds);
+        customers.load(customerIds);
+        for (RentRow row : chunk) {
+            Car car = cars.get(row.carId);
+            if (car == null) {
+                throw new EntityNotFoundException("Car with id " + row.carId
+                        + " of rent " + row.rent.getId() + " was not found");
+            }
+            Customer customer = customers.get(row.customerId);
+            if (customer == null) {
+                throw new EntityNotFoundException("Customer with id "
+                        + row.customerId + " of rent " + row.rent.getId()
+                        + " was not found");
+            }
+            row.rent.setCar(car);
+            row.rent.setCustomer(customer);
+            action.accept(row.rent);
+        }
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date == null ? null : date.toLocalDate();
+    }
+
+    /**
+     * Rent read from result set whose car and customer are not loaded yet.
+     */
+    private static class RentRow {
+
+        private final Rent rent = new Rent();
+        private final long carId;
+        private final long customerId;
+
+        RentRow(ResultSet rs) throws SQLException {
+            rent.setId(rs.getLong("id"));
+            rent.setPricePerDay(rs.getInt("price_per_day"));
+            rent.setBeginningDate(toLocalDate(rs.getDate("beginning_date")));
+            rent.setExpectedReturnDate(toLocalDate(rs.
+                    getDate("expected_return_date")));
+            rent.setRealReturnDate(toLocalDate(rs.getDate("real_return_date")));
+            carId = rs.getLong("car_id");
+            customerId = rs.getLong("customer_id");
+        }
+    }
+}
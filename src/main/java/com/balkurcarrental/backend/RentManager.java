@@ -1,9 +1,13 @@
 package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.Flow;
 import com.balkurcarrental.common.InvalidEntityException;
 import com.balkurcarrental.common.ServiceFailureException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Interface for rent manager
@@ -66,6 +70,35 @@ public interface RentManager {
      */
     void deleteRent(Rent rent) throws EntityNotFoundException;
 
+    /**
+     * Sets real return date of many rents in one transaction. Rents which
+     * can't be returned are skipped and reported in the result, the rest is
+     * stored. Car availability is checked only when the new date is after
+     * the current real return date of the rent, closing of unfinished rent or
+     * shortening of finished one can't cause conflict.
+     *
+     * @param returnDates real return dates keyed by rent id
+     * @return outcome for every rent id in iteration order of given map
+     * @throws IllegalArgumentException when returnDates is null or contains
+     * null id or date
+     * @throws ServiceFailureException when db operation fails.
+     */
+    Map<Long, ReturnOutcome> returnCars(Map<Long, LocalDate> returnDates);
+
+    /**
+     * Changes price per day of all open or future rents matching given
+     * repricing by one set-based update. Rent is open when it is not returned
+     * yet and future when it begins after given day. Closed rents keep their
+     * price. New price is never less than 1.
+     *
+     * @param repricing change of price and criteria of rents
+     * @param asOf day of repricing
+     * @return number of changed rents
+     * @throws IllegalArgumentException when repricing or asOf is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    int repriceRents(Repricing repricing, LocalDate asOf);
+
     /**
      * Returns list of all rents in the database.
      *
@@ -74,6 +107,18 @@ public interface RentManager {
      */
     List<Rent> findAllRents();
 
+    /**
+     * Returns publisher of all rents in the database. Rents are read from the
+     * database only as they are requested by subscriber, so the whole result
+     * is never held in memory and slow subscriber slows down the reading.
+     *
+     * @return publisher of all rents, the query is run for every subscriber
+     * @throws ServiceFailureException when db operation fails, it is
+     * signalled to subscriber.
+     * @see #findAllRents()
+     */
+    Flow.Publisher<Rent> publishAllRents();
+
     /**
      * Returns list of all rents made by given customer in the database
      *
@@ -84,6 +129,18 @@ public interface RentManager {
      */
     List<Rent> findRentsForCustomer(Customer customer);
 
+    /**
+     * Returns list of all rents made by given customer, optionally including
+     * rents moved to the archive by {@link RentArchiver}.
+     *
+     * @param customer Customer to search for
+     * @param withHistory true to include archived rents
+     * @return list of rents made by given customer
+     * @throws IllegalArgumentException when customer is null or has null id
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Rent> findRentsForCustomer(Customer customer, boolean withHistory);
+
     /**
      * Returns list of all rents of given car in the database
      *
@@ -93,4 +150,79 @@ public interface RentManager {
      * @throws ServiceFailureException when db operation fails.
      */
     List<Rent> findRentsForCar(Car car);
+
+    /**
+     * Returns list of all rents of given car, optionally including rents
+     * moved to the archive by {@link RentArchiver}.
+     *
+     * @param car Car to search for
+     * @param withHistory true to include archived rents
+     * @return list of rents of given car
+     * @throws IllegalArgumentException when car is null or has null id
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Rent> findRentsForCar(Car car, boolean withHistory);
+
+    /**
+     * Returns publisher of rents of given car, optionally including archived
+     * rents. Rents are read from the database only as they are requested by
+     * subscriber.
+     *
+     * @param car Car to search for
+     * @param withHistory true to include archived rents
+     * @return publisher of rents, the query is run for every subscriber
+     * @throws IllegalArgumentException when car is null or has null id
+     * @throws ServiceFailureException when db operation fails, it is
+     * signalled to subscriber.
+     * @see #findRentsForCar(Car, boolean)
+     */
+    Flow.Publisher<Rent> publishRentsForCar(Car car, boolean withHistory);
+
+    /**
+     * Returns list of overdue rents. Rent is overdue when it is not returned
+     * and its expected return date is before given day.
+     *
+     * @param asOf day to check
+     * @return list of overdue rents ordered by expected return date
+     * @throws IllegalArgumentException when asOf is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Rent> findOverdueRents(LocalDate asOf);
+
+    /**
+     * Passes overdue rents to given action one by one while they are read
+     * from the database, so the whole result is never held in memory.
+     *
+     * @param asOf day to check
+     * @param action action called for every overdue rent
+     * @throws IllegalArgumentException when asOf or action is null
+     * @throws ServiceFailureException when db operation fails.
+     * @see #findOverdueRents(LocalDate)
+     */
+    void forEachOverdueRent(LocalDate asOf, Consumer<? super Rent> action);
+
+    /**
+     * Returns list of rents active on given day. Rent is active from its
+     * beginning date to its real return date, both inclusive. Rent which is
+     * not returned yet is active from its beginning date indefinitely.
+     *
+     * @param on day to check
+     * @return list of active rents
+     * @throws IllegalArgumentException when on is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    List<Rent> findActiveRents(LocalDate on);
+
+    /**
+     * Passes rents active on given day to given action one by one while they
+     * are read from the database, so the whole result is never held in
+     * memory.
+     *
+     * @param on day to check
+     * @param action action called for every active rent
+     * @throws IllegalArgumentException when on or action is null
+     * @throws ServiceFailureException when db operation fails.
+     * @see #findActiveRents(LocalDate)
+     */
+    void forEachActiveRent(LocalDate on, Consumer<? super Rent> action);
 }
@@ -1,9 +1,13 @@
 package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
 import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.EventPublisher;
+import com.balkurcarrental.common.Flow;
 import com.balkurcarrental.common.InvalidEntityException;
 import com.balkurcarrental.common.ServiceFailureException;
+import com.balkurcarrental.common.Tracer;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
@@ -12,7 +16,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -30,6 +41,9 @@ public class RentManagerImpl implements RentManager {
     private DataSource dataSource;
     private CarManager carManager;
     private CustomerManager customerManger;
+    private final EventPublisher<Rent> events = new EventPublisher<>("rent");
+    private CarAvailabilityCalendar availabilityCalendar;
+    private Tracer tracer = Tracer.DISABLED;
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
@@ -61,6 +75,43 @@ public class RentManagerImpl implements RentManager {
         }
     }
 
+    /**
+     * Sets tracer recording phases of reading by id. It should be shared
+     * with car and customer managers, so their spans nest in mapping of rent.
+     *
+     * @param tracer tracer, null to disable tracing
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer == null ? Tracer.DISABLED : tracer;
+    }
+
+    /**
+     * Returns publisher of committed changes of rents. Car and customer of
+     * rents in events are shared, only rents themselves are copied.
+     *
+     * @return event publisher
+     */
+    public EventPublisher<Rent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Sets availability calendar which is updated after every successful
+     * write. Calendar is registered as synchronous listener of rent events.
+     *
+     * @param availabilityCalendar calendar to keep in sync, null to disable
+     */
+    public synchronized void setAvailabilityCalendar(
+            CarAvailabilityCalendar availabilityCalendar) {
+        if (this.availabilityCalendar != null) {
+            events.removeListener(this.availabilityCalendar);
+        }
+        this.availabilityCalendar = availabilityCalendar;
+        if (availabilityCalendar != null) {
+            events.addListener(availabilityCalendar);
+        }
+    }
+
     @Override
     public void createRent(Rent rent) throws InvalidEntityException {
         checkDataSource();
@@ -79,8 +130,8 @@ public class RentManagerImpl implements RentManager {
                     Statement.RETURN_GENERATED_KEYS
             );
 
-            if (rentIdForCar(connection, rent.getCar(), rent.getBeginningDate(), rent.
-                    getRealReturnDate()) != null) {
+            if (rentIdForCar(connection, rent.getCar().getId(), rent.
+                    getBeginningDate(), rent.getRealReturnDate()) != null) {
                 throw new InvalidEntityException(
                         "Car is already rented in this time of rent " + rent);
             }
@@ -95,9 +146,15 @@ public class RentManagerImpl implements RentManager {
             int addedRows = st.executeUpdate();
             DBUtils.checkUpdatesCount(addedRows, rent, DBUtils.Operation.INSERT);
 
-            Long id = DBUtils.getId(st.getGeneratedKeys());
+            Long id;
+            try (ResultSet keys = st.getGeneratedKeys()) {
+                id = DBUtils.getId(keys);
+            }
             rent.setId(id);
             connection.commit();
+            if (events.hasListeners()) {
+                events.publish(EntityEvent.created(id, copy(rent)));
+            }
         } catch (SQLException ex) {
             String msg = "Error when inserting rent " + rent + " into db";
             logger.log(Level.SEVERE, msg, ex);
@@ -121,16 +178,19 @@ public class RentManagerImpl implements RentManager {
                     "Trying to retrive rent with null id");
         }
 
+        int span = tracer.begin("RentManager.getRentById");
         Connection connection = null;
         PreparedStatement st = null;
         try {
+            int phase = tracer.begin("getConnection");
             connection = dataSource.getConnection();
+            phase = tracer.next(phase, "prepare");
             st = connection.prepareStatement(
                     "SELECT * FROM rent WHERE id = ?"
             );
 
             st.setLong(1, id);
-            ResultSet rs = st.executeQuery();
+            tracer.end(phase);
 
             Rent rent = executeQueryForSingleRent(st);
             if (rent != null) {
@@ -145,6 +205,7 @@ public class RentManagerImpl implements RentManager {
             throw new ServiceFailureException(msg, ex);
         } finally {
             DBUtils.closeQuietly(connection, st);
+            tracer.end(span);
         }
     }
 
@@ -166,12 +227,14 @@ public class RentManagerImpl implements RentManager {
                     "UPDATE rent SET customer_id = ?, car_id = ?, price_per_day = ?, beginning_date = ?, expected_return_date = ?, real_return_date = ? WHERE id = ?"
             );
 
-            Long rentForCar = rentIdForCar(connection, rent.getCar(), rent.
-                    getBeginningDate(), rent.getRealReturnDate());
+            Long rentForCar = rentIdForCar(connection, rent.getCar().getId(),
+                    rent.getBeginningDate(), rent.getRealReturnDate());
             if (rentForCar != null && !rent.getId().equals(rentForCar)) {
                 throw new InvalidEntityException(
                         "Car is already rented in this time of rent " + rent);
             }
+            Rent before = events.hasListeners() ? rentById(connection,
+                    rent.getId()) : null;
 
             st.setLong(1, rent.getCustomer().getId());
             st.setLong(2, rent.getCar().getId());
@@ -184,6 +247,10 @@ public class RentManagerImpl implements RentManager {
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, rent, DBUtils.Operation.UPDATE);
             connection.commit();
+            if (before != null) {
+                events.publish(EntityEvent.updated(rent.getId(), before, copy(
+                        rent)));
+            }
         } catch (SQLException ex) {
             String msg = "Error when updating rent " + rent + " in db";
             logger.log(Level.SEVERE, msg, ex);
@@ -208,23 +275,242 @@ public class RentManagerImpl implements RentManager {
         PreparedStatement st = null;
         try {
             connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
             st = connection.prepareStatement(
                     "DELETE FROM rent WHERE id = ?"
             );
 
             st.setLong(1, rent.getId());
+            Rent before = events.hasListeners() ? rentById(connection,
+                    rent.getId()) : null;
 
             int count = st.executeUpdate();
             DBUtils.checkUpdatesCount(count, rent, DBUtils.Operation.DELETE);
+            connection.commit();
+            if (before != null) {
+                events.publish(EntityEvent.deleted(rent.getId(), before));
+            }
         } catch (SQLException ex) {
             String msg = "Error when deleting rent " + rent + " from db";
             logger.log(Level.SEVERE, msg, ex);
             throw new ServiceFailureException(msg, ex);
         } finally {
+            DBUtils.doRollbackQuietly(connection);
             DBUtils.closeQuietly(connection, st);
         }
     }
 
+    @Override
+    public Map<Long, ReturnOutcome> returnCars(
+            Map<Long, LocalDate> returnDates) {
+        checkDataSource();
+        if (returnDates == null) {
+            throw new IllegalArgumentException("returnDates is null");
+        }
+        if (returnDates.containsValue(null)) {
+            throw new IllegalArgumentException("returnDates contains null date");
+        }
+        Set<Long> ids = DBUtils.distinctIds(returnDates.keySet());
+        Map<Long, ReturnOutcome> result = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        Connection connection = null;
+        PreparedStatement select = null;
+        PreparedStatement update = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            select = connection.prepareStatement(
+                    "SELECT id, car_id, beginning_date, real_return_date FROM rent WHERE "
+                    + DBUtils.inCondition("id")
+            );
+            Map<Long, RentDates> current = new HashMap<>();
+            for (List<Long> chunk : DBUtils.chunks(ids)) {
+                DBUtils.setInParameters(select, 1, chunk);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        current.put(rs.getLong("id"), new RentDates(rs.getLong(
+                                "car_id"), toLocalDate(rs.getDate(
+                                                "beginning_date")),
+                                toLocalDate(rs.getDate("real_return_date"))));
+                    }
+                }
+            }
+
+            List<Long> returned = new ArrayList<>();
+            for (Long id : ids) {
+                RentDates dates = current.get(id);
+                LocalDate returnDate = returnDates.get(id);
+                ReturnOutcome outcome;
+                if (dates == null) {
+                    outcome = ReturnOutcome.NOT_FOUND;
+                } else if (returnDate.isBefore(dates.beginningDate)) {
+                    outcome = ReturnOutcome.INVALID_DATE;
+                } else if (dates.realReturnDate != null && returnDate.isAfter(
+                        dates.realReturnDate) && rentIdForCar(connection,
+                                dates.carId, dates.realReturnDate.plusDays(1),
+                                returnDate) != null) {
+                    outcome = ReturnOutcome.CONFLICT;
+                } else {
+                    outcome = ReturnOutcome.RETURNED;
+                    returned.add(id);
+                }
+                result.put(id, outcome);
+            }
+            if (returned.isEmpty()) {
+                return result;
+            }
+
+            Map<Long, Rent> before = events.hasListeners() ? rentsByIds(
+                    connection, returned) : null;
+            update = connection.prepareStatement(
+                    "UPDATE rent SET real_return_date = ? WHERE id = ?"
+            );
+            for (Long id : returned) {
+                update.setDate(1, toSqlDate(returnDates.get(id)));
+                update.setLong(2, id);
+                update.addBatch();
+            }
+            int[] counts = update.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 1 && counts[i] != Statement.SUCCESS_NO_INFO) {
+                    throw new ServiceFailureException("Internal error: "
+                            + counts[i] + " rows updated when returning rent "
+                            + returned.get(i));
+                }
+            }
+            connection.commit();
+            if (before != null) {
+                List<EntityEvent<Rent>> changes = new ArrayList<>(returned.
+                        size());
+                for (Long id : returned) {
+                    Rent after = copy(before.get(id));
+                    after.setRealReturnDate(returnDates.get(id));
+                    changes.add(EntityEvent.updated(id, before.get(id), after));
+                }
+                events.publishAll(changes);
+            }
+            return result;
+        } catch (SQLException ex) {
+            String msg = "Error when returning rents " + returnDates.keySet();
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection, select, update);
+        }
+    }
+
+    @Override
+    public int repriceRents(Repricing repricing, LocalDate asOf) {
+        checkDataSource();
+        if (repricing == null) {
+            throw new IllegalArgumentException("repricing is null");
+        }
+        if (asOf == null) {
+            throw new IllegalArgumentException("asOf is null");
+        }
+
+        StringBuilder where = new StringBuilder(
+                "(real_return_date IS NULL OR beginning_date > ?)");
+        if (repricing.getBrand() != null) {
+            where.append(" AND car_id IN (SELECT id FROM car WHERE brand = ?)");
+        }
+        if (repricing.getBeginningFrom() != null) {
+            where.append(" AND beginning_date >= ?");
+        }
+        if (repricing.getBeginningTo() != null) {
+            where.append(" AND beginning_date <= ?");
+        }
+        List<List<Long>> chunks;
+        if (repricing.getCarIds() != null) {
+            where.append(" AND ").append(DBUtils.inCondition("car_id"));
+            chunks = DBUtils.chunks(DBUtils.distinctIds(repricing.getCarIds()));
+        } else {
+            chunks = Collections.singletonList(null);
+        }
+        String newPrice = repricing.getPercent() != 0
+                ? "(CAST(price_per_day AS BIGINT) * " + (100 + repricing.
+                getPercent()) + " + 50) / 100"
+                : "(CAST(price_per_day AS BIGINT) + " + repricing.getAmount()
+                + ")";
+
+        Connection connection = null;
+        PreparedStatement select = null;
+        PreparedStatement update = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            boolean publish = events.hasListeners();
+            if (publish) {
+                select = connection.prepareStatement(
+                        "SELECT * FROM rent WHERE " + where
+                );
+            }
+            update = connection.prepareStatement(
+                    "UPDATE rent SET price_per_day = CAST(CASE WHEN " + newPrice
+                    + " < 1 THEN 1 WHEN " + newPrice + " > " + Integer.MAX_VALUE
+                    + " THEN " + Integer.MAX_VALUE + " ELSE " + newPrice
+                    + " END AS INTEGER) WHERE " + where
+            );
+
+            int count = 0;
+            Map<Long, Rent> before = new LinkedHashMap<>();
+            for (List<Long> chunk : chunks) {
+                if (publish) {
+                    setRepricingParameters(select, repricing, asOf, chunk);
+                    try (ResultSet rs = select.executeQuery()) {
+                        new RentLoader(carManager, customerManger).stream(rs,
+                                rent -> before.put(rent.getId(), rent));
+                    }
+                }
+                setRepricingParameters(update, repricing, asOf, chunk);
+                count += update.executeUpdate();
+            }
+            Map<Long, Rent> after = publish ? rentsByIds(connection, before.
+                    keySet()) : null;
+            connection.commit();
+            if (publish) {
+                List<EntityEvent<Rent>> changes = new ArrayList<>(before.
+                        size());
+                for (Rent rent : before.values()) {
+                    changes.add(EntityEvent.updated(rent.getId(), rent,
+                            after.get(rent.getId())));
+                }
+                events.publishAll(changes);
+            }
+            return count;
+        } catch (SQLException ex) {
+            String msg = "Error when repricing rents by " + repricing;
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.doRollbackQuietly(connection);
+            DBUtils.closeQuietly(connection, select, update);
+        }
+    }
+
+    private static void setRepricingParameters(PreparedStatement st,
+            Repricing repricing, LocalDate asOf, List<Long> carIds) throws
+            SQLException {
+        int index = 1;
+        st.setDate(index++, toSqlDate(asOf));
+        if (repricing.getBrand() != null) {
+            st.setString(index++, repricing.getBrand());
+        }
+        if (repricing.getBeginningFrom() != null) {
+            st.setDate(index++, toSqlDate(repricing.getBeginningFrom()));
+        }
+        if (repricing.getBeginningTo() != null) {
+            st.setDate(index++, toSqlDate(repricing.getBeginningTo()));
+        }
+        if (carIds != null) {
+            DBUtils.setInParameters(st, index, carIds);
+        }
+    }
+
     @Override
     public List<Rent> findAllRents() {
         checkDataSource();
@@ -248,8 +534,25 @@ public class RentManagerImpl implements RentManager {
         }
     }
 
+    @Override
+    public Flow.Publisher<Rent> publishAllRents() {
+        checkDataSource();
+        checkCarManager();
+        checkCustomerManager();
+
+        return new RentPublisher(dataSource, carManager, customerManger,
+                "SELECT * FROM rent", st -> {
+                }, "all rents");
+    }
+
     @Override
     public List<Rent> findRentsForCustomer(Customer customer) {
+        return findRentsForCustomer(customer, false);
+    }
+
+    @Override
+    public List<Rent> findRentsForCustomer(Customer customer,
+            boolean withHistory) {
         checkDataSource();
         checkCarManager();
         checkCustomerManager();
@@ -265,10 +568,14 @@ public class RentManagerImpl implements RentManager {
         PreparedStatement st = null;
         try {
             connection = dataSource.getConnection();
-            st = connection.prepareStatement(
-                    "SELECT * FROM rent WHERE customer_id = ?"
+            st = connection.prepareStatement(withHistory
+                    ? "SELECT * FROM rent WHERE customer_id = ? UNION ALL SELECT * FROM rent_archive WHERE customer_id = ?"
+                    : "SELECT * FROM rent WHERE customer_id = ?"
             );
             st.setLong(1, customer.getId());
+            if (withHistory) {
+                st.setLong(2, customer.getId());
+            }
             return executeQueryForMultipleRents(st);
         } catch (SQLException ex) {
             String msg = "Error when retrieving rents for customer " + customer + " from db";
@@ -281,6 +588,11 @@ public class RentManagerImpl implements RentManager {
 
     @Override
     public List<Rent> findRentsForCar(Car car) {
+        return findRentsForCar(car, false);
+    }
+
+    @Override
+    public List<Rent> findRentsForCar(Car car, boolean withHistory) {
         checkDataSource();
         checkCarManager();
         checkCustomerManager();
@@ -296,10 +608,14 @@ public class RentManagerImpl implements RentManager {
         PreparedStatement st = null;
         try {
             connection = dataSource.getConnection();
-            st = connection.prepareStatement(
-                    "SELECT * FROM rent WHERE car_id = ?"
+            st = connection.prepareStatement(withHistory
+                    ? "SELECT * FROM rent WHERE car_id = ? UNION ALL SELECT * FROM rent_archive WHERE car_id = ?"
+                    : "SELECT * FROM rent WHERE car_id = ?"
             );
             st.setLong(1, car.getId());
+            if (withHistory) {
+                st.setLong(2, car.getId());
+            }
             return executeQueryForMultipleRents(st);
         } catch (SQLException ex) {
             String msg = "Error when retrieving rents for car " + car + " from db";
@@ -310,29 +626,155 @@ public class RentManagerImpl implements RentManager {
         }
     }
 
+    @Override
+    public Flow.Publisher<Rent> publishRentsForCar(Car car,
+            boolean withHistory) {
+        checkDataSource();
+        checkCarManager();
+        checkCustomerManager();
+
+        if (car == null) {
+            throw new IllegalArgumentException("car is null");
+        }
+        if (car.getId() == null) {
+            throw new IllegalArgumentException("car id is null");
+        }
+
+        Long carId = car.getId();
+        return new RentPublisher(dataSource, carManager, customerManger,
+                withHistory
+                        ? "SELECT * FROM rent WHERE car_id = ? UNION ALL SELECT * FROM rent_archive WHERE car_id = ?"
+                        : "SELECT * FROM rent WHERE car_id = ?",
+                st -> {
+                    st.setLong(1, carId);
+                    if (withHistory) {
+                        st.setLong(2, carId);
+                    }
+                }, "rents for car " + car);
+    }
+
+    @Override
+    public List<Rent> findOverdueRents(LocalDate asOf) {
+        List<Rent> result = new ArrayList<>();
+        forEachOverdueRent(asOf, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachOverdueRent(LocalDate asOf,
+            Consumer<? super Rent> action) {
+        checkDataSource();
+        checkCarManager();
+        checkCustomerManager();
+
+        if (asOf == null) {
+            throw new IllegalArgumentException("asOf is null");
+        }
+        if (action == null) {
+            throw new IllegalArgumentException("action is null");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT * FROM rent WHERE real_return_date IS NULL AND expected_return_date < ? ORDER BY expected_return_date, id"
+            );
+            st.setDate(1, toSqlDate(asOf));
+            streamRents(st, action);
+        } catch (SQLException ex) {
+            String msg = "Error when retrieving rents overdue as of " + asOf
+                    + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    @Override
+    public List<Rent> findActiveRents(LocalDate on) {
+        List<Rent> result = new ArrayList<>();
+        forEachActiveRent(on, result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachActiveRent(LocalDate on, Consumer<? super Rent> action) {
+        checkDataSource();
+        checkCarManager();
+        checkCustomerManager();
+
+        if (on == null) {
+            throw new IllegalArgumentException("on is null");
+        }
+        if (action == null) {
+            throw new IllegalArgumentException("action is null");
+        }
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            // two branches, so both of them can use rent_open index; the
+            // optimizer can't estimate selectivity of ">= ?" and would scan
+            // the whole history, so the index is forced for the second one
+            st = connection.prepareStatement(
+                    "SELECT * FROM rent WHERE real_return_date IS NULL AND beginning_date <= ? "
+                    + "UNION ALL "
+                    + "SELECT * FROM rent --DERBY-PROPERTIES index=rent_open\n"
+                    + "WHERE real_return_date >= ? AND beginning_date <= ?"
+            );
+            st.setDate(1, toSqlDate(on));
+            st.setDate(2, toSqlDate(on));
+            st.setDate(3, toSqlDate(on));
+            streamRents(st, action);
+        } catch (SQLException ex) {
+            String msg = "Error when retrieving rents active on " + on
+                    + " from db";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    private void streamRents(PreparedStatement st,
+            Consumer<? super Rent> action) throws SQLException {
+        st.setFetchSize(DBUtils.IN_CHUNK_SIZE);
+        try (ResultSet rs = st.executeQuery()) {
+            new RentLoader(carManager, customerManger).stream(rs, action);
+        }
+    }
+
     Rent executeQueryForSingleRent(PreparedStatement st) throws
             SQLException, EntityNotFoundException {
-        ResultSet rs = st.executeQuery();
-        if (rs.next()) {
-            Rent rent = resultSetToRent(rs);
-
+        int phase = tracer.begin("execute");
+        try (ResultSet rs = st.executeQuery()) {
+            tracer.end(phase);
             if (rs.next()) {
-                throw new ServiceFailureException(
-                        "Internal error: More rent with the same id found");
-            }
+                phase = tracer.begin("map");
+                Rent rent = resultSetToRent(rs);
+                tracer.end(phase);
 
-            return rent;
-        } else {
-            return null;
+                if (rs.next()) {
+                    throw new ServiceFailureException(
+                            "Internal error: More rent with the same id found");
+                }
+
+                return rent;
+            } else {
+                return null;
+            }
         }
     }
 
     List<Rent> executeQueryForMultipleRents(PreparedStatement st) throws
             SQLException {
-        ResultSet rs = st.executeQuery();
         List<Rent> result = new ArrayList<>();
-        while (rs.next()) {
-            result.add(resultSetToRent(rs));
+        try (ResultSet rs = st.executeQuery()) {
+            new RentLoader(carManager, customerManger).stream(rs, result::add);
         }
         return result;
     }
@@ -392,7 +834,7 @@ public class RentManagerImpl implements RentManager {
         return rent;
     }
 
-    private static Long rentIdForCar(Connection connection, Car car, LocalDate beginingDate, LocalDate returnDate) {
+    private static Long rentIdForCar(Connection connection, Long carId, LocalDate beginingDate, LocalDate returnDate) {
         try (PreparedStatement st = connection.prepareStatement(
                 "SELECT id FROM rent WHERE (? <= real_return_date OR real_return_date IS NULL) AND (? >= beginning_date OR ? IS NULL) AND car_id = ?"
         )) {
@@ -400,13 +842,13 @@ public class RentManagerImpl implements RentManager {
             st.setDate(1, toSqlDate(beginingDate));
             st.setDate(2, toSqlDate(returnDate));
             st.setDate(3, toSqlDate(returnDate));
-            st.setLong(4, car.getId());
-            ResultSet rs = st.executeQuery();
-
-            if (rs.next()) {
-                return rs.getLong("id");
+            st.setLong(4, carId);
+            try (ResultSet rs = st.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong("id");
+                }
+                return null;
             }
-            return null;
 
         } catch (SQLException ex) {
             Logger.getLogger(CarManagerImpl.class
@@ -417,6 +859,75 @@ public class RentManagerImpl implements RentManager {
         }
     }
 
+    /**
+     * Reads rent in the transaction of given connection, used for state of
+     * rent before change.
+     */
+    private Rent rentById(Connection connection, Long id) throws
+            SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT * FROM rent WHERE id = ?"
+        )) {
+            st.setLong(1, id);
+            List<Rent> result = new ArrayList<>(1);
+            try (ResultSet rs = st.executeQuery()) {
+                new RentLoader(carManager, customerManger).stream(rs,
+                        result::add);
+            }
+            return result.isEmpty() ? null : result.get(0);
+        }
+    }
+
+    /**
+     * Reads rents in the transaction of given connection, used for state of
+     * rents before batch change, also by {@link RentArchiver}.
+     */
+    Map<Long, Rent> rentsByIds(Connection connection,
+            Collection<Long> ids) throws SQLException {
+        Map<Long, Rent> result = new HashMap<>();
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT * FROM rent WHERE " + DBUtils.inCondition("id")
+        )) {
+            RentLoader loader = new RentLoader(carManager, customerManger);
+            for (List<Long> chunk : DBUtils.chunks(ids)) {
+                DBUtils.setInParameters(st, 1, chunk);
+                try (ResultSet rs = st.executeQuery()) {
+                    loader.stream(rs, rent -> result.put(rent.getId(), rent));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Dates of stored rent needed to decide about its return.
+     */
+    private static class RentDates {
+
+        private final long carId;
+        private final LocalDate beginningDate;
+        private final LocalDate realReturnDate;
+
+        RentDates(long carId, LocalDate beginningDate,
+                LocalDate realReturnDate) {
+            this.carId = carId;
+            this.beginningDate = beginningDate;
+            this.realReturnDate = realReturnDate;
+        }
+    }
+
+    private static Rent copy(Rent rent) {
+        Rent result = new Rent();
+        result.setId(rent.getId());
+        result.setCar(rent.getCar());
+        result.setCustomer(rent.getCustomer());
+        result.setPricePerDay(rent.getPricePerDay());
+        result.setBeginningDate(rent.getBeginningDate());
+        result.setExpectedReturnDate(rent.getExpectedReturnDate());
+        result.setRealReturnDate(rent.getRealReturnDate());
+        return result;
+    }
+
     private static Date toSqlDate(LocalDate localDate) {
         return localDate == null ? null : Date.valueOf(localDate);
     }
@@ -0,0 +1,231 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityNotFoundException;
+import com.balkurcarrental.common.Flow;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Publisher of rents read by one query. Every subscriber runs the query
+ * separately. The query is executed on the first request and rows are read
+ * from the result set only as requested by the subscriber, at most
+ * {@link DBUtils#IN_CHUNK_SIZE} of them are hydrated together. The connection
+ * is released when all rows are delivered, the subscription is cancelled or
+ * reading fails.
+ *
+ * Rents are read and delivered in the thread which calls
+ * {@link Flow.Subscription#request(long)}. Request called from
+ * {@link Flow.Subscriber#onNext(Object)} only adds to demand, which is then
+ * served by the outer call, so the stack doesn't grow.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+class RentPublisher implements Flow.Publisher<Rent> {
+
+    private static final Logger logger = Logger.getLogger(
+            RentPublisher.class.getName());
+
+    private final DataSource dataSource;
+    private final CarManager carManager;
+    private final CustomerManager customerManager;
+    private final String sql;
+    private final Parameters parameters;
+    private final String description;
+
+    /**
+     * Creates publisher.
+     *
+     * @param sql query selecting all columns of rent table
+     * @param parameters sets parameters of the query
+     * @param description description of rents used in error messages
+     */
+    RentPublisher(DataSource dataSource, CarManager carManager,
+            CustomerManager customerManager, String sql, Parameters parameters,
+            String description) {
+        this.dataSource = dataSource;
+        this.carManager = carManager;
+        this.customerManager = customerManager;
+        this.sql = sql;
+        this.parameters = parameters;
+        this.description = description;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Rent> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber is null");
+        }
+        subscriber.onSubscribe(new RentSubscription(subscriber));
+    }
+
+    /**
+     * Sets parameters of prepared query.
+     */
+    @FunctionalInterface
+    interface Parameters {
+
+        void set(PreparedStatement st) throws SQLException;
+    }
+
+    private class RentSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Rent> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private final Queue<Rent> hydrated = new ArrayDeque<>();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        // accessed only by the thread which holds work
+        private boolean done;
+        private RentLoader loader;
+        private Connection connection;
+        private PreparedStatement st;
+        private ResultSet rs;
+        private boolean exhausted;
+
+        RentSubscription(Flow.Subscriber<? super Rent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException(
+                        "Requested number of rents is not positive: " + n);
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Delivers requested rents. Only one thread drains at a time, others
+         * only record that there is more work.
+         */
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!done) {
+                    deliver();
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            try {
+                long emitted = 0;
+                long demand = requested.get();
+                while (true) {
+                    if (cancelled) {
+                        finish();
+                        return;
+                    }
+                    if (invalidRequest != null) {
+                        finish();
+                        subscriber.onError(invalidRequest);
+                        return;
+                    }
+                    if (hydrated.isEmpty() && exhausted) {
+                        // completion doesn't need demand
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (emitted == demand) {
+                        demand = demand == Long.MAX_VALUE ? demand
+                                : requested.addAndGet(-emitted);
+                        emitted = 0;
+                        if (demand == 0) {
+                            return;
+                        }
+                    }
+                    if (hydrated.isEmpty() && !read(demand - emitted)) {
+                        return;
+                    }
+                    if (!hydrated.isEmpty()) {
+                        subscriber.onNext(hydrated.poll());
+                        emitted++;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                // subscriber broke the contract by throwing
+                finish();
+                throw ex;
+            }
+        }
+
+        /**
+         * Reads and hydrates at most given number of rents, failure is
+         * signalled to the subscriber.
+         *
+         * @return false when reading failed
+         */
+        private boolean read(long demand) {
+            try {
+                if (rs == null) {
+                    loader = new RentLoader(carManager, customerManager);
+                    connection = dataSource.getConnection();
+                    st = connection.prepareStatement(sql);
+                    parameters.set(st);
+                    st.setFetchSize(DBUtils.IN_CHUNK_SIZE);
+                    rs = st.executeQuery();
+                }
+                int max = (int) Math.min(demand, DBUtils.IN_CHUNK_SIZE);
+                exhausted = !loader.read(rs, max, hydrated::add);
+                if (exhausted) {
+                    release();
+                }
+                return true;
+            } catch (SQLException ex) {
+                String msg = "Error when retrieving " + description
+                        + " from db";
+                logger.log(Level.SEVERE, msg, ex);
+                finish();
+                subscriber.onError(new ServiceFailureException(msg, ex));
+                return false;
+            } catch (ServiceFailureException | EntityNotFoundException ex) {
+                finish();
+                subscriber.onError(ex);
+                return false;
+            }
+        }
+
+        private void finish() {
+            done = true;
+            hydrated.clear();
+            release();
+        }
+
+        private void release() {
+            if (connection != null) {
+                DBUtils.closeQuietly(connection, st);
+                connection = null;
+                st = null;
+            }
+        }
+    }
+}
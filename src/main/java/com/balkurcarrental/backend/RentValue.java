@@ -0,0 +1,210 @@
+package com.balkurcarrental.backend;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Immutable value counterpart of {@link Rent}, its car and customer are
+ * values too, so the whole graph is immutable. It is equal to other value
+ * only when all attributes are equal, hash code is computed once when it is
+ * built.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public final class RentValue {
+
+    private final Long id;
+    private final CustomerValue customer;
+    private final CarValue car;
+    private final int pricePerDay;
+    private final LocalDate beginningDate;
+    private final LocalDate expectedReturnDate;
+    private final LocalDate realReturnDate;
+    private final int hash;
+
+    private RentValue(Builder builder) {
+        this.id = builder.id;
+        this.customer = builder.customer;
+        this.car = builder.car;
+        this.pricePerDay = builder.pricePerDay;
+        this.beginningDate = builder.beginningDate;
+        this.expectedReturnDate = builder.expectedReturnDate;
+        this.realReturnDate = builder.realReturnDate;
+        this.hash = Objects.hash(id, customer, car, pricePerDay, beginningDate,
+                expectedReturnDate, realReturnDate);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates value with attributes of given rent, its car and customer are
+     * converted to values as well.
+     *
+     * @param rent rent to copy, may be null
+     * @return value or null when rent is null
+     */
+    public static RentValue of(Rent rent) {
+        if (rent == null) {
+            return null;
+        }
+        return builder().id(rent.getId())
+                .customer(CustomerValue.of(rent.getCustomer()))
+                .car(CarValue.of(rent.getCar()))
+                .pricePerDay(rent.getPricePerDay())
+                .beginningDate(rent.getBeginningDate())
+                .expectedReturnDate(rent.getExpectedReturnDate())
+                .realReturnDate(rent.getRealReturnDate())
+                .build();
+    }
+
+    /**
+     * Creates new mutable rent with attributes of this value, with new
+     * mutable car and customer.
+     *
+     * @return new rent
+     */
+    public Rent toRent() {
+        Rent rent = new Rent();
+        rent.setId(id);
+        rent.setCustomer(customer == null ? null : customer.toCustomer());
+        rent.setCar(car == null ? null : car.toCar());
+        rent.setPricePerDay(pricePerDay);
+        rent.setBeginningDate(beginningDate);
+        rent.setExpectedReturnDate(expectedReturnDate);
+        rent.setRealReturnDate(realReturnDate);
+        return rent;
+    }
+
+    /**
+     * Creates builder with attributes of this value, for building changed
+     * copy.
+     *
+     * @return new builder
+     */
+    public Builder toBuilder() {
+        return builder().id(id).customer(customer).car(car).pricePerDay(
+                pricePerDay).beginningDate(beginningDate).expectedReturnDate(
+                expectedReturnDate).realReturnDate(realReturnDate);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public CustomerValue getCustomer() {
+        return customer;
+    }
+
+    public CarValue getCar() {
+        return car;
+    }
+
+    public int getPricePerDay() {
+        return pricePerDay;
+    }
+
+    public LocalDate getBeginningDate() {
+        return beginningDate;
+    }
+
+    public LocalDate getExpectedReturnDate() {
+        return expectedReturnDate;
+    }
+
+    public LocalDate getRealReturnDate() {
+        return realReturnDate;
+    }
+
+    @Override
+    public String toString() {
+        return "RentValue{"
+                + "id=" + id
+                + ", customer=" + customer
+                + ", car=" + car
+                + ", pricePerDay=" + pricePerDay
+                + ", beginningDate=" + beginningDate
+                + ", expectedReturnDate=" + expectedReturnDate
+                + ", realReturnDate=" + realReturnDate
+                + "}";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RentValue)) {
+            return false;
+        }
+        final RentValue other = (RentValue) obj;
+        return hash == other.hash
+                && pricePerDay == other.pricePerDay
+                && Objects.equals(this.id, other.id)
+                && Objects.equals(this.customer, other.customer)
+                && Objects.equals(this.car, other.car)
+                && Objects.equals(this.beginningDate, other.beginningDate)
+                && Objects.equals(this.expectedReturnDate,
+                        other.expectedReturnDate)
+                && Objects.equals(this.realReturnDate, other.realReturnDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    public static final class Builder {
+
+        private Long id;
+        private CustomerValue customer;
+        private CarValue car;
+        private int pricePerDay;
+        private LocalDate beginningDate;
+        private LocalDate expectedReturnDate;
+        private LocalDate realReturnDate;
+
+        private Builder() {
+        }
+
+        public Builder id(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder customer(CustomerValue customer) {
+            this.customer = customer;
+            return this;
+        }
+
+        public Builder car(CarValue car) {
+            this.car = car;
+            return this;
+        }
+
+        public Builder pricePerDay(int pricePerDay) {
+            this.pricePerDay = pricePerDay;
+            return this;
+        }
+
+        public Builder beginningDate(LocalDate beginningDate) {
+            this.beginningDate = beginningDate;
+            return this;
+        }
+
+        public Builder expectedReturnDate(LocalDate expectedReturnDate) {
+            this.expectedReturnDate = expectedReturnDate;
+            return this;
+        }
+
+        public Builder realReturnDate(LocalDate realReturnDate) {
+            this.realReturnDate = realReturnDate;
+            return this;
+        }
+
+        public RentValue build() {
+            return new RentValue(this);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Monthly reports of utilization, revenue and durations of rents, including
+ * archived rents. Cars are partitioned into ranges of ids with similar number
+ * of cars, rents of every range are read by its own connection and
+ * aggregated in a {@link ForkJoinPool}, partial aggregates are merged by
+ * adding them.
+ *
+ * Reading of ranges blocks on JDBC, so it is run as
+ * {@link ForkJoinPool.ManagedBlocker} and the pool may start compensating
+ * threads meanwhile. The data source should be pooled, every range takes a
+ * connection. Ranges are read in separate transactions, so rents changed
+ * while the report is computed may be seen in any state.
+ *
+ * Rent books its car from beginning date to real return date, both
+ * inclusive, unfinished rent until the report day. Rent is counted as begun
+ * in the month of its beginning and returned in the month of its return.
+ * Every existing car is counted as available for all days of months, also
+ * before it was created.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class ReportEngine {
+
+    private static final Logger logger = Logger.getLogger(
+            ReportEngine.class.getName());
+
+    /**
+     * Number of ranges per thread of the pool, so threads which finish early
+     * can steal work from others.
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private static final String RENTS
+            = "SELECT price_per_day, beginning_date, real_return_date FROM rent"
+            + " WHERE car_id > ? AND car_id <= ? AND beginning_date <= ? AND (real_return_date IS NULL OR real_return_date >= ?)"
+            + " UNION ALL SELECT price_per_day, beginning_date, real_return_date FROM rent_archive"
+            + " WHERE car_id > ? AND car_id <= ? AND beginning_date <= ? AND real_return_date >= ?";
+
+    private DataSource dataSource;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int ranges;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets pool computing reports, the common pool is used by default.
+     *
+     * @param pool pool
+     * @throws IllegalArgumentException when pool is null
+     */
+    public void setPool(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool is null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Sets number of ranges of cars read in parallel. By default there are
+     * {@value #RANGES_PER_THREAD} ranges per thread of the pool.
+     *
+     * @param ranges number of ranges, 0 for default
+     * @throws IllegalArgumentException when ranges is negative
+     */
+    public void setRanges(int ranges) {
+        if (ranges < 0) {
+            throw new IllegalArgumentException("ranges is negative");
+        }
+        this.ranges = ranges;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Computes reports of given months. Days after given day are not
+     * reported.
+     *
+     * @param from first month
+     * @param to last month
+     * @param asOf report day, unfinished rents are counted until it
+     * @return reports keyed by month in chronological order
+     * @throws IllegalArgumentException when any argument is null or to is
+     * before from
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public Map<YearMonth, MonthlyReport> monthlyReports(YearMonth from,
+            YearMonth to, LocalDate asOf) {
+        checkDataSource();
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from or to is null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to is before from");
+        }
+        if (asOf == null) {
+            throw new IllegalArgumentException("asOf is null");
+        }
+
+        Period period = new Period(from, to, asOf);
+        List<Long> carIds = carIds();
+        Partial total;
+        if (period.isEmpty()) {
+            total = period.newPartial();
+        } else {
+            long[] bounds = bounds(carIds);
+            total = pool.invoke(new RangeTask(period, bounds, 0,
+                    bounds.length - 1));
+        }
+        return toReports(period, total, carIds.size());
+    }
+
+    private List<Long> carIds() {
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            st = connection.prepareStatement(
+                    "SELECT id FROM car ORDER BY id"
+            );
+            List<Long> ids = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong("id"));
+                }
+            }
+            return ids;
+        } catch (SQLException ex) {
+            String msg = "Error when reading ids of cars";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    /**
+     * Splits car ids into ranges with similar number of cars. Range i
+     * contains cars with bounds[i] &lt; id &lt;= bounds[i + 1], the first
+     * and the last range are open, so rents of deleted cars are counted too.
+     */
+    private long[] bounds(List<Long> carIds) {
+        int count = ranges > 0 ? ranges : RANGES_PER_THREAD * pool.
+                getParallelism();
+        count = Math.max(1, Math.min(count, carIds.size()));
+        long[] bounds = new long[count + 1];
+        bounds[0] = Long.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            bounds[i] = carIds.get((int) ((long) i * carIds.size() / count)
+                    - 1);
+        }
+        bounds[count] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    private static Map<YearMonth, MonthlyReport> toReports(Period period,
+            Partial total, int cars) {
+        Map<YearMonth, MonthlyReport> reports = new LinkedHashMap<>();
+        for (int i = 0; i < period.months; i++) {
+            YearMonth month = period.from.plusMonths(i);
+            long days = Math.max(0, ChronoUnit.DAYS.between(month.atDay(1),
+                    period.last) + 1);
+            reports.put(month, new MonthlyReport(month, cars * Math.min(days,
+                    month.lengthOfMonth()), total.rentedDays[i],
+                    total.revenue[i], total.begun[i], total.returned[i],
+                    total.returnedDays[i]));
+        }
+        return reports;
+    }
+
+    /**
+     * Reported months and their last reported day.
+     */
+    private static class Period {
+
+        private final YearMonth from;
+        private final int months;
+        private final LocalDate first;
+        private final LocalDate last;
+
+        Period(YearMonth from, YearMonth to, LocalDate asOf) {
+            this.from = from;
+            this.months = (int) from.until(to, ChronoUnit.MONTHS) + 1;
+            this.first = from.atDay(1);
+            LocalDate end = to.atEndOfMonth();
+            this.last = asOf.isBefore(end) ? asOf : end;
+        }
+
+        boolean isEmpty() {
+            return last.isBefore(first);
+        }
+
+        int index(LocalDate day) {
+            return (int) from.until(YearMonth.from(day), ChronoUnit.MONTHS);
+        }
+
+        Partial newPartial() {
+            return new Partial(months);
+        }
+    }
+
+    /**
+     * Aggregates of rents of some ranges, indexed by month.
+     */
+    private static class Partial {
+
+        private final long[] rentedDays;
+        private final long[] revenue;
+        private final long[] begun;
+        private final long[] returned;
+        private final long[] returnedDays;
+
+        Partial(int months) {
+            rentedDays = new long[months];
+            revenue = new long[months];
+            begun = new long[months];
+            returned = new long[months];
+            returnedDays = new long[months];
+        }
+
+        void add(Period period, int price, LocalDate beginning,
+                LocalDate realReturn) {
+            LocalDate end = realReturn == null || realReturn.isAfter(
+                    period.last) ? period.last : realReturn;
+            LocalDate day = beginning.isBefore(period.first) ? period.first
+                    : beginning;
+            while (!day.isAfter(end)) {
+                int month = period.index(day);
+                LocalDate monthEnd = YearMonth.from(day).atEndOfMonth();
+                LocalDate last = monthEnd.isBefore(end) ? monthEnd : end;
+                long days = ChronoUnit.DAYS.between(day, last) + 1;
+                rentedDays[month] += days;
+                revenue[month] += days * price;
+                day = last.plusDays(1);
+            }
+            if (!beginning.isBefore(period.first)) {
+                begun[period.index(beginning)]++;
+            }
+            if (realReturn != null && !realReturn.isBefore(period.first)
+                    && !realReturn.isAfter(period.last)) {
+                int month = period.index(realReturn);
+                returned[month]++;
+                returnedDays[month] += ChronoUnit.DAYS.between(beginning,
+                        realReturn) + 1;
+            }
+        }
+
+        Partial merge(Partial other) {
+            for (int i = 0; i < rentedDays.length; i++) {
+                rentedDays[i] += other.rentedDays[i];
+                revenue[i] += other.revenue[i];
+                begun[i] += other.begun[i];
+                returned[i] += other.returned[i];
+                returnedDays[i] += other.returnedDays[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Aggregates ranges [first, end) of bounds, ranges are split in halves
+     * until every task reads one range.
+     */
+    private class RangeTask extends RecursiveTask<Partial> {
+
+        private final Period period;
+        private final long[] bounds;
+        private final int first;
+        private final int end;
+
+        RangeTask(Period period, long[] bounds, int first, int end) {
+            this.period = period;
+            this.bounds = bounds;
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (end - first == 1) {
+                RangeReader reader = new RangeReader(period, bounds[first],
+                        bounds[end]);
+                try {
+                    ForkJoinPool.managedBlock(reader);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ServiceFailureException(
+                            "Report was interrupted", ex);
+                }
+                return reader.result;
+            }
+            int middle = (first + end) >>> 1;
+            RangeTask left = new RangeTask(period, bounds, first, middle);
+            left.fork();
+            Partial right = new RangeTask(period, bounds, middle, end).
+                    compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * Reads rents of cars with lower &lt; id &lt;= upper.
+     */
+    private class RangeReader implements ForkJoinPool.ManagedBlocker {
+
+        private final Period period;
+        private final long lower;
+        private final long upper;
+        private Partial result;
+
+        RangeReader(Period period, long lower, long upper) {
+            this.period = period;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return result != null;
+        }
+
+        @Override
+        public boolean block() {
+            Partial partial = period.newPartial();
+            Connection connection = null;
+            PreparedStatement st = null;
+            try {
+                connection = dataSource.getConnection();
+                st = connection.prepareStatement(RENTS);
+                Date first = Date.valueOf(period.first);
+                Date last = Date.valueOf(period.last);
+                for (int offset = 0; offset <= 4; offset += 4) {
+                    st.setLong(offset + 1, lower);
+                    st.setLong(offset + 2, upper);
+                    st.setDate(offset + 3, last);
+                    st.setDate(offset + 4, first);
+                }
+                st.setFetchSize(1000);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        Date realReturn = rs.getDate("real_return_date");
+                        partial.add(period, rs.getInt("price_per_day"), rs.
+                                getDate("beginning_date").toLocalDate(),
+                                realReturn == null ? null : realReturn.
+                                        toLocalDate());
+                    }
+                }
+            } catch (SQLException ex) {
+                String msg = "Error when reading rents of cars with id in ("
+                        + lower + ", " + upper + "]";
+                logger.log(Level.SEVERE, msg, ex);
+                throw new ServiceFailureException(msg, ex);
+            } finally {
+                DBUtils.closeQuietly(connection, st);
+            }
+            result = partial;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.balkurcarrental.backend;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Change of price per day applied by {@link RentManager#repriceRents} to all
+ * matching rents. Change is either percentage or absolute amount, criteria
+ * which are not set match any rent.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class Repricing {
+
+    private final int percent;
+    private final int amount;
+    private List<Long> carIds;
+    private String brand;
+    private LocalDate beginningFrom;
+    private LocalDate beginningTo;
+
+    private Repricing(int percent, int amount) {
+        this.percent = percent;
+        this.amount = amount;
+    }
+
+    /**
+     * Creates repricing which changes price by given percentage, result is
+     * rounded half up.
+     *
+     * @param percent change in percents, for example -10 for discount
+     * @return repricing matching all rents
+     * @throws IllegalArgumentException when percent is not greater than -100
+     */
+    public static Repricing byPercent(int percent) {
+        if (percent <= -100) {
+            throw new IllegalArgumentException(
+                    "percent is not greater than -100");
+        }
+        return new Repricing(percent, 0);
+    }
+
+    /**
+     * Creates repricing which adds given amount to price.
+     *
+     * @param amount amount to add, negative for discount
+     * @return repricing matching all rents
+     */
+    public static Repricing byAmount(int amount) {
+        return new Repricing(0, amount);
+    }
+
+    /**
+     * Limits repricing to rents of given cars.
+     *
+     * @param carIds ids of cars
+     * @return this repricing
+     * @throws IllegalArgumentException when carIds is null or contains null
+     */
+    public Repricing forCars(Collection<Long> carIds) {
+        if (carIds == null || carIds.contains(null)) {
+            throw new IllegalArgumentException("carIds is null or contains null");
+        }
+        this.carIds = Collections.unmodifiableList(new ArrayList<>(carIds));
+        return this;
+    }
+
+    /**
+     * Limits repricing to rents of cars of given brand.
+     *
+     * @param brand brand of cars
+     * @return this repricing
+     * @throws IllegalArgumentException when brand is null
+     */
+    public Repricing forBrand(String brand) {
+        if (brand == null) {
+            throw new IllegalArgumentException("brand is null");
+        }
+        this.brand = brand;
+        return this;
+    }
+
+    /**
+     * Limits repricing to rents beginning in given period.
+     *
+     * @param from first beginning day, null for no limit
+     * @param to last beginning day, null for no limit
+     * @return this repricing
+     * @throws IllegalArgumentException when to is before from
+     */
+    public Repricing beginningBetween(LocalDate from, LocalDate to) {
+        if (from != null && to != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("to is before from");
+        }
+        this.beginningFrom = from;
+        this.beginningTo = to;
+        return this;
+    }
+
+    public int getPercent() {
+        return percent;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public List<Long> getCarIds() {
+        return carIds;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public LocalDate getBeginningFrom() {
+        return beginningFrom;
+    }
+
+    public LocalDate getBeginningTo() {
+        return beginningTo;
+    }
+
+    @Override
+    public String toString() {
+        return "Repricing{"
+                + "percent=" + percent
+                + ", amount=" + amount
+                + ", carIds=" + carIds
+                + ", brand=" + brand
+                + ", beginningFrom=" + beginningFrom
+                + ", beginningTo=" + beginningTo
+                + "}";
+    }
+}
@@ -0,0 +1,26 @@
+package com.balkurcarrental.backend;
+
+/**
+ * Outcome of return of one rent in {@link RentManager#returnCars}.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public enum ReturnOutcome {
+
+    /**
+     * Real return date was stored.
+     */
+    RETURNED,
+    /**
+     * Rent with given id does not exist.
+     */
+    NOT_FOUND,
+    /**
+     * Return date is before beginning date of the rent.
+     */
+    INVALID_DATE,
+    /**
+     * Return date extends the rent into another rent of the same car.
+     */
+    CONFLICT
+}
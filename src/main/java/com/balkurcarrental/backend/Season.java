@@ -0,0 +1,90 @@
+package com.balkurcarrental.backend;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.Objects;
+
+/**
+ * Season repeating every year, for example summer holidays or christmas.
+ * Season can span over new year, so it can start on December 20 and end on
+ * January 10.
+ *
+ * @author Šimon Baláž [433272], Lukáš Kurčík [445742]
+ */
+public class Season {
+
+    private final String name;
+    private final MonthDay start;
+    private final MonthDay end;
+
+    /**
+     * Creates season.
+     *
+     * @param name name of season
+     * @param start first day of season
+     * @param end last day of season, inclusive
+     * @throws IllegalArgumentException when any argument is null
+     */
+    public Season(String name, MonthDay start, MonthDay end) {
+        if (name == null || start == null || end == null) {
+            throw new IllegalArgumentException("season attribute is null");
+        }
+        this.name = name;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MonthDay getStart() {
+        return start;
+    }
+
+    public MonthDay getEnd() {
+        return end;
+    }
+
+    /**
+     * Checks if given date is in this season.
+     *
+     * @param date date to check
+     * @return true when date is in season
+     */
+    public boolean contains(LocalDate date) {
+        MonthDay day = MonthDay.from(date);
+        if (!start.isAfter(end)) {
+            return !day.isBefore(start) && !day.isAfter(end);
+        }
+        return !day.isBefore(start) || !day.isAfter(end);
+    }
+
+    @Override
+    public String toString() {
+        return "Season{"
+                + "name=\'" + name
+                + "\', start=" + start
+                + ", end=" + end
+                + "}";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final Season other = (Season) obj;
+        return Objects.equals(this.name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 97 * hash + Objects.hashCode(this.name);
+        return hash;
+    }
+}
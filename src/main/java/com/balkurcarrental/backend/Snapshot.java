@@ -0,0 +1,53 @@
+package com.balkurcarrental.backend;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Content of snapshot file written by {@link SnapshotService}. Rents refer to
+ * the same car and customer instances which are in lists of cars and
+ * customers.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class Snapshot {
+
+    private final HighWaterMark highWaterMark;
+    private final List<Car> cars;
+    private final List<Customer> customers;
+    private final List<Rent> rents;
+
+    public Snapshot(HighWaterMark highWaterMark, List<Car> cars,
+            List<Customer> customers, List<Rent> rents) {
+        this.highWaterMark = highWaterMark;
+        this.cars = Collections.unmodifiableList(cars);
+        this.customers = Collections.unmodifiableList(customers);
+        this.rents = Collections.unmodifiableList(rents);
+    }
+
+    /**
+     * Returns high-water mark of the database at the time of snapshot.
+     *
+     * @return high-water mark
+     */
+    public HighWaterMark getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public List<Car> getCars() {
+        return cars;
+    }
+
+    public List<Customer> getCustomers() {
+        return customers;
+    }
+
+    public List<Rent> getRents() {
+        return rents;
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot{" + highWaterMark + "}";
+    }
+}
@@ -0,0 +1,458 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.sql.DataSource;
+
+/**
+ * Snapshots of cars, customers and rents for warm starts. Snapshot is taken
+ * from the database, written sequentially into one file and on the next start
+ * mapped back into memory to fill {@link CustomerSearchIndex} and
+ * {@link CarAvailabilityCalendar} without reading the tables.
+ *
+ * Snapshot file starts with magic number and format version, followed by
+ * {@link EntityCodec} records of all cars, customers and rents. Rents contain
+ * only ids of their car and customer. The file ends with
+ * {@link HighWaterMark} of the snapshot and CRC32 of everything before it.
+ *
+ * Snapshot is considered current when the database has the same high-water
+ * mark, so inserted and deleted rows are detected but updates of existing
+ * rows are not. Snapshots are therefore meant for starts of nodes, before
+ * they accept writes, while indexes are then kept in sync by events.
+ *
+ * @author Lukáš Kurčík [445742]
+ */
+public class SnapshotService {
+
+    private static final Logger logger = Logger.getLogger(
+            SnapshotService.class.getName());
+
+    static final int MAGIC = 0x424B534E;
+    static final byte FORMAT = 1;
+
+    private static final int HEADER_SIZE = 5;
+    private static final int TRAILER_SIZE = 6 * 8 + 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private DataSource dataSource;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private void checkDataSource() {
+        if (dataSource == null) {
+            throw new IllegalStateException("DataSource is not set");
+        }
+    }
+
+    /**
+     * Reads all cars, customers and rents from the database. Rows inserted
+     * while the snapshot is taken are not included.
+     *
+     * @return snapshot of the database
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public Snapshot take() {
+        checkDataSource();
+
+        Connection connection = null;
+        PreparedStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            HighWaterMark mark = readHighWaterMark(connection);
+
+            Map<Long, Car> cars = new HashMap<>();
+            List<Car> carList = new ArrayList<>();
+            st = connection.prepareStatement(
+                    "SELECT id, brand, registration_number FROM car WHERE id <= ? ORDER BY id");
+            st.setLong(1, mark.getMaxCarId());
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Car car = new Car();
+                    car.setId(rs.getLong("id"));
+                    car.setBrand(rs.getString("brand"));
+                    car.setRegistrationNumber(rs.getString(
+                            "registration_number"));
+                    cars.put(car.getId(), car);
+                    carList.add(car);
+                }
+            }
+            st.close();
+
+            Map<Long, Customer> customers = new HashMap<>();
+            List<Customer> customerList = new ArrayList<>();
+            st = connection.prepareStatement(
+                    "SELECT id, name, surname, phone_number FROM customer WHERE id <= ? ORDER BY id");
+            st.setLong(1, mark.getMaxCustomerId());
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Customer customer = new Customer();
+                    customer.setId(rs.getLong("id"));
+                    customer.setName(rs.getString("name"));
+                    customer.setSurname(rs.getString("surname"));
+                    customer.setPhoneNumber(rs.getString("phone_number"));
+                    customers.put(customer.getId(), customer);
+                    customerList.add(customer);
+                }
+            }
+            st.close();
+
+            List<Rent> rents = new ArrayList<>();
+            st = connection.prepareStatement(
+                    "SELECT * FROM rent WHERE id <= ? ORDER BY id");
+            st.setLong(1, mark.getMaxRentId());
+            st.setFetchSize(1000);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Rent rent = new Rent();
+                    rent.setId(rs.getLong("id"));
+                    rent.setCar(reference(cars, rs.getLong("car_id"),
+                            Car::new, Car::setId));
+                    rent.setCustomer(reference(customers, rs.getLong(
+                            "customer_id"), Customer::new, Customer::setId));
+                    rent.setPricePerDay(rs.getInt("price_per_day"));
+                    rent.setBeginningDate(rs.getDate("beginning_date").
+                            toLocalDate());
+                    Date expected = rs.getDate("expected_return_date");
+                    rent.setExpectedReturnDate(expected == null ? null
+                            : expected.toLocalDate());
+                    Date real = rs.getDate("real_return_date");
+                    rent.setRealReturnDate(real == null ? null : real.
+                            toLocalDate());
+                    rents.add(rent);
+                }
+            }
+
+            // rows deleted meanwhile are not counted in the mark
+            HighWaterMark taken = new HighWaterMark(mark.getMaxCarId(), mark.
+                    getMaxCustomerId(), mark.getMaxRentId(), carList.size(),
+                    customerList.size(), rents.size());
+            return new Snapshot(taken, carList, customerList, rents);
+        } catch (SQLException ex) {
+            String msg = "Error when taking snapshot";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+    }
+
+    /**
+     * Writes snapshot into file. The file is written under temporary name and
+     * then moved in place, so readers never see partially written snapshot.
+     *
+     * @param snapshot snapshot to write
+     * @param file snapshot file
+     * @throws IllegalArgumentException when snapshot or file is null
+     * @throws IOException when writing fails
+     */
+    public void write(Snapshot snapshot, Path file) throws IOException {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("snapshot is null");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("file is null");
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            out.write(b -> b.putInt(MAGIC).put(FORMAT));
+            for (Car car : snapshot.getCars()) {
+                out.write(b -> EntityCodec.writeCar(b, car));
+            }
+            for (Customer customer : snapshot.getCustomers()) {
+                out.write(b -> EntityCodec.writeCustomer(b, customer));
+            }
+            for (Rent rent : snapshot.getRents()) {
+                Rent reference = new Rent();
+                reference.setId(rent.getId());
+                reference.setCar(new Car());
+                reference.getCar().setId(rent.getCar().getId());
+                reference.setCustomer(new Customer());
+                reference.getCustomer().setId(rent.getCustomer().getId());
+                reference.setPricePerDay(rent.getPricePerDay());
+                reference.setBeginningDate(rent.getBeginningDate());
+                reference.setExpectedReturnDate(rent.getExpectedReturnDate());
+                reference.setRealReturnDate(rent.getRealReturnDate());
+                out.write(b -> EntityCodec.writeRent(b, reference));
+            }
+            HighWaterMark mark = snapshot.getHighWaterMark();
+            out.write(b -> b.putLong(mark.getMaxCarId())
+                    .putLong(mark.getMaxCustomerId())
+                    .putLong(mark.getMaxRentId())
+                    .putLong(mark.getCars())
+                    .putLong(mark.getCustomers())
+                    .putLong(mark.getRents()));
+            out.finish();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads snapshot from file. The file is mapped into memory and its
+     * checksum is verified before records are decoded.
+     *
+     * @param file snapshot file
+     * @return read snapshot
+     * @throws IllegalArgumentException when file is null
+     * @throws StreamCorruptedException when file is not valid snapshot
+     * @throws IOException when reading fails
+     */
+    public Snapshot read(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null");
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException("Invalid size of snapshot "
+                        + file + ": " + size);
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, size);
+            int checksumPosition = (int) size - 4;
+            CRC32 crc = new CRC32();
+            ByteBuffer checked = buffer.duplicate();
+            checked.limit(checksumPosition);
+            crc.update(checked);
+            if ((int) crc.getValue() != buffer.getInt(checksumPosition)) {
+                throw new StreamCorruptedException("Checksum of snapshot "
+                        + file + " doesn't match");
+            }
+            if (buffer.getInt() != MAGIC || buffer.get() != FORMAT) {
+                throw new StreamCorruptedException(file
+                        + " is not snapshot of supported format");
+            }
+
+            buffer.position((int) size - TRAILER_SIZE);
+            HighWaterMark mark = new HighWaterMark(buffer.getLong(),
+                    buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    buffer.getLong(), buffer.getLong());
+            buffer.position(HEADER_SIZE).limit((int) size - TRAILER_SIZE);
+            return decode(buffer, mark, file);
+        }
+    }
+
+    private static Snapshot decode(ByteBuffer buffer, HighWaterMark mark,
+            Path file) throws StreamCorruptedException {
+        Map<Long, Car> cars = new HashMap<>();
+        Map<Long, Customer> customers = new HashMap<>();
+        List<Car> carList = new ArrayList<>();
+        List<Customer> customerList = new ArrayList<>();
+        List<Rent> rents = new ArrayList<>();
+        try {
+            while (buffer.hasRemaining()) {
+                Object record = EntityCodec.read(buffer);
+                if (record instanceof Car) {
+                    Car car = (Car) record;
+                    cars.put(car.getId(), car);
+                    carList.add(car);
+                } else if (record instanceof Customer) {
+                    Customer customer = (Customer) record;
+                    customers.put(customer.getId(), customer);
+                    customerList.add(customer);
+                } else {
+                    Rent rent = (Rent) record;
+                    rent.setCar(cars.getOrDefault(rent.getCar().getId(), rent.
+                            getCar()));
+                    rent.setCustomer(customers.getOrDefault(rent.getCustomer().
+                            getId(), rent.getCustomer()));
+                    rents.add(rent);
+                }
+            }
+        } catch (IllegalArgumentException | BufferUnderflowException ex) {
+            StreamCorruptedException corrupted = new StreamCorruptedException(
+                    "Invalid record in snapshot " + file);
+            corrupted.initCause(ex);
+            throw corrupted;
+        }
+        if (carList.size() != mark.getCars() || customerList.size() != mark.
+                getCustomers() || rents.size() != mark.getRents()) {
+            throw new StreamCorruptedException("Snapshot " + file
+                    + " doesn't contain all records of " + mark);
+        }
+        return new Snapshot(mark, carList, customerList, rents);
+    }
+
+    /**
+     * Checks if snapshot matches the database. See {@link HighWaterMark} for
+     * changes which are detected.
+     *
+     * @param snapshot snapshot to check
+     * @return true when the database has the same high-water mark
+     * @throws IllegalArgumentException when snapshot is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public boolean isCurrent(Snapshot snapshot) {
+        checkDataSource();
+        if (snapshot == null) {
+            throw new IllegalArgumentException("snapshot is null");
+        }
+
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            return snapshot.getHighWaterMark().equals(readHighWaterMark(
+                    connection));
+        } catch (SQLException ex) {
+            String msg = "Error when reading high-water mark";
+            logger.log(Level.SEVERE, msg, ex);
+            throw new ServiceFailureException(msg, ex);
+        } finally {
+            DBUtils.closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Fills index and calendar from snapshot file when it is current.
+     * Otherwise the snapshot is taken from the database and written into the
+     * file for the next start. Failure to write the file is only logged.
+     *
+     * @param file snapshot file, it doesn't have to exist
+     * @param searchIndex index to fill, null to skip
+     * @param calendar calendar to fill, null to skip
+     * @return used snapshot
+     * @throws IllegalArgumentException when file is null
+     * @throws ServiceFailureException when db operation fails.
+     */
+    public Snapshot warmUp(Path file, CustomerSearchIndex searchIndex,
+            CarAvailabilityCalendar calendar) {
+        checkDataSource();
+        if (file == null) {
+            throw new IllegalArgumentException("file is null");
+        }
+
+        Snapshot snapshot = null;
+        if (Files.exists(file)) {
+            try {
+                snapshot = read(file);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Snapshot " + file
+                        + " can't be read", ex);
+            }
+            if (snapshot != null && !isCurrent(snapshot)) {
+                logger.log(Level.INFO, "Snapshot {0} is stale", file);
+                snapshot = null;
+            }
+        }
+        if (snapshot == null) {
+            snapshot = take();
+            try {
+                write(snapshot, file);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Snapshot " + file
+                        + " can't be written", ex);
+            }
+        }
+        if (searchIndex != null) {
+            searchIndex.rebuild(snapshot.getCustomers());
+        }
+        if (calendar != null) {
+            calendar.load(snapshot.getRents());
+        }
+        return snapshot;
+    }
+
+    private static HighWaterMark readHighWaterMark(Connection connection)
+            throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT (SELECT COALESCE(MAX(id), 0) FROM car), (SELECT COUNT(*) FROM car),"
+                + " (SELECT COALESCE(MAX(id), 0) FROM customer), (SELECT COUNT(*) FROM customer),"
+                + " (SELECT COALESCE(MAX(id), 0) FROM rent), (SELECT COUNT(*) FROM rent)"
+                + " FROM SYSIBM.SYSDUMMY1");
+                ResultSet rs = st.executeQuery()) {
+            rs.next();
+            return new HighWaterMark(rs.getLong(1), rs.getLong(3),
+                    rs.getLong(5), rs.getLong(2), rs.getLong(4), rs.getLong(6));
+        }
+    }
+
+    private static <T> T reference(Map<Long, T> loaded, Long id,
+            Supplier<T> factory,
+            BiConsumer<T, Long> idSetter) {
+        T entity = loaded.get(id);
+        if (entity == null) {
+            // rent refers to deleted entity, keep at least its id
+            entity = factory.get();
+            idSetter.accept(entity, id);
+        }
+        return entity;
+    }
+
+    /**
+     * Sequential writer of snapshot file which keeps CRC32 of written bytes.
+     */
+    private static class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(
+                BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(Consumer<ByteBuffer> record) throws IOException {
+            int start = buffer.position();
+            try {
+                record.accept(buffer);
+            } catch (BufferOverflowException ex) {
+                // record doesn't fit, write it again into emptied buffer
+                buffer.position(start);
+                flush();
+                record.accept(buffer);
+            }
+        }
+
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -4,9 +4,15 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -21,6 +27,11 @@ public class DBUtils {
     private static final Logger logger = Logger.getLogger(
             DBUtils.class.getName());
 
+    /**
+     * Maximal number of parameters used in one {@code IN (...)} condition.
+     */
+    public static final int IN_CHUNK_SIZE = 100;
+
     /**
      * Closes connection and logs possible error.
      *
@@ -152,7 +163,10 @@ public class DBUtils {
             conn = ds.getConnection();
             for (String sqlStatement : readSqlStatements(scriptUrl)) {
                 if (!sqlStatement.trim().isEmpty()) {
-                    conn.prepareStatement(sqlStatement).executeUpdate();
+                    try (PreparedStatement st = conn.prepareStatement(
+                            sqlStatement)) {
+                        st.executeUpdate();
+                    }
                 }
             }
         } finally {
@@ -181,6 +195,80 @@ public class DBUtils {
         }
     }
 
+    /**
+     * Checks given ids and removes duplicates from them.
+     *
+     * @param ids ids to check
+     * @return distinct ids in the original order
+     * @throws IllegalArgumentException when ids is null or contains null
+     */
+    public static Set<Long> distinctIds(Collection<Long> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids is null");
+        }
+        Set<Long> result = new LinkedHashSet<>(ids);
+        if (result.contains(null)) {
+            throw new IllegalArgumentException("ids contains null");
+        }
+        return result;
+    }
+
+    /**
+     * Splits ids into chunks of at most {@link #IN_CHUNK_SIZE} elements.
+     *
+     * @param ids ids to split
+     * @return list of chunks
+     */
+    public static List<List<Long>> chunks(Collection<Long> ids) {
+        List<List<Long>> result = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>(IN_CHUNK_SIZE);
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == IN_CHUNK_SIZE) {
+                result.add(chunk);
+                chunk = new ArrayList<>(IN_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result.add(chunk);
+        }
+        return result;
+    }
+
+    /**
+     * Creates {@code IN (?,?,...)} condition with {@link #IN_CHUNK_SIZE}
+     * parameters for given column. Every chunk uses the same statement text,
+     * so the database can reuse compiled statement.
+     *
+     * @param column column name
+     * @return sql condition
+     */
+    public static String inCondition(String column) {
+        StringBuilder sb = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < IN_CHUNK_SIZE; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.append(")").toString();
+    }
+
+    /**
+     * Sets chunk of ids as parameters of statement created with
+     * {@link #inCondition(String)}. Unused parameters are filled with the last
+     * id of the chunk.
+     *
+     * @param st statement
+     * @param firstIndex index of the first parameter of the condition
+     * @param chunk chunk of ids, not empty
+     * @throws SQLException when operation fails
+     */
+    public static void setInParameters(PreparedStatement st, int firstIndex,
+            List<Long> chunk) throws SQLException {
+        Long last = chunk.get(chunk.size() - 1);
+        for (int i = 0; i < IN_CHUNK_SIZE; i++) {
+            st.setLong(firstIndex + i, i < chunk.size() ? chunk.get(i) : last);
+        }
+    }
+
     public static enum Operation {
         INSERT, UPDATE, DELETE;
     }
@@ -0,0 +1,272 @@
+package com.balkurcarrental.common;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of days represented as epoch days. Days are split into
+ * containers of {@link #CONTAINER_DAYS} days in the same way as roaring
+ * bitmaps do it. Sparse containers store sorted offsets of days, dense
+ * containers store bitmap of all days, so a few rents per container cost only
+ * few bytes and fully booked container costs 128 bytes.
+ *
+ * Queries work with 64-day words, so checking whole ranges or rendering
+ * calendars is done by bitwise operations.
+ *
+ * This class is not thread safe.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class DayBitmap {
+
+    /**
+     * Number of days in one container.
+     */
+    public static final int CONTAINER_DAYS = 1024;
+
+    private static final int CONTAINER_SHIFT = 10;
+    private static final int WORDS = CONTAINER_DAYS / 64;
+
+    /**
+     * Sparse containers with more days are converted to bitmap. Sparse
+     * container with this cardinality has the same size as bitmap one.
+     */
+    private static final int ARRAY_MAX = WORDS * 4;
+
+    private long[] keys = new long[0];
+    private Container[] containers = new Container[0];
+    private long lastDay = Long.MIN_VALUE;
+
+    /**
+     * Adds all days in given range.
+     *
+     * @param fromDay first epoch day of range
+     * @param toDay last epoch day of range, inclusive
+     */
+    public void addRange(long fromDay, long toDay) {
+        long day = fromDay;
+        while (day <= toDay) {
+            long key = Math.floorDiv(day, CONTAINER_DAYS);
+            long containerEnd = (key + 1) * CONTAINER_DAYS - 1;
+            long end = Math.min(toDay, containerEnd);
+            int index = containerIndex(key, true);
+            containers[index] = containers[index].addRange(
+                    (int) (day - key * CONTAINER_DAYS),
+                    (int) (end - key * CONTAINER_DAYS));
+            day = end + 1;
+        }
+        lastDay = Math.max(lastDay, toDay);
+    }
+
+    /**
+     * Checks if given day is in the set.
+     *
+     * @param day epoch day
+     * @return true when day is in the set
+     */
+    public boolean contains(long day) {
+        long key = Math.floorDiv(day, CONTAINER_DAYS);
+        int index = containerIndex(key, false);
+        return index >= 0 && containers[index].contains((int) (day - key
+                * CONTAINER_DAYS));
+    }
+
+    /**
+     * Returns the last day in the set.
+     *
+     * @return last epoch day or {@link Long#MIN_VALUE} for empty set
+     */
+    public long getLastDay() {
+        return lastDay;
+    }
+
+    /**
+     * Returns 64 days starting with given day. Bit i of result is set when
+     * day {@code fromDay + i} is in the set.
+     *
+     * @param fromDay first epoch day
+     * @return bits of 64 consecutive days
+     */
+    public long bits(long fromDay) {
+        long word = Math.floorDiv(fromDay, 64);
+        int offset = (int) (fromDay & 63);
+        if (offset == 0) {
+            return word(word);
+        }
+        return (word(word) >>> offset) | (word(word + 1) << (64 - offset));
+    }
+
+    /**
+     * Returns number of consecutive days starting with given day which are in
+     * the set (when {@code inSet} is true) or not in the set, at most 64.
+     *
+     * @param fromDay first epoch day
+     * @param inSet which days are counted
+     * @return length of the run
+     */
+    public int run(long fromDay, boolean inSet) {
+        long bits = bits(fromDay);
+        return Long.numberOfTrailingZeros(inSet ? ~bits : bits);
+    }
+
+    /**
+     * Returns size of the set.
+     *
+     * @return number of days in the set
+     */
+    public int cardinality() {
+        int result = 0;
+        for (Container container : containers) {
+            result += container.cardinality();
+        }
+        return result;
+    }
+
+    private long word(long word) {
+        long key = word >> (CONTAINER_SHIFT - 6);
+        int index = containerIndex(key, false);
+        if (index < 0) {
+            return 0L;
+        }
+        return containers[index].word((int) (word & (WORDS - 1)));
+    }
+
+    private int containerIndex(long key, boolean create) {
+        int index = Arrays.binarySearch(keys, key);
+        if (index >= 0 || !create) {
+            return index;
+        }
+        index = -index - 1;
+        long[] newKeys = new long[keys.length + 1];
+        Container[] newContainers = new Container[containers.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, index);
+        System.arraycopy(containers, 0, newContainers, 0, index);
+        System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+        System.arraycopy(containers, index, newContainers, index + 1,
+                containers.length - index);
+        newKeys[index] = key;
+        newContainers[index] = new ArrayContainer();
+        keys = newKeys;
+        containers = newContainers;
+        return index;
+    }
+
+    private interface Container {
+
+        boolean contains(int day);
+
+        Container addRange(int from, int to);
+
+        long word(int index);
+
+        int cardinality();
+    }
+
+    /**
+     * Container storing sorted offsets of days.
+     */
+    private static class ArrayContainer implements Container {
+
+        private short[] days = new short[0];
+
+        @Override
+        public boolean contains(int day) {
+            return Arrays.binarySearch(days, (short) day) >= 0;
+        }
+
+        @Override
+        public Container addRange(int from, int to) {
+            if (days.length + (to - from + 1) > ARRAY_MAX) {
+                return toBitmap().addRange(from, to);
+            }
+            short[] merged = new short[days.length + to - from + 1];
+            int count = 0;
+            int i = 0;
+            for (int day = from; day <= to; day++) {
+                while (i < days.length && days[i] < day) {
+                    merged[count++] = days[i++];
+                }
+                if (i < days.length && days[i] == day) {
+                    i++;
+                }
+                merged[count++] = (short) day;
+            }
+            while (i < days.length) {
+                merged[count++] = days[i++];
+            }
+            days = Arrays.copyOf(merged, count);
+            return this;
+        }
+
+        @Override
+        public long word(int index) {
+            long result = 0L;
+            int from = index * 64;
+            int i = Arrays.binarySearch(days, (short) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            for (; i < days.length && days[i] < from + 64; i++) {
+                result |= 1L << (days[i] - from);
+            }
+            return result;
+        }
+
+        @Override
+        public int cardinality() {
+            return days.length;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer result = new BitmapContainer();
+            for (short day : days) {
+                result.addRange(day, day);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Container storing bitmap of all days.
+     */
+    private static class BitmapContainer implements Container {
+
+        private final long[] words = new long[WORDS];
+
+        @Override
+        public boolean contains(int day) {
+            return (words[day >>> 6] & (1L << day)) != 0;
+        }
+
+        @Override
+        public Container addRange(int from, int to) {
+            int fromWord = from >>> 6;
+            int toWord = to >>> 6;
+            long fromMask = -1L << from;
+            long toMask = -1L >>> (63 - (to & 63));
+            if (fromWord == toWord) {
+                words[fromWord] |= fromMask & toMask;
+                return this;
+            }
+            words[fromWord] |= fromMask;
+            for (int i = fromWord + 1; i < toWord; i++) {
+                words[i] = -1L;
+            }
+            words[toWord] |= toMask;
+            return this;
+        }
+
+        @Override
+        public long word(int index) {
+            return words[index];
+        }
+
+        @Override
+        public int cardinality() {
+            int result = 0;
+            for (long word : words) {
+                result += Long.bitCount(word);
+            }
+            return result;
+        }
+    }
+}
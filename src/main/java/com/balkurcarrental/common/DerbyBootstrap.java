@@ -0,0 +1,297 @@
+package com.balkurcarrental.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Creates data source of embedded Derby database configured by properties,
+ * usually loaded from a file by {@link #loadConfig(URL)}:
+ * <ul>
+ * <li>{@value #DATABASE} - name of database, for example
+ * {@code memory:carrental} or path to its directory, it is created when it
+ * doesn't exist</li>
+ * <li>{@code derby.*} - Derby properties, for example
+ * {@code derby.storage.pageCacheSize}, {@code derby.storage.pageSize} or
+ * {@code derby.storage.logBufferSize}</li>
+ * <li>{@value #NETWORK_PORT} and optionally {@value #NETWORK_HOST} - starts
+ * network server, so other processes can connect to the database</li>
+ * </ul>
+ * Storage properties of database, like page size and checkpoint interval, are
+ * stored in the database, so they work also when Derby is already running.
+ * Page size applies only to tables created afterwards, checkpoint and log
+ * switch intervals only after the database is booted again. Other Derby
+ * properties are system-wide and set as system properties, unless they are
+ * already set, so they take effect only when Derby boots, for example size of
+ * page cache and log buffer.
+ *
+ * Derby is loaded reflectively, so it needs to be on the classpath only when
+ * the bootstrap is started. Network server needs derbynet library.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class DerbyBootstrap {
+
+    private static final Logger logger = Logger.getLogger(
+            DerbyBootstrap.class.getName());
+
+    public static final String DATABASE = "database";
+    public static final String NETWORK_HOST = "network.host";
+    public static final String NETWORK_PORT = "network.port";
+
+    private static final String EMBEDDED_DATA_SOURCE
+            = "org.apache.derby.jdbc.EmbeddedDataSource";
+    private static final String NETWORK_SERVER_CONTROL
+            = "org.apache.derby.drda.NetworkServerControl";
+
+    /**
+     * Derby properties which can be stored in database.
+     */
+    private static final Set<String> DATABASE_PROPERTIES = Collections.
+            unmodifiableSet(new HashSet<>(Arrays.asList(
+                    "derby.storage.pageSize",
+                    "derby.storage.pageReservedSpace",
+                    "derby.storage.initialPages",
+                    "derby.storage.minimumRecordSize",
+                    "derby.storage.checkpointInterval",
+                    "derby.storage.logSwitchInterval")));
+
+    private static final int PING_ATTEMPTS = 50;
+    private static final long PING_INTERVAL_MILLIS = 100;
+
+    private final Properties config;
+    private DataSource dataSource;
+    private Object networkServer;
+
+    /**
+     * Creates bootstrap, later changes of config are not seen.
+     *
+     * @param config configuration
+     * @throws IllegalArgumentException when config is null or doesn't contain
+     * name of database
+     */
+    public DerbyBootstrap(Properties config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+        if (config.getProperty(DATABASE) == null) {
+            throw new IllegalArgumentException(DATABASE + " is not set");
+        }
+        this.config = new Properties();
+        this.config.putAll(config);
+    }
+
+    /**
+     * Loads configuration in properties format.
+     *
+     * @param url url of file or resource
+     * @return loaded configuration
+     * @throws IOException when reading fails
+     */
+    public static Properties loadConfig(URL url) throws IOException {
+        Properties config = new Properties();
+        try (InputStream in = url.openStream()) {
+            config.load(in);
+        }
+        return config;
+    }
+
+    /**
+     * Applies Derby properties, creates data source, boots the database and
+     * starts network server when configured.
+     *
+     * @return data source of the database
+     * @throws IllegalStateException when already started or Derby is not on
+     * the classpath
+     * @throws SQLException when booting the database fails
+     */
+    public synchronized DataSource start() throws SQLException {
+        if (dataSource != null) {
+            throw new IllegalStateException("Bootstrap is already started");
+        }
+        List<String> stored = new ArrayList<>();
+        for (String key : config.stringPropertyNames()) {
+            if (!key.startsWith("derby.")) {
+                continue;
+            }
+            if (DATABASE_PROPERTIES.contains(key)) {
+                stored.add(key);
+            } else if (System.getProperty(key) == null) {
+                System.setProperty(key, config.getProperty(key));
+            } else {
+                logger.log(Level.INFO, "System property {0} is already set",
+                        key);
+            }
+        }
+
+        DataSource ds = createDataSource(config.getProperty(DATABASE));
+        Connection connection = null;
+        CallableStatement st = null;
+        try {
+            connection = ds.getConnection();
+            st = connection.prepareCall(
+                    "CALL SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(?, ?)");
+            for (String key : stored) {
+                st.setString(1, key);
+                st.setString(2, config.getProperty(key));
+                st.execute();
+            }
+        } finally {
+            DBUtils.closeQuietly(connection, st);
+        }
+
+        String port = config.getProperty(NETWORK_PORT);
+        if (port != null) {
+            startNetworkServer(config.getProperty(NETWORK_HOST, "localhost"),
+                    Integer.parseInt(port));
+        }
+        dataSource = ds;
+        return ds;
+    }
+
+    /**
+     * Returns data source of started bootstrap.
+     *
+     * @return data source or null when not started
+     */
+    public synchronized DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Updates statistics of all indexes of tables in the default schema, so
+     * optimizer sees current sizes of tables. It should be called after bulk
+     * loads, Derby updates statistics automatically only for big changes.
+     *
+     * @return number of tables with updated statistics
+     * @throws IllegalStateException when not started
+     * @throws SQLException when operation fails
+     */
+    public synchronized int updateStatistics() throws SQLException {
+        if (dataSource == null) {
+            throw new IllegalStateException("Bootstrap is not started");
+        }
+        Connection connection = null;
+        Statement schemaSt = null;
+        CallableStatement st = null;
+        try {
+            connection = dataSource.getConnection();
+            schemaSt = connection.createStatement();
+            String schema;
+            try (ResultSet rs = schemaSt.executeQuery(
+                    "VALUES CURRENT SCHEMA")) {
+                rs.next();
+                schema = rs.getString(1);
+            }
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rs = connection.getMetaData().getTables(null,
+                    schema, "%", new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    tables.add(rs.getString("TABLE_NAME"));
+                }
+            }
+            st = connection.prepareCall(
+                    "CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS(?, ?, NULL)");
+            for (String table : tables) {
+                st.setString(1, schema);
+                st.setString(2, table);
+                st.execute();
+            }
+            return tables.size();
+        } finally {
+            DBUtils.closeQuietly(connection, schemaSt, st);
+        }
+    }
+
+    /**
+     * Stops network server if it was started. The embedded database keeps
+     * running.
+     */
+    public synchronized void stop() {
+        if (networkServer == null) {
+            return;
+        }
+        try {
+            networkServer.getClass().getMethod("shutdown").invoke(
+                    networkServer);
+        } catch (ReflectiveOperationException ex) {
+            logger.log(Level.SEVERE, "Error when stopping network server", ex);
+        }
+        networkServer = null;
+    }
+
+    private static DataSource createDataSource(String database) {
+        try {
+            Class<?> type = Class.forName(EMBEDDED_DATA_SOURCE);
+            DataSource ds = (DataSource) type.newInstance();
+            type.getMethod("setDatabaseName", String.class).invoke(ds,
+                    database);
+            type.getMethod("setCreateDatabase", String.class).invoke(ds,
+                    "create");
+            return ds;
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Derby is not on the classpath",
+                    ex);
+        }
+    }
+
+    private void startNetworkServer(String host, int port) throws
+            SQLException {
+        Class<?> type;
+        try {
+            type = Class.forName(NETWORK_SERVER_CONTROL);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(
+                    "Derby network server is not on the classpath", ex);
+        }
+        try {
+            Object server = type.getConstructor(InetAddress.class, int.class).
+                    newInstance(InetAddress.getByName(host), port);
+            type.getMethod("start", PrintWriter.class).invoke(server,
+                    (PrintWriter) null);
+            // start returns before the server listens
+            for (int attempt = 1;; attempt++) {
+                try {
+                    type.getMethod("ping").invoke(server);
+                    break;
+                } catch (InvocationTargetException ex) {
+                    if (attempt == PING_ATTEMPTS) {
+                        throw ex;
+                    }
+                    Thread.sleep(PING_INTERVAL_MILLIS);
+                }
+            }
+            networkServer = server;
+            logger.log(Level.INFO, "Derby network server listens on {0}:{1}",
+                    new Object[]{host, String.valueOf(port)});
+        } catch (InvocationTargetException ex) {
+            throw new SQLException("Cannot start network server on " + host
+                    + ":" + port, ex.getCause());
+        } catch (ReflectiveOperationException | IOException ex) {
+            throw new SQLException("Cannot start network server on " + host
+                    + ":" + port, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted when starting network server",
+                    ex);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.balkurcarrental.common;
+
+/**
+ * Event describing committed change of one entity. Created entity has no
+ * state before the change, deleted entity has no state after the change.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <T> type of changed entity
+ */
+public class EntityEvent<T> {
+
+    public static enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+    private final Long id;
+    private final T before;
+    private final T after;
+
+    private EntityEvent(Type type, Long id, T before, T after) {
+        this.type = type;
+        this.id = id;
+        this.before = before;
+        this.after = after;
+    }
+
+    public static <T> EntityEvent<T> created(Long id, T after) {
+        return new EntityEvent<>(Type.CREATED, id, null, after);
+    }
+
+    public static <T> EntityEvent<T> updated(Long id, T before, T after) {
+        return new EntityEvent<>(Type.UPDATED, id, before, after);
+    }
+
+    public static <T> EntityEvent<T> deleted(Long id, T before) {
+        return new EntityEvent<>(Type.DELETED, id, before, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Returns state of entity before the change.
+     *
+     * @return entity or null for created entity
+     */
+    public T getBefore() {
+        return before;
+    }
+
+    /**
+     * Returns state of entity after the change.
+     *
+     * @return entity or null for deleted entity
+     */
+    public T getAfter() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityEvent{"
+                + "type=" + type
+                + ", id=" + id
+                + ", before=" + before
+                + ", after=" + after
+                + "}";
+    }
+}
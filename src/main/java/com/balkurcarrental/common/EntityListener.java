@@ -0,0 +1,23 @@
+package com.balkurcarrental.common;
+
+import java.util.List;
+
+/**
+ * Listener of committed changes of entities, see {@link EventPublisher}.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <T> type of entity
+ */
+@FunctionalInterface
+public interface EntityListener<T> {
+
+    /**
+     * Called with events in the order they were published. Synchronous
+     * listeners get one event per call, or all events of a bulk write, see
+     * {@link EventPublisher#publishAll(List)}. Asynchronous listeners get
+     * batches.
+     *
+     * @param events committed changes
+     */
+    void onEvents(List<EntityEvent<T>> events);
+}
@@ -0,0 +1,293 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes committed changes of entities to registered listeners.
+ *
+ * Synchronous listeners are called in the writing thread right after commit,
+ * so they should be cheap, for example in-memory indexes which must be up to
+ * date when write returns. Asynchronous listeners have their own bounded
+ * queue and thread, which delivers queued events in batches. Publishing to
+ * asynchronous listener never blocks, when its queue is full the event is
+ * dropped and counted, see {@link #getDroppedEvents()}. Drops are logged at
+ * most once per {@link #DROP_LOG_INTERVAL_MILLIS} with the number of events
+ * dropped since the last message.
+ *
+ * Exceptions thrown by listeners are logged and ignored, the change is
+ * already committed.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <T> type of entity
+ */
+public class EventPublisher<T> {
+
+    private static final Logger logger = Logger.getLogger(
+            EventPublisher.class.getName());
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_MAX_BATCH = 100;
+    public static final long DROP_LOG_INTERVAL_MILLIS = 10000;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final String name;
+    private final List<EntityListener<T>> listeners
+            = new CopyOnWriteArrayList<>();
+    private final List<AsyncDispatcher> dispatchers
+            = new CopyOnWriteArrayList<>();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong unloggedDrops = new AtomicLong();
+    private final AtomicLong lastDropLog = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Creates publisher.
+     *
+     * @param name name of published entity, used for logging and naming of
+     * threads
+     */
+    public EventPublisher(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds listener called synchronously after every commit.
+     *
+     * @param listener listener to add
+     * @throws IllegalArgumentException when listener is null
+     */
+    public void addListener(EntityListener<T> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds listener called asynchronously with default queue capacity and
+     * batch size.
+     *
+     * @param listener listener to add
+     * @throws IllegalArgumentException when listener is null
+     */
+    public void addAsyncListener(EntityListener<T> listener) {
+        addAsyncListener(listener, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Adds listener called asynchronously.
+     *
+     * @param listener listener to add
+     * @param queueCapacity maximal number of events waiting for delivery
+     * @param maxBatch maximal number of events delivered at once
+     * @throws IllegalArgumentException when listener is null or capacity or
+     * batch is not positive
+     */
+    public void addAsyncListener(EntityListener<T> listener, int queueCapacity,
+            int maxBatch) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        if (queueCapacity <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException(
+                    "queue capacity or batch size is not positive");
+        }
+        AsyncDispatcher dispatcher = new AsyncDispatcher(listener,
+                queueCapacity, maxBatch);
+        dispatchers.add(dispatcher);
+        dispatcher.thread.start();
+    }
+
+    /**
+     * Removes listener. Thread of asynchronous listener is stopped, events
+     * which were not delivered yet are discarded.
+     *
+     * @param listener listener to remove
+     * @return true when listener was registered
+     */
+    public boolean removeListener(EntityListener<T> listener) {
+        boolean removed = listeners.remove(listener);
+        for (AsyncDispatcher dispatcher : dispatchers) {
+            if (dispatcher.listener == listener) {
+                dispatchers.remove(dispatcher);
+                dispatcher.thread.interrupt();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Checks if there is any listener. Managers use it to skip reading of
+     * state before change when nobody listens.
+     *
+     * @return true when any listener is registered
+     */
+    public boolean hasListeners() {
+        return !listeners.isEmpty() || !dispatchers.isEmpty();
+    }
+
+    /**
+     * Publishes event to all listeners.
+     *
+     * @param event committed change
+     */
+    public void publish(EntityEvent<T> event) {
+        publishAll(Collections.singletonList(event));
+    }
+
+    /**
+     * Publishes events of one bulk write to all listeners. Synchronous
+     * listeners get all events in one call.
+     *
+     * @param events committed changes in the order they were made
+     */
+    public void publishAll(List<EntityEvent<T>> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<EntityEvent<T>> unmodifiable = Collections.unmodifiableList(
+                events);
+        for (EntityListener<T> listener : listeners) {
+            try {
+                listener.onEvents(unmodifiable);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Listener of " + name
+                        + " events failed on " + events.size() + " events",
+                        ex);
+            }
+        }
+        for (AsyncDispatcher dispatcher : dispatchers) {
+            int dropped = dispatcher.offer(events);
+            if (dropped > 0) {
+                dropped(dropped);
+            }
+        }
+    }
+
+    private void dropped(int count) {
+        droppedEvents.addAndGet(count);
+        unloggedDrops.addAndGet(count);
+        long now = System.nanoTime();
+        long last = lastDropLog.get();
+        if (last != Long.MIN_VALUE && now - last < TimeUnit.MILLISECONDS.
+                toNanos(DROP_LOG_INTERVAL_MILLIS)) {
+            return;
+        }
+        if (lastDropLog.compareAndSet(last, now)) {
+            logger.log(Level.WARNING, "Queue of " + name + " listener is full, "
+                    + unloggedDrops.getAndSet(0) + " events dropped");
+        }
+    }
+
+    /**
+     * Waits until all events published so far are delivered to asynchronous
+     * listeners.
+     *
+     * @param timeout maximal time to wait
+     * @param unit unit of timeout
+     * @return true when all events were delivered in time
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws
+            InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (AsyncDispatcher dispatcher : dispatchers) {
+            if (!dispatcher.flush(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns number of events which were not delivered to some asynchronous
+     * listener because its queue was full.
+     *
+     * @return number of dropped events
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Queue and thread of one asynchronous listener.
+     */
+    private class AsyncDispatcher implements Runnable {
+
+        private final EntityListener<T> listener;
+        private final BlockingQueue<EntityEvent<T>> queue;
+        private final int maxBatch;
+        private final Thread thread;
+        private long offered;
+        private long delivered;
+
+        AsyncDispatcher(EntityListener<T> listener, int queueCapacity,
+                int maxBatch) {
+            this.listener = listener;
+            this.queue = new LinkedBlockingQueue<>(queueCapacity);
+            this.maxBatch = maxBatch;
+            this.thread = new Thread(this, name + "-events-" + threadCounter.
+                    incrementAndGet());
+            thread.setDaemon(true);
+        }
+
+        synchronized int offer(List<EntityEvent<T>> events) {
+            int dropped = 0;
+            for (EntityEvent<T> event : events) {
+                if (queue.offer(event)) {
+                    offered++;
+                } else {
+                    dropped++;
+                }
+            }
+            return dropped;
+        }
+
+        synchronized boolean flush(long deadline) throws InterruptedException {
+            long target = offered;
+            while (delivered < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !thread.isAlive()) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<EntityEvent<T>> batch = new ArrayList<>(maxBatch);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, maxBatch - 1);
+                    try {
+                        listener.onEvents(Collections.unmodifiableList(batch));
+                    } catch (RuntimeException ex) {
+                        logger.log(Level.WARNING, "Asynchronous listener of "
+                                + name + " events failed", ex);
+                    }
+                    synchronized (this) {
+                        delivered += batch.size();
+                        notifyAll();
+                    }
+                    batch = new ArrayList<>(maxBatch);
+                }
+            } catch (InterruptedException ex) {
+                // listener was removed
+            }
+        }
+    }
+}
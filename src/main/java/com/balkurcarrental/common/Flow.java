@@ -0,0 +1,74 @@
+package com.balkurcarrental.common;
+
+/**
+ * Interfaces of reactive streams with backpressure, with the same methods and
+ * contracts as {@code java.util.concurrent.Flow} of Java 9, which is not
+ * available on Java 8 targeted by this project. Moving to the JDK interfaces
+ * only needs change of imports.
+ *
+ * Subscriber receives items only after it requested them, so a slow
+ * subscriber limits how fast the publisher produces them.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * Producer of items received by subscribers.
+     *
+     * @param <T> type of items
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+
+        /**
+         * Adds subscriber, which is then called with
+         * {@link Subscriber#onSubscribe(Subscription)}.
+         *
+         * @param subscriber subscriber
+         * @throws NullPointerException when subscriber is null
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receiver of items. Methods of one subscriber are never called
+     * concurrently.
+     *
+     * @param <T> type of items
+     */
+    public interface Subscriber<T> {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Link between publisher and subscriber.
+     */
+    public interface Subscription {
+
+        /**
+         * Adds given number of items to demand of the subscriber. Request of
+         * non-positive number is signalled as
+         * {@link IllegalArgumentException} to
+         * {@link Subscriber#onError(Throwable)}.
+         *
+         * @param n number of items
+         */
+        void request(long n);
+
+        /**
+         * Stops delivering of items, items may still be delivered for a while.
+         */
+        void cancel();
+    }
+}
@@ -0,0 +1,144 @@
+package com.balkurcarrental.common;
+
+/**
+ * HyperLogLog sketch estimating number of distinct long values, for example
+ * ids of entities. Sketch with precision p has 2^p one-byte registers and
+ * relative standard error about 1.04 / sqrt(2^p), independently of number of
+ * added values. Sketches with the same precision can be merged, the result
+ * estimates the number of distinct values added to any of them.
+ *
+ * This class is not thread safe.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Creates empty sketch with {@link #DEFAULT_PRECISION}.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates empty sketch.
+     *
+     * @param precision number of bits of hash used to select register
+     * @throws IllegalArgumentException when precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision " + precision
+                    + " is out of range");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds value to sketch.
+     *
+     * @param value value to add
+     */
+    public void add(long value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        // rank of the first one bit in the remaining bits, sentinel bit
+        // bounds it when they are all zero
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Adds all values of other sketch to this one.
+     *
+     * @param other sketch to merge
+     * @throws IllegalArgumentException when other is null or has different
+     * precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other == null || other.precision != precision) {
+            throw new IllegalArgumentException(
+                    "other is null or has different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns estimated number of distinct added values.
+     *
+     * @return estimate
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more precise for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Creates independent copy of this sketch.
+     *
+     * @return copy
+     */
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+        return copy;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads consecutive ids over all bits.
+     */
+    private static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,94 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Identity map of entities loaded during one unit of work, for example
+ * reading of one result set. Every entity is loaded at most once and the same
+ * instance is returned for the same id, so memory used by loaded entities
+ * grows with number of distinct entities, not with number of rows referring
+ * to them.
+ *
+ * Identity map is meant to be short lived, it never forgets loaded entities
+ * and doesn't see their later changes. This class is not thread safe.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <T> type of entity
+ */
+public class IdentityMap<T> {
+
+    private final Function<Collection<Long>, LookupResult<T>> loader;
+    private final Map<Long, T> entities = new HashMap<>();
+    private int loads;
+
+    /**
+     * Creates empty identity map.
+     *
+     * @param loader multi-get of entities which are not in the map yet, for
+     * example {@code carManager::getCarsByIds}
+     */
+    public IdentityMap(Function<Collection<Long>, LookupResult<T>> loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("loader is null");
+        }
+        this.loader = loader;
+    }
+
+    /**
+     * Makes sure entities with given ids are loaded. Entities which are not
+     * in the map yet are loaded by one call of the loader.
+     *
+     * @param ids ids of entities
+     */
+    public void load(Collection<Long> ids) {
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (!entities.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        loads++;
+        LookupResult<T> result = loader.apply(missing);
+        entities.putAll(result.getFound());
+        // remember missing entities too, so they are not loaded again
+        for (Long id : result.getMissingIds()) {
+            entities.put(id, null);
+        }
+    }
+
+    /**
+     * Returns loaded entity with given id.
+     *
+     * @param id id of entity
+     * @return entity or null when it was not loaded or doesn't exist
+     */
+    public T get(Long id) {
+        return entities.get(id);
+    }
+
+    /**
+     * Returns number of calls of the loader.
+     *
+     * @return number of loads
+     */
+    public int getLoads() {
+        return loads;
+    }
+
+    /**
+     * Returns number of entities in the map.
+     *
+     * @return number of distinct ids which were loaded
+     */
+    public int size() {
+        return entities.size();
+    }
+}
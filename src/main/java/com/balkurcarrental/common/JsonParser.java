@@ -0,0 +1,233 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parser of small JSON documents, for example bodies of requests. Objects are
+ * parsed as {@link Map} keeping order of attributes, arrays as {@link List},
+ * integral numbers as {@link Long}, other numbers as {@link Double}, strings,
+ * booleans and null as corresponding Java values.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public final class JsonParser {
+
+    private static final int MAX_DEPTH = 64;
+
+    private final String json;
+    private int position;
+
+    private JsonParser(String json) {
+        this.json = json;
+    }
+
+    /**
+     * Parses JSON document.
+     *
+     * @param json document to parse
+     * @return parsed value
+     * @throws IllegalArgumentException when json is null or it is not valid
+     * JSON
+     */
+    public static Object parse(String json) {
+        if (json == null) {
+            throw new IllegalArgumentException("json is null");
+        }
+        JsonParser parser = new JsonParser(json);
+        Object value = parser.value(0);
+        parser.skipWhitespace();
+        if (parser.position != json.length()) {
+            throw parser.error("Unexpected content");
+        }
+        return value;
+    }
+
+    private Object value(int depth) {
+        if (depth == MAX_DEPTH) {
+            throw error("JSON is nested too deep");
+        }
+        skipWhitespace();
+        if (position == json.length()) {
+            throw error("Unexpected end");
+        }
+        char c = json.charAt(position);
+        switch (c) {
+            case '{':
+                return object(depth);
+            case '[':
+                return array(depth);
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object(int depth) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (consume('}')) {
+            return result;
+        }
+        do {
+            skipWhitespace();
+            if (position == json.length() || json.charAt(position) != '"') {
+                throw error("Expected name of attribute");
+            }
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            result.put(name, value(depth + 1));
+            skipWhitespace();
+        } while (consume(','));
+        expect('}');
+        return result;
+    }
+
+    private List<Object> array(int depth) {
+        List<Object> result = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (consume(']')) {
+            return result;
+        }
+        do {
+            result.add(value(depth + 1));
+            skipWhitespace();
+        } while (consume(','));
+        expect(']');
+        return result;
+    }
+
+    private String string() {
+        position++;
+        StringBuilder result = new StringBuilder();
+        while (position < json.length()) {
+            char c = json.charAt(position++);
+            if (c == '"') {
+                return result.toString();
+            }
+            if (c < 0x20) {
+                throw error("Control character in string");
+            }
+            if (c != '\\') {
+                result.append(c);
+                continue;
+            }
+            if (position == json.length()) {
+                break;
+            }
+            char escaped = json.charAt(position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    result.append(escaped);
+                    break;
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > json.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    try {
+                        result.append((char) Integer.parseInt(json.substring(
+                                position, position + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    throw error("Invalid escape '\\" + escaped + "'");
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private Object number() {
+        int start = position;
+        boolean integral = true;
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E' || c == '+') {
+                integral = false;
+            } else if (c != '-' && (c < '0' || c > '9')) {
+                break;
+            }
+            position++;
+        }
+        String number = json.substring(start, position);
+        try {
+            return integral ? (Object) Long.valueOf(number) : (Object) Double.
+                    valueOf(number);
+        } catch (NumberFormatException ex) {
+            position = start;
+            throw error("Invalid number " + number);
+        }
+    }
+
+    private Object literal(String literal, Object value) {
+        if (!json.startsWith(literal, position)) {
+            throw error("Unexpected character '" + json.charAt(position)
+                    + "'");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private boolean consume(char c) {
+        if (position < json.length() && json.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position "
+                + position);
+    }
+}
@@ -0,0 +1,166 @@
+package com.balkurcarrental.common;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming writer of JSON. Values are written to the underlying writer as
+ * they come, so arrays of any length can be written with constant memory.
+ * Writer only separates values and escapes strings, it doesn't check that
+ * objects and arrays are properly nested.
+ *
+ * This class is not thread safe.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class JsonWriter {
+
+    private final Writer out;
+    // bit i is set when the container at depth i already has a value
+    private long hasValue;
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * Creates JSON writer.
+     *
+     * @param out writer to write to, it is not closed
+     * @throws IllegalArgumentException when out is null
+     */
+    public JsonWriter(Writer out) {
+        if (out == null) {
+            throw new IllegalArgumentException("out is null");
+        }
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Writes name of the next attribute of object.
+     *
+     * @param name name of attribute
+     * @return this writer
+     * @throws IOException when writing fails
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(Long value) throws IOException {
+        return value == null ? nullValue() : value(value.longValue());
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        if (depth == 63) {
+            throw new IllegalStateException("JSON is nested too deep");
+        }
+        beforeValue();
+        out.write(bracket);
+        depth++;
+        hasValue &= ~(1L << depth);
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("There is nothing to close");
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else {
+            separate();
+        }
+    }
+
+    private void separate() throws IOException {
+        long bit = 1L << depth;
+        if (depth > 0 && (hasValue & bit) != 0) {
+            out.write(',');
+        }
+        hasValue |= bit;
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escaped;
+            if (c == '"' || c == '\\') {
+                escaped = "\\" + c;
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else if (c == '\t') {
+                escaped = "\\t";
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                // line separators are not allowed in JavaScript strings
+                escaped = String.format("\\u%04x", (int) c);
+            } else {
+                continue;
+            }
+            out.write(value, start, i - start);
+            out.write(escaped);
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
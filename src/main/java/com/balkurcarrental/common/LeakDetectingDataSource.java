@@ -0,0 +1,408 @@
+package com.balkurcarrental.common;
+
+import java.io.PrintWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Diagnostic wrapper of data source which finds leaked connections,
+ * statements and result sets. Stack of the caller is captured when
+ * connection is borrowed and a warning with it is logged when:
+ * <ul>
+ * <li>connection, statement or result set stays open longer than the leak
+ * threshold, once for every resource</li>
+ * <li>connection, statement or result set is garbage collected without being
+ * closed, the underlying resource is closed then</li>
+ * </ul>
+ * Open resources are checked by a daemon thread started with the first
+ * borrowed connection, or by {@link #checkOpenResources()}. Closing of
+ * connection closes its statements and closing or executing statement closes
+ * its result sets, as JDBC specifies.
+ *
+ * Wrapper also counts open resources and records how long borrowing of
+ * connection takes. Resources are wrapped in dynamic proxies, so it is meant
+ * for tests and troubleshooting rather than for production.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class LeakDetectingDataSource implements DataSource, AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(
+            LeakDetectingDataSource.class.getName());
+
+    private static final Duration DEFAULT_LEAK_THRESHOLD = Duration.
+            ofSeconds(30);
+
+    private enum Kind {
+        CONNECTION("Connection"),
+        STATEMENT("Statement"),
+        RESULT_SET("Result set");
+
+        private final String description;
+
+        private Kind(String description) {
+            this.description = description;
+        }
+    }
+
+    private final DataSource dataSource;
+    private volatile Duration leakThreshold = DEFAULT_LEAK_THRESHOLD;
+    private volatile boolean captureStackTraces = true;
+
+    private final Set<Tracked> open = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final AtomicInteger[] gauges = {new AtomicInteger(),
+        new AtomicInteger(), new AtomicInteger()};
+    private final QuantileSketch acquireMicros = new QuantileSketch();
+    private ScheduledExecutorService checker;
+
+    /**
+     * Creates wrapper.
+     *
+     * @param dataSource data source to wrap
+     * @throws IllegalArgumentException when data source is null
+     */
+    public LeakDetectingDataSource(DataSource dataSource) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("dataSource is null");
+        }
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets how long resource may stay open before it is reported, 30 seconds
+     * by default. Background checks run every half of the threshold, at
+     * least every 100 ms. It should be set before the first connection is
+     * borrowed.
+     *
+     * @param leakThreshold threshold
+     * @throws IllegalArgumentException when threshold is null or not positive
+     */
+    public void setLeakThreshold(Duration leakThreshold) {
+        if (leakThreshold == null || leakThreshold.isNegative()
+                || leakThreshold.isZero()) {
+            throw new IllegalArgumentException(
+                    "leakThreshold is null or not positive");
+        }
+        this.leakThreshold = leakThreshold;
+    }
+
+    /**
+     * Sets whether stack is captured when connection is borrowed, it is by
+     * default.
+     *
+     * @param captureStackTraces true to capture stacks
+     */
+    public void setCaptureStackTraces(boolean captureStackTraces) {
+        this.captureStackTraces = captureStackTraces;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws
+            SQLException {
+        return track(username, password);
+    }
+
+    private Connection track(String username, String password) throws
+            SQLException {
+        startChecker();
+        pollCollected();
+        Throwable borrowedAt = captureStackTraces ? new Throwable(
+                "Connection borrowed by thread " + Thread.currentThread().
+                getName()) : null;
+        long start = System.nanoTime();
+        Connection connection = username == null ? dataSource.getConnection()
+                : dataSource.getConnection(username, password);
+        long micros = (System.nanoTime() - start) / 1000;
+        synchronized (acquireMicros) {
+            acquireMicros.add(micros);
+        }
+        return (Connection) wrap(connection, Connection.class,
+                Kind.CONNECTION, null, null, borrowedAt);
+    }
+
+    private Object wrap(Object delegate, Class<?> type, Kind kind,
+            Tracked parent, Object parentProxy, Throwable borrowedAt) {
+        Handler handler = new Handler(delegate, parentProxy);
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[]{type}, handler);
+        Tracked tracked = new Tracked(proxy, collected, kind, delegate,
+                parent, borrowedAt);
+        handler.tracked = tracked;
+        open.add(tracked);
+        if (parent != null) {
+            parent.children.add(tracked);
+        }
+        gauges[kind.ordinal()].incrementAndGet();
+        return proxy;
+    }
+
+    private void markClosed(Tracked tracked) {
+        if (!tracked.closed.compareAndSet(false, true)) {
+            return;
+        }
+        open.remove(tracked);
+        gauges[tracked.kind.ordinal()].decrementAndGet();
+        if (tracked.parent != null) {
+            tracked.parent.children.remove(tracked);
+        }
+        closeChildren(tracked);
+    }
+
+    private void closeChildren(Tracked tracked) {
+        for (Tracked child : tracked.children) {
+            markClosed(child);
+        }
+    }
+
+    /**
+     * Reports resources which are open longer than the threshold and
+     * resources which were garbage collected without being closed.
+     *
+     * @return number of newly reported resources
+     */
+    public int checkOpenResources() {
+        int reported = pollCollected();
+        long threshold = leakThreshold.toNanos();
+        long now = System.nanoTime();
+        for (Tracked tracked : open) {
+            long openNanos = now - tracked.openedAt;
+            if (openNanos > threshold && !tracked.closed.get()
+                    && tracked.reported.compareAndSet(false, true)) {
+                logger.log(Level.WARNING, tracked.kind.description
+                        + " is open for " + TimeUnit.NANOSECONDS.toMillis(
+                                openNanos) + " ms", tracked.borrowedAt);
+                reported++;
+            }
+        }
+        return reported;
+    }
+
+    private int pollCollected() {
+        int reported = 0;
+        Tracked tracked;
+        while ((tracked = (Tracked) collected.poll()) != null) {
+            if (tracked.closed.get()) {
+                continue;
+            }
+            logger.log(Level.WARNING, tracked.kind.description
+                    + " was garbage collected without being closed",
+                    tracked.borrowedAt);
+            reported++;
+            try {
+                ((AutoCloseable) tracked.delegate).close();
+            } catch (Exception ex) {
+                logger.log(Level.SEVERE, "Error when closing leaked "
+                        + tracked.kind.description.toLowerCase(), ex);
+            }
+            markClosed(tracked);
+        }
+        return reported;
+    }
+
+    private synchronized void startChecker() {
+        if (checker != null) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, leakThreshold.toMillis() / 2);
+        checker.scheduleWithFixedDelay(() -> {
+            try {
+                checkOpenResources();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Error when checking open resources",
+                        ex);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops background checks. Wrapper can still be used, checks are started
+     * again with the next borrowed connection.
+     */
+    @Override
+    public synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+    }
+
+    public int getOpenConnections() {
+        return gauges[Kind.CONNECTION.ordinal()].get();
+    }
+
+    public int getOpenStatements() {
+        return gauges[Kind.STATEMENT.ordinal()].get();
+    }
+
+    public int getOpenResultSets() {
+        return gauges[Kind.RESULT_SET.ordinal()].get();
+    }
+
+    /**
+     * Returns distribution of times spent waiting for connection of the
+     * wrapped data source.
+     *
+     * @return copy of sketch of times in microseconds
+     */
+    public QuantileSketch getAcquireTimes() {
+        synchronized (acquireMicros) {
+            return acquireMicros.copy();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : dataSource.unwrap(
+                iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    /**
+     * Open resource, it is enqueued when its proxy is garbage collected.
+     */
+    private static class Tracked extends WeakReference<Object> {
+
+        private final Kind kind;
+        private final Object delegate;
+        private final Tracked parent;
+        // stack of borrowing of the connection
+        private final Throwable borrowedAt;
+        private final long openedAt = System.nanoTime();
+        private final Set<Tracked> children = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        Tracked(Object proxy, ReferenceQueue<Object> queue, Kind kind,
+                Object delegate, Tracked parent, Throwable borrowedAt) {
+            super(proxy, queue);
+            this.kind = kind;
+            this.delegate = delegate;
+            this.parent = parent;
+            this.borrowedAt = borrowedAt;
+        }
+    }
+
+    private class Handler implements InvocationHandler {
+
+        private final Object delegate;
+        // connection of statement or statement of result set
+        private final Object parentProxy;
+        private Tracked tracked;
+        // the last result set of statement, getResultSet returns it again
+        private Object resultSet;
+        private Object resultSetProxy;
+
+        Handler(Object delegate, Object parentProxy) {
+            this.delegate = delegate;
+            this.parentProxy = parentProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws
+                Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return method.invoke(delegate, args);
+                }
+            }
+            if (tracked.kind == Kind.STATEMENT && name.startsWith("execute")) {
+                // executing statement closes its current result set
+                closeChildren(tracked);
+            }
+            Object result;
+            try {
+                result = method.invoke(delegate, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            } finally {
+                if (name.equals("close")) {
+                    markClosed(tracked);
+                }
+            }
+            if (result instanceof Statement && tracked.kind == Kind.CONNECTION) {
+                return wrap(result, method.getReturnType(), Kind.STATEMENT,
+                        tracked, proxy, tracked.borrowedAt);
+            }
+            if (result instanceof ResultSet && tracked.kind == Kind.STATEMENT) {
+                if (result != resultSet) {
+                    resultSet = result;
+                    resultSetProxy = wrap(result, ResultSet.class,
+                            Kind.RESULT_SET, tracked, proxy, tracked.borrowedAt);
+                }
+                return resultSetProxy;
+            }
+            if (parentProxy != null && (name.equals("getConnection")
+                    && tracked.kind == Kind.STATEMENT || name.equals(
+                            "getStatement") && tracked.kind == Kind.RESULT_SET)) {
+                return parentProxy;
+            }
+            return result;
+        }
+    }
+}
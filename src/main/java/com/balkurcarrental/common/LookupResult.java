@@ -0,0 +1,78 @@
+package com.balkurcarrental.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of lookup of multiple entities by their ids. Contains found entities
+ * keyed by id and ids for which no entity was found.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <T> type of looked up entity
+ */
+public class LookupResult<T> {
+
+    private final Map<Long, T> found;
+    private final Set<Long> missingIds;
+
+    /**
+     * Creates lookup result.
+     *
+     * @param requestedIds all ids which were requested
+     * @param found entities found in the database keyed by id
+     */
+    public LookupResult(Collection<Long> requestedIds, Map<Long, T> found) {
+        Set<Long> missing = new LinkedHashSet<>(requestedIds);
+        missing.removeAll(found.keySet());
+        this.found = Collections.unmodifiableMap(found);
+        this.missingIds = Collections.unmodifiableSet(missing);
+    }
+
+    /**
+     * Returns found entities keyed by their id.
+     *
+     * @return unmodifiable map of found entities
+     */
+    public Map<Long, T> getFound() {
+        return found;
+    }
+
+    /**
+     * Returns ids for which no entity was found.
+     *
+     * @return unmodifiable set of missing ids
+     */
+    public Set<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    /**
+     * Returns entity with given id or null when it was not found.
+     *
+     * @param id id of entity
+     * @return found entity or null
+     */
+    public T get(Long id) {
+        return found.get(id);
+    }
+
+    /**
+     * Checks if all requested entities were found.
+     *
+     * @return true when no id is missing
+     */
+    public boolean isComplete() {
+        return missingIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "LookupResult{"
+                + "found=" + found.keySet()
+                + ", missingIds=" + missingIds
+                + "}";
+    }
+}
@@ -0,0 +1,260 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * KLL sketch of long values answering approximate quantile queries. Values
+ * are kept in a hierarchy of compactors, value at level h stands for 2^h
+ * added values. When the sketch is full, the lowest full compactor is sorted
+ * and every other value is promoted to the next level, so the size of the
+ * sketch grows only logarithmically with number of added values. Rank error
+ * is roughly 1.7 / k for the default compactor ratio.
+ *
+ * Sketches can be merged, the result answers queries over values added to
+ * any of them.
+ *
+ * This class is not thread safe.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final double RATIO = 2.0 / 3.0;
+
+    private final int k;
+    private final Random random;
+    private final List<long[]> levels = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+    private int retained;
+    private int maxRetained;
+    private long count;
+
+    /**
+     * Creates empty sketch with {@link #DEFAULT_K}.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Creates empty sketch.
+     *
+     * @param k capacity of the top compactor, higher value means smaller
+     * error and bigger sketch
+     * @throws IllegalArgumentException when k is less than 8
+     */
+    public QuantileSketch(int k) {
+        this(k, new Random());
+    }
+
+    /**
+     * Creates empty sketch with given source of randomness for compactions,
+     * to make it deterministic in tests.
+     *
+     * @param k capacity of the top compactor
+     * @param random random used to choose kept values
+     * @throws IllegalArgumentException when k is less than 8
+     */
+    public QuantileSketch(int k, Random random) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k is less than 8");
+        }
+        this.k = k;
+        this.random = random;
+        grow();
+    }
+
+    /**
+     * Returns number of added values.
+     *
+     * @return number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Adds value to sketch.
+     *
+     * @param value value to add
+     */
+    public void add(long value) {
+        append(0, value);
+        count++;
+        retained++;
+        if (retained >= maxRetained) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds all values of other sketch to this one.
+     *
+     * @param other sketch to merge
+     * @throws IllegalArgumentException when other is null
+     */
+    public void merge(QuantileSketch other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other is null");
+        }
+        while (levels.size() < other.levels.size()) {
+            grow();
+        }
+        for (int h = 0; h < other.levels.size(); h++) {
+            long[] values = other.levels.get(h);
+            for (int i = 0; i < other.sizes.get(h); i++) {
+                append(h, values[i]);
+            }
+        }
+        count += other.count;
+        retained += other.retained;
+        while (retained >= maxRetained) {
+            compress();
+        }
+    }
+
+    /**
+     * Returns approximate quantile of added values.
+     *
+     * @param q quantile between 0 and 1, for example 0.9 for 90th percentile
+     * @return value whose rank is approximately q * count
+     * @throws IllegalArgumentException when q is out of range
+     * @throws IllegalStateException when sketch is empty
+     */
+    public long quantile(double q) {
+        return quantiles(q)[0];
+    }
+
+    /**
+     * Returns approximate quantiles of added values with one sort of the
+     * sketch.
+     *
+     * @param qs quantiles between 0 and 1
+     * @return values for given quantiles in the same order
+     * @throws IllegalArgumentException when any q is out of range
+     * @throws IllegalStateException when sketch is empty
+     */
+    public long[] quantiles(double... qs) {
+        for (double q : qs) {
+            if (!(q >= 0 && q <= 1)) {
+                throw new IllegalArgumentException("quantile " + q
+                        + " is out of range");
+            }
+        }
+        if (count == 0) {
+            throw new IllegalStateException("sketch is empty");
+        }
+
+        long[] values = new long[retained];
+        long[] weights = new long[retained];
+        long[] keys = new long[retained];
+        int n = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            long[] level = levels.get(h);
+            for (int i = 0; i < sizes.get(h); i++) {
+                values[n] = level[i];
+                weights[n] = 1L << h;
+                n++;
+            }
+        }
+        // sort indexes by value
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+        long[] cumulative = new long[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            keys[i] = values[order[i]];
+            total += weights[order[i]];
+            cumulative[i] = total;
+        }
+
+        long[] result = new long[qs.length];
+        for (int j = 0; j < qs.length; j++) {
+            long rank = (long) Math.ceil(qs[j] * total);
+            int index = Arrays.binarySearch(cumulative, Math.max(rank, 1));
+            if (index < 0) {
+                index = -index - 1;
+            }
+            result[j] = keys[Math.min(index, n - 1)];
+        }
+        return result;
+    }
+
+    /**
+     * Creates independent copy of this sketch.
+     *
+     * @return copy
+     */
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(k, new Random(random.
+                nextLong()));
+        copy.levels.clear();
+        copy.sizes.clear();
+        for (int h = 0; h < levels.size(); h++) {
+            copy.levels.add(levels.get(h).clone());
+            copy.sizes.add(sizes.get(h));
+        }
+        copy.retained = retained;
+        copy.maxRetained = maxRetained;
+        copy.count = count;
+        return copy;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.size() - level - 1;
+        return (int) Math.ceil(Math.pow(RATIO, depth) * k) + 1;
+    }
+
+    private void grow() {
+        levels.add(new long[8]);
+        sizes.add(0);
+        maxRetained = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            maxRetained += capacity(h);
+        }
+    }
+
+    private void append(int level, long value) {
+        long[] values = levels.get(level);
+        int size = sizes.get(level);
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            levels.set(level, values);
+        }
+        values[size] = value;
+        sizes.set(level, size + 1);
+    }
+
+    /**
+     * Compacts the lowest full level into the next one.
+     */
+    private void compress() {
+        for (int h = 0; h < levels.size(); h++) {
+            int size = sizes.get(h);
+            if (size >= capacity(h)) {
+                if (h + 1 >= levels.size()) {
+                    grow();
+                }
+                long[] values = levels.get(h);
+                // odd value stays at this level, so total weight is kept
+                int compacted = size - size % 2;
+                Arrays.sort(values, 0, compacted);
+                for (int i = random.nextInt(2); i < compacted; i += 2) {
+                    append(h + 1, values[i]);
+                }
+                values[0] = values[size - 1];
+                sizes.set(h, size - compacted);
+                retained -= compacted / 2;
+                return;
+            }
+        }
+    }
+}
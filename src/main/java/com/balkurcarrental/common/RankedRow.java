@@ -0,0 +1,50 @@
+package com.balkurcarrental.common;
+
+import java.util.Objects;
+
+/**
+ * One row of ranking, key of ranked item and its score.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <K> type of key, for example id of entity
+ */
+public class RankedRow<K> {
+
+    private final K key;
+    private final long score;
+
+    public RankedRow(K key, long score) {
+        this.key = key;
+        this.score = score;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    public long getScore() {
+        return score;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(key) + Long.hashCode(score);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final RankedRow<?> other = (RankedRow<?>) obj;
+        return score == other.score && Objects.equals(key, other.key);
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + score;
+    }
+}
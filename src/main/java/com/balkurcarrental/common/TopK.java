@@ -0,0 +1,86 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps k rows with the highest score out of a stream of rows, for rankings
+ * which can't be computed by the database. Memory is bounded by k, every
+ * offered row costs O(log k).
+ *
+ * Rows with equal score are ordered by key, so the result doesn't depend on
+ * order of offered rows.
+ *
+ * This class is not thread safe.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ * @param <K> type of key
+ */
+public class TopK<K extends Comparable<? super K>> {
+
+    private final int k;
+    private final Comparator<RankedRow<K>> order;
+    private final PriorityQueue<RankedRow<K>> heap;
+
+    /**
+     * Creates empty ranking.
+     *
+     * @param k maximal number of kept rows
+     * @throws IllegalArgumentException when k is not positive
+     */
+    public TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k is not positive");
+        }
+        this.k = k;
+        // the best row first
+        this.order = Comparator.<RankedRow<K>>comparingLong(
+                RankedRow::getScore).reversed().thenComparing(
+                        RankedRow::getKey);
+        // the worst kept row on top of heap
+        this.heap = new PriorityQueue<>(Math.min(k, 1024), order.reversed());
+    }
+
+    /**
+     * Offers row to ranking.
+     *
+     * @param key key of row
+     * @param score score of row
+     * @return true when row is among the best k rows offered so far
+     */
+    public boolean offer(K key, long score) {
+        RankedRow<K> row = new RankedRow<>(key, score);
+        if (heap.size() < k) {
+            heap.add(row);
+            return true;
+        }
+        if (order.compare(row, heap.peek()) >= 0) {
+            return false;
+        }
+        heap.poll();
+        heap.add(row);
+        return true;
+    }
+
+    /**
+     * Returns number of kept rows.
+     *
+     * @return number of rows, at most k
+     */
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Returns kept rows from the best one.
+     *
+     * @return list of at most k rows
+     */
+    public List<RankedRow<K>> toList() {
+        List<RankedRow<K>> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result;
+    }
+}
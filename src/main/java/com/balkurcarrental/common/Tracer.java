@@ -0,0 +1,304 @@
+package com.balkurcarrental.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timing of nested operations as spans of traces. Span which begins
+ * when the thread is not inside any span starts new trace, the trace is
+ * sampled with given probability and spans of not sampled traces are not
+ * recorded at all. Spans are used with try/finally:
+ * <pre>
+ * int span = tracer.begin("CarManager.getCarById");
+ * try {
+ *     int phase = tracer.begin("getConnection");
+ *     connection = dataSource.getConnection();
+ *     phase = tracer.next(phase, "prepare");
+ *     ...
+ * } finally {
+ *     tracer.end(span);
+ * }
+ * </pre>
+ * Ending span ends also all its spans which were not ended yet, so phases
+ * interrupted by exception are ended by the outer finally.
+ *
+ * Span is only an int handle and names are expected to be constants, spans of
+ * running trace are kept in preallocated arrays of the thread and finished
+ * traces are copied to a ring of given capacity, so recording doesn't
+ * allocate. When the ring is full, the oldest spans are overwritten. Spans
+ * are exported in Zipkin v2 JSON format, which is read by Zipkin, Jaeger and
+ * other tools.
+ *
+ * This class is thread safe, every thread records its own traces. Components
+ * whose spans should nest need to share one tracer.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class Tracer {
+
+    /**
+     * Tracer which never samples.
+     */
+    public static final Tracer DISABLED = new Tracer("disabled", 0, 1);
+
+    /**
+     * Maximal number of recorded spans of one trace, more spans are dropped.
+     */
+    public static final int MAX_SPANS_PER_TRACE = 256;
+
+    // handle of span which was dropped, because the trace is full
+    private static final int DROPPED = Integer.MIN_VALUE;
+
+    private final String serviceName;
+    private final double sampleRate;
+    private final ThreadLocal<Recorder> recorders = ThreadLocal.withInitial(
+            Recorder::new);
+    private final AtomicLong ids = new AtomicLong(ThreadLocalRandom.current().
+            nextLong() >>> 1);
+
+    // ring of finished spans, guarded by this
+    private final long[] traceIds;
+    private final long[] spanIds;
+    private final long[] parentIds;
+    private final long[] timestamps;
+    private final long[] durations;
+    private final String[] names;
+    private int head;
+    private int size;
+    private long dropped;
+
+    /**
+     * Creates tracer.
+     *
+     * @param serviceName name of service in exported spans
+     * @param sampleRate probability that trace is recorded, from 0 to 1
+     * @param capacity number of finished spans kept until export
+     * @throws IllegalArgumentException when service name is null, sample
+     * rate is out of range or capacity is not positive
+     */
+    public Tracer(String serviceName, double sampleRate, int capacity) {
+        if (serviceName == null) {
+            throw new IllegalArgumentException("serviceName is null");
+        }
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("sampleRate is not from 0 to 1");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity is not positive");
+        }
+        this.serviceName = serviceName;
+        this.sampleRate = sampleRate;
+        traceIds = new long[capacity];
+        spanIds = new long[capacity];
+        parentIds = new long[capacity];
+        timestamps = new long[capacity];
+        durations = new long[capacity];
+        names = new String[capacity];
+    }
+
+    /**
+     * Begins span, it is a child of the innermost span of the thread which
+     * was not ended yet.
+     *
+     * @param name name of span
+     * @return handle of span for {@link #end(int)}
+     */
+    public int begin(String name) {
+        Recorder recorder = recorders.get();
+        if (recorder.unsampled > 0) {
+            return -++recorder.unsampled;
+        }
+        if (recorder.count == 0) {
+            if (sampleRate == 0 || sampleRate < 1 && ThreadLocalRandom.
+                    current().nextDouble() >= sampleRate) {
+                recorder.unsampled = 1;
+                return -1;
+            }
+            recorder.epochMicros = System.currentTimeMillis() * 1000;
+            recorder.originNanos = System.nanoTime();
+        }
+        return recorder.begin(name);
+    }
+
+    /**
+     * Ends span together with all its spans which were not ended yet. Ending
+     * of span which is already ended does nothing.
+     *
+     * @param span handle of span
+     */
+    public void end(int span) {
+        Recorder recorder = recorders.get();
+        if (span == DROPPED) {
+            return;
+        }
+        if (span < 0) {
+            // depth of span in not sampled trace
+            recorder.unsampled = Math.min(recorder.unsampled, -span - 1);
+            return;
+        }
+        if (span >= recorder.count || recorder.ends[span] != 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        // open spans are the path from the innermost one to the root
+        int open = recorder.current;
+        while (open >= span) {
+            recorder.ends[open] = now;
+            open = recorder.parents[open];
+        }
+        recorder.current = recorder.parents[span];
+        if (span == 0) {
+            finish(recorder);
+        }
+    }
+
+    /**
+     * Ends span and begins its sibling.
+     *
+     * @param span handle of span to end
+     * @param name name of next span
+     * @return handle of next span
+     */
+    public int next(int span, String name) {
+        end(span);
+        return begin(name);
+    }
+
+    private void finish(Recorder recorder) {
+        long traceId = ids.getAndAdd(recorder.count + 1L);
+        synchronized (this) {
+            for (int i = 0; i < recorder.count; i++) {
+                int index = (head + size) % names.length;
+                if (size == names.length) {
+                    head = (head + 1) % names.length;
+                    dropped++;
+                } else {
+                    size++;
+                }
+                traceIds[index] = traceId;
+                spanIds[index] = traceId + 1 + i;
+                parentIds[index] = recorder.parents[i] < 0 ? 0 : traceId + 1
+                        + recorder.parents[i];
+                timestamps[index] = recorder.epochMicros
+                        + (recorder.starts[i] - recorder.originNanos) / 1000;
+                durations[index] = Math.max(1, (recorder.ends[i]
+                        - recorder.starts[i]) / 1000);
+                names[index] = recorder.names[i];
+            }
+            dropped += recorder.dropped;
+        }
+        recorder.reset();
+    }
+
+    /**
+     * Returns number of spans which were lost, because the ring or trace
+     * was full.
+     *
+     * @return number of dropped spans
+     */
+    public synchronized long getDroppedSpans() {
+        return dropped;
+    }
+
+    /**
+     * Writes finished spans as Zipkin v2 JSON array and removes them.
+     *
+     * @param out writer to write to, it is not closed
+     * @return number of written spans
+     * @throws IOException when writing fails
+     */
+    public int export(Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        int exported = 0;
+        synchronized (this) {
+            for (; size > 0; size--) {
+                json.beginObject()
+                        .name("traceId").value(hex(traceIds[head]))
+                        .name("id").value(hex(spanIds[head]));
+                if (parentIds[head] != 0) {
+                    json.name("parentId").value(hex(parentIds[head]));
+                }
+                json.name("name").value(names[head])
+                        .name("timestamp").value(timestamps[head])
+                        .name("duration").value(durations[head])
+                        .name("localEndpoint").beginObject()
+                        .name("serviceName").value(serviceName)
+                        .endObject()
+                        .endObject();
+                names[head] = null;
+                head = (head + 1) % names.length;
+                exported++;
+            }
+        }
+        json.endArray();
+        json.flush();
+        return exported;
+    }
+
+    /**
+     * Writes finished spans as Zipkin v2 JSON array to file and removes
+     * them. Existing file is replaced.
+     *
+     * @param file file to write to
+     * @return number of written spans
+     * @throws IOException when writing fails
+     */
+    public int export(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            return export(out);
+        }
+    }
+
+    private static String hex(long id) {
+        String digits = Long.toHexString(id);
+        return "0000000000000000".substring(digits.length()) + digits;
+    }
+
+    /**
+     * Spans of the running trace of one thread, span i is at index i.
+     */
+    private static class Recorder {
+
+        private final String[] names = new String[MAX_SPANS_PER_TRACE];
+        private final int[] parents = new int[MAX_SPANS_PER_TRACE];
+        private final long[] starts = new long[MAX_SPANS_PER_TRACE];
+        // 0 while span is open
+        private final long[] ends = new long[MAX_SPANS_PER_TRACE];
+        private int count;
+        private int current = -1;
+        private int dropped;
+        // depth of not sampled trace, 0 when it is not running
+        private int unsampled;
+        private long epochMicros;
+        private long originNanos;
+
+        int begin(String name) {
+            if (count == MAX_SPANS_PER_TRACE) {
+                dropped++;
+                return DROPPED;
+            }
+            int span = count++;
+            names[span] = name;
+            parents[span] = current;
+            starts[span] = System.nanoTime();
+            ends[span] = 0;
+            current = span;
+            return span;
+        }
+
+        void reset() {
+            Arrays.fill(names, 0, count, null);
+            count = 0;
+            current = -1;
+            dropped = 0;
+        }
+    }
+}
@@ -7,15 +7,27 @@ CREATE TABLE customer (
     id BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     name VARCHAR(50) NOT NULL,
     surname VARCHAR(50) NOT NULL,
-    phone_number VARCHAR(50) NOT NULL
+    phone_number VARCHAR(50) NOT NULL,
+    phone_key VARCHAR(50) NOT NULL
  );
 
+CREATE INDEX customer_phone_key ON customer (phone_key);
+
+CREATE INDEX customer_name ON customer (name);
+
+CREATE INDEX customer_surname ON customer (surname);
+
 CREATE TABLE car (
     id BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     brand VARCHAR(50) NOT NULL,
-    registration_number VARCHAR(50) NOT NULL
+    registration_number VARCHAR(50) NOT NULL,
+    registration_key VARCHAR(50) NOT NULL
  );
 
+CREATE INDEX car_registration_key ON car (registration_key);
+
+CREATE INDEX car_brand ON car (brand);
+
 CREATE TABLE rent (
     id BIGINT NOT NULL PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     customer_id BIGINT NOT NULL,
@@ -24,4 +36,30 @@ CREATE TABLE rent (
     beginning_date DATE NOT NULL,
     expected_return_date DATE,
     real_return_date DATE
- );
\ No newline at end of file
+ );
+
+CREATE INDEX rent_car ON rent (car_id, beginning_date);
+
+CREATE INDEX rent_customer ON rent (customer_id);
+
+CREATE INDEX rent_open ON rent (real_return_date, expected_return_date);
+
+CREATE TABLE job_checkpoint (
+    name VARCHAR(100) NOT NULL PRIMARY KEY,
+    last_rent_id BIGINT NOT NULL,
+    run_day DATE NOT NULL
+ );
+
+CREATE TABLE rent_archive (
+    id BIGINT NOT NULL PRIMARY KEY,
+    customer_id BIGINT NOT NULL,
+    car_id BIGINT NOT NULL,
+    price_per_day INTEGER NOT NULL,
+    beginning_date DATE NOT NULL,
+    expected_return_date DATE,
+    real_return_date DATE NOT NULL
+ );
+
+CREATE INDEX rent_archive_car ON rent_archive (car_id, beginning_date);
+
+CREATE INDEX rent_archive_customer ON rent_archive (customer_id);
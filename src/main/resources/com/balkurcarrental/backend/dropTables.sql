@@ -5,4 +5,6 @@
 
 DROP TABLE customer;
 DROP TABLE car;
-DROP TABLE rent;
\ No newline at end of file
+DROP TABLE rent;
+DROP TABLE job_checkpoint;
+DROP TABLE rent_archive;
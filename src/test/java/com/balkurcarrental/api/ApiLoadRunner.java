@@ -0,0 +1,228 @@
+package com.balkurcarrental.api;
+
+import com.balkurcarrental.backend.Car;
+import com.balkurcarrental.backend.CarBuilder;
+import com.balkurcarrental.backend.CarManagerImpl;
+import com.balkurcarrental.backend.Customer;
+import com.balkurcarrental.backend.CustomerBuilder;
+import com.balkurcarrental.backend.CustomerManagerImpl;
+import com.balkurcarrental.backend.RentBuilder;
+import com.balkurcarrental.backend.RentManager;
+import com.balkurcarrental.backend.RentManagerImpl;
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.DerbyBootstrap;
+import com.balkurcarrental.common.JsonParser;
+import com.balkurcarrental.common.LeakDetectingDataSource;
+import com.balkurcarrental.common.QuantileSketch;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Load test of {@link ApiServer}. Clients repeatedly read cars, read rents of
+ * customers and create and delete customers, then throughput and quantiles
+ * of latency are printed.
+ *
+ * Run by {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.balkurcarrental.api.ApiLoadRunner
+ * -Dexec.args="[url] [clients] [seconds]"}. Without url, or with empty one,
+ * embedded server with in-memory database is started on localhost. TCP_NODELAY
+ * of the embedded server is turned on by {@code sun.net.httpserver.nodelay}
+ * property, unless it is set explicitly, see {@link ApiServer}.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class ApiLoadRunner {
+
+    private static final int SEED_CARS = 200;
+    private static final int SEED_CUSTOMERS = 200;
+
+    private static LeakDetectingDataSource leakDetector;
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 && !args[0].isEmpty() ? args[0] : null;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        ApiServer server = null;
+        if (url == null) {
+            // read by the JDK server only once, before the first server is
+            // created
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            server = startEmbedded();
+            url = "http://localhost:" + server.getPort();
+        }
+        List<Long> carIds = ids(url + "/cars");
+        List<Long> customerIds = ids(url + "/customers");
+        if (carIds.isEmpty() || customerIds.isEmpty()) {
+            throw new IllegalStateException("There are no cars or customers at "
+                    + url);
+        }
+
+        String base = url;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        List<QuantileSketch> latencies = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            QuantileSketch latency = new QuantileSketch();
+            latencies.add(latency);
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    int dice = random.nextInt(10);
+                    long start = System.nanoTime();
+                    try {
+                        if (dice < 8) {
+                            call("GET", base + "/cars/" + carIds.get(random.
+                                    nextInt(carIds.size())), null);
+                        } else if (dice < 9) {
+                            call("GET", base + "/rents?customerId="
+                                    + customerIds.get(random.nextInt(
+                                            customerIds.size())), null);
+                        } else {
+                            Object created = call("POST", base + "/customers",
+                                    "{\"name\":\"Load\",\"surname\":\"Test\","
+                                    + "\"phoneNumber\":\"" + random.nextLong()
+                                    + "\"}");
+                            call("DELETE", base + "/customers/"
+                                    + ((Map<?, ?>) created).get("id"), null);
+                        }
+                    } catch (IOException | RuntimeException ex) {
+                        errors.incrementAndGet();
+                    }
+                    latency.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+                            - start));
+                }
+            }, "load-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        QuantileSketch total = new QuantileSketch();
+        for (QuantileSketch latency : latencies) {
+            total.merge(latency);
+        }
+        long[] quantiles = total.quantiles(0.5, 0.9, 0.99);
+        System.out.printf("%d clients, %d requests, %d errors, %.0f req/s%n",
+                clients, total.getCount(), errors.get(), total.getCount()
+                / (double) seconds);
+        System.out.printf("latency p50 %d us, p90 %d us, p99 %d us%n",
+                quantiles[0], quantiles[1], quantiles[2]);
+        if (server != null) {
+            server.stop(0);
+            long[] acquire = leakDetector.getAcquireTimes().quantiles(0.5,
+                    0.99);
+            System.out.printf("connection acquire p50 %d us, p99 %d us, "
+                    + "%d connections open%n", acquire[0], acquire[1],
+                    leakDetector.getOpenConnections());
+            leakDetector.close();
+        }
+    }
+
+    private static ApiServer startEmbedded() throws Exception {
+        Properties config = DerbyBootstrap.loadConfig(DerbyBootstrap.class.
+                getResource("carrental-derby.properties"));
+        config.setProperty(DerbyBootstrap.DATABASE, "memory:carrental-load");
+        DerbyBootstrap bootstrap = new DerbyBootstrap(config);
+        leakDetector = new LeakDetectingDataSource(bootstrap.start());
+        DataSource dataSource = leakDetector;
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        RentManagerImpl rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < SEED_CUSTOMERS; i++) {
+            Customer customer = new CustomerBuilder().name("Name" + i)
+                    .surname("Surname" + i).phoneNumber("0905" + i).build();
+            customerManager.createCustomer(customer);
+            customers.add(customer);
+        }
+        LocalDate day = LocalDate.of(2016, 1, 1);
+        for (int i = 0; i < SEED_CARS; i++) {
+            Car car = new CarBuilder().brand("Brand" + i % 10)
+                    .registrationNumber("BA" + i).build();
+            carManager.createCar(car);
+            for (int week = 0; week < 10; week++) {
+                rentManager.createRent(new RentBuilder().car(car).customer(
+                        customers.get((i + week) % customers.size()))
+                        .pricePerDay(100).beginningDate(day.plusWeeks(week))
+                        .expectedReturnDate(day.plusWeeks(week).plusDays(5))
+                        .realReturnDate(day.plusWeeks(week).plusDays(5))
+                        .build());
+            }
+        }
+        bootstrap.updateStatistics();
+
+        ApiServer server = new ApiServer();
+        server.setCarManager(carManager);
+        server.setCustomerManager(customerManager);
+        server.setRentManager(rentManager);
+        server.start(new InetSocketAddress("localhost", 0));
+        return server;
+    }
+
+    private static List<Long> ids(String url) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (Object entity : (List<?>) call("GET", url, null)) {
+            ids.add((Long) ((Map<?, ?>) entity).get("id"));
+        }
+        return ids;
+    }
+
+    private static Object call(String method, String url, String body)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).
+                openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (connection.getResponseCode() >= 400) {
+            throw new IOException(method + " " + url + " failed with "
+                    + connection.getResponseCode());
+        }
+        if (connection.getResponseCode() == 204) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return JsonParser.parse(new String(bytes.toByteArray(),
+                StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,292 @@
+package com.balkurcarrental.api;
+
+import com.balkurcarrental.backend.CarManagerImpl;
+import com.balkurcarrental.backend.CustomerManagerImpl;
+import com.balkurcarrental.backend.Rent;
+import com.balkurcarrental.backend.RentManager;
+import com.balkurcarrental.backend.RentManagerImpl;
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.JsonParser;
+import com.balkurcarrental.common.ServiceFailureException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for ApiServer
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class ApiServerTest {
+
+    private DataSource dataSource;
+    private CarManagerImpl carManager;
+    private CustomerManagerImpl customerManager;
+    private ApiServer server;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        RentManagerImpl rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+
+        server = new ApiServer();
+        server.setCarManager(carManager);
+        server.setCustomerManager(customerManager);
+        server.setRentManager(rentManager);
+        server.start(new InetSocketAddress("localhost", 0));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        server.stop(0);
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    /**
+     * Status and parsed body of response.
+     */
+    private static class Response {
+
+        private final int status;
+        private final Object body;
+
+        Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        Map<?, ?> object() {
+            return (Map<?, ?>) body;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object> list() {
+            return (List<Object>) body;
+        }
+    }
+
+    private Response call(String method, String path, String body)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        if (in == null) {
+            return new Response(status, null);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        return new Response(status, text.isEmpty() ? null : JsonParser.parse(
+                text));
+    }
+
+    private long createCar(String brand, String registrationNumber)
+            throws IOException {
+        Response response = call("POST", "/cars", "{\"brand\":\"" + brand
+                + "\",\"registrationNumber\":\"" + registrationNumber + "\"}");
+        assertThat(response.status).isEqualTo(201);
+        return (Long) response.object().get("id");
+    }
+
+    private long createCustomer(String name) throws IOException {
+        Response response = call("POST", "/customers", "{\"name\":\"" + name
+                + "\",\"surname\":\"Kurčík\",\"phoneNumber\":\"090" + name.
+                length() + "\"}");
+        assertThat(response.status).isEqualTo(201);
+        return (Long) response.object().get("id");
+    }
+
+    private long createRent(long carId, long customerId, String beginning)
+            throws IOException {
+        Response response = call("POST", "/rents", "{\"car\":{\"id\":" + carId
+                + "},\"customer\":{\"id\":" + customerId
+                + "},\"pricePerDay\":100,\"beginningDate\":\"" + beginning
+                + "\",\"expectedReturnDate\":null}");
+        assertThat(response.status).isEqualTo(201);
+        return (Long) response.object().get("id");
+    }
+
+    @Test
+    public void carCrud() throws IOException {
+        long id = createCar("BMW", "AB123");
+        createCar("Skoda", "CD456");
+
+        Response car = call("GET", "/cars/" + id, null);
+        assertThat(car.status).isEqualTo(200);
+        assertThat(car.object().get("brand")).isEqualTo("BMW");
+        assertThat(call("GET", "/cars?registrationNumber=ab%20123", null)
+                .object().get("id")).isEqualTo(id);
+        assertThat(call("GET", "/cars", null).list()).hasSize(2);
+        assertThat(call("GET", "/cars?brand=Skoda", null).list()).hasSize(1);
+
+        Response updated = call("PUT", "/cars/" + id,
+                "{\"brand\":\"Audi\",\"registrationNumber\":\"AB123\"}");
+        assertThat(updated.status).isEqualTo(200);
+        assertThat(call("GET", "/cars/" + id, null).object().get("brand"))
+                .isEqualTo("Audi");
+
+        assertThat(call("DELETE", "/cars/" + id, null).status).isEqualTo(204);
+        assertThat(call("GET", "/cars/" + id, null).status).isEqualTo(404);
+    }
+
+    @Test
+    public void customerFinders() throws IOException {
+        long lukas = createCustomer("Lukáš");
+        createCustomer("Simon");
+
+        List<Object> found = call("GET", "/customers?name=Luk%C3%A1%C5%A1",
+                null).list();
+        assertThat(found).hasSize(1);
+        assertThat(((Map<?, ?>) found.get(0)).get("id")).isEqualTo(lukas);
+        assertThat(call("GET", "/customers?surname=Kur%C4%8D%C3%ADk", null)
+                .list()).hasSize(2);
+
+        Response lookup = call("POST", "/customers/lookup", "[" + lukas
+                + ", 999]");
+        assertThat((List<?>) lookup.object().get("found")).hasSize(1);
+        assertThat(new Response(200, lookup.object().get("missingIds")).list())
+                .containsExactly(999L);
+    }
+
+    @Test
+    public void rentsAndReturns() throws IOException {
+        long car = createCar("BMW", "AB123");
+        long customer = createCustomer("Lukas");
+        long rent = createRent(car, customer, "2016-04-01");
+
+        Map<?, ?> created = call("GET", "/rents/" + rent, null).object();
+        assertThat(((Map<?, ?>) created.get("car")).get("brand")).isEqualTo(
+                "BMW");
+        assertThat(created.get("realReturnDate")).isNull();
+        assertThat(call("GET", "/rents?carId=" + car, null).list()).hasSize(1);
+        assertThat(call("GET", "/rents?customerId=" + customer, null).list())
+                .hasSize(1);
+        assertThat(call("GET", "/rents?activeOn=2016-04-05", null).list())
+                .hasSize(1);
+
+        Response outcomes = call("POST", "/rents/returns", "{\"" + rent
+                + "\":\"2016-04-03\",\"999\":\"2016-04-03\"}");
+        assertThat(outcomes.status).isEqualTo(200);
+        assertThat(outcomes.object().get(Long.toString(rent))).isEqualTo(
+                "RETURNED");
+        assertThat(outcomes.object().get("999")).isEqualTo("NOT_FOUND");
+        assertThat(call("GET", "/rents/" + rent, null).object().get(
+                "realReturnDate")).isEqualTo("2016-04-03");
+        assertThat(call("GET", "/rents?activeOn=2016-04-05", null).list())
+                .isEmpty();
+
+        assertThat(call("DELETE", "/rents/" + rent, null).status).isEqualTo(
+                204);
+        assertThat(call("GET", "/rents", null).list()).isEmpty();
+    }
+
+    @Test
+    public void errors() throws IOException {
+        long car = createCar("BMW", "AB123");
+        long customer = createCustomer("Lukas");
+        createRent(car, customer, "2016-04-01");
+
+        Response conflict = call("POST", "/rents", "{\"car\":{\"id\":" + car
+                + "},\"customer\":{\"id\":" + customer
+                + "},\"pricePerDay\":100,\"beginningDate\":\"2016-04-02\"}");
+        assertThat(conflict.status).isEqualTo(400);
+        assertThat(conflict.object().get("error")).asString().contains(
+                "already rented");
+
+        assertThat(call("POST", "/cars", "{\"brand\":").status).isEqualTo(400);
+        assertThat(call("POST", "/cars", "{\"brand\":1}").status).isEqualTo(
+                400);
+        assertThat(call("GET", "/rents?activeOn=yesterday", null).status)
+                .isEqualTo(400);
+        assertThat(call("GET", "/cars/abc", null).status).isEqualTo(404);
+        assertThat(call("GET", "/customers/999", null).status).isEqualTo(404);
+        assertThat(call("DELETE", "/cars", null).status).isEqualTo(405);
+    }
+
+    @Test
+    public void failedStreamIsAborted() throws IOException {
+        long car = createCar("BMW", "AB123");
+        long customer = createCustomer("Lukas");
+        assertThat(call("POST", "/rents", "{\"car\":{\"id\":" + car
+                + "},\"customer\":{\"id\":" + customer
+                + "},\"pricePerDay\":100,\"beginningDate\":\"2016-04-01\","
+                + "\"expectedReturnDate\":\"2016-04-03\"}").status)
+                .isEqualTo(201);
+        assertThat(call("GET", "/rents?overdueAsOf=2016-04-10", null).list())
+                .hasSize(1);
+
+        RentManagerImpl failing = new RentManagerImpl() {
+            @Override
+            public void forEachOverdueRent(LocalDate asOf,
+                    Consumer<? super Rent> action) {
+                super.forEachOverdueRent(asOf, rent -> {
+                    action.accept(rent);
+                    throw new ServiceFailureException("Connection was lost");
+                });
+            }
+        };
+        failing.setDataSource(dataSource);
+        failing.setCarManager(carManager);
+        failing.setCustomerManager(customerManager);
+        server.stop(0);
+        server.setRentManager(failing);
+        server.start(new InetSocketAddress("localhost", 0));
+
+        // response is not terminated, so the client can't read it as complete
+        assertThatThrownBy(() -> call("GET", "/rents?overdueAsOf=2016-04-10",
+                null)).isInstanceOf(IOException.class);
+        assertThat(call("GET", "/rents", null).list()).hasSize(1);
+    }
+}
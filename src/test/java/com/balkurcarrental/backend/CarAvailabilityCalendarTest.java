@@ -0,0 +1,237 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.LeakDetectingDataSource;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for CarAvailabilityCalendar
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class CarAvailabilityCalendarTest {
+
+    private static final LocalDate DAY = LocalDate.of(2016, 4, 1);
+
+    private DataSource dataSource;
+    private CarAvailabilityCalendar calendar;
+    private RentManagerImpl rentManager;
+    private Car bmw;
+    private Car mercedes;
+    private Customer customer;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        mercedes = new CarBuilder().brand("Mercedes").registrationNumber(
+                "FG789").build();
+        carManager.createCar(bmw);
+        carManager.createCar(mercedes);
+        customer = new CustomerBuilder().name("Lukas").surname("Kurcik").
+                phoneNumber("0905123456").build();
+        customerManager.createCustomer(customer);
+
+        calendar = new CarAvailabilityCalendar();
+        calendar.setDataSource(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    private Rent rent(Car car, int fromOffset, Integer toOffset) {
+        Rent rent = new RentBuilder().car(car).customer(customer).pricePerDay(
+                100).beginningDate(DAY.plusDays(fromOffset)).build();
+        if (toOffset != null) {
+            rent.setRealReturnDate(DAY.plusDays(toOffset));
+        }
+        rentManager.createRent(rent);
+        return rent;
+    }
+
+    @Test
+    public void loadFromDatabase() {
+        rent(bmw, 0, 4);
+        rent(bmw, 10, 12);
+        calendar.load();
+
+        assertThat(calendar.isFree(bmw.getId(), DAY.minusDays(1))).isTrue();
+        assertThat(calendar.isFree(bmw.getId(), DAY)).isFalse();
+        assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(4))).isFalse();
+        assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(5))).isTrue();
+        assertThat(calendar.isFree(mercedes.getId(), DAY)).isTrue();
+    }
+
+    @Test
+    public void firstFreeWindow() {
+        rent(bmw, 0, 4);
+        rent(bmw, 10, 12);
+        rent(bmw, 100, 200);
+        calendar.load();
+
+        assertThat(calendar.firstFreeWindow(bmw.getId(), DAY, 3)).isEqualTo(
+                DAY.plusDays(5));
+        assertThat(calendar.firstFreeWindow(bmw.getId(), DAY, 5)).isEqualTo(
+                DAY.plusDays(5));
+        assertThat(calendar.firstFreeWindow(bmw.getId(), DAY, 6)).isEqualTo(
+                DAY.plusDays(13));
+        assertThat(calendar.firstFreeWindow(bmw.getId(), DAY, 90)).isEqualTo(
+                DAY.plusDays(201));
+        assertThat(calendar.firstFreeWindow(mercedes.getId(), DAY, 90)).
+                isEqualTo(DAY);
+    }
+
+    @Test
+    public void unfinishedRentBooksCarIndefinitely() {
+        rent(bmw, 0, 4);
+        rent(bmw, 20, null);
+        calendar.load();
+
+        assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(5000))).isFalse();
+        assertThat(calendar.firstFreeWindow(bmw.getId(), DAY, 15)).isEqualTo(
+                DAY.plusDays(5));
+        assertThat(calendar.firstFreeWindow(bmw.getId(), DAY, 16)).isNull();
+        BitSet booked = calendar.bookedDays(bmw.getId(), DAY.plusDays(15), 10);
+        assertThat(booked.toString()).isEqualTo("{5, 6, 7, 8, 9}");
+    }
+
+    @Test
+    public void bookedDays() {
+        rent(bmw, 0, 4);
+        rent(bmw, 80, 95);
+        calendar.load();
+
+        BitSet booked = calendar.bookedDays(bmw.getId(), DAY.minusDays(2), 90);
+        assertThat(booked.cardinality()).isEqualTo(5 + 8);
+        assertThat(booked.get(2)).isTrue();
+        assertThat(booked.get(7)).isFalse();
+        assertThat(booked.get(82)).isTrue();
+        assertThat(booked.length()).isEqualTo(90);
+
+        Map<Long, BitSet> all = calendar.bookedDays(Arrays.asList(bmw.getId(),
+                mercedes.getId()), DAY, 90);
+        assertThat(all).containsOnlyKeys(bmw.getId(), mercedes.getId());
+        assertThat(all.get(mercedes.getId()).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void calendarFollowsRentWrites() {
+        rentManager.setAvailabilityCalendar(calendar);
+        calendar.load();
+
+        Rent rent = rent(bmw, 0, 4);
+        assertThat(calendar.isFree(bmw.getId(), DAY)).isFalse();
+
+        rent.setRealReturnDate(DAY.plusDays(8));
+        rentManager.updateRent(rent);
+        assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(8))).isFalse();
+
+        rent.setCar(mercedes);
+        rentManager.updateRent(rent);
+        assertThat(calendar.isFree(bmw.getId(), DAY)).isTrue();
+        assertThat(calendar.isFree(mercedes.getId(), DAY)).isFalse();
+
+        rentManager.deleteRent(rent);
+        assertThat(calendar.isFree(mercedes.getId(), DAY)).isTrue();
+    }
+
+    @Test
+    public void changedDatesAreAppliedWithoutQueries() {
+        Rent other = rent(bmw, -10, -5);
+        try (LeakDetectingDataSource counting = new LeakDetectingDataSource(
+                dataSource)) {
+            calendar.setDataSource(counting);
+            rentManager.setAvailabilityCalendar(calendar);
+            calendar.load();
+
+            Rent rent = rent(bmw, 0, 4);
+            rent.setPricePerDay(200);
+            rentManager.updateRent(rent);
+            rent.setRealReturnDate(null);
+            rentManager.updateRent(rent);
+            assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(100)))
+                    .isFalse();
+            rent.setRealReturnDate(DAY.plusDays(1));
+            rentManager.updateRent(rent);
+            assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(1))).isFalse();
+            assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(2))).isTrue();
+            rentManager.deleteRent(other);
+            assertThat(calendar.isFree(bmw.getId(), DAY.minusDays(7)))
+                    .isTrue();
+            rent.setCar(mercedes);
+            rentManager.updateRent(rent);
+            assertThat(calendar.isFree(bmw.getId(), DAY)).isTrue();
+            assertThat(calendar.isFree(mercedes.getId(), DAY)).isFalse();
+
+            assertThat(counting.getAcquireTimes().getCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void unknownRangeIsReloaded() {
+        Rent rent = rent(bmw, 0, 4);
+        try (LeakDetectingDataSource counting = new LeakDetectingDataSource(
+                dataSource)) {
+            calendar.setDataSource(counting);
+            rentManager.setAvailabilityCalendar(calendar);
+            // the calendar does not know the rent
+            calendar.load(Collections.emptyList());
+
+            rent.setRealReturnDate(DAY.plusDays(8));
+            rentManager.updateRent(rent);
+
+            assertThat(counting.getAcquireTimes().getCount()).isEqualTo(1);
+            assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(8))).isFalse();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void isFreeWithNullCarId() {
+        calendar.isFree(null, DAY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void firstFreeWindowWithZeroDays() {
+        calendar.firstFreeWindow(bmw.getId(), DAY, 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loadWithoutDataSource() {
+        calendar.setDataSource(null);
+        calendar.load();
+    }
+}
@@ -1,6 +1,7 @@
 package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
 import com.balkurcarrental.common.EntityNotFoundException;
 import com.balkurcarrental.common.InvalidEntityException;
 import com.balkurcarrental.common.ServiceFailureException;
@@ -9,8 +10,13 @@ import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.ExpectedException;
 import org.apache.derby.jdbc.EmbeddedDataSource;
+import com.balkurcarrental.common.LookupResult;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.function.Consumer;
 import javax.sql.DataSource;
 import org.junit.After;
@@ -137,6 +143,54 @@ public class CarManagerImplTest {
         managerImpl.createCar(carPeugeot);
     }
 
+    @Test
+    public void createCarWithUsedNormalizedRegistrationNumber() {
+        Car carBMW = createCarBMW().registrationNumber("BA 123AB").build();
+        Car carMercedes = createCarMercedes().registrationNumber("ba123ab").
+                build();
+
+        managerImpl.createCar(carBMW);
+        expectedException.expect(InvalidEntityException.class);
+        managerImpl.createCar(carMercedes);
+    }
+
+    @Test
+    public void getCarByRegistrationNumber() {
+        Car carBmw = createCarBMW().registrationNumber("BA 123AB").build();
+        Car carMercedes = createCarMercedes().build();
+        managerImpl.createCar(carBmw);
+        managerImpl.createCar(carMercedes);
+
+        assertThat(managerImpl.getCarByRegistrationNumber("BA 123AB")).
+                isEqualToComparingFieldByField(carBmw);
+        assertThat(managerImpl.getCarByRegistrationNumber(" ba123ab\t")).
+                isEqualToComparingFieldByField(carBmw);
+    }
+
+    @Test
+    public void getCarByRegistrationNumberAfterUpdate() {
+        Car car = createCarBMW().build();
+        managerImpl.createCar(car);
+        car.setRegistrationNumber("ZA 999XY");
+        managerImpl.updateCar(car);
+
+        assertThat(managerImpl.getCarByRegistrationNumber("za999xy")).
+                isEqualToComparingFieldByField(car);
+        expectedException.expect(EntityNotFoundException.class);
+        managerImpl.getCarByRegistrationNumber(createCarBMW().build().
+                getRegistrationNumber());
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getCarByNotExistingRegistrationNumber() {
+        managerImpl.getCarByRegistrationNumber("XX000XX");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCarByNullRegistrationNumber() {
+        managerImpl.getCarByRegistrationNumber(null);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void getCarByNullId() {
         Car carById = managerImpl.getCarById(null);
@@ -147,6 +201,51 @@ public class CarManagerImplTest {
         Car carById = managerImpl.getCarById(1024L);
     }
 
+    @Test
+    public void getCarsByIds() {
+        Car carBmw = createCarBMW().build();
+        Car carMercedes = createCarMercedes().build();
+        managerImpl.createCar(carBmw);
+        managerImpl.createCar(carMercedes);
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1000; id < 1250; id++) {
+            ids.add(id);
+        }
+        ids.add(carBmw.getId());
+        ids.add(carMercedes.getId());
+        ids.add(carBmw.getId());
+
+        LookupResult<Car> result = managerImpl.getCarsByIds(ids);
+
+        assertThat(result.getFound()).hasSize(2);
+        assertThat(result.get(carBmw.getId())).isEqualToComparingFieldByField(
+                carBmw);
+        assertThat(result.get(carMercedes.getId())).
+                isEqualToComparingFieldByField(carMercedes);
+        assertThat(result.getMissingIds()).hasSize(250).contains(1000L,
+                1249L);
+        assertThat(result.isComplete()).isFalse();
+    }
+
+    @Test
+    public void getCarsByEmptyIds() {
+        LookupResult<Car> result = managerImpl.getCarsByIds(Collections.
+                emptyList());
+        assertThat(result.getFound()).isEmpty();
+        assertThat(result.isComplete()).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCarsByNullIds() {
+        managerImpl.getCarsByIds(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCarsByIdsContainingNull() {
+        managerImpl.getCarsByIds(Arrays.asList(1L, null));
+    }
+
     private void testUpdateSuccessfuly(Consumer<Car> updateOperation) {
         Car carBmw = createCarBMW().build();
         Car carPeugeot = createCarMercedes().build();
@@ -330,6 +429,46 @@ public class CarManagerImplTest {
         managerImpl.findCarsByBrand(null);
     }
 
+    @Test
+    public void writesArePublishedAsEvents() {
+        List<EntityEvent<Car>> events = new ArrayList<>();
+        managerImpl.getEvents().addListener(events::addAll);
+
+        Car car = createCarBMW().build();
+        managerImpl.createCar(car);
+        car.setBrand("Audi");
+        managerImpl.updateCar(car);
+        managerImpl.deleteCar(car);
+
+        assertThat(events).extracting("type").containsExactly(
+                EntityEvent.Type.CREATED, EntityEvent.Type.UPDATED,
+                EntityEvent.Type.DELETED);
+        assertThat(events).extracting("id").containsOnly(car.getId());
+        assertThat(events.get(0).getBefore()).isNull();
+        assertThat(events.get(0).getAfter().getBrand()).isEqualTo("BMW");
+        assertThat(events.get(1).getBefore().getBrand()).isEqualTo("BMW");
+        assertThat(events.get(1).getAfter().getBrand()).isEqualTo("Audi");
+        assertThat(events.get(2).getBefore().getBrand()).isEqualTo("Audi");
+        assertThat(events.get(2).getAfter()).isNull();
+    }
+
+    @Test
+    public void failedWriteIsNotPublished() {
+        List<EntityEvent<Car>> events = new ArrayList<>();
+        managerImpl.getEvents().addListener(events::addAll);
+        Car car = createCarBMW().build();
+        managerImpl.createCar(car);
+        events.clear();
+
+        Car duplicate = createCarMercedes().registrationNumber("AB123").build();
+        assertThatThrownBy(() -> managerImpl.createCar(duplicate))
+                .isInstanceOf(InvalidEntityException.class);
+        Car missing = createCarMercedes().id(car.getId() + 1).build();
+        assertThatThrownBy(() -> managerImpl.deleteCar(missing))
+                .isInstanceOf(EntityNotFoundException.class);
+        assertThat(events).isEmpty();
+    }
+
     private void testExpectedServiceFailureException(
             Consumer<CarManager> operation) throws SQLException {
         SQLException sqlException = new SQLException();
@@ -354,6 +493,19 @@ public class CarManagerImplTest {
         testExpectedServiceFailureException((m) -> m.getCarById(car.getId()));
     }
 
+    @Test
+    public void getCarsByIdsWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((m) -> m.getCarsByIds(Arrays.
+                asList(1L, 2L)));
+    }
+
+    @Test
+    public void getCarByRegistrationNumberWithSqlExceptionThrown() throws
+            SQLException {
+        testExpectedServiceFailureException((m) -> m.getCarByRegistrationNumber(
+                "AB123"));
+    }
+
     @Test
     public void updateCarWithSqlExceptionThrown() throws SQLException {
         Car car = createCarBMW().build();
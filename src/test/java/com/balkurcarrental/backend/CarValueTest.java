@@ -0,0 +1,52 @@
+package com.balkurcarrental.backend;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for CarValue
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class CarValueTest {
+
+    @Test
+    public void conversionToAndFromCar() {
+        Car car = new CarBuilder().id(12L).brand("BMW").registrationNumber(
+                "AB123").build();
+
+        CarValue value = CarValue.of(car);
+        car.setBrand("Skoda");
+
+        assertThat(value.getId()).isEqualTo(12L);
+        assertThat(value.getBrand()).isEqualTo("BMW");
+        assertThat(value.getRegistrationNumber()).isEqualTo("AB123");
+        assertThat(value.toCar()).isEqualToComparingFieldByField(
+                new CarBuilder().id(12L).brand("BMW").registrationNumber(
+                        "AB123").build());
+        assertThat(CarValue.of(null)).isNull();
+    }
+
+    @Test
+    public void equalityOfAllAttributes() {
+        CarValue bmw = CarValue.builder().id(12L).brand("BMW")
+                .registrationNumber("AB123").build();
+        CarValue same = CarValue.builder().id(12L).brand("BMW")
+                .registrationNumber("AB123").build();
+        CarValue renamed = bmw.toBuilder().brand("Mercedes").build();
+
+        assertThat(bmw).isEqualTo(same);
+        assertThat(bmw.hashCode()).isEqualTo(same.hashCode());
+        assertThat(bmw).isNotEqualTo(renamed);
+        assertThat(renamed.getId()).isEqualTo(12L);
+        assertThat(CarValue.builder().build()).isEqualTo(CarValue.builder()
+                .build());
+
+        Set<CarValue> set = new HashSet<>();
+        set.add(bmw);
+        assertThat(set).contains(same).doesNotContain(renamed);
+    }
+}
@@ -8,8 +8,13 @@ package com.balkurcarrental.backend;
 import com.balkurcarrental.common.DBUtils;
 import com.balkurcarrental.common.EntityNotFoundException;
 import com.balkurcarrental.common.InvalidEntityException;
+import com.balkurcarrental.common.LookupResult;
 import com.balkurcarrental.common.ServiceFailureException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Consumer;
 import javax.sql.DataSource;
 import org.apache.derby.jdbc.EmbeddedDataSource;
@@ -140,6 +145,12 @@ public class CustomerManagerImplTest {
                 InvalidEntityException.class);
     }
     
+    @Test
+    public void createCustomerWithPhoneNumberWithoutDigits() {
+        testCreateUnsuccessfully((cb) -> cb.phoneNumber("n/a"),
+                InvalidEntityException.class);
+    }
+    
     @Test(expected = IllegalArgumentException.class)
     public void getCustomerByNullId() {
         Customer customer = managerImpl.getCustomerById(null);
@@ -149,6 +160,89 @@ public class CustomerManagerImplTest {
     public void getCustomerByNotExistingId() {
         Customer customer = managerImpl.getCustomerById(1024L);
     }
+
+    @Test
+    public void getCustomerByPhoneNumber() {
+        Customer customerFrodo = createCustomerFrodo().phoneNumber(
+                "0931 587 493").build();
+        Customer customerJames = createCustomerJames().build();
+        managerImpl.createCustomer(customerFrodo);
+        managerImpl.createCustomer(customerJames);
+
+        assertThat(managerImpl.getCustomerByPhoneNumber("0931587493")).
+                isEqualToComparingFieldByField(customerFrodo);
+        assertThat(managerImpl.getCustomerByPhoneNumber("0931/587-493")).
+                isEqualToComparingFieldByField(customerFrodo);
+    }
+
+    @Test
+    public void getCustomerBySharedPhoneNumber() {
+        Customer customerFrodo = createCustomerFrodo().build();
+        Customer customerJames = createCustomerJames().phoneNumber(
+                customerFrodo.getPhoneNumber()).build();
+        managerImpl.createCustomer(customerFrodo);
+        managerImpl.createCustomer(customerJames);
+
+        assertThat(managerImpl.getCustomerByPhoneNumber(customerFrodo.
+                getPhoneNumber())).isEqualToComparingFieldByField(customerFrodo);
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getCustomerByNotExistingPhoneNumber() {
+        managerImpl.createCustomer(createCustomerFrodo().build());
+        managerImpl.getCustomerByPhoneNumber("0900000000");
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void getCustomerByPhoneNumberWithoutDigits() {
+        managerImpl.createCustomer(createCustomerFrodo().build());
+        managerImpl.getCustomerByPhoneNumber("-");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCustomerByNullPhoneNumber() {
+        managerImpl.getCustomerByPhoneNumber(null);
+    }
+
+    @Test
+    public void getCustomersByIds() {
+        Customer customerFrodo = createCustomerFrodo().build();
+        Customer customerJames = createCustomerJames().build();
+        managerImpl.createCustomer(customerFrodo);
+        managerImpl.createCustomer(customerJames);
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1000; id < 1250; id++) {
+            ids.add(id);
+        }
+        ids.add(customerFrodo.getId());
+        ids.add(customerJames.getId());
+
+        LookupResult<Customer> result = managerImpl.getCustomersByIds(ids);
+
+        assertThat(result.getFound()).hasSize(2);
+        assertThat(result.get(customerFrodo.getId())).
+                isEqualToComparingFieldByField(customerFrodo);
+        assertThat(result.get(customerJames.getId())).
+                isEqualToComparingFieldByField(customerJames);
+        assertThat(result.getMissingIds()).hasSize(250).contains(1000L, 1249L);
+    }
+
+    @Test
+    public void getCustomersByEmptyIds() {
+        assertThat(managerImpl.getCustomersByIds(Collections.emptyList()).
+                isComplete()).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCustomersByNullIds() {
+        managerImpl.getCustomersByIds(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getCustomersByIdsContainingNull() {
+        managerImpl.getCustomersByIds(Arrays.asList(1L, null));
+    }
     
     private void testUpdateSuccessfully(Consumer<Customer> updateOperation) {
         Customer customerFrodo = createCustomerFrodo().build();
@@ -370,6 +464,25 @@ public class CustomerManagerImplTest {
         assertThat(managerImpl.findCustomersBySurname("Rofl")).isEmpty();        
     }   
     
+    @Test
+    public void searchIndexFollowsWrites() {
+        CustomerSearchIndex index = new CustomerSearchIndex();
+        managerImpl.setSearchIndex(index);
+
+        Customer customer = createCustomerFrodo().build();
+        managerImpl.createCustomer(customer);
+        assertThat(index.search("frod", 10)).usingFieldByFieldElementComparator()
+                .containsExactly(customer);
+
+        customer.setSurname("Pytlík");
+        managerImpl.updateCustomer(customer);
+        assertThat(index.search("pytlik", 10)).usingFieldByFieldElementComparator()
+                .containsExactly(customer);
+
+        managerImpl.deleteCustomer(customer);
+        assertThat(index.size()).isZero();
+    }
+
     private void testExpectedServiceFailureException(
             Consumer<CustomerManager> operation) throws SQLException {
         
@@ -396,6 +509,19 @@ public class CustomerManagerImplTest {
         testExpectedServiceFailureException((m) -> m.getCustomerById(customer.getId()));
     }
 
+    @Test
+    public void getCustomerByPhoneNumberWithSqlExceptionThrown() throws
+            SQLException {
+        testExpectedServiceFailureException((m) -> m.getCustomerByPhoneNumber(
+                "0931587493"));
+    }
+
+    @Test
+    public void getCustomersByIdsWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((m) -> m.getCustomersByIds(Arrays.
+                asList(1L, 2L)));
+    }
+
     @Test
     public void updateCustomerWithSqlExceptionThrown() throws SQLException {
         Customer customer = createCustomerFrodo().build();
@@ -0,0 +1,132 @@
+package com.balkurcarrental.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for CustomerSearchIndex
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class CustomerSearchIndexTest {
+
+    private CustomerSearchIndex index;
+    private Customer lukas;
+    private Customer simon;
+    private Customer james;
+
+    @Before
+    public void setUp() {
+        lukas = new CustomerBuilder().id(1L).name("Lukáš").surname("Kurčík").
+                phoneNumber("+421 905 123 456").build();
+        simon = new CustomerBuilder().id(2L).name("Šimon").surname("Baláž").
+                phoneNumber("0931 587 493").build();
+        james = new CustomerBuilder().id(3L).name("James").surname("Bond").
+                phoneNumber("0985723798").build();
+        index = new CustomerSearchIndex();
+        index.rebuild(Arrays.asList(lukas, simon, james));
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        List<Long> result = new ArrayList<>();
+        for (Customer customer : customers) {
+            result.add(customer.getId());
+        }
+        return result;
+    }
+
+    @Test
+    public void searchByPrefix() {
+        assertThat(ids(index.search("Kur", 10))).containsExactly(1L);
+        assertThat(ids(index.search("b", 10))).containsOnly(2L, 3L);
+    }
+
+    @Test
+    public void searchShortInfix() {
+        assertThat(ids(index.search("urc", 10))).containsExactly(1L);
+        assertThat(ids(index.search("cik", 10))).containsExactly(1L);
+        assertThat(ids(index.search("ames", 10))).containsExactly(3L);
+    }
+
+    @Test
+    public void searchRanksPrefixBeforeInfix() {
+        Customer amelia = new CustomerBuilder().id(4L).name("Amelia").
+                surname("Pond").phoneNumber("222").build();
+        index.put(amelia);
+        assertThat(ids(index.search("ame", 10))).containsExactly(4L, 3L);
+    }
+
+    @Test
+    public void searchIsAccentAndCaseInsensitive() {
+        assertThat(ids(index.search("KURCIK", 10))).containsExactly(1L);
+        assertThat(ids(index.search("simon balaz", 10))).containsExactly(2L);
+    }
+
+    @Test
+    public void searchFuzzy() {
+        assertThat(ids(index.search("Kurcek", 10))).containsExactly(1L);
+    }
+
+    @Test
+    public void searchByPhoneNumber() {
+        assertThat(ids(index.search("0931", 10))).containsExactly(2L);
+        assertThat(ids(index.search("123 456", 10))).containsExactly(1L);
+    }
+
+    @Test
+    public void searchRanksExactMatchFirst() {
+        Customer bondarenko = new CustomerBuilder().id(4L).name("Ivan").
+                surname("Bondarenko").phoneNumber("111").build();
+        index.put(bondarenko);
+        assertThat(ids(index.search("bond", 10))).containsExactly(3L, 4L);
+        assertThat(ids(index.search("bond", 1))).containsExactly(3L);
+    }
+
+    @Test
+    public void searchWithoutMatch() {
+        assertThat(index.search("xyz", 10)).isEmpty();
+        assertThat(index.search("  ", 10)).isEmpty();
+    }
+
+    @Test
+    public void putReplacesAndRemoveDeletes() {
+        lukas.setSurname("Novák");
+        index.put(lukas);
+        assertThat(index.search("Kurcik", 10)).isEmpty();
+        assertThat(ids(index.search("novak", 10))).containsExactly(1L);
+
+        index.remove(1L);
+        assertThat(index.search("novak", 10)).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void searchReturnsCopies() {
+        Customer found = index.search("james", 1).get(0);
+        assertThat(found).isEqualToComparingFieldByField(james).isNotSameAs(
+                james);
+        found.setName("Changed");
+        assertThat(index.search("james", 1).get(0).getName()).isEqualTo(
+                "James");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void searchNullQuery() {
+        index.search(null, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void searchWithZeroLimit() {
+        index.search("james", 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putCustomerWithNullId() {
+        index.put(new CustomerBuilder().name("A").surname("B").build());
+    }
+}
@@ -0,0 +1,89 @@
+package com.balkurcarrental.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+
+/**
+ * Compares {@link EntityCodec} with Java serialization of the same rent.
+ * Entities are not serializable, so Java serialization writes array of their
+ * attribute values, which is the least it would have to write.
+ *
+ * Run by {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.balkurcarrental.backend.EntityCodecBenchmark}.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class EntityCodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int OPERATIONS = 200000;
+
+    static byte[] javaSerialize(Rent rent) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Object[]{rent.getId(), rent.getPricePerDay(),
+                rent.getBeginningDate(), rent.getExpectedReturnDate(), rent.
+                getRealReturnDate(), new Object[]{rent.getCar().getId(), rent.
+                    getCar().getBrand(), rent.getCar().getRegistrationNumber()},
+                new Object[]{rent.getCustomer().getId(), rent.getCustomer().
+                    getName(), rent.getCustomer().getSurname(), rent.
+                    getCustomer().getPhoneNumber()}});
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object javaDeserialize(byte[] bytes) throws IOException,
+            ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Rent rent = new RentBuilder().id(300000L)
+                .car(new CarBuilder().id(1200L).brand("Skoda")
+                        .registrationNumber("BA-123AB").build())
+                .customer(new CustomerBuilder().id(6400L).name("Lukas")
+                        .surname("Kurcik").phoneNumber("+421 905 123 456")
+                        .build())
+                .pricePerDay(150)
+                .beginningDate(LocalDate.of(2016, 3, 24))
+                .expectedReturnDate(LocalDate.of(2016, 3, 28))
+                .build();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        EntityCodec.writeRent(buffer, rent);
+        System.out.printf("codec: %d bytes, java serialization: %d bytes%n",
+                buffer.position(), javaSerialize(rent).length);
+
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                buffer.clear();
+                EntityCodec.writeRent(buffer, rent);
+                buffer.flip();
+                sink += EntityCodec.readRent(buffer).getPricePerDay();
+            }
+            long codec = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS / 10; i++) {
+                sink += javaDeserialize(javaSerialize(rent)).hashCode() & 1;
+            }
+            long java = (System.nanoTime() - start) * 10;
+            if (round >= WARMUP_ROUNDS) {
+                System.out.printf("round %d: codec %d ns/op, java "
+                        + "serialization %d ns/op (%d)%n", round
+                        - WARMUP_ROUNDS, codec / OPERATIONS, java / OPERATIONS,
+                        sink);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.balkurcarrental.backend;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for EntityCodec
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class EntityCodecTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    private static Car createCar() {
+        return new CarBuilder().id(12L).brand("Škoda").registrationNumber(
+                "BA-123AB").build();
+    }
+
+    private static Customer createCustomer() {
+        return new CustomerBuilder().id(64L).name("Lukáš").surname("Kurčík")
+                .phoneNumber("+421 905 123 456").build();
+    }
+
+    private static Rent createRent() {
+        return new RentBuilder().id(300000L).car(createCar()).customer(
+                createCustomer()).pricePerDay(150).beginningDate(LocalDate.of(
+                        2016, 3, 24)).expectedReturnDate(LocalDate.of(2016, 3,
+                        28)).realReturnDate(null).build();
+    }
+
+    @Test
+    public void carRoundTrip() {
+        EntityCodec.writeCar(buffer, createCar());
+        buffer.flip();
+
+        assertThat(EntityCodec.readCar(buffer)).isEqualToComparingFieldByField(
+                createCar());
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void customerRoundTrip() {
+        EntityCodec.writeCustomer(buffer, createCustomer());
+        buffer.flip();
+
+        assertThat(EntityCodec.readCustomer(buffer))
+                .isEqualToComparingFieldByField(createCustomer());
+    }
+
+    @Test
+    public void rentRoundTrip() {
+        Rent rent = createRent();
+        EntityCodec.writeRent(buffer, rent);
+        buffer.flip();
+
+        Rent read = EntityCodec.readRent(buffer);
+        assertThat(read).isEqualToIgnoringGivenFields(rent, "car", "customer");
+        assertThat(read.getCar()).isEqualToComparingFieldByField(rent.getCar());
+        assertThat(read.getCustomer()).isEqualToComparingFieldByField(rent.
+                getCustomer());
+    }
+
+    @Test
+    public void nullAttributes() {
+        Rent rent = new Rent();
+        rent.setPricePerDay(-5);
+        rent.setRealReturnDate(LocalDate.of(1960, 1, 1));
+        EntityCodec.writeRent(buffer, rent);
+        EntityCodec.writeCar(buffer, new Car());
+        buffer.flip();
+
+        Rent read = EntityCodec.readRent(buffer);
+        assertThat(read).isEqualToComparingFieldByField(rent);
+        assertThat(EntityCodec.readCar(buffer)).isEqualToComparingFieldByField(
+                new Car());
+    }
+
+    @Test
+    public void readOfMixedRecords() {
+        EntityCodec.writeCustomer(buffer, createCustomer());
+        EntityCodec.writeRent(buffer, createRent());
+        EntityCodec.writeCar(buffer, createCar());
+        buffer.flip();
+
+        assertThat(EntityCodec.read(buffer)).isInstanceOf(Customer.class);
+        assertThat(EntityCodec.read(buffer)).isInstanceOf(Rent.class);
+        assertThat(EntityCodec.read(buffer)).isInstanceOf(Car.class);
+    }
+
+    @Test
+    public void wrongRecords() {
+        EntityCodec.writeCar(buffer, createCar());
+        buffer.flip();
+        assertThatThrownBy(() -> EntityCodec.readRent(buffer.duplicate()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        ByteBuffer truncated = buffer.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        assertThatThrownBy(() -> EntityCodec.readCar(truncated))
+                .isInstanceOf(BufferUnderflowException.class);
+
+        buffer.put(0, (byte) (EntityCodec.VERSION + 1));
+        assertThatThrownBy(() -> EntityCodec.readCar(buffer))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EntityCodec.writeRent(buffer, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void smallerThanJavaSerialization() throws IOException {
+        Rent rent = createRent();
+        EntityCodec.writeRent(buffer, rent);
+
+        assertThat(buffer.position()).isLessThan(80);
+        assertThat(buffer.position() * 4).isLessThan(
+                EntityCodecBenchmark.javaSerialize(rent).length);
+    }
+}
@@ -0,0 +1,201 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityNotFoundException;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for PriceQuoteService
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class PriceQuoteServiceTest {
+
+    // Friday
+    private static final LocalDate DAY = LocalDate.of(2016, 4, 1);
+
+    private static final Season SUMMER = new Season("summer", MonthDay.of(7,
+            1), MonthDay.of(8, 31));
+    private static final Season WINTER = new Season("winter", MonthDay.of(12,
+            20), MonthDay.of(1, 10));
+
+    private DataSource dataSource;
+    private PriceQuoteService service;
+    private Car bmw;
+    private Car skoda;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, CarManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        skoda = new CarBuilder().brand("Skoda").registrationNumber("FG789").
+                build();
+        carManager.createCar(bmw);
+        carManager.createCar(skoda);
+
+        service = new PriceQuoteService();
+        service.setCarManager(carManager);
+        service.setSeasons(Arrays.asList(SUMMER, WINTER));
+        service.setRate("BMW", null, null, 100);
+        service.setRate("Skoda", null, null, 50);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, CarManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    @Test
+    public void flatRate() {
+        PriceQuote quote = service.quote(bmw, DAY, DAY.plusDays(4));
+        assertThat(quote.getTotalPrice()).isEqualTo(500);
+        assertThat(quote.getDays()).isEqualTo(5);
+        assertThat(quote.getAveragePricePerDay()).isEqualTo(100);
+        assertThat(service.totalPrice("BMW", DAY, DAY)).isEqualTo(100);
+    }
+
+    @Test
+    public void mostSpecificRateIsUsed() {
+        service.setRate("BMW", null, DayOfWeek.SATURDAY, 150);
+        service.setRate("BMW", SUMMER, null, 200);
+        service.setRate("BMW", SUMMER, DayOfWeek.SATURDAY, 250);
+
+        // Friday to Monday
+        assertThat(service.totalPrice("BMW", DAY, DAY.plusDays(3)))
+                .isEqualTo(100 + 150 + 100 + 100);
+        // Thursday June 30 to Sunday July 3
+        assertThat(service.totalPrice("BMW", LocalDate.of(2016, 6, 30),
+                LocalDate.of(2016, 7, 3))).isEqualTo(100 + 200 + 250 + 200);
+    }
+
+    @Test
+    public void periodSpanningYears() {
+        service.setRate("BMW", WINTER, null, 300);
+
+        assertThat(service.totalPrice("BMW", LocalDate.of(2016, 12, 18),
+                LocalDate.of(2017, 1, 12))).isEqualTo(2 * 100 + 22 * 300 + 2
+                        * 100);
+        assertThat(service.totalPrice("BMW", LocalDate.of(2015, 6, 1),
+                LocalDate.of(2017, 5, 31))).isEqualTo(bruteForce(LocalDate.of(
+                                2015, 6, 1), LocalDate.of(2017, 5, 31), 300));
+    }
+
+    @Test
+    public void matchesDayByDaySum() {
+        service.setRate("BMW", WINTER, null, 300);
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            LocalDate from = DAY.plusDays(random.nextInt(1000) - 500);
+            LocalDate to = from.plusDays(random.nextInt(400));
+            assertThat(service.totalPrice("BMW", from, to)).as(from + " - "
+                    + to).isEqualTo(bruteForce(from, to, 300));
+        }
+    }
+
+    private static long bruteForce(LocalDate from, LocalDate to,
+            int winterRate) {
+        long total = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            total += WINTER.contains(day) ? winterRate : 100;
+        }
+        return total;
+    }
+
+    @Test
+    public void rateChangeInvalidatesCachedPrices() {
+        assertThat(service.totalPrice("BMW", DAY, DAY.plusDays(1)))
+                .isEqualTo(200);
+        assertThat(service.totalPrice("Skoda", DAY, DAY.plusDays(1)))
+                .isEqualTo(100);
+
+        service.setRate("BMW", null, null, 120);
+        assertThat(service.totalPrice("BMW", DAY, DAY.plusDays(1)))
+                .isEqualTo(240);
+        assertThat(service.totalPrice("Skoda", DAY, DAY.plusDays(1)))
+                .isEqualTo(100);
+
+        service.setRate("Skoda", SUMMER, null, 80);
+        service.setSeasons(Arrays.asList(new Season("summer", MonthDay.of(4,
+                1), MonthDay.of(4, 1))));
+        assertThat(service.totalPrice("Skoda", DAY, DAY.plusDays(1)))
+                .isEqualTo(80 + 50);
+
+        service.removeRates("BMW");
+        assertThatThrownBy(() -> service.totalPrice("BMW", DAY, DAY))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void missingRate() {
+        service.setRate("Audi", SUMMER, null, 300);
+        assertThat(service.totalPrice("Audi", LocalDate.of(2016, 7, 1),
+                LocalDate.of(2016, 7, 31))).isEqualTo(31 * 300);
+        assertThatThrownBy(() -> service.totalPrice("Audi", DAY, DAY))
+                .isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> service.totalPrice("Tesla", DAY, DAY))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void quoteByCarIds() {
+        PriceQuote quote = service.quote(skoda.getId(), DAY, DAY.plusDays(2));
+        assertThat(quote.getCarId()).isEqualTo(skoda.getId());
+        assertThat(quote.getBrand()).isEqualTo("Skoda");
+        assertThat(quote.getTotalPrice()).isEqualTo(150);
+
+        Map<Long, PriceQuote> quotes = service.quotes(Arrays.asList(
+                bmw.getId(), skoda.getId(), skoda.getId() + 100), DAY,
+                DAY.plusDays(2));
+        assertThat(quotes).containsOnlyKeys(bmw.getId(), skoda.getId());
+        assertThat(quotes.get(bmw.getId()).getTotalPrice()).isEqualTo(300);
+        assertThat(quotes.get(skoda.getId()).getTotalPrice()).isEqualTo(150);
+
+        assertThatThrownBy(() -> service.quote(skoda.getId() + 100, DAY, DAY))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> service.quote((Car) null, DAY, DAY))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.quote(bmw, null, DAY))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.quote(bmw, DAY, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.quote(bmw, DAY, DAY.minusDays(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.setRate(null, null, null, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.setRate("BMW", null, null, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.setSeasons(null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
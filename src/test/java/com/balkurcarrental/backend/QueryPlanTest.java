@@ -0,0 +1,505 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Query plan regression tests. Database is seeded with realistic volume of
+ * data and every statement executed by the managers is captured using
+ * Derby runtime statistics. Tests fail when a hot query falls back to a table
+ * scan or visits more rows than expected.
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class QueryPlanTest {
+
+    private static final String DATABASE_NAME = "memory:carrental-plan-test";
+    private static final int CARS = 5000;
+    private static final int BRANDS = 100;
+    private static final int CUSTOMERS = 5000;
+    private static final int NAMES = 300;
+    private static final int SURNAMES = 2000;
+    private static final int RENTS_PER_CAR = 10;
+    private static final int RENTS = CARS * RENTS_PER_CAR;
+    // last rent of every OPEN_EVERY-th car is not returned yet
+    private static final int OPEN_EVERY = 50;
+    private static final int OPEN_RENTS = CARS / OPEN_EVERY;
+    private static final LocalDate FIRST_RENT = LocalDate.of(2010, 1, 1);
+
+    private static EmbeddedDataSource realDataSource;
+
+    private final List<Plan> plans = new ArrayList<>();
+    private CarManagerImpl carManager;
+    private CustomerManagerImpl customerManager;
+    private RentManagerImpl rentManager;
+
+    @BeforeClass
+    public static void seedDatabase() throws SQLException {
+        realDataSource = new EmbeddedDataSource();
+        realDataSource.setDatabaseName(DATABASE_NAME);
+        realDataSource.setCreateDatabase("create");
+        DBUtils.executeSqlScript(realDataSource, CarManager.class.getResource(
+                "createTables.sql"));
+
+        Random random = new Random(42);
+        try (Connection connection = realDataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement st = connection.prepareStatement(
+                    "INSERT INTO car (brand, registration_number, registration_key) VALUES (?,?,?)")) {
+                for (int i = 0; i < CARS; i++) {
+                    String registrationNumber = "BA " + (100 + i) + "AA";
+                    st.setString(1, "Brand" + (i % BRANDS));
+                    st.setString(2, registrationNumber);
+                    st.setString(3, CarManagerImpl.registrationKey(
+                            registrationNumber));
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+            try (PreparedStatement st = connection.prepareStatement(
+                    "INSERT INTO customer (name, surname, phone_number, phone_key) VALUES (?,?,?,?)")) {
+                for (int i = 0; i < CUSTOMERS; i++) {
+                    String phoneNumber = "0905 " + (100000 + i);
+                    st.setString(1, "Name" + (i % NAMES));
+                    st.setString(2, "Surname" + (i % SURNAMES));
+                    st.setString(3, phoneNumber);
+                    st.setString(4, CustomerManagerImpl.phoneKey(phoneNumber));
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+            try (PreparedStatement st = connection.prepareStatement(
+                    "INSERT INTO rent (customer_id, car_id, price_per_day, beginning_date, expected_return_date, real_return_date) VALUES (?,?,?,?,?,?)")) {
+                for (int car = 1; car <= CARS; car++) {
+                    LocalDate date = FIRST_RENT;
+                    for (int i = 0; i < RENTS_PER_CAR; i++) {
+                        LocalDate end = date.plusDays(1 + random.nextInt(14));
+                        st.setLong(1, 1 + random.nextInt(CUSTOMERS));
+                        st.setLong(2, car);
+                        st.setInt(3, 50 + random.nextInt(200));
+                        st.setDate(4, Date.valueOf(date));
+                        st.setDate(5, Date.valueOf(end));
+                        boolean open = car % OPEN_EVERY == 0
+                                && i == RENTS_PER_CAR - 1;
+                        st.setDate(6, open ? null : Date.valueOf(end));
+                        st.addBatch();
+                        date = end.plusDays(1 + random.nextInt(30));
+                    }
+                }
+                st.executeBatch();
+            }
+            connection.commit();
+
+            try (Statement st = connection.createStatement()) {
+                for (String table : Arrays.asList("CAR", "CUSTOMER", "RENT")) {
+                    st.execute("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS('APP', '"
+                            + table + "', NULL)");
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    @AfterClass
+    public static void dropDatabase() {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName(DATABASE_NAME);
+        ds.setConnectionAttributes("drop=true");
+        try {
+            ds.getConnection().close();
+        } catch (SQLException ex) {
+            // dropping of database is always reported by exception
+        }
+    }
+
+    @Before
+    public void setUp() {
+        DataSource dataSource = capturingDataSource();
+        carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+    }
+
+    private List<Plan> capture(Runnable operation) {
+        plans.clear();
+        operation.run();
+        assertThat(plans).isNotEmpty();
+        return new ArrayList<>(plans);
+    }
+
+    private static void assertIndexed(List<Plan> captured, int maxRowsVisited) {
+        for (Plan plan : captured) {
+            assertThat(plan.tableScans())
+                    .as("table scans of %s", plan.sql).isEmpty();
+            assertThat(plan.rowsVisited())
+                    .as("rows visited by %s", plan.sql)
+                    .isLessThanOrEqualTo(maxRowsVisited);
+        }
+    }
+
+    private static void assertScansOnly(List<Plan> captured, String table,
+            int maxRowsVisited) {
+        for (Plan plan : captured) {
+            assertThat(plan.tableScans()).as("table scans of %s", plan.sql)
+                    .containsOnly(table);
+            assertThat(plan.rowsVisited())
+                    .as("rows visited by %s", plan.sql)
+                    .isLessThanOrEqualTo(maxRowsVisited);
+        }
+    }
+
+    private static Plan rentQuery(List<Plan> captured) {
+        for (Plan plan : captured) {
+            if (plan.sql.startsWith("SELECT * FROM rent")) {
+                return plan;
+            }
+        }
+        throw new AssertionError("rent query was not executed");
+    }
+
+    private static Car newCar(String registrationNumber) {
+        return new CarBuilder().brand("Brand1").registrationNumber(
+                registrationNumber).build();
+    }
+
+    private static Customer newCustomer() {
+        return new CustomerBuilder().name("Name1").surname("Surname1").
+                phoneNumber("0999 111 222").build();
+    }
+
+    private Rent newRent(long carId) {
+        return new RentBuilder()
+                .car(carManager.getCarById(carId))
+                .customer(customerManager.getCustomerById(1L))
+                .pricePerDay(100)
+                .beginningDate(LocalDate.of(2030, 1, 1))
+                .expectedReturnDate(LocalDate.of(2030, 1, 10))
+                .build();
+    }
+
+    @Test
+    public void createCar() {
+        Car car = newCar("ZZ 001XX");
+        assertIndexed(capture(() -> carManager.createCar(car)), 2);
+        carManager.deleteCar(car);
+    }
+
+    @Test
+    public void getCarById() {
+        assertIndexed(capture(() -> carManager.getCarById(500L)), 1);
+    }
+
+    @Test
+    public void getCarsByIds() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 150; id++) {
+            ids.add(id);
+        }
+        // every probe of IN list visits matching row and the next one
+        assertIndexed(capture(() -> carManager.getCarsByIds(ids)), 2 * 100);
+    }
+
+    @Test
+    public void getCarByRegistrationNumber() {
+        assertIndexed(capture(() -> carManager.getCarByRegistrationNumber(
+                "ba 600aa")), 2);
+    }
+
+    @Test
+    public void updateCar() {
+        Car car = carManager.getCarById(700L);
+        assertIndexed(capture(() -> carManager.updateCar(car)), 2);
+    }
+
+    @Test
+    public void deleteCar() {
+        Car car = newCar("ZZ 002XX");
+        carManager.createCar(car);
+        assertIndexed(capture(() -> carManager.deleteCar(car)), 1);
+    }
+
+    @Test
+    public void findCarsByBrand() {
+        assertIndexed(capture(() -> carManager.findCarsByBrand("Brand7")),
+                CARS / BRANDS + 1);
+    }
+
+    @Test
+    public void findAllCars() {
+        assertScansOnly(capture(() -> carManager.findAllCars()), "CAR", CARS
+                + 10);
+    }
+
+    @Test
+    public void createCustomer() {
+        Customer customer = newCustomer();
+        assertIndexed(capture(() -> customerManager.createCustomer(customer)),
+                0);
+        customerManager.deleteCustomer(customer);
+    }
+
+    @Test
+    public void getCustomerById() {
+        assertIndexed(capture(() -> customerManager.getCustomerById(2500L)), 1);
+    }
+
+    @Test
+    public void getCustomersByIds() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1000; id < 1100; id++) {
+            ids.add(id);
+        }
+        assertIndexed(capture(() -> customerManager.getCustomersByIds(ids)),
+                2 * 100);
+    }
+
+    @Test
+    public void getCustomerByPhoneNumber() {
+        assertIndexed(capture(() -> customerManager.getCustomerByPhoneNumber(
+                "0905100042")), 2);
+    }
+
+    @Test
+    public void updateCustomer() {
+        Customer customer = customerManager.getCustomerById(42L);
+        assertIndexed(capture(() -> customerManager.updateCustomer(customer)),
+                1);
+    }
+
+    @Test
+    public void deleteCustomer() {
+        Customer customer = newCustomer();
+        customerManager.createCustomer(customer);
+        assertIndexed(capture(() -> customerManager.deleteCustomer(customer)),
+                1);
+    }
+
+    @Test
+    public void findCustomersByName() {
+        assertIndexed(capture(() -> customerManager.findCustomersByName(
+                "Name5")), CUSTOMERS / NAMES + 2);
+    }
+
+    @Test
+    public void findCustomersBySurname() {
+        assertIndexed(capture(() -> customerManager.findCustomersBySurname(
+                "Surname5")), CUSTOMERS / SURNAMES + 2);
+    }
+
+    @Test
+    public void findAllCustomers() {
+        assertScansOnly(capture(() -> customerManager.findAllCustomers()),
+                "CUSTOMER", CUSTOMERS + 10);
+    }
+
+    @Test
+    public void createRent() {
+        Rent rent = newRent(10L);
+        assertIndexed(capture(() -> rentManager.createRent(rent)),
+                RENTS_PER_CAR + 2);
+        rentManager.deleteRent(rent);
+    }
+
+    @Test
+    public void getRentById() {
+        assertIndexed(capture(() -> rentManager.getRentById(1234L)), 1);
+    }
+
+    @Test
+    public void updateRent() {
+        Rent rent = rentManager.getRentById(4321L);
+        assertIndexed(capture(() -> rentManager.updateRent(rent)),
+                RENTS_PER_CAR + 2);
+    }
+
+    @Test
+    public void deleteRent() {
+        Rent rent = newRent(11L);
+        rentManager.createRent(rent);
+        assertIndexed(capture(() -> rentManager.deleteRent(rent)), 1);
+    }
+
+    @Test
+    public void findRentsForCar() {
+        Car car = carManager.getCarById(20L);
+        List<Rent> rents = new ArrayList<>();
+        List<Plan> captured = capture(() -> rents.addAll(rentManager.
+                findRentsForCar(car)));
+        assertThat(rents).hasSize(RENTS_PER_CAR);
+        for (Rent rent : rents) {
+            assertThat(rent.getCar()).isSameAs(rents.get(0).getCar());
+        }
+        // rent query and one multi-get of the car and one of customers
+        assertThat(captured).hasSize(3);
+        assertThat(rentQuery(captured).rowsVisited()).isLessThanOrEqualTo(
+                RENTS_PER_CAR + 1);
+        assertIndexed(captured, 2 * RENTS_PER_CAR);
+    }
+
+    @Test
+    public void findRentsForCustomer() {
+        Customer customer = customerManager.getCustomerById(30L);
+        List<Plan> captured = capture(() -> rentManager.findRentsForCustomer(
+                customer));
+        assertThat(captured).hasSize(3);
+        assertIndexed(captured, 3 * RENTS / CUSTOMERS);
+    }
+
+    @Test
+    public void findOverdueRents() {
+        List<Plan> captured = capture(() -> assertThat(rentManager.
+                findOverdueRents(LocalDate.of(2020, 1, 1))).hasSize(OPEN_RENTS));
+        // rent query itself touches only unfinished rents, the rest are
+        // multi-gets of their cars and customers
+        assertThat(rentQuery(captured).rowsVisited()).isLessThanOrEqualTo(
+                OPEN_RENTS + 1);
+        assertIndexed(captured, 2 * DBUtils.IN_CHUNK_SIZE);
+    }
+
+    @Test
+    public void findActiveRents() {
+        List<Plan> captured = capture(() -> assertThat(rentManager.
+                findActiveRents(LocalDate.of(2020, 1, 1))).hasSize(OPEN_RENTS));
+        // NULLs are sorted last in the index, so range branch steps over
+        // unfinished rents once more
+        assertThat(rentQuery(captured).rowsVisited()).isLessThanOrEqualTo(
+                2 * OPEN_RENTS + 2);
+        assertIndexed(captured, 2 * DBUtils.IN_CHUNK_SIZE);
+    }
+
+    private DataSource capturingDataSource() {
+        return (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(realDataSource, method, args);
+                    if (method.getName().equals("getConnection")) {
+                        return capturingConnection((Connection) result);
+                    }
+                    return result;
+                });
+    }
+
+    private Connection capturingConnection(Connection connection) throws
+            SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+        }
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (method.getName().equals("prepareStatement")) {
+                        return capturingStatement(connection,
+                                (PreparedStatement) result, (String) args[0]);
+                    }
+                    return result;
+                });
+    }
+
+    private PreparedStatement capturingStatement(Connection connection,
+            PreparedStatement statement, String sql) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            boolean closing = method.getName().equals("close")
+                    && !statement.isClosed();
+            Object result = invoke(statement, method, args);
+            if (closing) {
+                plans.add(new Plan(sql, runtimeStatistics(connection)));
+            }
+            return result;
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    private static String runtimeStatistics(Connection connection) throws
+            SQLException {
+        try (Statement st = connection.createStatement();
+                ResultSet rs = st.executeQuery(
+                        "VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Captured execution plan of one statement.
+     */
+    private static class Plan {
+
+        private static final Pattern TABLE_SCAN = Pattern.compile(
+                "Table Scan ResultSet for (\\w+)");
+        private static final Pattern ROWS_VISITED = Pattern.compile(
+                "Number of rows visited=(\\d+)");
+
+        final String sql;
+        final String statistics;
+
+        Plan(String sql, String statistics) {
+            this.sql = sql;
+            this.statistics = statistics == null ? "" : statistics;
+        }
+
+        List<String> tableScans() {
+            List<String> result = new ArrayList<>();
+            Matcher matcher = TABLE_SCAN.matcher(statistics);
+            while (matcher.find()) {
+                result.add(matcher.group(1));
+            }
+            return result;
+        }
+
+        int rowsVisited() {
+            int result = 0;
+            Matcher matcher = ROWS_VISITED.matcher(statistics);
+            while (matcher.find()) {
+                result += Integer.parseInt(matcher.group(1));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return sql + "\n" + statistics;
+        }
+    }
+}
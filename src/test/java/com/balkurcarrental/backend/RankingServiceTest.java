@@ -0,0 +1,162 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.RankedRow;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for RankingService
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RankingServiceTest {
+
+    private DataSource dataSource;
+    private RentManagerImpl rentManager;
+    private RankingService rankingService;
+    private Car bmw;
+    private Car skoda;
+    private Car audi;
+    private Customer lukas;
+    private Customer simon;
+    private Customer peter;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+        rankingService = new RankingService();
+        rankingService.setDataSource(dataSource);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        skoda = new CarBuilder().brand("Skoda").registrationNumber("CD456")
+                .build();
+        audi = new CarBuilder().brand("Audi").registrationNumber("EF789")
+                .build();
+        carManager.createCar(bmw);
+        carManager.createCar(skoda);
+        carManager.createCar(audi);
+        lukas = new CustomerBuilder().name("Lukas").surname("Kurcik").
+                phoneNumber("0905123456").build();
+        simon = new CustomerBuilder().name("Simon").surname("Balaz").
+                phoneNumber("0905654321").build();
+        peter = new CustomerBuilder().name("Peter").surname("Novak").
+                phoneNumber("0905111222").build();
+        customerManager.createCustomer(lukas);
+        customerManager.createCustomer(simon);
+        customerManager.createCustomer(peter);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    private void rent(Car car, Customer customer, int price,
+            LocalDate beginning, LocalDate realReturn) {
+        rentManager.createRent(new RentBuilder().car(car).customer(customer)
+                .pricePerDay(price).beginningDate(beginning)
+                .expectedReturnDate(beginning).realReturnDate(realReturn)
+                .build());
+    }
+
+    @Test
+    public void topCustomers() {
+        LocalDate asOf = LocalDate.of(2016, 4, 30);
+        // 10 days for 100
+        rent(bmw, lukas, 100, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1,
+                10));
+        // 3 days for 1000, archived
+        rent(audi, simon, 1000, LocalDate.of(2015, 1, 1), LocalDate.of(2015, 1,
+                3));
+        // unfinished, 6 days until asOf for 100
+        rent(skoda, simon, 100, LocalDate.of(2016, 4, 25), null);
+        // begins after asOf
+        rent(bmw, peter, 100, LocalDate.of(2016, 5, 1), LocalDate.of(2016, 5,
+                30));
+        RentArchiver archiver = new RentArchiver();
+        archiver.setDataSource(dataSource);
+        archiver.archiveReturnedBefore(LocalDate.of(2016, 1, 1));
+
+        assertThat(rankingService.topCustomersByRentedDays(10, asOf))
+                .containsExactly(new RankedRow<>(lukas.getId(), 10L),
+                        new RankedRow<>(simon.getId(), 9L));
+        assertThat(rankingService.topCustomersByRevenue(1, asOf))
+                .containsExactly(new RankedRow<>(simon.getId(), 3600L));
+    }
+
+    @Test
+    public void topBrandsPerMonth() {
+        rent(bmw, lukas, 100, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1,
+                2));
+        rent(bmw, simon, 100, LocalDate.of(2016, 1, 10), LocalDate.of(2016, 1,
+                12));
+        rent(skoda, lukas, 100, LocalDate.of(2016, 1, 5), LocalDate.of(2016, 1,
+                6));
+        rent(audi, peter, 100, LocalDate.of(2016, 1, 20), LocalDate.of(2016, 1,
+                21));
+        rent(audi, peter, 100, LocalDate.of(2016, 3, 1), null);
+        rent(skoda, peter, 100, LocalDate.of(2016, 4, 1), null);
+
+        Map<YearMonth, List<RankedRow<String>>> result = rankingService.
+                topBrandsPerMonth(YearMonth.of(2016, 1), YearMonth.of(2016, 3),
+                        2);
+
+        assertThat(result.keySet()).containsExactly(YearMonth.of(2016, 1),
+                YearMonth.of(2016, 3));
+        assertThat(result.get(YearMonth.of(2016, 1))).containsExactly(
+                new RankedRow<>("BMW", 2L), new RankedRow<>("Audi", 1L));
+        assertThat(result.get(YearMonth.of(2016, 3))).containsExactly(
+                new RankedRow<>("Audi", 1L));
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> rankingService.topCustomersByRentedDays(0,
+                LocalDate.now())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rankingService.topCustomersByRevenue(5, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rankingService.topBrandsPerMonth(YearMonth.of(
+                2016, 2), YearMonth.of(2016, 1), 5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> rankingService.topBrandsPerMonth(null,
+                YearMonth.of(2016, 1), 5))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void rankingWithoutDataSource() {
+        rankingService.setDataSource(null);
+        assertThatThrownBy(() -> rankingService.topCustomersByRentedDays(5,
+                LocalDate.now())).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,173 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for RentAnalytics
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RentAnalyticsTest {
+
+    private static final YearMonth JANUARY = YearMonth.of(2016, 1);
+    private static final YearMonth FEBRUARY = YearMonth.of(2016, 2);
+
+    private DataSource dataSource;
+    private RentManagerImpl rentManager;
+    private RentAnalytics analytics;
+    private Car bmw;
+    private Car skoda;
+    private Customer lukas;
+    private Customer simon;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+        analytics = new RentAnalytics();
+        analytics.setDataSource(dataSource);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        skoda = new CarBuilder().brand("Skoda").registrationNumber("CD456")
+                .build();
+        carManager.createCar(bmw);
+        carManager.createCar(skoda);
+        lukas = new CustomerBuilder().name("Lukas").surname("Kurcik").
+                phoneNumber("0905123456").build();
+        simon = new CustomerBuilder().name("Simon").surname("Balaz").
+                phoneNumber("0905654321").build();
+        customerManager.createCustomer(lukas);
+        customerManager.createCustomer(simon);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    private Rent rent(Car car, Customer customer, LocalDate beginning,
+            LocalDate realReturn) {
+        Rent rent = new RentBuilder().car(car).customer(customer).pricePerDay(
+                100).beginningDate(beginning).expectedReturnDate(beginning)
+                .realReturnDate(realReturn).build();
+        rentManager.createRent(rent);
+        return rent;
+    }
+
+    @Test
+    public void loadFromDatabase() {
+        // 2, 4 and 10 days
+        rent(bmw, lukas, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 2));
+        rent(bmw, simon, LocalDate.of(2016, 1, 5), LocalDate.of(2016, 1, 8));
+        rent(skoda, lukas, LocalDate.of(2016, 1, 10), LocalDate.of(2016, 1,
+                19));
+        rent(skoda, lukas, LocalDate.of(2016, 2, 1), null);
+        analytics.load();
+
+        assertThat(analytics.distinctCustomers(null, JANUARY, FEBRUARY))
+                .isEqualTo(2);
+        assertThat(analytics.distinctCustomers("Skoda", JANUARY, FEBRUARY))
+                .isEqualTo(1);
+        assertThat(analytics.distinctCustomers("BMW", FEBRUARY, FEBRUARY))
+                .isZero();
+        assertThat(analytics.durationQuantiles(null, JANUARY, JANUARY, 0.5,
+                1)).containsExactly(4, 10);
+        assertThat(analytics.durationQuantiles("BMW", JANUARY, JANUARY, 1))
+                .containsExactly(4);
+        assertThat(analytics.durationQuantiles(null, FEBRUARY, FEBRUARY, 0.5))
+                .isNull();
+    }
+
+    @Test
+    public void updatedFromEvents() {
+        rent(bmw, lukas, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 2));
+        analytics.load();
+        rentManager.getEvents().addListener(analytics);
+
+        Rent open = rent(skoda, simon, LocalDate.of(2016, 1, 10), null);
+        assertThat(analytics.distinctCustomers(null, JANUARY, JANUARY))
+                .isEqualTo(2);
+        assertThat(analytics.durationsSketch(null, JANUARY, JANUARY)
+                .getCount()).isEqualTo(1);
+
+        open.setRealReturnDate(LocalDate.of(2016, 1, 14));
+        rentManager.updateRent(open);
+        assertThat(analytics.durationQuantiles(null, JANUARY, JANUARY, 1))
+                .containsExactly(5);
+        // correction of returned rent is not counted twice
+        open.setRealReturnDate(LocalDate.of(2016, 1, 15));
+        rentManager.updateRent(open);
+        assertThat(analytics.durationsSketch(null, JANUARY, JANUARY)
+                .getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void eventsDuringLoadAreNotLost() throws SQLException {
+        rent(bmw, lukas, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 2));
+        Rent created = new RentBuilder().car(skoda).customer(simon)
+                .pricePerDay(100).beginningDate(LocalDate.of(2016, 1, 10))
+                .realReturnDate(LocalDate.of(2016, 1, 14)).build();
+        created.setId(100L);
+        // event is delivered after the load started
+        DataSource delivering = mock(DataSource.class);
+        when(delivering.getConnection()).thenAnswer(invocation -> {
+            analytics.onEvents(Collections.singletonList(EntityEvent.created(
+                    created.getId(), created)));
+            return dataSource.getConnection();
+        });
+        analytics.setDataSource(delivering);
+
+        analytics.load();
+
+        assertThat(analytics.distinctCustomers(null, JANUARY, JANUARY))
+                .isEqualTo(2);
+        assertThat(analytics.durationQuantiles("Skoda", JANUARY, JANUARY, 1))
+                .containsExactly(5);
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> analytics.distinctCustomers(null, null,
+                JANUARY)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> analytics.durationQuantiles(null, FEBRUARY,
+                JANUARY, 0.5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void loadWithoutDataSource() {
+        analytics.setDataSource(null);
+        assertThatThrownBy(() -> analytics.load())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
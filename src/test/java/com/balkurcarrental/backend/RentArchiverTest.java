@@ -0,0 +1,186 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
+import com.balkurcarrental.common.EntityNotFoundException;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for RentArchiver
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RentArchiverTest {
+
+    private static final LocalDate DAY = LocalDate.of(2016, 4, 1);
+
+    private DataSource dataSource;
+    private RentManagerImpl rentManager;
+    private RentArchiver archiver;
+    private Car bmw;
+    private Car mercedes;
+    private Customer lukas;
+    private Customer simon;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        mercedes = new CarBuilder().brand("Mercedes").registrationNumber(
+                "FG789").build();
+        carManager.createCar(bmw);
+        carManager.createCar(mercedes);
+        lukas = new CustomerBuilder().name("Lukas").surname("Kurcik").
+                phoneNumber("0905123456").build();
+        simon = new CustomerBuilder().name("Simon").surname("Balaz").
+                phoneNumber("0905654321").build();
+        customerManager.createCustomer(lukas);
+        customerManager.createCustomer(simon);
+
+        archiver = new RentArchiver();
+        archiver.setDataSource(dataSource);
+        archiver.setClock(Clock.fixed(DAY.atStartOfDay().toInstant(
+                ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    private Rent rent(Car car, Customer customer, LocalDate beginning,
+            LocalDate realReturn) {
+        Rent rent = new RentBuilder().car(car).customer(customer).pricePerDay(
+                100).beginningDate(beginning).expectedReturnDate(beginning.
+                plusDays(3)).realReturnDate(realReturn).build();
+        rentManager.createRent(rent);
+        return rent;
+    }
+
+    @Test
+    public void archiveOldClosedRents() {
+        Rent old = rent(bmw, lukas, DAY.minusYears(3), DAY.minusYears(3).
+                plusDays(2));
+        Rent lastYear = rent(mercedes, lukas, DAY.minusYears(1),
+                DAY.minusYears(1).plusDays(5));
+        Rent recent = rent(bmw, simon, DAY.minusDays(20), DAY.minusDays(10));
+        Rent open = rent(mercedes, simon, DAY.minusDays(5), null);
+
+        assertThat(archiver.archiveClosedFor(Period.ofMonths(6))).isEqualTo(2);
+
+        assertThat(rentManager.findAllRents()).extracting("id")
+                .containsOnly(recent.getId(), open.getId());
+        assertThat(rentManager.findRentsForCar(bmw)).extracting("id")
+                .containsOnly(recent.getId());
+        assertThat(rentManager.findRentsForCar(bmw, true))
+                .usingFieldByFieldElementComparator()
+                .containsOnly(old, recent);
+        assertThat(rentManager.findRentsForCustomer(lukas)).isEmpty();
+        assertThat(rentManager.findRentsForCustomer(lukas, true))
+                .usingFieldByFieldElementComparator()
+                .containsOnly(old, lastYear);
+        assertThatThrownBy(() -> rentManager.getRentById(old.getId()))
+                .isInstanceOf(EntityNotFoundException.class);
+
+        // nothing more to archive
+        assertThat(archiver.archiveClosedFor(Period.ofMonths(6))).isZero();
+        assertThat(archiver.archiveReturnedBefore(DAY.plusDays(1)))
+                .isEqualTo(1);
+        assertThat(rentManager.findAllRents()).extracting("id")
+                .containsOnly(open.getId());
+    }
+
+    @Test
+    public void archiveInBatches() {
+        LocalDate beginning = DAY.minusYears(2);
+        for (int i = 0; i < 7; i++) {
+            rent(i % 2 == 0 ? bmw : mercedes, lukas, beginning, beginning.
+                    plusDays(1));
+            beginning = beginning.plusDays(5);
+        }
+        archiver.setBatchSize(3);
+
+        assertThat(archiver.archiveReturnedBefore(DAY)).isEqualTo(7);
+        assertThat(rentManager.findAllRents()).isEmpty();
+        assertThat(rentManager.findRentsForCar(bmw, true)).hasSize(4);
+        assertThat(rentManager.findRentsForCar(mercedes, true)).hasSize(3);
+    }
+
+    @Test
+    public void archivedRentsArePublishedAsDeleted() {
+        Rent old = rent(bmw, lukas, DAY.minusYears(3), DAY.minusYears(3).
+                plusDays(2));
+        Rent recent = rent(bmw, simon, DAY.minusDays(20), DAY.minusDays(10));
+        CarAvailabilityCalendar calendar = new CarAvailabilityCalendar();
+        calendar.setDataSource(dataSource);
+        calendar.load();
+        rentManager.setAvailabilityCalendar(calendar);
+        List<EntityEvent<Rent>> events = new ArrayList<>();
+        rentManager.getEvents().addListener(events::addAll);
+        archiver.setRentManager(rentManager);
+
+        assertThat(archiver.archiveClosedFor(Period.ofMonths(6))).isEqualTo(1);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getType()).isEqualTo(
+                EntityEvent.Type.DELETED);
+        assertThat(events.get(0).getBefore()).isEqualToComparingFieldByField(
+                old);
+        assertThat(calendar.isFree(bmw.getId(), old.getBeginningDate()))
+                .isTrue();
+        assertThat(calendar.isFree(bmw.getId(), recent.getBeginningDate()))
+                .isFalse();
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> archiver.archiveClosedFor(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> archiver.archiveClosedFor(Period.ofDays(-1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> archiver.archiveReturnedBefore(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> archiver.setBatchSize(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void archiveWithoutDataSource() {
+        archiver.setDataSource(null);
+        assertThatThrownBy(() -> archiver.archiveReturnedBefore(DAY))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,168 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for RentAudit
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RentAuditTest {
+
+    private DataSource dataSource;
+    private RentAudit audit;
+    private long bmwId;
+    private long skodaId;
+    private long customerId;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        Car bmw = new CarBuilder().brand("BMW").registrationNumber("AB123")
+                .build();
+        Car skoda = new CarBuilder().brand("Skoda").registrationNumber("CD456")
+                .build();
+        carManager.createCar(bmw);
+        carManager.createCar(skoda);
+        Customer customer = new CustomerBuilder().name("Lukas").surname(
+                "Kurcik").phoneNumber("0905123456").build();
+        customerManager.createCustomer(customer);
+        bmwId = bmw.getId();
+        skodaId = skoda.getId();
+        customerId = customer.getId();
+
+        audit = new RentAudit();
+        audit.setDataSource(dataSource);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    /**
+     * Inserts rent directly, manager would reject overlapping rents.
+     */
+    private long insertRent(long carId, long customerId, LocalDate beginning,
+            LocalDate realReturn) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement st = connection.prepareStatement(
+                        "INSERT INTO rent (customer_id, car_id, price_per_day, beginning_date, real_return_date) VALUES (?, ?, 100, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+            st.setLong(1, customerId);
+            st.setLong(2, carId);
+            st.setDate(3, Date.valueOf(beginning));
+            st.setDate(4, realReturn == null ? null : Date.valueOf(realReturn));
+            st.executeUpdate();
+            ResultSet keys = st.getGeneratedKeys();
+            keys.next();
+            return keys.getLong(1);
+        }
+    }
+
+    @Test
+    public void cleanData() throws SQLException {
+        insertRent(bmwId, customerId, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 5));
+        insertRent(bmwId, customerId, LocalDate.of(2016, 1, 6), null);
+        insertRent(skodaId, customerId, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 5));
+
+        AuditReport report = audit.run();
+        assertThat(report.isClean()).isTrue();
+        assertThat(report.getCheckedRents()).isEqualTo(3);
+    }
+
+    @Test
+    public void findsEveryOverlappingPair() throws SQLException {
+        long a = insertRent(bmwId, customerId, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 10));
+        long b = insertRent(bmwId, customerId, LocalDate.of(2016, 1, 3),
+                LocalDate.of(2016, 1, 4));
+        // touches a on its last day
+        long c = insertRent(bmwId, customerId, LocalDate.of(2016, 1, 10),
+                null);
+        long d = insertRent(bmwId, customerId, LocalDate.of(2016, 3, 1),
+                LocalDate.of(2016, 3, 2));
+        // other car on the same days
+        insertRent(skodaId, customerId, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 10));
+
+        AuditReport report = audit.run();
+
+        assertThat(report.getOverlaps()).extracting("carId", "firstRentId",
+                "secondRentId").containsExactly(tuple(bmwId, a, b),
+                        tuple(bmwId, a, c), tuple(bmwId, c, d));
+        assertThat(report.getOrphans()).isEmpty();
+    }
+
+    @Test
+    public void findsOrphans() throws SQLException {
+        long missingCar = insertRent(999, customerId, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 2));
+        long missingBoth = insertRent(998, 997, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 2));
+        insertRent(bmwId, customerId, LocalDate.of(2016, 1, 1),
+                LocalDate.of(2016, 1, 2));
+
+        AuditReport report = audit.run();
+
+        assertThat(report.getOrphans()).extracting("rentId", "missingCar",
+                "missingCustomer").containsOnly(tuple(missingCar, true, false),
+                        tuple(missingBoth, true, true));
+        assertThat(report.getOverlaps()).isEmpty();
+    }
+
+    @Test
+    public void writeJson() throws Exception {
+        long a = insertRent(bmwId, customerId, LocalDate.of(2016, 1, 1), null);
+        long b = insertRent(bmwId, 997, LocalDate.of(2016, 1, 2), null);
+
+        StringWriter writer = new StringWriter();
+        audit.run().writeJson(writer);
+
+        assertThat(writer.toString()).isEqualTo("{\"checkedRents\":2,"
+                + "\"overlaps\":[\n{\"carId\":" + bmwId + ",\"firstRentId\":"
+                + a + ",\"secondRentId\":" + b + "}],\"orphans\":[\n"
+                + "{\"rentId\":" + b + ",\"carId\":" + bmwId
+                + ",\"customerId\":997,\"missingCar\":false,"
+                + "\"missingCustomer\":true}]}\n");
+    }
+
+    @Test
+    public void runWithoutDataSource() {
+        audit.setDataSource(null);
+        assertThatThrownBy(() -> audit.run())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
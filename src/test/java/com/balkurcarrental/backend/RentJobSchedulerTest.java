@@ -0,0 +1,287 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for RentJobScheduler
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RentJobSchedulerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2016, 4, 1);
+    private static final String OVERDUE = "overdue";
+
+    private DataSource dataSource;
+    private RentJobScheduler scheduler;
+    private final List<Long> overdueRentIds = new ArrayList<>();
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        RentManagerImpl rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+
+        Customer customer = new CustomerBuilder().name("Lukas").surname(
+                "Kurcik").phoneNumber("0905123456").build();
+        customerManager.createCustomer(customer);
+        for (int i = 0; i < 5; i++) {
+            Car car = new CarBuilder().brand("BMW").registrationNumber("AB" + i)
+                    .build();
+            carManager.createCar(car);
+            Rent overdue = new RentBuilder().car(car).customer(customer)
+                    .pricePerDay(100).beginningDate(DAY.minusDays(10))
+                    .expectedReturnDate(DAY.minusDays(i + 1)).build();
+            Rent returned = new RentBuilder().car(car).customer(customer)
+                    .pricePerDay(100).beginningDate(DAY.minusDays(30))
+                    .expectedReturnDate(DAY.minusDays(25))
+                    .realReturnDate(DAY.minusDays(20)).build();
+            rentManager.createRent(returned);
+            rentManager.createRent(overdue);
+            overdueRentIds.add(overdue.getId());
+        }
+
+        scheduler = new RentJobScheduler();
+        scheduler.setDataSource(dataSource);
+        scheduler.setCarManager(carManager);
+        scheduler.setCustomerManager(customerManager);
+        scheduler.setClock(Clock.fixed(DAY.atStartOfDay().toInstant(
+                ZoneOffset.UTC), ZoneOffset.UTC));
+        scheduler.setBatchSize(2);
+    }
+
+    @After
+    public void tearDown() throws SQLException, InterruptedException {
+        scheduler.stop(Duration.ofSeconds(10));
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    private static RentJob overdueJob(BiConsumer<List<Rent>, LocalDate> action) {
+        return new RentJob() {
+            @Override
+            public String getName() {
+                return OVERDUE;
+            }
+
+            @Override
+            public String getCondition() {
+                return "real_return_date IS NULL AND expected_return_date < ?";
+            }
+
+            @Override
+            public void process(List<Rent> rents, LocalDate day) {
+                action.accept(rents, day);
+            }
+        };
+    }
+
+    private static List<Long> ids(List<Rent> rents) {
+        List<Long> result = new ArrayList<>();
+        for (Rent rent : rents) {
+            result.add(rent.getId());
+        }
+        return result;
+    }
+
+    @Test
+    public void runProcessesRentsInBatches() {
+        List<List<Long>> batches = new ArrayList<>();
+        scheduler.schedule(overdueJob((rents, day) -> {
+            assertThat(day).isEqualTo(DAY);
+            assertThat(rents).extracting("car").doesNotContainNull();
+            batches.add(ids(rents));
+        }), Duration.ofHours(1));
+
+        assertThat(scheduler.runNow(OVERDUE)).isTrue();
+
+        assertThat(batches).containsExactly(overdueRentIds.subList(0, 2),
+                overdueRentIds.subList(2, 4), overdueRentIds.subList(4, 5));
+        JobStats stats = scheduler.getStats(OVERDUE);
+        assertThat(stats.getRuns()).isEqualTo(1);
+        assertThat(stats.getFailures()).isEqualTo(0);
+        assertThat(stats.getLastRows()).isEqualTo(5);
+        assertThat(stats.getTotalRows()).isEqualTo(5);
+        assertThat(stats.getLastDuration()).isGreaterThan(Duration.ZERO);
+        assertThat(stats.getLastRowsPerSecond()).isPositive();
+
+        // finished run starts from the beginning next time
+        batches.clear();
+        scheduler.runNow(OVERDUE);
+        assertThat(batches).hasSize(3);
+        assertThat(scheduler.getStats(OVERDUE).getTotalRows()).isEqualTo(10);
+    }
+
+    @Test
+    public void failedRunResumesFromCheckpoint() {
+        List<Long> processed = new ArrayList<>();
+        boolean[] fail = {true};
+        scheduler.schedule(overdueJob((rents, day) -> {
+            if (fail[0] && processed.size() == 2) {
+                throw new IllegalStateException("processing failed");
+            }
+            processed.addAll(ids(rents));
+        }), Duration.ofHours(1));
+
+        assertThatThrownBy(() -> scheduler.runNow(OVERDUE))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(processed).isEqualTo(overdueRentIds.subList(0, 2));
+        assertThat(scheduler.getStats(OVERDUE).getFailures()).isEqualTo(1);
+        assertThat(scheduler.getStats(OVERDUE).getLastRows()).isEqualTo(2);
+
+        fail[0] = false;
+        scheduler.runNow(OVERDUE);
+        assertThat(processed).isEqualTo(overdueRentIds);
+        assertThat(scheduler.getStats(OVERDUE).getLastRows()).isEqualTo(3);
+    }
+
+    @Test
+    public void checkpointOfOtherDayIsIgnored() {
+        List<Long> processed = new ArrayList<>();
+        scheduler.schedule(overdueJob((rents, day) -> {
+            if (processed.size() == 2 && day.equals(DAY)) {
+                throw new IllegalStateException("processing failed");
+            }
+            processed.addAll(ids(rents));
+        }), Duration.ofHours(1));
+
+        assertThatThrownBy(() -> scheduler.runNow(OVERDUE))
+                .isInstanceOf(IllegalStateException.class);
+
+        processed.clear();
+        scheduler.setClock(Clock.fixed(DAY.plusDays(1).atStartOfDay().
+                toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        scheduler.runNow(OVERDUE);
+        assertThat(processed).isEqualTo(overdueRentIds);
+    }
+
+    @Test
+    public void overlappingRunIsSkipped() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.schedule(overdueJob((rents, day) -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }), Duration.ofHours(1));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> first = executor.submit(() -> scheduler.runNow(
+                    OVERDUE));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(scheduler.runNow(OVERDUE)).isFalse();
+            release.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdown();
+        }
+
+        JobStats stats = scheduler.getStats(OVERDUE);
+        assertThat(stats.getRuns()).isEqualTo(1);
+        assertThat(stats.getSkippedRuns()).isEqualTo(1);
+    }
+
+    @Test
+    public void scheduledJobRunsPeriodically() throws InterruptedException {
+        CountDownLatch runs = new CountDownLatch(2);
+        scheduler.setMaxJitter(Duration.ofMillis(20));
+        scheduler.schedule(overdueJob((rents, day) -> {
+            if (rents.size() < 2) {
+                runs.countDown();
+            }
+        }), Duration.ofMillis(10));
+        scheduler.start();
+
+        assertThat(runs.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(scheduler.stop(Duration.ofSeconds(10))).isTrue();
+        assertThat(scheduler.getStats(OVERDUE).getRuns())
+                .isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    public void stopDiscardsDelayedRuns() throws InterruptedException {
+        CountDownLatch[] runs = {new CountDownLatch(1)};
+        scheduler.schedule(overdueJob((rents, day) -> {
+            if (rents.size() < 2) {
+                runs[0].countDown();
+            }
+        }), Duration.ofHours(1));
+        scheduler.start();
+        assertThat(runs[0].await(10, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        assertThat(scheduler.stop(Duration.ofSeconds(10))).isTrue();
+        assertThat(System.nanoTime() - start)
+                .isLessThan(TimeUnit.SECONDS.toNanos(5));
+
+        runs[0] = new CountDownLatch(1);
+        scheduler.start();
+        assertThat(runs[0].await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(100);
+        assertThat(scheduler.getStats(OVERDUE).getRuns()).isEqualTo(2);
+    }
+
+    @Test
+    public void wrongArguments() {
+        RentJob job = overdueJob((rents, day) -> {
+        });
+        assertThatThrownBy(() -> scheduler.schedule(null, Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> scheduler.schedule(job, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        scheduler.schedule(job, Duration.ofHours(1));
+        assertThatThrownBy(() -> scheduler.schedule(job, Duration.ofHours(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> scheduler.runNow("unknown"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> scheduler.setBatchSize(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void startWithoutDataSource() {
+        scheduler.setDataSource(null);
+        assertThatThrownBy(() -> scheduler.start())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
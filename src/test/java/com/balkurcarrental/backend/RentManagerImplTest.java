@@ -1,11 +1,30 @@
 package com.balkurcarrental.backend;
 
 import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.EntityEvent;
 import com.balkurcarrental.common.EntityNotFoundException;
 import com.balkurcarrental.common.InvalidEntityException;
+import com.balkurcarrental.common.JsonParser;
+import com.balkurcarrental.common.LeakDetectingDataSource;
+import com.balkurcarrental.common.LookupResult;
 import com.balkurcarrental.common.ServiceFailureException;
+import com.balkurcarrental.common.Tracer;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import javax.sql.DataSource;
 import org.apache.derby.jdbc.EmbeddedDataSource;
@@ -67,6 +86,19 @@ public class RentManagerImplTest {
                 brand("BMW").build());
         when(carManager.getCarById(24L)).thenReturn(new CarBuilder().id(24L).
                 brand("Mercedes").build());
+        when(carManager.getCarsByIds(anyCollection())).thenAnswer(
+                invocation -> {
+                    Collection<Long> ids = (Collection<Long>) invocation.
+                            getArguments()[0];
+                    Map<Long, Car> found = new HashMap<>();
+                    for (Long id : ids) {
+                        Car car = carManager.getCarById(id);
+                        if (car != null) {
+                            found.put(id, car);
+                        }
+                    }
+                    return new LookupResult<>(ids, found);
+                });
 
         return carManager;
     }
@@ -78,6 +110,19 @@ public class RentManagerImplTest {
                 new CustomerBuilder().id(64L).name("Lukas").build());
         when(customerManager.getCustomerById(24L)).thenReturn(
                 new CustomerBuilder().id(24L).name("Simon").build());
+        when(customerManager.getCustomersByIds(anyCollection())).thenAnswer(
+                invocation -> {
+                    Collection<Long> ids = (Collection<Long>) invocation.
+                            getArguments()[0];
+                    Map<Long, Customer> found = new HashMap<>();
+                    for (Long id : ids) {
+                        Customer customer = customerManager.getCustomerById(id);
+                        if (customer != null) {
+                            found.put(id, customer);
+                        }
+                    }
+                    return new LookupResult<>(ids, found);
+                });
 
         return customerManager;
     }
@@ -219,6 +264,66 @@ public class RentManagerImplTest {
         manager.getRentById(1024L);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getRentByIdIsTraced() throws IOException {
+        Tracer tracer = new Tracer("carrental", 1, 100);
+        CarManagerImpl realCarManager = new CarManagerImpl();
+        realCarManager.setDataSource(dataSource);
+        realCarManager.setTracer(tracer);
+        CustomerManagerImpl realCustomerManager = new CustomerManagerImpl();
+        realCustomerManager.setDataSource(dataSource);
+        realCustomerManager.setTracer(tracer);
+        manager.setCarManager(realCarManager);
+        manager.setCustomerManager(realCustomerManager);
+        manager.setTracer(tracer);
+        Car car = new CarBuilder().brand("BMW").registrationNumber("AB123")
+                .build();
+        realCarManager.createCar(car);
+        Customer customer = new CustomerBuilder().name("Lukas").surname(
+                "Kurcik").phoneNumber("0905123456").build();
+        realCustomerManager.createCustomer(customer);
+        Rent rent = createLukasBmwRent().car(car).customer(customer).build();
+        manager.createRent(rent);
+
+        manager.getRentById(rent.getId());
+
+        StringWriter out = new StringWriter();
+        tracer.export(out);
+        List<Map<String, Object>> spans = (List<Map<String, Object>>) JsonParser.
+                parse(out.toString());
+        Map<Object, String> names = new HashMap<>();
+        for (Map<String, Object> span : spans) {
+            names.put(span.get("id"), (String) span.get("name"));
+        }
+        List<String> paths = new ArrayList<>();
+        for (Map<String, Object> span : spans) {
+            String path = (String) span.get("name");
+            for (Map<String, Object> parent = span; parent.containsKey(
+                    "parentId");) {
+                Object parentId = parent.get("parentId");
+                path = names.get(parentId) + "/" + path;
+                parent = spans.stream().filter(s -> s.get("id").equals(
+                        parentId)).findFirst().get();
+            }
+            paths.add(path);
+        }
+        String map = "RentManager.getRentById/map/";
+        assertThat(paths).containsOnly("RentManager.getRentById",
+                "RentManager.getRentById/getConnection",
+                "RentManager.getRentById/prepare",
+                "RentManager.getRentById/execute",
+                "RentManager.getRentById/map",
+                map + "CarManager.getCarById",
+                map + "CarManager.getCarById/getConnection",
+                map + "CarManager.getCarById/prepare",
+                map + "CarManager.getCarById/execute",
+                map + "CustomerManager.getCustomerById",
+                map + "CustomerManager.getCustomerById/getConnection",
+                map + "CustomerManager.getCustomerById/prepare",
+                map + "CustomerManager.getCustomerById/execute");
+    }
+
     private void testUpdateSuccessfully(Consumer<Rent> updateOperation) {
         Rent lukasBmwRent = createLukasBmwRent().build();
         Rent simonMercedesRent = createSimonMercedesRent().build();
@@ -509,6 +614,302 @@ public class RentManagerImplTest {
         manager.findRentsForCar(new Car());
     }
 
+    @Test
+    public void findOverdueRents() {
+        Rent returned = createLukasBmwRent().build();
+        Rent overdue = createSimonMercedesRent()
+                .beginningDate(LocalDate.of(2016, 4, 1))
+                .expectedReturnDate(LocalDate.of(2016, 4, 5))
+                .realReturnDate(null)
+                .build();
+        Rent notYetDue = createLukasBmwRent()
+                .beginningDate(LocalDate.of(2016, 4, 1))
+                .expectedReturnDate(LocalDate.of(2016, 4, 10))
+                .realReturnDate(null)
+                .build();
+        Rent withoutExpectedReturn = createSimonMercedesRent()
+                .beginningDate(LocalDate.of(2015, 1, 1))
+                .expectedReturnDate(null)
+                .realReturnDate(LocalDate.of(2015, 1, 2))
+                .build();
+        manager.createRent(returned);
+        manager.createRent(overdue);
+        manager.createRent(notYetDue);
+        manager.createRent(withoutExpectedReturn);
+
+        assertThat(manager.findOverdueRents(LocalDate.of(2016, 4, 5)))
+                .isEmpty();
+        assertThat(manager.findOverdueRents(LocalDate.of(2016, 4, 6)))
+                .usingFieldByFieldElementComparator().containsExactly(overdue);
+        assertThat(manager.findOverdueRents(LocalDate.of(2016, 5, 1)))
+                .usingFieldByFieldElementComparator().containsExactly(overdue,
+                        notYetDue);
+    }
+
+    @Test
+    public void findActiveRents() {
+        Rent returned = createLukasBmwRent().build();
+        Rent open = createSimonMercedesRent()
+                .beginningDate(LocalDate.of(2016, 3, 1))
+                .expectedReturnDate(LocalDate.of(2016, 3, 10))
+                .realReturnDate(null)
+                .build();
+        manager.createRent(returned);
+        manager.createRent(open);
+
+        assertThat(manager.findActiveRents(LocalDate.of(2016, 2, 29)))
+                .isEmpty();
+        assertThat(manager.findActiveRents(LocalDate.of(2016, 3, 24)))
+                .usingFieldByFieldElementComparator().containsOnly(returned,
+                        open);
+        assertThat(manager.findActiveRents(LocalDate.of(2016, 3, 29)))
+                .usingFieldByFieldElementComparator().containsOnly(returned,
+                        open);
+        assertThat(manager.findActiveRents(LocalDate.of(2016, 3, 30)))
+                .usingFieldByFieldElementComparator().containsOnly(open);
+    }
+
+    @Test
+    public void forEachOverdueRentStreamsInChunks() throws SQLException {
+        // two unfinished rents of the same car can't be created by manager
+        int count = DBUtils.IN_CHUNK_SIZE + 5;
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement st = connection.prepareStatement(
+                        "INSERT INTO rent (customer_id, car_id, price_per_day, beginning_date, expected_return_date) VALUES (64, 12, 100, ?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                Date day = Date.valueOf(LocalDate.of(2000, 1, 1).plusDays(i));
+                st.setDate(1, day);
+                st.setDate(2, day);
+                st.executeUpdate();
+            }
+        }
+
+        List<Rent> overdue = new ArrayList<>();
+        manager.forEachOverdueRent(LocalDate.of(2010, 1, 1), overdue::add);
+
+        assertThat(overdue).hasSize(count);
+        assertThat(overdue).extracting("expectedReturnDate").isSorted();
+        assertThat(overdue).extracting("car").containsOnly(carManager.
+                getCarById(12L));
+        // the same car and customer are loaded only by the first chunk
+        verify(carManager, times(1)).getCarsByIds(anyCollection());
+        verify(customerManager, times(1)).getCustomersByIds(anyCollection());
+    }
+
+    @Test
+    public void returnCars() {
+        Rent open = createSimonMercedesRent()
+                .beginningDate(LocalDate.of(2016, 4, 1))
+                .expectedReturnDate(LocalDate.of(2016, 4, 5))
+                .realReturnDate(null)
+                .build();
+        Rent returned = createLukasBmwRent().build();
+        Rent next = createLukasBmwRent()
+                .beginningDate(LocalDate.of(2016, 4, 2))
+                .expectedReturnDate(LocalDate.of(2016, 4, 4))
+                .realReturnDate(LocalDate.of(2016, 4, 4))
+                .build();
+        manager.createRent(open);
+        manager.createRent(returned);
+        manager.createRent(next);
+
+        Map<Long, LocalDate> returnDates = new LinkedHashMap<>();
+        returnDates.put(open.getId(), LocalDate.of(2016, 4, 6));
+        returnDates.put(next.getId(), LocalDate.of(2016, 4, 8));
+        returnDates.put(returned.getId(), LocalDate.of(2016, 4, 3));
+        returnDates.put(next.getId() + 100, LocalDate.of(2016, 4, 3));
+
+        assertThat(manager.returnCars(returnDates)).containsExactly(
+                entry(open.getId(), ReturnOutcome.RETURNED),
+                entry(next.getId(), ReturnOutcome.RETURNED),
+                entry(returned.getId(), ReturnOutcome.CONFLICT),
+                entry(next.getId() + 100, ReturnOutcome.NOT_FOUND));
+
+        open.setRealReturnDate(LocalDate.of(2016, 4, 6));
+        next.setRealReturnDate(LocalDate.of(2016, 4, 8));
+        assertThat(manager.findAllRents()).usingFieldByFieldElementComparator()
+                .containsOnly(open, returned, next);
+
+        // shortening is never checked, invalid date is reported
+        returnDates.clear();
+        returnDates.put(returned.getId(), LocalDate.of(2016, 3, 25));
+        returnDates.put(next.getId(), LocalDate.of(2016, 4, 1));
+        assertThat(manager.returnCars(returnDates)).containsExactly(
+                entry(returned.getId(), ReturnOutcome.RETURNED),
+                entry(next.getId(), ReturnOutcome.INVALID_DATE));
+        assertThat(manager.getRentById(returned.getId()).getRealReturnDate())
+                .isEqualTo(LocalDate.of(2016, 3, 25));
+    }
+
+    @Test
+    public void returnCarsPublishesEvents() {
+        Rent open = createSimonMercedesRent().realReturnDate(null).build();
+        manager.createRent(open);
+        List<EntityEvent<Rent>> events = new ArrayList<>();
+        manager.getEvents().addListener(events::addAll);
+
+        manager.returnCars(Collections.singletonMap(open.getId(),
+                LocalDate.of(2010, 2, 20)));
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getType()).isEqualTo(EntityEvent.Type.UPDATED);
+        assertThat(events.get(0).getBefore().getRealReturnDate()).isNull();
+        assertThat(events.get(0).getAfter().getRealReturnDate())
+                .isEqualTo(LocalDate.of(2010, 2, 20));
+    }
+
+    @Test
+    public void returnCarsWithWrongArguments() {
+        assertThatThrownBy(() -> manager.returnCars(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.returnCars(Collections.singletonMap(
+                null, LocalDate.now())))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.returnCars(Collections.singletonMap(
+                1L, null))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(manager.returnCars(Collections.emptyMap())).isEmpty();
+    }
+
+    @Test
+    public void repriceRents() {
+        Rent closed = createLukasBmwRent().build();
+        Rent open = createSimonMercedesRent()
+                .beginningDate(LocalDate.of(2016, 4, 1))
+                .expectedReturnDate(LocalDate.of(2016, 4, 5))
+                .realReturnDate(null)
+                .build();
+        Rent future = createLukasBmwRent()
+                .beginningDate(LocalDate.of(2016, 5, 1))
+                .expectedReturnDate(LocalDate.of(2016, 5, 3))
+                .realReturnDate(LocalDate.of(2016, 5, 3))
+                .pricePerDay(155)
+                .build();
+        manager.createRent(closed);
+        manager.createRent(open);
+        manager.createRent(future);
+        LocalDate asOf = LocalDate.of(2016, 4, 10);
+
+        assertThat(manager.repriceRents(Repricing.byPercent(10), asOf))
+                .isEqualTo(2);
+        closed.setPricePerDay(150);
+        open.setPricePerDay(275);
+        future.setPricePerDay(171);
+        assertThat(manager.findAllRents()).usingFieldByFieldElementComparator()
+                .containsOnly(closed, open, future);
+
+        assertThat(manager.repriceRents(Repricing.byAmount(-1000).forCars(
+                Arrays.asList(12L)).beginningBetween(LocalDate.of(2016, 4, 1),
+                        null), asOf)).isEqualTo(1);
+        assertThat(manager.repriceRents(Repricing.byAmount(5).forCars(
+                Arrays.asList(24L)).beginningBetween(null, LocalDate.of(2016,
+                        3, 31)), asOf)).isZero();
+        future.setPricePerDay(1);
+        assertThat(manager.findAllRents()).usingFieldByFieldElementComparator()
+                .containsOnly(closed, open, future);
+    }
+
+    @Test
+    public void repriceRentsForBrand() throws SQLException {
+        CarManagerImpl realCarManager = new CarManagerImpl();
+        realCarManager.setDataSource(dataSource);
+        Car skoda = new CarBuilder().brand("Skoda").registrationNumber("BA001")
+                .build();
+        realCarManager.createCar(skoda);
+        Rent skodaRent = createSimonMercedesRent().car(skoda).realReturnDate(
+                null).build();
+        Rent mercedesRent = createSimonMercedesRent().realReturnDate(null)
+                .build();
+        manager.createRent(skodaRent);
+        manager.createRent(mercedesRent);
+
+        assertThat(manager.repriceRents(Repricing.byAmount(-50).forBrand(
+                "Skoda"), LocalDate.of(2016, 1, 1))).isEqualTo(1);
+
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement st = connection.prepareStatement(
+                        "SELECT id, price_per_day FROM rent ORDER BY id")) {
+            ResultSet rs = st.executeQuery();
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt("price_per_day")).isEqualTo(200);
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt("price_per_day")).isEqualTo(250);
+        }
+    }
+
+    @Test
+    public void repriceRentsPublishesEvents() {
+        Rent open = createSimonMercedesRent().realReturnDate(null).build();
+        Rent closed = createLukasBmwRent().build();
+        manager.createRent(open);
+        manager.createRent(closed);
+        List<EntityEvent<Rent>> events = new ArrayList<>();
+        manager.getEvents().addListener(events::addAll);
+
+        manager.repriceRents(Repricing.byPercent(-20), LocalDate.of(2016, 4,
+                1));
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getId()).isEqualTo(open.getId());
+        assertThat(events.get(0).getBefore().getPricePerDay()).isEqualTo(250);
+        assertThat(events.get(0).getAfter().getPricePerDay()).isEqualTo(200);
+    }
+
+    @Test
+    public void repriceRentsDoesNotReloadCalendar() {
+        Rent open = createSimonMercedesRent().realReturnDate(null).build();
+        Rent future = createLukasBmwRent()
+                .beginningDate(LocalDate.of(2016, 5, 1))
+                .expectedReturnDate(LocalDate.of(2016, 5, 3))
+                .realReturnDate(LocalDate.of(2016, 5, 3))
+                .build();
+        manager.createRent(open);
+        manager.createRent(future);
+        List<Integer> batches = new ArrayList<>();
+        manager.getEvents().addListener(events -> batches.add(events.size()));
+        try (LeakDetectingDataSource counting = new LeakDetectingDataSource(
+                dataSource)) {
+            CarAvailabilityCalendar calendar = new CarAvailabilityCalendar();
+            calendar.setDataSource(counting);
+            calendar.load();
+            manager.setAvailabilityCalendar(calendar);
+
+            assertThat(manager.repriceRents(Repricing.byPercent(10),
+                    LocalDate.of(2016, 4, 10))).isEqualTo(2);
+
+            assertThat(batches).containsExactly(2);
+            assertThat(counting.getAcquireTimes().getCount()).isEqualTo(1);
+            assertThat(calendar.isFree(open.getCar().getId(), LocalDate.of(
+                    2016, 4, 10))).isFalse();
+        }
+    }
+
+    @Test
+    public void repriceRentsWithWrongArguments() {
+        assertThatThrownBy(() -> manager.repriceRents(null, LocalDate.now()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.repriceRents(Repricing.byPercent(5),
+                null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Repricing.byPercent(-100))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Repricing.byAmount(5).beginningBetween(
+                LocalDate.of(2016, 2, 1), LocalDate.of(2016, 1, 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Repricing.byAmount(5).forCars(Arrays.asList(
+                1L, null))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void findOverdueAndActiveRentsWithWrongArguments() {
+        assertThatThrownBy(() -> manager.findOverdueRents(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.findActiveRents(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.forEachOverdueRent(LocalDate.now(),
+                null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.forEachActiveRent(LocalDate.now(),
+                null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     private void testExpectedServiceFailureException(
             Consumer<RentManager> operation) throws SQLException {
         SQLException sqlException = new SQLException();
@@ -545,6 +946,18 @@ public class RentManagerImplTest {
         testExpectedServiceFailureException((m) -> m.deleteRent(rent));
     }
 
+    @Test
+    public void returnCarsWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((m) -> m.returnCars(Collections.
+                singletonMap(12L, LocalDate.now())));
+    }
+
+    @Test
+    public void repriceRentsWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((m) -> m.repriceRents(Repricing.
+                byPercent(5), LocalDate.now()));
+    }
+
     @Test
     public void findAllRentsWithSqlExceptionThrown() throws SQLException {
         testExpectedServiceFailureException((m) -> m.findAllRents());
@@ -562,6 +975,18 @@ public class RentManagerImplTest {
                 getCarById(12L)));
     }
 
+    @Test
+    public void findOverdueRentsWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((m) -> m.findOverdueRents(
+                LocalDate.now()));
+    }
+
+    @Test
+    public void findActiveRentsWithSqlExceptionThrown() throws SQLException {
+        testExpectedServiceFailureException((m) -> m.findActiveRents(
+                LocalDate.now()));
+    }
+
     @Test
     public void createRentWithoutDataSource() {
         manager.setDataSource(null);
@@ -0,0 +1,227 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import com.balkurcarrental.common.Flow;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for RentPublisher
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RentPublisherTest {
+
+    private static final int RENTS = 250;
+    private static final LocalDate DAY = LocalDate.of(2016, 1, 1);
+
+    private DataSource dataSource;
+    private DataSource trackedDataSource;
+    private int connections;
+    private int closed;
+    private RentManagerImpl manager;
+    private Car bmw;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        CarManagerImpl carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+
+        // spy of Derby connection would be its copy, so proxy records calls
+        trackedDataSource = spy(dataSource);
+        doAnswer(invocation -> {
+            Connection connection = (Connection) invocation.callRealMethod();
+            Connection tracked = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            closed++;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    });
+            connections++;
+            return tracked;
+        }).when(trackedDataSource).getConnection();
+        manager = new RentManagerImpl();
+        manager.setDataSource(trackedDataSource);
+        manager.setCarManager(carManager);
+        manager.setCustomerManager(customerManager);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        Car skoda = new CarBuilder().brand("Skoda").registrationNumber("CD456")
+                .build();
+        carManager.createCar(bmw);
+        carManager.createCar(skoda);
+        Customer customer = new CustomerBuilder().name("Lukas").surname(
+                "Kurcik").phoneNumber("0905123456").build();
+        customerManager.createCustomer(customer);
+
+        // rents are inserted directly, it is much faster than by manager
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement st = connection.prepareStatement(
+                        "INSERT INTO rent (customer_id, car_id, price_per_day, beginning_date, real_return_date) VALUES (?, ?, 100, ?, ?)")) {
+            for (int i = 0; i < RENTS; i++) {
+                st.setLong(1, customer.getId());
+                st.setLong(2, i % 5 == 4 ? skoda.getId() : bmw.getId());
+                st.setDate(3, Date.valueOf(DAY.plusDays(i)));
+                st.setDate(4, Date.valueOf(DAY.plusDays(i)));
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    /**
+     * Subscriber recording received signals. Action is called for every rent.
+     */
+    private static class Recorder implements Flow.Subscriber<Rent> {
+
+        private final BiConsumer<Recorder, Rent> action;
+        private final List<Rent> rents = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        Recorder(BiConsumer<Recorder, Rent> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Rent item) {
+            assertThat(completed).isFalse();
+            rents.add(item);
+            action.accept(this, item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private void verifyConnectionsClosed() {
+        assertThat(closed).isEqualTo(connections);
+    }
+
+    @Test
+    public void rentsAreReadOnDemand() {
+        Recorder recorder = new Recorder((r, rent) -> {
+        });
+        manager.publishAllRents().subscribe(recorder);
+        assertThat(connections).isZero();
+
+        recorder.subscription.request(3);
+        assertThat(recorder.rents).hasSize(3);
+        assertThat(recorder.completed).isFalse();
+        assertThat(connections).isEqualTo(1);
+        assertThat(closed).isZero();
+        assertThat(recorder.rents.get(0).getCar()).isEqualToComparingFieldByField(
+                bmw);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertThat(recorder.rents).hasSize(RENTS);
+        assertThat(recorder.rents).doesNotHaveDuplicates();
+        assertThat(recorder.completed).isTrue();
+        assertThat(recorder.error).isNull();
+        verifyConnectionsClosed();
+    }
+
+    @Test
+    public void requestFromOnNext() {
+        Recorder recorder = new Recorder((r, rent) -> r.subscription.request(
+                1));
+        manager.publishRentsForCar(bmw, true).subscribe(recorder);
+        recorder.subscription.request(1);
+
+        assertThat(recorder.rents).hasSize(RENTS * 4 / 5);
+        assertThat(recorder.rents).extracting("car").containsOnly(bmw);
+        assertThat(recorder.completed).isTrue();
+        verifyConnectionsClosed();
+    }
+
+    @Test
+    public void cancelReleasesConnection() {
+        Recorder recorder = new Recorder((r, rent) -> r.subscription.cancel());
+        manager.publishAllRents().subscribe(recorder);
+        recorder.subscription.request(10);
+
+        assertThat(recorder.rents).hasSize(1);
+        assertThat(connections).isEqualTo(1);
+        verifyConnectionsClosed();
+        recorder.subscription.request(10);
+        assertThat(recorder.rents).hasSize(1);
+        assertThat(recorder.completed).isFalse();
+    }
+
+    @Test
+    public void invalidRequest() {
+        Recorder recorder = new Recorder((r, rent) -> {
+        });
+        manager.publishAllRents().subscribe(recorder);
+        recorder.subscription.request(2);
+        recorder.subscription.request(0);
+
+        assertThat(recorder.error).isInstanceOf(IllegalArgumentException.class);
+        assertThat(recorder.rents).hasSize(2);
+        verifyConnectionsClosed();
+    }
+
+    @Test
+    public void wrongParameters() {
+        assertThatThrownBy(() -> manager.publishRentsForCar(null, false))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.publishRentsForCar(new Car(), false))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> manager.publishAllRents().subscribe(null))
+                .isInstanceOf(NullPointerException.class);
+    }
+}
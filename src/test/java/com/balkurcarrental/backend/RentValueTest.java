@@ -0,0 +1,68 @@
+package com.balkurcarrental.backend;
+
+import java.time.LocalDate;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for RentValue
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class RentValueTest {
+
+    private static Rent createRent() {
+        return new RentBuilder()
+                .id(5L)
+                .car(new CarBuilder().id(12L).brand("BMW").registrationNumber(
+                        "AB123").build())
+                .customer(new CustomerBuilder().id(64L).name("Lukas").surname(
+                        "Kurcik").phoneNumber("0905123456").build())
+                .pricePerDay(150)
+                .beginningDate(LocalDate.of(2016, 3, 24))
+                .expectedReturnDate(LocalDate.of(2016, 3, 28))
+                .realReturnDate(null)
+                .build();
+    }
+
+    @Test
+    public void conversionToAndFromRent() {
+        Rent rent = createRent();
+
+        RentValue value = RentValue.of(rent);
+        rent.getCar().setBrand("Skoda");
+        rent.setPricePerDay(1);
+
+        assertThat(value.getCar().getBrand()).isEqualTo("BMW");
+        assertThat(value.getCustomer().getName()).isEqualTo("Lukas");
+        assertThat(value.getPricePerDay()).isEqualTo(150);
+
+        Rent copy = value.toRent();
+        Rent expected = createRent();
+        assertThat(copy).isEqualToIgnoringGivenFields(expected, "car",
+                "customer");
+        assertThat(copy.getCar()).isEqualToComparingFieldByField(expected.
+                getCar());
+        assertThat(copy.getCustomer()).isEqualToComparingFieldByField(
+                expected.getCustomer());
+        assertThat(RentValue.of(null)).isNull();
+        assertThat(RentValue.builder().build().toRent().getCar()).isNull();
+    }
+
+    @Test
+    public void equalityOfAllAttributes() {
+        RentValue value = RentValue.of(createRent());
+        RentValue same = RentValue.of(createRent());
+        RentValue returned = value.toBuilder().realReturnDate(LocalDate.of(2016,
+                3, 29)).build();
+        Rent otherCustomer = createRent();
+        otherCustomer.getCustomer().setSurname("Balaz");
+
+        assertThat(value).isEqualTo(same);
+        assertThat(value.hashCode()).isEqualTo(same.hashCode());
+        assertThat(value).isNotEqualTo(returned);
+        assertThat(value).isNotEqualTo(RentValue.of(otherCustomer));
+        assertThat(returned.getCar()).isSameAs(value.getCar());
+    }
+}
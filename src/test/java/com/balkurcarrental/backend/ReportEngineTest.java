@@ -0,0 +1,224 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for ReportEngine
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class ReportEngineTest {
+
+    private DataSource dataSource;
+    private CarManagerImpl carManager;
+    private RentManagerImpl rentManager;
+    private ReportEngine reportEngine;
+    private ForkJoinPool pool;
+    private Customer lukas;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        CustomerManagerImpl customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+        pool = new ForkJoinPool(4);
+        reportEngine = new ReportEngine();
+        reportEngine.setDataSource(dataSource);
+        reportEngine.setPool(pool);
+
+        lukas = new CustomerBuilder().name("Lukas").surname("Kurcik").
+                phoneNumber("0905123456").build();
+        customerManager.createCustomer(lukas);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        pool.shutdown();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    private Car car(String registrationNumber) {
+        Car car = new CarBuilder().brand("BMW").registrationNumber(
+                registrationNumber).build();
+        carManager.createCar(car);
+        return car;
+    }
+
+    private Rent rent(Car car, int price, LocalDate beginning,
+            LocalDate realReturn) {
+        Rent rent = new RentBuilder().car(car).customer(lukas)
+                .pricePerDay(price).beginningDate(beginning)
+                .expectedReturnDate(beginning).realReturnDate(realReturn)
+                .build();
+        rentManager.createRent(rent);
+        return rent;
+    }
+
+    @Test
+    public void monthlyReports() {
+        Car bmw = car("AB123");
+        Car skoda = car("CD456");
+        Car audi = car("EF789");
+        // 2 days in January, archived
+        rent(bmw, 100, LocalDate.of(2015, 12, 30), LocalDate.of(2016, 1, 2));
+        // 1 day in January and 1 day in February
+        rent(skoda, 50, LocalDate.of(2016, 1, 31), LocalDate.of(2016, 2, 1));
+        // unfinished, 6 days until asOf
+        rent(audi, 10, LocalDate.of(2016, 3, 10), null);
+        // begins after asOf
+        rent(bmw, 100, LocalDate.of(2016, 4, 1), null);
+        RentArchiver archiver = new RentArchiver();
+        archiver.setDataSource(dataSource);
+        archiver.archiveReturnedBefore(LocalDate.of(2016, 1, 10));
+        reportEngine.setRanges(3);
+
+        Map<YearMonth, MonthlyReport> reports = reportEngine.monthlyReports(
+                YearMonth.of(2016, 1), YearMonth.of(2016, 4), LocalDate.of(2016,
+                        3, 15));
+
+        assertThat(reports.keySet()).containsExactly(YearMonth.of(2016, 1),
+                YearMonth.of(2016, 2), YearMonth.of(2016, 3), YearMonth.of(2016,
+                        4));
+        assertThat(reports.get(YearMonth.of(2016, 1)))
+                .isEqualToComparingFieldByField(new MonthlyReport(YearMonth.of(
+                        2016, 1), 93, 3, 250, 1, 1, 4));
+        assertThat(reports.get(YearMonth.of(2016, 2)))
+                .isEqualToComparingFieldByField(new MonthlyReport(YearMonth.of(
+                        2016, 2), 87, 1, 50, 0, 1, 2));
+        assertThat(reports.get(YearMonth.of(2016, 3)))
+                .isEqualToComparingFieldByField(new MonthlyReport(YearMonth.of(
+                        2016, 3), 45, 6, 60, 1, 0, 0));
+        assertThat(reports.get(YearMonth.of(2016, 4)))
+                .isEqualToComparingFieldByField(new MonthlyReport(YearMonth.of(
+                        2016, 4), 0, 0, 0, 0, 0, 0));
+        assertThat(reports.get(YearMonth.of(2016, 2)).getAverageDuration())
+                .isEqualTo(2.0);
+        assertThat(reports.get(YearMonth.of(2016, 1)).getUtilization())
+                .isEqualTo(3.0 / 93);
+    }
+
+    @Test
+    public void rangesDoNotChangeReports() {
+        List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            cars.add(car("AB" + (100 + i)));
+        }
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2016, 1, 1);
+        LocalDate asOf = LocalDate.of(2016, 6, 20);
+        List<Rent> rents = new ArrayList<>();
+        for (Car car : cars) {
+            LocalDate beginning = start.plusDays(random.nextInt(20));
+            while (beginning.isBefore(asOf)) {
+                LocalDate realReturn = beginning.plusDays(random.nextInt(40));
+                boolean unfinished = realReturn.isAfter(asOf);
+                rents.add(rent(car, 1 + random.nextInt(100), beginning,
+                        unfinished ? null : realReturn));
+                if (unfinished) {
+                    break;
+                }
+                beginning = realReturn.plusDays(1 + random.nextInt(10));
+            }
+        }
+        rentManager.deleteRent(rents.remove(0));
+        // rents of deleted car are still reported
+        carManager.deleteCar(cars.get(cars.size() - 1));
+
+        YearMonth from = YearMonth.of(2016, 2);
+        YearMonth to = YearMonth.of(2016, 6);
+        reportEngine.setRanges(1);
+        Map<YearMonth, MonthlyReport> single = reportEngine.monthlyReports(
+                from, to, asOf);
+        reportEngine.setRanges(7);
+        Map<YearMonth, MonthlyReport> parallel = reportEngine.monthlyReports(
+                from, to, asOf);
+
+        assertThat(parallel.keySet()).containsExactlyElementsOf(single.
+                keySet());
+        for (YearMonth month : single.keySet()) {
+            long rentedDays = 0;
+            for (Rent rent : rents) {
+                LocalDate end = rent.getRealReturnDate() == null ? asOf
+                        : rent.getRealReturnDate();
+                for (LocalDate day = rent.getBeginningDate(); !day.isAfter(
+                        end); day = day.plusDays(1)) {
+                    if (YearMonth.from(day).equals(month)) {
+                        rentedDays++;
+                    }
+                }
+            }
+            assertThat(parallel.get(month)).isEqualToComparingFieldByField(
+                    single.get(month));
+            assertThat(parallel.get(month).getRentedDays()).isEqualTo(
+                    rentedDays);
+        }
+    }
+
+    @Test
+    public void reportsWithoutCars() {
+        Map<YearMonth, MonthlyReport> reports = reportEngine.monthlyReports(
+                YearMonth.of(2016, 1), YearMonth.of(2016, 1), LocalDate.of(2015,
+                        12, 31));
+
+        assertThat(reports.get(YearMonth.of(2016, 1)))
+                .isEqualToComparingFieldByField(new MonthlyReport(YearMonth.of(
+                        2016, 1), 0, 0, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> reportEngine.monthlyReports(null, YearMonth.
+                of(2016, 1), LocalDate.now()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> reportEngine.monthlyReports(YearMonth.of(2016,
+                2), YearMonth.of(2016, 1), LocalDate.now()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> reportEngine.monthlyReports(YearMonth.of(2016,
+                1), YearMonth.of(2016, 1), null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> reportEngine.setRanges(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> reportEngine.setPool(null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void reportsWithoutDataSource() {
+        reportEngine.setDataSource(null);
+        assertThatThrownBy(() -> reportEngine.monthlyReports(YearMonth.of(2016,
+                1), YearMonth.of(2016, 1), LocalDate.now()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,185 @@
+package com.balkurcarrental.backend;
+
+import com.balkurcarrental.common.DBUtils;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for SnapshotService
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class SnapshotServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2016, 4, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DataSource dataSource;
+    private CarManagerImpl carManager;
+    private CustomerManagerImpl customerManager;
+    private RentManagerImpl rentManager;
+    private SnapshotService service;
+    private Path file;
+    private Car bmw;
+    private Customer lukas;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        dataSource = prepareDataSource();
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "createTables.sql"));
+        carManager = new CarManagerImpl();
+        carManager.setDataSource(dataSource);
+        customerManager = new CustomerManagerImpl();
+        customerManager.setDataSource(dataSource);
+        rentManager = new RentManagerImpl();
+        rentManager.setDataSource(dataSource);
+        rentManager.setCarManager(carManager);
+        rentManager.setCustomerManager(customerManager);
+
+        bmw = new CarBuilder().brand("BMW").registrationNumber("AB123").build();
+        Car skoda = new CarBuilder().brand("Škoda").registrationNumber(
+                "CD456").build();
+        carManager.createCar(bmw);
+        carManager.createCar(skoda);
+        lukas = new CustomerBuilder().name("Lukáš").surname("Kurčík").
+                phoneNumber("0905123456").build();
+        customerManager.createCustomer(lukas);
+        rentManager.createRent(new RentBuilder().car(bmw).customer(lukas)
+                .pricePerDay(100).beginningDate(DAY).expectedReturnDate(DAY.
+                plusDays(3)).realReturnDate(DAY.plusDays(2)).build());
+        rentManager.createRent(new RentBuilder().car(skoda).customer(lukas)
+                .pricePerDay(80).beginningDate(DAY).expectedReturnDate(null)
+                .realReturnDate(null).build());
+
+        service = new SnapshotService();
+        service.setDataSource(dataSource);
+        file = folder.getRoot().toPath().resolve("carrental.snapshot");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        DBUtils.executeSqlScript(dataSource, RentManager.class.getResource(
+                "dropTables.sql"));
+    }
+
+    private static DataSource prepareDataSource() throws SQLException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        return ds;
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+        Snapshot taken = service.take();
+        service.write(taken, file);
+        Snapshot read = service.read(file);
+
+        assertThat(read.getHighWaterMark()).isEqualTo(taken.getHighWaterMark());
+        assertThat(read.getHighWaterMark().getRents()).isEqualTo(2);
+        assertThat(read.getCars()).usingFieldByFieldElementComparator()
+                .containsExactlyElementsOf(carManager.findAllCars());
+        assertThat(read.getCustomers()).usingFieldByFieldElementComparator()
+                .containsExactly(lukas);
+        assertThat(read.getRents()).extracting("id", "pricePerDay",
+                "beginningDate", "realReturnDate").containsExactly(
+                tuple(taken.getRents().get(0).getId(), 100, DAY, DAY.plusDays(
+                        2)), tuple(taken.getRents().get(1).getId(), 80, DAY,
+                        null));
+        // rents share restored instances
+        assertThat(read.getRents().get(0).getCustomer()).isSameAs(read.
+                getCustomers().get(0));
+        assertThat(read.getRents().get(1).getCustomer()).isSameAs(read.
+                getCustomers().get(0));
+        assertThat(read.getRents().get(0).getCar()).isSameAs(read.getCars().
+                get(0));
+        assertThat(service.isCurrent(read)).isTrue();
+    }
+
+    @Test
+    public void changedDatabaseIsDetected() throws IOException {
+        service.write(service.take(), file);
+
+        Customer simon = new CustomerBuilder().name("Simon").surname("Balaz").
+                phoneNumber("0905654321").build();
+        customerManager.createCustomer(simon);
+        assertThat(service.isCurrent(service.read(file))).isFalse();
+
+        service.write(service.take(), file);
+        customerManager.deleteCustomer(simon);
+        assertThat(service.isCurrent(service.read(file))).isFalse();
+    }
+
+    @Test
+    public void corruptedFile() throws IOException {
+        service.write(service.take(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> service.read(file)).isInstanceOf(
+                StreamCorruptedException.class);
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThatThrownBy(() -> service.read(file)).isInstanceOf(
+                StreamCorruptedException.class);
+    }
+
+    @Test
+    public void warmUp() throws IOException {
+        CustomerSearchIndex index = new CustomerSearchIndex();
+        CarAvailabilityCalendar calendar = new CarAvailabilityCalendar();
+
+        service.warmUp(file, index, calendar);
+        assertThat(file).exists();
+        assertThat(index.search("kurcik", 10)).containsExactly(lukas);
+        assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(1))).isFalse();
+        assertThat(calendar.isFree(bmw.getId(), DAY.plusDays(3))).isTrue();
+
+        // current snapshot is used as it is
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        Snapshot restored = service.warmUp(file, new CustomerSearchIndex(),
+                null);
+        assertThat(Files.getLastModifiedTime(file).toMillis()).isEqualTo(
+                modified);
+        assertThat(restored.getCars()).hasSize(2);
+
+        // stale snapshot is replaced
+        Car audi = new CarBuilder().brand("Audi").registrationNumber("XY999")
+                .build();
+        carManager.createCar(audi);
+        Snapshot fresh = service.warmUp(file, null, null);
+        assertThat(fresh.getCars()).hasSize(3);
+        assertThat(service.read(file).getHighWaterMark()).isEqualTo(fresh.
+                getHighWaterMark());
+    }
+
+    @Test
+    public void wrongParameters() {
+        assertThatThrownBy(() -> service.read(null)).isInstanceOf(
+                IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.write(null, file)).isInstanceOf(
+                IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.isCurrent(null)).isInstanceOf(
+                IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnapshotService().take()).isInstanceOf(
+                IllegalStateException.class);
+    }
+}
@@ -0,0 +1,92 @@
+package com.balkurcarrental.common;
+
+import java.util.TreeSet;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for DayBitmap
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class DayBitmapTest {
+
+    @Test
+    public void emptyBitmap() {
+        DayBitmap bitmap = new DayBitmap();
+        assertThat(bitmap.contains(17000)).isFalse();
+        assertThat(bitmap.bits(17000)).isZero();
+        assertThat(bitmap.cardinality()).isZero();
+        assertThat(bitmap.getLastDay()).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    public void addRangeAcrossContainers() {
+        DayBitmap bitmap = new DayBitmap();
+        bitmap.addRange(1020, 1030);
+
+        assertThat(bitmap.contains(1019)).isFalse();
+        assertThat(bitmap.contains(1020)).isTrue();
+        assertThat(bitmap.contains(1023)).isTrue();
+        assertThat(bitmap.contains(1024)).isTrue();
+        assertThat(bitmap.contains(1030)).isTrue();
+        assertThat(bitmap.contains(1031)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(11);
+        assertThat(bitmap.getLastDay()).isEqualTo(1030);
+        assertThat(bitmap.bits(1020)).isEqualTo((1L << 11) - 1);
+        assertThat(bitmap.run(1020, true)).isEqualTo(11);
+        assertThat(bitmap.run(1000, false)).isEqualTo(20);
+    }
+
+    @Test
+    public void denseContainer() {
+        DayBitmap bitmap = new DayBitmap();
+        bitmap.addRange(0, 500);
+        bitmap.addRange(600, 600);
+
+        assertThat(bitmap.cardinality()).isEqualTo(502);
+        assertThat(bitmap.contains(500)).isTrue();
+        assertThat(bitmap.contains(501)).isFalse();
+        assertThat(bitmap.contains(600)).isTrue();
+        assertThat(bitmap.bits(448)).isEqualTo(-1L >>> 11);
+    }
+
+    @Test
+    public void negativeDays() {
+        DayBitmap bitmap = new DayBitmap();
+        bitmap.addRange(-10, 5);
+        assertThat(bitmap.contains(-11)).isFalse();
+        assertThat(bitmap.contains(-10)).isTrue();
+        assertThat(bitmap.contains(5)).isTrue();
+        assertThat(bitmap.bits(-10)).isEqualTo((1L << 16) - 1);
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        Random random = new Random(7);
+        DayBitmap bitmap = new DayBitmap();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 300; i++) {
+            long from = random.nextInt(20000);
+            long to = from + random.nextInt(i % 10 == 0 ? 200 : 5);
+            bitmap.addRange(from, to);
+            for (long day = from; day <= to; day++) {
+                expected.add(day);
+            }
+        }
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        for (long day = -100; day < 20300; day++) {
+            assertThat(bitmap.contains(day)).as("day %d", day).isEqualTo(
+                    expected.contains(day));
+        }
+        for (long day = -100; day < 20300; day += 37) {
+            long bits = bitmap.bits(day);
+            for (int i = 0; i < 64; i++) {
+                assertThat((bits & (1L << i)) != 0).isEqualTo(expected.
+                        contains(day + i));
+            }
+        }
+    }
+}
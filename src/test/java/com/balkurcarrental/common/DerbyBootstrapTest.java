@@ -0,0 +1,143 @@
+package com.balkurcarrental.common;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import javax.sql.DataSource;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for DerbyBootstrap
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class DerbyBootstrapTest {
+
+    private static final String DATABASE = "memory:carrental-bootstrap-test";
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+    private Properties config;
+    private DerbyBootstrap bootstrap;
+
+    @Before
+    public void setUp() throws IOException {
+        config = DerbyBootstrap.loadConfig(DerbyBootstrap.class.getResource(
+                "carrental-derby.properties"));
+        config.setProperty(DerbyBootstrap.DATABASE, DATABASE);
+        for (String key : config.stringPropertyNames()) {
+            systemProperties.put(key, System.getProperty(key));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (bootstrap != null) {
+            bootstrap.stop();
+        }
+        for (Map.Entry<String, String> entry : systemProperties.entrySet()) {
+            if (entry.getValue() == null) {
+                System.clearProperty(entry.getKey());
+            } else {
+                System.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName(DATABASE);
+        ds.setConnectionAttributes("drop=true");
+        try {
+            ds.getConnection().close();
+        } catch (SQLException ex) {
+            // dropping always ends with exception, also when database doesn't exist
+        }
+    }
+
+    private static String query(DataSource ds, String sql, String parameter)
+            throws SQLException {
+        try (Connection connection = ds.getConnection();
+                PreparedStatement st = connection.prepareStatement(sql)) {
+            st.setString(1, parameter);
+            try (ResultSet rs = st.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    @Test
+    public void storageProperties() throws SQLException {
+        bootstrap = new DerbyBootstrap(config);
+        DataSource ds = bootstrap.start();
+
+        assertThat(bootstrap.getDataSource()).isSameAs(ds);
+        String sql = "VALUES SYSCS_UTIL.SYSCS_GET_DATABASE_PROPERTY(?)";
+        assertThat(query(ds, sql, "derby.storage.pageSize")).isEqualTo(
+                "16384");
+        assertThat(query(ds, sql, "derby.storage.checkpointInterval"))
+                .isEqualTo("100000000");
+        assertThat(query(ds, sql, "derby.storage.pageCacheSize")).isNull();
+        if (systemProperties.get("derby.storage.pageCacheSize") == null) {
+            assertThat(System.getProperty("derby.storage.pageCacheSize"))
+                    .isEqualTo("8000");
+        }
+    }
+
+    @Test
+    public void updateStatistics() throws SQLException {
+        bootstrap = new DerbyBootstrap(config);
+        DataSource ds = bootstrap.start();
+        DBUtils.executeSqlScript(ds, DerbyBootstrap.class.getResource(
+                "/com/balkurcarrental/backend/createTables.sql"));
+        try (Connection connection = ds.getConnection();
+                PreparedStatement st = connection.prepareStatement(
+                        "INSERT INTO car (brand, registration_number, registration_key) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < 100; i++) {
+                st.setString(1, "Brand" + i % 10);
+                st.setString(2, "BA" + i);
+                st.setString(3, "BA" + i);
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+
+        assertThat(bootstrap.updateStatistics()).isEqualTo(5);
+        String statistics = "SELECT COUNT(*) FROM sys.sysstatistics s"
+                + " JOIN sys.systables t ON s.tableid = t.tableid"
+                + " WHERE t.tablename = ?";
+        assertThat(query(ds, statistics, "CAR")).isNotEqualTo("0");
+    }
+
+    @Test
+    public void networkServerNeedsDerbynet() {
+        config.setProperty(DerbyBootstrap.NETWORK_PORT, "0");
+        bootstrap = new DerbyBootstrap(config);
+
+        assertThatThrownBy(() -> bootstrap.start())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("network server");
+    }
+
+    @Test
+    public void wrongUsage() throws SQLException {
+        assertThatThrownBy(() -> new DerbyBootstrap(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new DerbyBootstrap(new Properties()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        bootstrap = new DerbyBootstrap(config);
+        assertThatThrownBy(() -> bootstrap.updateStatistics())
+                .isInstanceOf(IllegalStateException.class);
+        bootstrap.start();
+        assertThatThrownBy(() -> bootstrap.start())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,185 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for EventPublisher
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class EventPublisherTest {
+
+    private final EventPublisher<String> publisher = new EventPublisher<>(
+            "test");
+
+    @Test
+    public void synchronousListenerGetsEventsInOrder() {
+        List<EntityEvent<String>> received = new ArrayList<>();
+        assertThat(publisher.hasListeners()).isFalse();
+        publisher.addListener(received::addAll);
+        assertThat(publisher.hasListeners()).isTrue();
+
+        publisher.publish(EntityEvent.created(1L, "a"));
+        publisher.publish(EntityEvent.updated(1L, "a", "b"));
+        publisher.publish(EntityEvent.deleted(1L, "b"));
+
+        assertThat(received).extracting("type").containsExactly(
+                EntityEvent.Type.CREATED, EntityEvent.Type.UPDATED,
+                EntityEvent.Type.DELETED);
+        assertThat(received.get(1).getBefore()).isEqualTo("a");
+        assertThat(received.get(1).getAfter()).isEqualTo("b");
+        assertThat(received.get(2).getAfter()).isNull();
+    }
+
+    @Test
+    public void bulkWriteIsPublishedAtOnce() throws InterruptedException {
+        List<List<EntityEvent<String>>> calls = new ArrayList<>();
+        List<EntityEvent<String>> async = new CopyOnWriteArrayList<>();
+        publisher.addListener(events -> calls.add(new ArrayList<>(events)));
+        publisher.addAsyncListener(async::addAll);
+
+        publisher.publishAll(Arrays.asList(EntityEvent.updated(1L, "a", "b"),
+                EntityEvent.updated(2L, "c", "d")));
+        publisher.publishAll(Collections.emptyList());
+
+        assertThat(calls).hasSize(1);
+        assertThat(calls.get(0)).extracting("id").containsExactly(1L, 2L);
+        assertThat(publisher.flush(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(async).extracting("id").containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void failingListenerDoesNotStopOthers() {
+        List<EntityEvent<String>> received = new ArrayList<>();
+        publisher.addListener(events -> {
+            throw new IllegalStateException("listener failed");
+        });
+        publisher.addListener(received::addAll);
+
+        publisher.publish(EntityEvent.created(1L, "a"));
+        assertThat(received).hasSize(1);
+    }
+
+    @Test
+    public void asynchronousListenerGetsBatches() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<EntityEvent<String>>> batches = Collections.synchronizedList(
+                new ArrayList<>());
+        publisher.addAsyncListener(events -> {
+            batches.add(new ArrayList<>(events));
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, 100, 10);
+
+        // the listener is blocked, publishing must not wait for it
+        long start = System.nanoTime();
+        for (long i = 0; i < 25; i++) {
+            publisher.publish(EntityEvent.created(i, "event" + i));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .isLessThan(1000);
+
+        release.countDown();
+        assertThat(publisher.flush(10, TimeUnit.SECONDS)).isTrue();
+        int total = 0;
+        for (List<EntityEvent<String>> batch : batches) {
+            assertThat(batch.size()).isBetween(1, 10);
+            total += batch.size();
+        }
+        assertThat(total).isEqualTo(25);
+        assertThat(batches.size()).isLessThan(25);
+        assertThat(publisher.getDroppedEvents()).isZero();
+    }
+
+    @Test
+    public void fullQueueDropsEvents() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        publisher.addAsyncListener(events -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, 2, 1);
+
+        List<LogRecord> warnings = new CopyOnWriteArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                warnings.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(EventPublisher.class.getName());
+        logger.addHandler(handler);
+        try {
+            publisher.publish(EntityEvent.created(0L, "taken"));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            for (long i = 1; i <= 5; i++) {
+                publisher.publish(EntityEvent.created(i, "event" + i));
+            }
+        } finally {
+            logger.removeHandler(handler);
+        }
+        assertThat(publisher.getDroppedEvents()).isEqualTo(3);
+        // drops are logged once per interval
+        assertThat(warnings).extracting(LogRecord::getMessage).containsExactly(
+                "Queue of test listener is full, 1 events dropped");
+
+        release.countDown();
+        assertThat(publisher.flush(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void removeListener() throws InterruptedException {
+        List<EntityEvent<String>> sync = new ArrayList<>();
+        EntityListener<String> syncListener = sync::addAll;
+        EntityListener<String> asyncListener = events -> {
+        };
+        publisher.addListener(syncListener);
+        publisher.addAsyncListener(asyncListener);
+
+        assertThat(publisher.removeListener(syncListener)).isTrue();
+        assertThat(publisher.removeListener(asyncListener)).isTrue();
+        assertThat(publisher.removeListener(asyncListener)).isFalse();
+        assertThat(publisher.hasListeners()).isFalse();
+
+        publisher.publish(EntityEvent.created(1L, "a"));
+        assertThat(sync).isEmpty();
+        assertThat(publisher.flush(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> publisher.addListener(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> publisher.addAsyncListener(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> publisher.addAsyncListener(events -> {
+        }, 0, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
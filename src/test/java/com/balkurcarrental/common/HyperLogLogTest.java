@@ -0,0 +1,62 @@
+package com.balkurcarrental.common;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for HyperLogLog
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void emptySketch() {
+        assertThat(new HyperLogLog().estimate()).isZero();
+    }
+
+    @Test
+    public void smallCardinalityIsAlmostExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 3; i++) {
+            for (long id = 1; id <= 100; id++) {
+                sketch.add(id);
+            }
+        }
+        assertThat(sketch.estimate()).isBetween(98L, 102L);
+    }
+
+    @Test
+    public void largeCardinalityWithinError() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        for (long id = 0; id < 200000; id++) {
+            sketch.add(id);
+        }
+        // five standard errors
+        assertThat(sketch.estimate()).isBetween(184000L, 216000L);
+    }
+
+    @Test
+    public void mergeCountsUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (long id = 0; id < 6000; id++) {
+            first.add(id);
+            second.add(id + 4000);
+        }
+        HyperLogLog union = first.copy();
+        union.merge(second);
+
+        assertThat(union.estimate()).isBetween(9400L, 10600L);
+        assertThat(first.estimate()).isBetween(5600L, 6400L);
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> new HyperLogLog(3))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HyperLogLog(10).merge(new HyperLogLog(
+                11))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
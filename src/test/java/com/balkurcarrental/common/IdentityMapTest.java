@@ -0,0 +1,73 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for IdentityMap
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class IdentityMapTest {
+
+    private final List<Collection<Long>> requests = new ArrayList<>();
+
+    private static class Entity {
+
+        private final Long id;
+
+        Entity(Long id) {
+            this.id = id;
+        }
+    }
+
+    private LookupResult<Entity> load(Collection<Long> ids) {
+        requests.add(new ArrayList<>(ids));
+        Map<Long, Entity> found = new HashMap<>();
+        for (Long id : ids) {
+            if (id > 0) {
+                found.put(id, new Entity(id));
+            }
+        }
+        return new LookupResult<>(ids, found);
+    }
+
+    @Test
+    public void entitiesAreLoadedOnceAndShared() {
+        IdentityMap<Entity> map = new IdentityMap<>(this::load);
+
+        map.load(Arrays.asList(1L, 2L));
+        Entity first = map.get(1L);
+        map.load(Arrays.asList(2L, 1L, 3L));
+
+        assertThat(map.get(1L)).isSameAs(first);
+        assertThat(map.get(3L).id).isEqualTo(3L);
+        assertThat(requests).containsExactly(Arrays.asList(1L, 2L),
+                Arrays.asList(3L));
+        assertThat(map.getLoads()).isEqualTo(2);
+        assertThat(map.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void missingEntitiesAreNotLoadedAgain() {
+        IdentityMap<Entity> map = new IdentityMap<>(this::load);
+
+        map.load(Arrays.asList(-1L, 1L));
+        map.load(Arrays.asList(-1L, 1L));
+
+        assertThat(map.get(-1L)).isNull();
+        assertThat(map.getLoads()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullLoader() {
+        new IdentityMap<String>(null);
+    }
+}
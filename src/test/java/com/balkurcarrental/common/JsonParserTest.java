@@ -0,0 +1,54 @@
+package com.balkurcarrental.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for JsonParser
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class JsonParserTest {
+
+    @Test
+    public void parseValues() {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("id", 12L);
+        expected.put("price", -1.5);
+        expected.put("name", "Kurčík \u00e1/");
+        expected.put("ok", true);
+        expected.put("no", false);
+        expected.put("none", null);
+        expected.put("list", Arrays.asList(1L, Collections.emptyMap(),
+                Collections.emptyList()));
+
+        assertThat(JsonParser.parse(" {\"id\": 12, \"price\": -1.5e0,"
+                + " \"name\": \"Kurčík \\u00e1\\/\", \"ok\": true,"
+                + " \"no\": false, \"none\": null,"
+                + " \"list\": [1, {}, []]}\n")).isEqualTo(expected);
+        assertThat(JsonParser.parse("\"x\"")).isEqualTo("x");
+        assertThat(JsonParser.parse("null")).isNull();
+    }
+
+    @Test
+    public void invalidDocuments() {
+        for (String json : Arrays.asList("", "{", "[1,]", "{\"a\" 1}",
+                "{a:1}", "\"abc", "tru", "1 2", "--1", "\"\\x\"",
+                "\"\\u12\"", "\"a\nb\"", "[] x")) {
+            assertThatThrownBy(() -> JsonParser.parse(json)).as(json)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            deep.append('[');
+        }
+        assertThatThrownBy(() -> JsonParser.parse(deep.toString()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("deep");
+    }
+}
@@ -0,0 +1,56 @@
+package com.balkurcarrental.common;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for JsonWriter
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class JsonWriterTest {
+
+    private final StringWriter out = new StringWriter();
+    private final JsonWriter json = new JsonWriter(out);
+
+    @Test
+    public void nestedValues() throws IOException {
+        json.beginObject()
+                .name("id").value(1L)
+                .name("name").value("Lukáš")
+                .name("tags").beginArray().value(true).nullValue().beginObject()
+                .endObject().beginArray().endArray().endArray()
+                .name("missing").value((String) null)
+                .endObject();
+
+        assertThat(out.toString()).isEqualTo("{\"id\":1,\"name\":\"Lukáš\","
+                + "\"tags\":[true,null,{},[]],\"missing\":null}");
+    }
+
+    @Test
+    public void topLevelArray() throws IOException {
+        json.beginArray().value(-5).value(Long.valueOf(7)).value((Long) null)
+                .endArray();
+
+        assertThat(out.toString()).isEqualTo("[-5,7,null]");
+    }
+
+    @Test
+    public void escaping() throws IOException {
+        json.value("a\"b\\c\nd\te\u0001f\u2028");
+
+        assertThat(out.toString()).isEqualTo(
+                "\"a\\\"b\\\\c\\nd\\te\\u0001f\\u2028\"");
+        assertThat(JsonParser.parse(out.toString())).isEqualTo(
+                "a\"b\\c\nd\te\u0001f\u2028");
+    }
+
+    @Test
+    public void unbalancedClose() {
+        assertThatThrownBy(() -> json.endArray()).isInstanceOf(
+                IllegalStateException.class);
+    }
+}
@@ -0,0 +1,140 @@
+package com.balkurcarrental.common;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for LeakDetectingDataSource
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class LeakDetectingDataSourceTest {
+
+    private static final Logger detectorLogger = Logger.getLogger(
+            LeakDetectingDataSource.class.getName());
+
+    private final List<LogRecord> warnings = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            warnings.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private LeakDetectingDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        //we will use in memory database
+        ds.setDatabaseName("memory:carrental-test");
+        ds.setCreateDatabase("create");
+        dataSource = new LeakDetectingDataSource(ds);
+        detectorLogger.addHandler(handler);
+        detectorLogger.setUseParentHandlers(false);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+        detectorLogger.removeHandler(handler);
+        detectorLogger.setUseParentHandlers(true);
+    }
+
+    @Test
+    public void openResourcesAreCounted() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        PreparedStatement st = connection.prepareStatement(
+                "VALUES 1");
+        ResultSet first = st.executeQuery();
+        assertThat(first.getStatement()).isSameAs(st);
+        assertThat(st.getConnection()).isSameAs(connection);
+        assertThat(dataSource.getOpenConnections()).isEqualTo(1);
+        assertThat(dataSource.getOpenStatements()).isEqualTo(1);
+        assertThat(dataSource.getOpenResultSets()).isEqualTo(1);
+
+        // executing statement again closes the first result set
+        ResultSet second = st.executeQuery();
+        assertThat(dataSource.getOpenResultSets()).isEqualTo(1);
+        second.close();
+        assertThat(dataSource.getOpenResultSets()).isZero();
+
+        st.executeQuery();
+        connection.prepareStatement("VALUES 2");
+        connection.close();
+        assertThat(dataSource.getOpenConnections()).isZero();
+        assertThat(dataSource.getOpenStatements()).isZero();
+        assertThat(dataSource.getOpenResultSets()).isZero();
+        assertThat(dataSource.getAcquireTimes().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void resourcesOpenTooLongAreReported() throws Exception {
+        dataSource.setLeakThreshold(Duration.ofMillis(1));
+        try (Connection connection = dataSource.getConnection()) {
+            Thread.sleep(20);
+            dataSource.checkOpenResources();
+            dataSource.checkOpenResources();
+        }
+
+        assertThat(warnings).hasSize(1);
+        LogRecord warning = warnings.get(0);
+        assertThat(warning.getMessage()).startsWith("Connection is open for");
+        assertThat(warning.getThrown().getStackTrace()).extracting(
+                StackTraceElement::getMethodName).contains(
+                        "resourcesOpenTooLongAreReported");
+    }
+
+    private void leakConnection() throws SQLException {
+        dataSource.getConnection().prepareStatement("VALUES 1").executeQuery();
+    }
+
+    @Test
+    public void collectedResourcesAreReported() throws Exception {
+        leakConnection();
+        assertThat(dataSource.getOpenConnections()).isEqualTo(1);
+
+        for (int i = 0; i < 50 && dataSource.getOpenConnections() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+            dataSource.checkOpenResources();
+        }
+
+        assertThat(dataSource.getOpenConnections()).isZero();
+        assertThat(dataSource.getOpenStatements()).isZero();
+        assertThat(dataSource.getOpenResultSets()).isZero();
+        assertThat(warnings).extracting(LogRecord::getMessage).contains(
+                "Connection was garbage collected without being closed");
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> new LeakDetectingDataSource(null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> dataSource.setLeakThreshold(Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> dataSource.setLeakThreshold(null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
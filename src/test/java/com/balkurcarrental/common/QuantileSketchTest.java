@@ -0,0 +1,72 @@
+package com.balkurcarrental.common;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for QuantileSketch
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class QuantileSketchTest {
+
+    @Test
+    public void smallSketchIsExact() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (long value = 10; value >= 1; value--) {
+            sketch.add(value);
+        }
+        assertThat(sketch.getCount()).isEqualTo(10);
+        assertThat(sketch.quantiles(0, 0.5, 0.9, 1)).containsExactly(1, 5, 9,
+                10);
+    }
+
+    @Test
+    public void largeSketchWithinError() {
+        QuantileSketch sketch = new QuantileSketch(200, new Random(1));
+        Random random = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            sketch.add(random.nextInt(10000));
+        }
+        long[] quantiles = sketch.quantiles(0.5, 0.9, 0.99);
+
+        assertThat(sketch.getCount()).isEqualTo(100000);
+        assertThat(quantiles[0]).isBetween(4800L, 5200L);
+        assertThat(quantiles[1]).isBetween(8800L, 9200L);
+        assertThat(quantiles[2]).isBetween(9700L, 9999L);
+    }
+
+    @Test
+    public void mergeOfBuckets() {
+        QuantileSketch low = new QuantileSketch(200, new Random(1));
+        QuantileSketch high = new QuantileSketch(200, new Random(2));
+        for (int i = 0; i < 50000; i++) {
+            low.add(i % 1000);
+            high.add(1000 + i % 1000);
+        }
+        QuantileSketch all = low.copy();
+        all.merge(high);
+
+        assertThat(all.getCount()).isEqualTo(100000);
+        assertThat(all.quantile(0.25)).isBetween(450L, 550L);
+        assertThat(all.quantile(0.75)).isBetween(1450L, 1550L);
+        assertThat(low.getCount()).isEqualTo(50000);
+        assertThat(low.quantile(0.5)).isBetween(450L, 550L);
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> new QuantileSketch(4))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new QuantileSketch().quantile(0.5))
+                .isInstanceOf(IllegalStateException.class);
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(1);
+        assertThatThrownBy(() -> sketch.quantile(1.5))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> sketch.merge(null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
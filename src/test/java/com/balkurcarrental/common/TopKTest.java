@@ -0,0 +1,63 @@
+package com.balkurcarrental.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for TopK
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class TopKTest {
+
+    @Test
+    public void keepsBestRows() {
+        TopK<String> top = new TopK<>(2);
+        assertThat(top.offer("BMW", 5)).isTrue();
+        assertThat(top.offer("Skoda", 9)).isTrue();
+        assertThat(top.offer("Fiat", 1)).isFalse();
+        assertThat(top.offer("Audi", 7)).isTrue();
+
+        assertThat(top.size()).isEqualTo(2);
+        assertThat(top.toList()).containsExactly(new RankedRow<>("Skoda", 9),
+                new RankedRow<>("Audi", 7));
+    }
+
+    @Test
+    public void equalScoresOrderedByKey() {
+        TopK<Long> top = new TopK<>(2);
+        top.offer(3L, 10);
+        top.offer(1L, 10);
+        top.offer(2L, 10);
+
+        assertThat(top.toList()).containsExactly(new RankedRow<>(1L, 10L),
+                new RankedRow<>(2L, 10L));
+    }
+
+    @Test
+    public void sameResultAsSorting() {
+        Random random = new Random(7);
+        TopK<Long> top = new TopK<>(10);
+        List<RankedRow<Long>> all = new ArrayList<>();
+        for (long id = 0; id < 1000; id++) {
+            long score = random.nextInt(100);
+            top.offer(id, score);
+            all.add(new RankedRow<>(id, score));
+        }
+        Collections.sort(all, (a, b) -> a.getScore() != b.getScore() ? Long.
+                compare(b.getScore(), a.getScore()) : a.getKey().compareTo(b.
+                getKey()));
+
+        assertThat(top.toList()).isEqualTo(all.subList(0, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveK() {
+        new TopK<String>(0);
+    }
+}
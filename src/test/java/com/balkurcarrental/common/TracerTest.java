@@ -0,0 +1,143 @@
+package com.balkurcarrental.common;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for Tracer
+ *
+ * @author Lukáš Kurčík <lukas.kurcik at gmail.com>
+ */
+public class TracerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> export(Tracer tracer)
+            throws IOException {
+        StringWriter out = new StringWriter();
+        tracer.export(out);
+        return (List<Map<String, Object>>) JsonParser.parse(out.toString());
+    }
+
+    private static Map<String, Map<String, Object>> byName(
+            List<Map<String, Object>> spans) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        for (Map<String, Object> span : spans) {
+            result.put((String) span.get("name"), span);
+        }
+        return result;
+    }
+
+    @Test
+    public void nestedSpans() throws IOException {
+        Tracer tracer = new Tracer("carrental", 1, 100);
+
+        int root = tracer.begin("root");
+        int phase = tracer.begin("first");
+        phase = tracer.next(phase, "second");
+        tracer.begin("nested");
+        // ends also second and nested
+        tracer.end(root);
+        tracer.end(phase);
+
+        List<Map<String, Object>> spans = export(tracer);
+        assertThat(spans).hasSize(4);
+        Map<String, Map<String, Object>> named = byName(spans);
+        Object rootId = named.get("root").get("id");
+        assertThat(named.get("root")).doesNotContainKey("parentId");
+        assertThat(named.get("first").get("parentId")).isEqualTo(rootId);
+        assertThat(named.get("second").get("parentId")).isEqualTo(rootId);
+        assertThat(named.get("nested").get("parentId")).isEqualTo(named.get(
+                "second").get("id"));
+        for (Map<String, Object> span : spans) {
+            assertThat(span.get("traceId")).isEqualTo(named.get("root").get(
+                    "traceId"));
+            assertThat((String) span.get("id")).hasSize(16);
+            assertThat((Long) span.get("duration")).isPositive();
+            assertThat((Long) span.get("timestamp")).isGreaterThanOrEqualTo(
+                    (Long) named.get("root").get("timestamp"));
+            assertThat(span.get("localEndpoint")).isEqualTo(
+                    JsonParser.parse("{\"serviceName\":\"carrental\"}"));
+        }
+        // exported spans are removed
+        assertThat(export(tracer)).isEmpty();
+    }
+
+    @Test
+    public void tracesAreSampled() throws IOException {
+        Tracer never = new Tracer("carrental", 0, 100);
+        int root = never.begin("root");
+        never.next(never.begin("first"), "second");
+        never.end(root);
+        assertThat(export(never)).isEmpty();
+
+        Tracer half = new Tracer("carrental", 0.5, 1000);
+        for (int i = 0; i < 1000; i++) {
+            int span = half.begin("root");
+            half.end(half.begin("child"));
+            half.end(span);
+        }
+        List<Map<String, Object>> spans = export(half);
+        assertThat(spans.size() % 2).isZero();
+        assertThat(spans.size() / 2).isBetween(400, 600);
+    }
+
+    @Test
+    public void fullRingDropsOldestSpans() throws IOException {
+        Tracer tracer = new Tracer("carrental", 1, 3);
+        for (String name : new String[]{"first", "second"}) {
+            int root = tracer.begin(name);
+            tracer.end(tracer.begin(name + "Child"));
+            tracer.end(root);
+        }
+
+        assertThat(byName(export(tracer)).keySet()).containsOnly(
+                "firstChild", "second", "secondChild");
+        assertThat(tracer.getDroppedSpans()).isEqualTo(1);
+
+        int root = tracer.begin("root");
+        for (int i = 0; i < Tracer.MAX_SPANS_PER_TRACE; i++) {
+            tracer.end(tracer.begin("child"));
+        }
+        tracer.end(root);
+        assertThat(tracer.getDroppedSpans()).isEqualTo(1 + 1
+                + Tracer.MAX_SPANS_PER_TRACE - 3);
+    }
+
+    @Test
+    public void exportToFile() throws IOException {
+        Tracer tracer = new Tracer("carrental", 1, 10);
+        tracer.end(tracer.begin("root"));
+        Path file = folder.getRoot().toPath().resolve("spans.json");
+
+        assertThat(tracer.export(file)).isEqualTo(1);
+        Object spans = JsonParser.parse(new String(Files.readAllBytes(file),
+                StandardCharsets.UTF_8));
+        assertThat((List<?>) spans).hasSize(1);
+    }
+
+    @Test
+    public void wrongArguments() {
+        assertThatThrownBy(() -> new Tracer(null, 1, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Tracer("carrental", 1.5, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Tracer("carrental", Double.NaN, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new Tracer("carrental", 1, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}